@@ -0,0 +1,94 @@
+/*
+ * Copyright (C) 2015 Erwin Betschart
+ *
+ * This file is part of Video Comparator.
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.lipsch.videocomparator;
+
+import android.app.Activity;
+import android.app.Instrumentation;
+import android.content.Intent;
+import android.content.pm.ActivityInfo;
+import android.net.Uri;
+import android.os.Environment;
+import android.os.SystemClock;
+import android.test.ActivityInstrumentationTestCase2;
+import android.util.Log;
+
+import java.io.File;
+
+/**
+ * Measures the time to the first frame after loading a video and after a rotation.
+ * Before the players were retained every rotation prepared the videos again, i.e. it cost as much as the initial load.
+ * <p/>
+ * Needs a video at videocomparator/benchmark.mp4 on the external storage, the benchmark is skipped otherwise.
+ */
+public class RotationBenchmarkTest extends ActivityInstrumentationTestCase2<VideoComparatorActivity> {
+
+    private static final String TAG = RotationBenchmarkTest.class.getName();
+
+    private static final String BENCHMARK_VIDEO = "videocomparator/benchmark.mp4";
+
+    private static final long TIMEOUT_MS = 10000;
+
+    public RotationBenchmarkTest() {
+        super(VideoComparatorActivity.class);
+    }
+
+    public void testTimeToFirstFrameAfterRotation() throws Throwable {
+        File video = new File(Environment.getExternalStorageDirectory(), BENCHMARK_VIDEO);
+        if (!video.isFile()) {
+            Log.w(TAG, "Benchmark skipped, " + video + " is missing");
+            return;
+        }
+
+        final VideoComparatorActivity activity = getActivity();
+        activity.setRequestedOrientation(ActivityInfo.SCREEN_ORIENTATION_PORTRAIT);
+        getInstrumentation().waitForIdleSync();
+
+        //Cold: Both players are prepared from scratch.
+        final Intent data = new Intent().setData(Uri.fromFile(video));
+        runTestOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                activity.onActivityResult(VideoComparatorActivity.PICK_VIDEO1_REQUEST, Activity.RESULT_OK, data);
+                activity.onActivityResult(VideoComparatorActivity.PICK_VIDEO2_REQUEST, Activity.RESULT_OK, data);
+            }
+        });
+        long coldMs = waitForFirstFrame(activity);
+
+        //Rotated: The players are retained and only attached to the new surfaces.
+        Instrumentation.ActivityMonitor monitor = getInstrumentation().addMonitor(VideoComparatorActivity.class.getName(), null, false);
+        activity.setRequestedOrientation(ActivityInfo.SCREEN_ORIENTATION_LANDSCAPE);
+        VideoComparatorActivity rotated = (VideoComparatorActivity) getInstrumentation().waitForMonitorWithTimeout(monitor, TIMEOUT_MS);
+        getInstrumentation().removeMonitor(monitor);
+        assertNotNull("Activity was not recreated", rotated);
+        long rotatedMs = waitForFirstFrame(rotated);
+
+        Log.i(TAG, "Time to first frame: cold " + coldMs + "ms, after rotation " + rotatedMs + "ms");
+
+        rotated.setRequestedOrientation(ActivityInfo.SCREEN_ORIENTATION_UNSPECIFIED);
+    }
+
+    private long waitForFirstFrame(VideoComparatorActivity activity) {
+        long end = SystemClock.elapsedRealtime() + TIMEOUT_MS;
+        while (activity.getTimeToFirstFrameMs() < 0) {
+            assertTrue("No frame shown within " + TIMEOUT_MS + "ms", SystemClock.elapsedRealtime() < end);
+            SystemClock.sleep(10);
+        }
+        return activity.getTimeToFirstFrameMs();
+    }
+}
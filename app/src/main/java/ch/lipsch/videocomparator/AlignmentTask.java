@@ -0,0 +1,133 @@
+/*
+ * Copyright (C) 2015 Erwin Betschart
+ *
+ * This file is part of Video Comparator.
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.lipsch.videocomparator;
+
+import android.content.Context;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.io.IOException;
+
+/**
+ * Finds the offset between two videos in the background with a TemporalAligner. The videos are sampled at ALIGN_FRAME_RATE and
+ * scaled down to ALIGN_WIDTH x ALIGN_HEIGHT, which is plenty for the activity signals.
+ * The task is cancelled by interrupting its thread.
+ */
+class AlignmentTask implements Runnable {
+
+    private static final String TAG = AlignmentTask.class.getName();
+
+    /**
+     * The number of frames per second which are sampled. The offset is found with a resolution of 1 / ALIGN_FRAME_RATE seconds.
+     */
+    public static final double ALIGN_FRAME_RATE = 4.0;
+
+    public static final int ALIGN_WIDTH = 64;
+    public static final int ALIGN_HEIGHT = 36;
+
+    /**
+     * Offsets of up to five minutes are searched.
+     */
+    public static final int MAX_OFFSET_MS = 5 * 60 * 1000;
+
+    /**
+     * The videos must overlap at least ten seconds.
+     */
+    public static final int MIN_OVERLAP_MS = 10 * 1000;
+
+    /**
+     * Gets informed about the alignment. Called in the main thread.
+     */
+    interface Listener {
+
+        /**
+         * @param alignment The alignment or null if the videos could not be aligned (e.g. too short or no motion at all).
+         */
+        void onAligned(TemporalAlignment alignment);
+
+        void onAlignmentFailed(Exception e);
+    }
+
+    private final Context context;
+    private final Uri video1;
+    private final Uri video2;
+    private final Listener listener;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    /**
+     * @param context  The context to resolve the uris. Only the application context is kept.
+     * @param video1   The first video.
+     * @param video2   The second video.
+     * @param listener Gets informed about the result.
+     */
+    public AlignmentTask(Context context, Uri video1, Uri video2, Listener listener) {
+        this.context = context.getApplicationContext();
+        this.video1 = video1;
+        this.video2 = video2;
+        this.listener = listener;
+    }
+
+    @Override
+    public void run() {
+        RetrieverFrameSource source1 = null;
+        RetrieverFrameSource source2 = null;
+        try {
+            source1 = new RetrieverFrameSource(context, video1, null);
+            source2 = new RetrieverFrameSource(context, video2, null);
+
+            TemporalAligner aligner = new TemporalAligner(ALIGN_FRAME_RATE, MAX_OFFSET_MS, MIN_OVERLAP_MS);
+            final TemporalAlignment alignment = aligner.align(new RetrieverLumaSource(source1, ALIGN_WIDTH, ALIGN_HEIGHT, ALIGN_FRAME_RATE),
+                    new RetrieverLumaSource(source2, ALIGN_WIDTH, ALIGN_HEIGHT, ALIGN_FRAME_RATE));
+
+            Log.i(TAG, "Alignment done: " + alignment);
+            mainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    listener.onAligned(alignment);
+                }
+            });
+        } catch (InterruptedException e) {
+            Log.i(TAG, "Alignment cancelled");
+        } catch (IOException e) {
+            notifyFailure(e);
+        } catch (RuntimeException e) {
+            //The retriever throws if the video can not be opened.
+            notifyFailure(e);
+        } finally {
+            if (source1 != null) {
+                source1.release();
+            }
+            if (source2 != null) {
+                source2.release();
+            }
+        }
+    }
+
+    private void notifyFailure(final Exception e) {
+        Log.w(TAG, "Alignment failed", e);
+        mainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                listener.onAlignmentFailed(e);
+            }
+        });
+    }
+}
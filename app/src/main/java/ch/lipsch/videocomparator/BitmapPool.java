@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2015 Erwin Betschart
+ *
+ * This file is part of Video Comparator.
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.lipsch.videocomparator;
+
+import android.graphics.Bitmap;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keeps bitmaps which are not used anymore (e.g. evicted from a cache) so their memory can be reused for bitmaps of the same size
+ * instead of allocating new ones. Avoids garbage collection pauses while scrolling through many thumbnails.
+ * The pool is limited in bytes. Bitmaps which do not fit are dropped.
+ * <p/>
+ * Dropped bitmaps are never recycled explicitly as they may still be drawn by a view. Their memory is on the java heap (API 11+) and freed by the
+ * garbage collector.
+ * <p/>
+ * This class is thread-safe.
+ */
+class BitmapPool {
+
+    private final long maxBytes;
+    private final List<Bitmap> bitmaps = new ArrayList<Bitmap>();
+    private long bytes = 0;
+
+    /**
+     * @param maxBytes The maximum size of all pooled bitmaps in bytes.
+     */
+    public BitmapPool(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Delivers a pooled bitmap of exactly the given size and configuration. The content of the bitmap is undefined.
+     *
+     * @return The bitmap or null if none is pooled.
+     */
+    public synchronized Bitmap get(int width, int height, Bitmap.Config config) {
+        for (int i = bitmaps.size() - 1; i >= 0; i--) {
+            Bitmap bitmap = bitmaps.get(i);
+            if (bitmap.getWidth() == width && bitmap.getHeight() == height && bitmap.getConfig() == config) {
+                bitmaps.remove(i);
+                bytes -= bitmap.getByteCount();
+                return bitmap;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Delivers a pooled bitmap of the given size or creates a new one.
+     */
+    public Bitmap getOrCreate(int width, int height, Bitmap.Config config) {
+        Bitmap bitmap = get(width, height, config);
+        return bitmap == null ? Bitmap.createBitmap(width, height, config) : bitmap;
+    }
+
+    /**
+     * Hands a bitmap to the pool. The bitmap must not be used by the caller afterwards.
+     * Immutable bitmaps can not be reused and are dropped. If the pool is full the oldest bitmaps are dropped.
+     */
+    public synchronized void put(Bitmap bitmap) {
+        if (bitmap.isRecycled()) {
+            return;
+        }
+        if (!bitmap.isMutable() || bitmap.getByteCount() > maxBytes) {
+            return;
+        }
+
+        bitmaps.add(bitmap);
+        bytes += bitmap.getByteCount();
+        while (bytes > maxBytes) {
+            Bitmap oldest = bitmaps.remove(0);
+            bytes -= oldest.getByteCount();
+        }
+    }
+
+    /**
+     * Drops all pooled bitmaps.
+     */
+    public synchronized void clear() {
+        bitmaps.clear();
+        bytes = 0;
+    }
+}
@@ -0,0 +1,749 @@
+/*
+ * Copyright (C) 2015 Erwin Betschart
+ *
+ * This file is part of Video Comparator.
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.lipsch.videocomparator;
+
+import android.content.Context;
+import android.graphics.SurfaceTexture;
+import android.opengl.GLES11Ext;
+import android.opengl.GLES20;
+import android.opengl.GLSurfaceView;
+import android.util.AttributeSet;
+import android.util.Log;
+import android.view.MotionEvent;
+import android.view.ScaleGestureDetector;
+import android.view.Surface;
+import android.view.SurfaceHolder;
+import android.view.View;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+
+import javax.microedition.khronos.egl.EGLConfig;
+import javax.microedition.khronos.opengles.GL10;
+
+/**
+ * Renders both videos into a single surface so they can be compared on the same pixels.
+ * <p/>
+ * Every video stream gets an external OES texture with a SurfaceTexture. The players render directly into the Surfaces of these textures
+ * (decoder -> texture, no bitmaps and no copies), and the view composes the textures with a shader:
+ * <ul>
+ * <li>SPLIT: The first video left of a split line, the second one right of it. The line can be dragged.</li>
+ * <li>CHECKERBOARD: The videos alternate in the cells of a checkerboard.</li>
+ * <li>FLICKER: The whole view alternates between the videos. A tap freezes / unfreezes the alternation.</li>
+ * </ul>
+ * Frames are only drawn when a stream delivered a new frame or the composition changed (RENDERMODE_WHEN_DIRTY). The pacing of the drawn frames is measured with
+ * FramePacingStats.
+ * <p/>
+ * Two fingers zoom into a region of interest and pan it in all modes (in CHECKERBOARD mode one finger pans, too). The same ViewportTransform is applied to both videos
+ * in the same frame. Only the visible region of the textures is sampled: The texture coordinates are cropped to the region instead of scaling up the whole frame.
+ * The render time of zoomed frames is measured with RenderTimeStats.
+ * <p/>
+ * All public methods must be called from the main thread.
+ */
+public class CompositorView extends GLSurfaceView {
+
+    private static final String TAG = CompositorView.class.getName();
+
+    /**
+     * The number of composed video streams.
+     */
+    public static final int STREAM_COUNT = 2;
+
+    /**
+     * The time the flicker mode shows every video.
+     */
+    public static final int FLICKER_INTERVAL_MS = 500;
+
+    /**
+     * The size of a checkerboard cell in density independent pixels.
+     */
+    private static final float CHECKER_CELL_DP = 48f;
+
+    /**
+     * The half width of the split line in density independent pixels.
+     */
+    private static final float SPLIT_LINE_DP = 1f;
+
+    /**
+     * How the videos are composed.
+     */
+    public enum Mode {
+        SPLIT, CHECKERBOARD, FLICKER
+    }
+
+    /**
+     * Listener for the surfaces the players have to render on. Called on the main thread.
+     */
+    public interface Listener {
+
+        /**
+         * The surfaces of the streams are ready. Replaces previously created surfaces.
+         *
+         * @param surfaces The surface of every stream.
+         */
+        void onStreamSurfacesCreated(Surface[] surfaces);
+
+        /**
+         * The surfaces of the streams are going to be released. The players must not render on them anymore.
+         *
+         * @param surfaces The surface of every stream.
+         */
+        void onStreamSurfacesDestroyed(Surface[] surfaces);
+    }
+
+    private final CompositorRenderer renderer = new CompositorRenderer();
+    private final FramePacingStats pacingStats = new FramePacingStats(STREAM_COUNT, FramePacingStats.DEFAULT_FRAME_INTERVAL_NS);
+    private final ViewportTransform viewport = new ViewportTransform();
+    private final RenderTimeStats zoomedRenderTime = new RenderTimeStats(FramePacingStats.DEFAULT_FRAME_INTERVAL_NS);
+
+    private Listener listener = null;
+    private Mode mode = Mode.SPLIT;
+    private boolean isFlickerFrozen = false;
+    private int flickerStream = 0;
+
+    /**
+     * The surfaces given to the listener. null if there are none.
+     */
+    private Surface[] surfaces = null;
+    private SurfaceTexture[] surfaceTextures = null;
+
+    private ScaleGestureDetector scaleDetector = null;
+
+    /**
+     * true if the current gesture zooms or pans with two fingers. It is not taken for a drag of the split line or a tap, even after one finger is lifted.
+     */
+    private boolean isScaleGesture = false;
+    private float lastFocusX = 0f;
+    private float lastFocusY = 0f;
+    private float lastTouchX = 0f;
+    private float lastTouchY = 0f;
+
+    /**
+     * The size of the first video. The gestures are relative to it.
+     */
+    private int firstVideoWidth = 0;
+    private int firstVideoHeight = 0;
+    private final float[] fitScale = new float[2];
+
+    private final Runnable flickerRunnable = new Runnable() {
+        @Override
+        public void run() {
+            flickerStream = (flickerStream + 1) % STREAM_COUNT;
+            renderer.setFlickerStream(flickerStream);
+            requestRender();
+            postDelayed(this, FLICKER_INTERVAL_MS);
+        }
+    };
+
+    public CompositorView(Context context) {
+        super(context);
+        initialize();
+    }
+
+    public CompositorView(Context context, AttributeSet attrs) {
+        super(context, attrs);
+        initialize();
+    }
+
+    private void initialize() {
+        setEGLContextClientVersion(2);
+        setPreserveEGLContextOnPause(true);
+        setRenderer(renderer);
+        setRenderMode(RENDERMODE_WHEN_DIRTY);
+
+        float density = getResources().getDisplayMetrics().density;
+        renderer.setDensity(density);
+
+        scaleDetector = new ScaleGestureDetector(getContext(), new ScaleGestureDetector.SimpleOnScaleGestureListener() {
+            @Override
+            public boolean onScaleBegin(ScaleGestureDetector detector) {
+                isScaleGesture = true;
+                lastFocusX = detector.getFocusX();
+                lastFocusY = detector.getFocusY();
+                return true;
+            }
+
+            @Override
+            public boolean onScale(ScaleGestureDetector detector) {
+                float focusX = detector.getFocusX();
+                float focusY = detector.getFocusY();
+                updateFitScale();
+                float videoAreaWidth = fitScale[0] * getWidth();
+                float videoAreaHeight = fitScale[1] * getHeight();
+                float videoLeft = (getWidth() - videoAreaWidth) / 2;
+                float videoTop = (getHeight() - videoAreaHeight) / 2;
+
+                //Moving both fingers pans, spreading them zooms around their center.
+                viewport.panBy((focusX - lastFocusX) / videoAreaWidth, (focusY - lastFocusY) / videoAreaHeight);
+                viewport.zoomBy(detector.getScaleFactor(),
+                        Math.max(0f, Math.min(1f, (focusX - videoLeft) / videoAreaWidth)),
+                        Math.max(0f, Math.min(1f, (focusY - videoTop) / videoAreaHeight)));
+                lastFocusX = focusX;
+                lastFocusY = focusY;
+                requestRender();
+                return true;
+            }
+        });
+    }
+
+    /**
+     * Sets the listener. It is called immediately if the surfaces of the streams exist already.
+     */
+    public void setListener(Listener listener) {
+        this.listener = listener;
+        if (listener != null && surfaces != null) {
+            listener.onStreamSurfacesCreated(surfaces);
+        }
+    }
+
+    /**
+     * Sets the way the videos are composed.
+     */
+    public void setMode(Mode mode) {
+        this.mode = mode;
+        renderer.setMode(mode);
+
+        removeCallbacks(flickerRunnable);
+        if (mode == Mode.FLICKER && !isFlickerFrozen) {
+            postDelayed(flickerRunnable, FLICKER_INTERVAL_MS);
+        }
+        requestRender();
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    /**
+     * Sets the size of a video to keep its aspect ratio.
+     *
+     * @param stream The index of the stream.
+     */
+    public void setVideoSize(int stream, int width, int height) {
+        if (stream == 0) {
+            firstVideoWidth = width;
+            firstVideoHeight = height;
+        }
+        renderer.setVideoSize(stream, width, height);
+        requestRender();
+    }
+
+    /**
+     * @return The statistics of the drawn frames. Thread-safe.
+     */
+    public FramePacingStats getPacingStats() {
+        return pacingStats;
+    }
+
+    /**
+     * @return The render time of the frames drawn while zoomed. Thread-safe.
+     */
+    public RenderTimeStats getZoomedRenderTime() {
+        return zoomedRenderTime;
+    }
+
+    @Override
+    public boolean onTouchEvent(MotionEvent event) {
+        scaleDetector.onTouchEvent(event);
+
+        int action = event.getActionMasked();
+        if (action == MotionEvent.ACTION_DOWN) {
+            isScaleGesture = false;
+        }
+        if (isScaleGesture || event.getPointerCount() > 1) {
+            isScaleGesture = true;
+            return true;
+        }
+
+        if (mode == Mode.SPLIT) {
+            if (action == MotionEvent.ACTION_DOWN || action == MotionEvent.ACTION_MOVE) {
+                renderer.setSplitFraction(Math.max(0f, Math.min(1f, event.getX() / getWidth())));
+                requestRender();
+            }
+        } else if (mode == Mode.FLICKER) {
+            if (action == MotionEvent.ACTION_UP) {
+                isFlickerFrozen = !isFlickerFrozen;
+                setMode(mode);
+            }
+        } else if (action == MotionEvent.ACTION_MOVE && viewport.isZoomed()) {
+            updateFitScale();
+            viewport.panBy((event.getX() - lastTouchX) / (fitScale[0] * getWidth()), (event.getY() - lastTouchY) / (fitScale[1] * getHeight()));
+            requestRender();
+        }
+
+        lastTouchX = event.getX();
+        lastTouchY = event.getY();
+        //All events are needed for the zoom gesture.
+        return true;
+    }
+
+    /**
+     * Computes the part of the view the first video covers into fitScale. The whole view if the size of the video is not known.
+     */
+    private void updateFitScale() {
+        if (firstVideoWidth > 0 && firstVideoHeight > 0 && getWidth() > 0 && getHeight() > 0) {
+            computeFitScale(firstVideoWidth, firstVideoHeight, getWidth(), getHeight(), fitScale);
+        } else {
+            fitScale[0] = 1f;
+            fitScale[1] = 1f;
+        }
+    }
+
+    /**
+     * Computes the fraction of the view width and height a video covers if it fits into the view keeping its aspect ratio (like the ImageView's fitCenter).
+     *
+     * @param scale Receives the fraction of the width and of the height.
+     */
+    private static void computeFitScale(int videoWidth, int videoHeight, int viewWidth, int viewHeight, float[] scale) {
+        scale[0] = 1f;
+        scale[1] = 1f;
+        if ((long) videoWidth * viewHeight > (long) viewWidth * videoHeight) {
+            scale[1] = (float) videoHeight * viewWidth / ((float) videoWidth * viewHeight);
+        } else {
+            scale[0] = (float) videoWidth * viewHeight / ((float) videoHeight * viewWidth);
+        }
+    }
+
+    @Override
+    protected void onVisibilityChanged(View changedView, int visibility) {
+        super.onVisibilityChanged(changedView, visibility);
+
+        //The flicker runnable only runs while the view is shown.
+        removeCallbacks(flickerRunnable);
+        if (isShown() && mode == Mode.FLICKER && !isFlickerFrozen) {
+            postDelayed(flickerRunnable, FLICKER_INTERVAL_MS);
+        }
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        removeCallbacks(flickerRunnable);
+        super.onDetachedFromWindow();
+    }
+
+    @Override
+    public void surfaceDestroyed(SurfaceHolder holder) {
+        //Stop the players before the GL thread stops drawing, then release the textures they rendered into.
+        if (surfaces != null && listener != null) {
+            listener.onStreamSurfacesDestroyed(surfaces);
+        }
+        super.surfaceDestroyed(holder);
+        renderer.releaseStreamTextures();
+        releaseStreamSurfaces();
+    }
+
+    /**
+     * Called on the main thread when the renderer created new stream textures.
+     */
+    private void onStreamTexturesCreated(SurfaceTexture[] createdTextures) {
+        Surface[] createdSurfaces = new Surface[createdTextures.length];
+        for (int i = 0; i < createdTextures.length; i++) {
+            createdSurfaces[i] = new Surface(createdTextures[i]);
+        }
+        pacingStats.reset();
+
+        //The players switch to the new surfaces before the old ones (of a lost GL context) are released.
+        if (listener != null) {
+            listener.onStreamSurfacesCreated(createdSurfaces);
+        }
+        releaseStreamSurfaces();
+        surfaceTextures = createdTextures;
+        surfaces = createdSurfaces;
+    }
+
+    private void releaseStreamSurfaces() {
+        if (surfaces != null) {
+            for (Surface surface : surfaces) {
+                surface.release();
+            }
+            //The texture names are deleted with the GL context.
+            for (SurfaceTexture surfaceTexture : surfaceTextures) {
+                surfaceTexture.release();
+            }
+            surfaces = null;
+            surfaceTextures = null;
+        }
+    }
+
+    /**
+     * Renders the composition. Runs on the GL thread. The settings are set from the main thread and only read on the GL thread, so they are volatile.
+     */
+    private class CompositorRenderer implements GLSurfaceView.Renderer {
+
+        private static final String VERTEX_SHADER = ""
+                + "uniform mat4 uTexMatrix;\n"
+                + "attribute vec4 aPosition;\n"
+                + "attribute vec4 aTexCoord;\n"
+                + "varying vec2 vTexCoord;\n"
+                + "void main() {\n"
+                + "    gl_Position = aPosition;\n"
+                + "    vTexCoord = (uTexMatrix * aTexCoord).xy;\n"
+                + "}\n";
+
+        /**
+         * Draws a stream only where it is visible according to the mode (0: split, 1: checkerboard, 2: flicker).
+         */
+        private static final String FRAGMENT_SHADER = ""
+                + "#extension GL_OES_EGL_image_external : require\n"
+                + "precision mediump float;\n"
+                + "uniform samplerExternalOES uTexture;\n"
+                + "uniform float uMode;\n"
+                + "uniform float uStream;\n"
+                + "uniform float uSplitX;\n"
+                + "uniform float uCellSize;\n"
+                + "uniform float uFlickerStream;\n"
+                + "varying vec2 vTexCoord;\n"
+                + "void main() {\n"
+                + "    float visibleStream;\n"
+                + "    if (uMode < 0.5) {\n"
+                + "        visibleStream = step(uSplitX, gl_FragCoord.x);\n"
+                + "    } else if (uMode < 1.5) {\n"
+                + "        visibleStream = mod(floor(gl_FragCoord.x / uCellSize) + floor(gl_FragCoord.y / uCellSize), 2.0);\n"
+                + "    } else {\n"
+                + "        visibleStream = uFlickerStream;\n"
+                + "    }\n"
+                + "    if (abs(visibleStream - uStream) > 0.5) {\n"
+                + "        discard;\n"
+                + "    }\n"
+                + "    gl_FragColor = texture2D(uTexture, vTexCoord);\n"
+                + "}\n";
+
+        /**
+         * Texture coordinates of the quad (triangle strip). The transform matrix of the SurfaceTexture maps them.
+         */
+        private final FloatBuffer texCoords = createBuffer(new float[]{0f, 0f, 1f, 0f, 0f, 1f, 1f, 1f});
+        private final float[] texCoordValues = new float[8];
+
+        /**
+         * The visible region of the current frame and the one the texture coordinates are cropped to (left, top, right, bottom).
+         */
+        private final float[] visibleRegion = new float[4];
+        private final float[] appliedRegion = {0f, 0f, 1f, 1f};
+        private final float[] quadScale = new float[2];
+
+        private final FloatBuffer[] quads = new FloatBuffer[STREAM_COUNT];
+        private final float[] quadCoords = new float[8];
+        private final float[] texMatrix = new float[16];
+
+        private final int[] textures = new int[STREAM_COUNT];
+        /**
+         * The SurfaceTextures of the current surface. Created on the GL thread, set to null on the main thread while the GL thread does not draw.
+         */
+        private volatile SurfaceTexture[] streamTextures = null;
+
+        /**
+         * Set by onFrameAvailable (any thread), cleared on the GL thread when the frame is latched.
+         */
+        private final boolean[] frameAvailable = new boolean[STREAM_COUNT];
+
+        private final int[] videoWidths = new int[STREAM_COUNT];
+        private final int[] videoHeights = new int[STREAM_COUNT];
+        private volatile boolean isLayoutDirty = true;
+
+        private volatile Mode mode = Mode.SPLIT;
+        private volatile float splitFraction = 0.5f;
+        private volatile int flickerStream = 0;
+        private volatile float density = 1f;
+
+        private int viewWidth = 0;
+        private int viewHeight = 0;
+
+        private int program = 0;
+        private int positionLocation;
+        private int texCoordLocation;
+        private int texMatrixLocation;
+        private int textureLocation;
+        private int modeLocation;
+        private int streamLocation;
+        private int splitXLocation;
+        private int cellSizeLocation;
+        private int flickerStreamLocation;
+
+        void setMode(Mode mode) {
+            this.mode = mode;
+        }
+
+        void setSplitFraction(float splitFraction) {
+            this.splitFraction = splitFraction;
+        }
+
+        void setFlickerStream(int flickerStream) {
+            this.flickerStream = flickerStream;
+        }
+
+        void setDensity(float density) {
+            this.density = density;
+        }
+
+        void setVideoSize(int stream, int width, int height) {
+            synchronized (videoWidths) {
+                videoWidths[stream] = width;
+                videoHeights[stream] = height;
+            }
+            isLayoutDirty = true;
+        }
+
+        @Override
+        public void onSurfaceCreated(GL10 unused, EGLConfig config) {
+            program = createProgram(VERTEX_SHADER, FRAGMENT_SHADER);
+            positionLocation = GLES20.glGetAttribLocation(program, "aPosition");
+            texCoordLocation = GLES20.glGetAttribLocation(program, "aTexCoord");
+            texMatrixLocation = GLES20.glGetUniformLocation(program, "uTexMatrix");
+            textureLocation = GLES20.glGetUniformLocation(program, "uTexture");
+            modeLocation = GLES20.glGetUniformLocation(program, "uMode");
+            streamLocation = GLES20.glGetUniformLocation(program, "uStream");
+            splitXLocation = GLES20.glGetUniformLocation(program, "uSplitX");
+            cellSizeLocation = GLES20.glGetUniformLocation(program, "uCellSize");
+            flickerStreamLocation = GLES20.glGetUniformLocation(program, "uFlickerStream");
+
+            //A new context: The textures of a previous context are gone, so new SurfaceTextures are needed.
+            GLES20.glGenTextures(STREAM_COUNT, textures, 0);
+            for (int i = 0; i < STREAM_COUNT; i++) {
+                GLES20.glBindTexture(GLES11Ext.GL_TEXTURE_EXTERNAL_OES, textures[i]);
+                GLES20.glTexParameteri(GLES11Ext.GL_TEXTURE_EXTERNAL_OES, GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_LINEAR);
+                GLES20.glTexParameteri(GLES11Ext.GL_TEXTURE_EXTERNAL_OES, GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_LINEAR);
+                GLES20.glTexParameteri(GLES11Ext.GL_TEXTURE_EXTERNAL_OES, GLES20.GL_TEXTURE_WRAP_S, GLES20.GL_CLAMP_TO_EDGE);
+                GLES20.glTexParameteri(GLES11Ext.GL_TEXTURE_EXTERNAL_OES, GLES20.GL_TEXTURE_WRAP_T, GLES20.GL_CLAMP_TO_EDGE);
+            }
+            streamTextures = null;
+        }
+
+        @Override
+        public void onSurfaceChanged(GL10 unused, int width, int height) {
+            GLES20.glViewport(0, 0, width, height);
+            viewWidth = width;
+            viewHeight = height;
+            isLayoutDirty = true;
+
+            //Called for every new surface. The context (and the texture names) may have survived a destroyed surface, the SurfaceTextures not.
+            if (streamTextures == null) {
+                createStreamTextures();
+            }
+        }
+
+        private void createStreamTextures() {
+            final SurfaceTexture[] createdTextures = new SurfaceTexture[STREAM_COUNT];
+            for (int i = 0; i < STREAM_COUNT; i++) {
+                final int stream = i;
+                createdTextures[i] = new SurfaceTexture(textures[i]);
+                createdTextures[i].setOnFrameAvailableListener(new SurfaceTexture.OnFrameAvailableListener() {
+                    @Override
+                    public void onFrameAvailable(SurfaceTexture surfaceTexture) {
+                        synchronized (frameAvailable) {
+                            frameAvailable[stream] = true;
+                        }
+                        pacingStats.onSourceFrameAvailable(stream);
+                        requestRender();
+                    }
+                });
+            }
+            streamTextures = createdTextures;
+
+            post(new Runnable() {
+                @Override
+                public void run() {
+                    onStreamTexturesCreated(createdTextures);
+                }
+            });
+        }
+
+        /**
+         * Forgets the SurfaceTextures. Called on the main thread after the surface is destroyed, they are released by the view.
+         */
+        void releaseStreamTextures() {
+            streamTextures = null;
+        }
+
+        @Override
+        public void onDrawFrame(GL10 unused) {
+            SurfaceTexture[] currentTextures = streamTextures;
+            if (currentTextures == null) {
+                return;
+            }
+            long startNs = System.nanoTime();
+
+            for (int i = 0; i < STREAM_COUNT; i++) {
+                boolean isNewFrame;
+                synchronized (frameAvailable) {
+                    isNewFrame = frameAvailable[i];
+                    frameAvailable[i] = false;
+                }
+                if (isNewFrame) {
+                    currentTextures[i].updateTexImage();
+                }
+            }
+
+            if (isLayoutDirty) {
+                isLayoutDirty = false;
+                updateQuads();
+            }
+
+            //One copy of the region for both streams: They are always drawn with the same transform.
+            viewport.getVisibleRegion(visibleRegion);
+            if (!Arrays.equals(visibleRegion, appliedRegion)) {
+                System.arraycopy(visibleRegion, 0, appliedRegion, 0, visibleRegion.length);
+                updateTexCoords();
+            }
+
+            GLES20.glClearColor(0f, 0f, 0f, 1f);
+            GLES20.glClear(GLES20.GL_COLOR_BUFFER_BIT);
+
+            Mode currentMode = mode;
+            float splitX = splitFraction * viewWidth;
+
+            GLES20.glUseProgram(program);
+            GLES20.glUniform1f(modeLocation, currentMode.ordinal());
+            GLES20.glUniform1f(splitXLocation, splitX);
+            GLES20.glUniform1f(cellSizeLocation, CHECKER_CELL_DP * density);
+            GLES20.glUniform1f(flickerStreamLocation, flickerStream);
+            GLES20.glUniform1i(textureLocation, 0);
+            GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
+            GLES20.glEnableVertexAttribArray(positionLocation);
+            GLES20.glEnableVertexAttribArray(texCoordLocation);
+            GLES20.glVertexAttribPointer(texCoordLocation, 2, GLES20.GL_FLOAT, false, 0, texCoords);
+
+            for (int i = 0; i < STREAM_COUNT; i++) {
+                if (quads[i] == null) {
+                    continue;
+                }
+                currentTextures[i].getTransformMatrix(texMatrix);
+                GLES20.glBindTexture(GLES11Ext.GL_TEXTURE_EXTERNAL_OES, textures[i]);
+                GLES20.glUniformMatrix4fv(texMatrixLocation, 1, false, texMatrix, 0);
+                GLES20.glUniform1f(streamLocation, i);
+                GLES20.glVertexAttribPointer(positionLocation, 2, GLES20.GL_FLOAT, false, 0, quads[i]);
+                GLES20.glDrawArrays(GLES20.GL_TRIANGLE_STRIP, 0, 4);
+            }
+
+            GLES20.glDisableVertexAttribArray(positionLocation);
+            GLES20.glDisableVertexAttribArray(texCoordLocation);
+
+            if (currentMode == Mode.SPLIT) {
+                //The split line: Clearing a scissored rectangle is cheaper than another draw call.
+                int lineWidth = Math.max(1, Math.round(SPLIT_LINE_DP * density));
+                GLES20.glEnable(GLES20.GL_SCISSOR_TEST);
+                GLES20.glScissor(Math.round(splitX) - lineWidth, 0, 2 * lineWidth, viewHeight);
+                GLES20.glClearColor(1f, 1f, 1f, 1f);
+                GLES20.glClear(GLES20.GL_COLOR_BUFFER_BIT);
+                GLES20.glDisable(GLES20.GL_SCISSOR_TEST);
+            }
+
+            long endNs = System.nanoTime();
+            pacingStats.onFrameDrawn(endNs);
+            //The time until the commands are issued, the GPU works asynchronously. Only measured while zoomed, the normal rendering is covered by the pacing.
+            if (appliedRegion[2] - appliedRegion[0] < 1f) {
+                zoomedRenderTime.onFrameRendered(endNs - startNs);
+            }
+        }
+
+        /**
+         * Crops the texture coordinates to the visible region, so only the texels of the region are sampled for the pixels of the view.
+         * Texture coordinates start at the bottom left, the region at the top left.
+         */
+        private void updateTexCoords() {
+            float left = appliedRegion[0];
+            float right = appliedRegion[2];
+            float bottom = 1f - appliedRegion[3];
+            float top = 1f - appliedRegion[1];
+            texCoordValues[0] = left;
+            texCoordValues[1] = bottom;
+            texCoordValues[2] = right;
+            texCoordValues[3] = bottom;
+            texCoordValues[4] = left;
+            texCoordValues[5] = top;
+            texCoordValues[6] = right;
+            texCoordValues[7] = top;
+            texCoords.put(texCoordValues).position(0);
+        }
+
+        /**
+         * Computes the quad of every stream so the video fits into the view keeping its aspect ratio (like the ImageView's fitCenter).
+         * A stream without known video size is not drawn.
+         */
+        private void updateQuads() {
+            for (int i = 0; i < STREAM_COUNT; i++) {
+                int videoWidth;
+                int videoHeight;
+                synchronized (videoWidths) {
+                    videoWidth = videoWidths[i];
+                    videoHeight = videoHeights[i];
+                }
+
+                if (videoWidth <= 0 || videoHeight <= 0 || viewWidth <= 0 || viewHeight <= 0) {
+                    quads[i] = null;
+                    continue;
+                }
+
+                //Normalized device coordinates: The full view is -1..1 in both directions.
+                computeFitScale(videoWidth, videoHeight, viewWidth, viewHeight, quadScale);
+                float scaleX = quadScale[0];
+                float scaleY = quadScale[1];
+
+                quadCoords[0] = -scaleX;
+                quadCoords[1] = -scaleY;
+                quadCoords[2] = scaleX;
+                quadCoords[3] = -scaleY;
+                quadCoords[4] = -scaleX;
+                quadCoords[5] = scaleY;
+                quadCoords[6] = scaleX;
+                quadCoords[7] = scaleY;
+
+                if (quads[i] == null) {
+                    quads[i] = createBuffer(quadCoords);
+                } else {
+                    quads[i].put(quadCoords).position(0);
+                }
+            }
+        }
+
+        private FloatBuffer createBuffer(float[] values) {
+            FloatBuffer buffer = ByteBuffer.allocateDirect(values.length * 4).order(ByteOrder.nativeOrder()).asFloatBuffer();
+            buffer.put(values).position(0);
+            return buffer;
+        }
+
+        private int createProgram(String vertexSource, String fragmentSource) {
+            int createdProgram = GLES20.glCreateProgram();
+            GLES20.glAttachShader(createdProgram, loadShader(GLES20.GL_VERTEX_SHADER, vertexSource));
+            GLES20.glAttachShader(createdProgram, loadShader(GLES20.GL_FRAGMENT_SHADER, fragmentSource));
+            GLES20.glLinkProgram(createdProgram);
+
+            int[] status = new int[1];
+            GLES20.glGetProgramiv(createdProgram, GLES20.GL_LINK_STATUS, status, 0);
+            if (status[0] != GLES20.GL_TRUE) {
+                Log.e(TAG, "Could not link program: " + GLES20.glGetProgramInfoLog(createdProgram));
+            }
+            return createdProgram;
+        }
+
+        private int loadShader(int type, String source) {
+            int shader = GLES20.glCreateShader(type);
+            GLES20.glShaderSource(shader, source);
+            GLES20.glCompileShader(shader);
+
+            int[] status = new int[1];
+            GLES20.glGetShaderiv(shader, GLES20.GL_COMPILE_STATUS, status, 0);
+            if (status[0] == 0) {
+                Log.e(TAG, "Could not compile shader: " + GLES20.glGetShaderInfoLog(shader));
+            }
+            return shader;
+        }
+    }
+}
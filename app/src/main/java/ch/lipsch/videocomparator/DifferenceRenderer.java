@@ -0,0 +1,98 @@
+/*
+ * Copyright (C) 2015 Erwin Betschart
+ *
+ * This file is part of Video Comparator.
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.lipsch.videocomparator;
+
+import android.graphics.Bitmap;
+
+/**
+ * Renders the difference of two frames into a bitmap with FrameDifference.
+ * The pixel planes and the output bitmaps are reused as long as the frame size does not change. Two output bitmaps are used alternately,
+ * so a rendered difference can be shown while the next one is computed.
+ * <p/>
+ * This class is not thread-safe: All calls must be done in the same (background) thread.
+ */
+class DifferenceRenderer {
+
+    private final BandExecutor executor = new BandExecutor(BandExecutor.getDefaultBandCount());
+    private final FrameDifference frameDifference = new FrameDifference(executor);
+
+    private int[] pixels1 = null;
+    private int[] pixels2 = null;
+    private final Bitmap[] outputs = new Bitmap[2];
+    private int nextOutput = 0;
+
+    private double lastScore = 0.0;
+
+    /**
+     * Renders the difference of the frames. The second frame is scaled to the size of the first one if the sizes differ.
+     *
+     * @param frame1 The first frame.
+     * @param frame2 The second frame.
+     * @param mode   The way the difference is rendered.
+     * @return The rendered difference. Valid until render is called twice more.
+     */
+    public Bitmap render(Bitmap frame1, Bitmap frame2, FrameDifference.Mode mode) {
+        int width = frame1.getWidth();
+        int height = frame1.getHeight();
+        int pixelCount = width * height;
+
+        if (frame2.getWidth() != width || frame2.getHeight() != height) {
+            frame2 = Bitmap.createScaledBitmap(frame2, width, height, true);
+        }
+
+        if (pixels1 == null || pixels1.length != pixelCount) {
+            pixels1 = new int[pixelCount];
+            pixels2 = new int[pixelCount];
+        }
+
+        Bitmap output = outputs[nextOutput];
+        if (output == null || output.getWidth() != width || output.getHeight() != height) {
+            output = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+            outputs[nextOutput] = output;
+        }
+        nextOutput = (nextOutput + 1) % outputs.length;
+
+        frame1.getPixels(pixels1, 0, width, 0, 0, width, height);
+        frame2.getPixels(pixels2, 0, width, 0, 0, width, height);
+
+        //The difference is written to the first plane, it is not needed anymore.
+        lastScore = frameDifference.compute(pixels1, pixels2, pixels1, pixelCount, mode);
+        output.setPixels(pixels1, 0, width, 0, 0, width, height);
+
+        return output;
+    }
+
+    /**
+     * @return The difference score of the last rendered frames (0.0 equal .. 1.0 black vs. white).
+     */
+    public double getLastScore() {
+        return lastScore;
+    }
+
+    /**
+     * Stops the worker threads. The renderer can not be used anymore.
+     */
+    public void release() {
+        executor.shutdown();
+        pixels1 = null;
+        pixels2 = null;
+        outputs[0] = null;
+        outputs[1] = null;
+    }
+}
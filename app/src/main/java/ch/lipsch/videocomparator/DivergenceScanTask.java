@@ -0,0 +1,137 @@
+/*
+ * Copyright (C) 2015 Erwin Betschart
+ *
+ * This file is part of Video Comparator.
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.lipsch.videocomparator;
+
+import android.content.Context;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Scans two videos for divergence hotspots in the background with a DivergenceScanner. The videos are sampled at SCAN_FRAME_RATE and
+ * scaled down to SCAN_WIDTH x SCAN_HEIGHT, which is enough for the signatures. The hotspots are reported while scanning.
+ * The task is cancelled by interrupting its thread.
+ */
+class DivergenceScanTask implements Runnable {
+
+    private static final String TAG = DivergenceScanTask.class.getName();
+
+    /**
+     * The number of frames per second which are compared.
+     */
+    public static final double SCAN_FRAME_RATE = 4.0;
+
+    public static final int SCAN_WIDTH = 64;
+    public static final int SCAN_HEIGHT = 36;
+
+    /**
+     * The maximum offset between the videos which is searched when aligning.
+     */
+    private static final int MAX_OFFSET_FRAMES = (int) (2 * SCAN_FRAME_RATE);
+
+    /**
+     * Hotspots are at least five seconds apart.
+     */
+    private static final int MIN_GAP_FRAMES = (int) (5 * SCAN_FRAME_RATE);
+
+    public static final int MAX_HOTSPOTS = 10;
+
+    /**
+     * Gets informed about the scan. Called in the main thread.
+     */
+    interface Listener {
+        void onHotspotsChanged(List<DivergenceHotspot> hotspots, boolean isDone);
+
+        void onScanFailed(Exception e);
+    }
+
+    private final Context context;
+    private final Uri video1;
+    private final Uri video2;
+    private final Listener listener;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    /**
+     * @param context  The context to resolve the uris. Only the application context is kept.
+     * @param video1   The first video.
+     * @param video2   The second video.
+     * @param listener Gets informed about the hotspots.
+     */
+    public DivergenceScanTask(Context context, Uri video1, Uri video2, Listener listener) {
+        this.context = context.getApplicationContext();
+        this.video1 = video1;
+        this.video2 = video2;
+        this.listener = listener;
+    }
+
+    @Override
+    public void run() {
+        RetrieverFrameSource source1 = null;
+        RetrieverFrameSource source2 = null;
+        try {
+            source1 = new RetrieverFrameSource(context, video1, null);
+            source2 = new RetrieverFrameSource(context, video2, null);
+
+            DivergenceScanner scanner = new DivergenceScanner(MAX_OFFSET_FRAMES, MIN_GAP_FRAMES, MAX_HOTSPOTS);
+            DivergenceDetector detector = scanner.scan(new RetrieverLumaSource(source1, SCAN_WIDTH, SCAN_HEIGHT, SCAN_FRAME_RATE),
+                    new RetrieverLumaSource(source2, SCAN_WIDTH, SCAN_HEIGHT, SCAN_FRAME_RATE), new DivergenceScanner.Listener() {
+                        @Override
+                        public void onHotspotsChanged(final List<DivergenceHotspot> hotspots, int scannedFrames, final boolean isDone) {
+                            mainHandler.post(new Runnable() {
+                                @Override
+                                public void run() {
+                                    listener.onHotspotsChanged(hotspots, isDone);
+                                }
+                            });
+                        }
+                    });
+
+            Log.i(TAG, "Divergence scan done: " + detector.getScoredFrames() + " frames, offset " + detector.getOffsetFrames()
+                    + " frames, " + detector.getHotspots().size() + " hotspots");
+        } catch (InterruptedException e) {
+            Log.i(TAG, "Divergence scan cancelled");
+        } catch (IOException e) {
+            notifyFailure(e);
+        } catch (RuntimeException e) {
+            //The retriever throws if the video can not be opened.
+            notifyFailure(e);
+        } finally {
+            if (source1 != null) {
+                source1.release();
+            }
+            if (source2 != null) {
+                source2.release();
+            }
+        }
+    }
+
+    private void notifyFailure(final Exception e) {
+        Log.w(TAG, "Divergence scan failed", e);
+        mainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                listener.onScanFailed(e);
+            }
+        });
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright (C) 2015 Erwin Betschart
+ *
+ * This file is part of Video Comparator.
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.lipsch.videocomparator;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.util.AttributeSet;
+import android.view.View;
+
+/**
+ * Shows the thumbnails of a video side by side over the whole duration (above the seek bar).
+ * The view is filled with as many thumbnails as fit at its height. Every cell shows the loaded thumbnail nearest to its position,
+ * so the filmstrip is complete (but coarse) early while the thumbnails are still loading.
+ */
+public class FilmstripView extends View {
+
+    private final Paint paint = new Paint(Paint.FILTER_BITMAP_FLAG);
+    private final Rect destination = new Rect();
+
+    private ThumbnailStore store = null;
+    private long contentHash = 0;
+    private FilmstripPlan plan = null;
+
+    public FilmstripView(Context context) {
+        super(context);
+    }
+
+    public FilmstripView(Context context, AttributeSet attrs) {
+        super(context, attrs);
+    }
+
+    public FilmstripView(Context context, AttributeSet attrs, int defStyleAttr) {
+        super(context, attrs, defStyleAttr);
+    }
+
+    /**
+     * Shows the filmstrip of a video.
+     *
+     * @param store       The store which holds the thumbnails.
+     * @param contentHash The content hash of the video.
+     * @param plan        The positions of the thumbnails.
+     */
+    public void setFilmstrip(ThumbnailStore store, long contentHash, FilmstripPlan plan) {
+        this.store = store;
+        this.contentHash = contentHash;
+        this.plan = plan;
+        invalidate();
+    }
+
+    /**
+     * Shows nothing (e.g. the video was unloaded).
+     */
+    public void clearFilmstrip() {
+        setFilmstrip(null, 0, null);
+    }
+
+    /**
+     * @return The plan of the shown filmstrip or null if none is shown.
+     */
+    public FilmstripPlan getPlan() {
+        return plan;
+    }
+
+    public long getContentHash() {
+        return contentHash;
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        super.onDraw(canvas);
+
+        int width = getWidth();
+        int height = getHeight();
+        if (store == null || plan == null || width == 0 || height == 0) {
+            return;
+        }
+
+        //All thumbnails of a video have the same size.
+        Bitmap first = store.getNearestThumbnail(contentHash, plan, 0);
+        if (first == null) {
+            return;
+        }
+        float aspectRatio = (float) first.getWidth() / first.getHeight();
+
+        int cellCount = Math.max(1, (int) Math.ceil(width / (height * aspectRatio)));
+        long durationMs = plan.getDurationMs();
+        for (int cell = 0; cell < cellCount; cell++) {
+            long positionMs = (long) ((cell + 0.5) * durationMs / cellCount);
+            Bitmap thumbnail = store.getNearestThumbnail(contentHash, plan, positionMs);
+            if (thumbnail != null) {
+                destination.set(cell * width / cellCount, 0, (cell + 1) * width / cellCount, height);
+                canvas.drawBitmap(thumbnail, null, destination, paint);
+            }
+        }
+    }
+}
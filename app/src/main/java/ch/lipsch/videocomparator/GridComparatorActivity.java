@@ -0,0 +1,400 @@
+/*
+ * Copyright (C) 2015 Erwin Betschart
+ *
+ * This file is part of Video Comparator.
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.lipsch.videocomparator;
+
+import android.content.Context;
+import android.content.Intent;
+import android.graphics.Bitmap;
+import android.net.Uri;
+import android.os.Bundle;
+import android.support.v7.app.AppCompatActivity;
+import android.util.Log;
+import android.view.Menu;
+import android.view.MenuItem;
+import android.view.View;
+import android.widget.ImageView;
+import android.widget.TextView;
+import android.widget.Toast;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares up to DecodeScheduler.MAX_TILES videos (e.g. the renditions of an encoding ladder) in a grid.
+ * <p/>
+ * A device has only a few decoders, so the tiles are not played by media players. The frames are decoded by GridDecodeTasks, one per decoder,
+ * at the position of the shared clock of a DecodeScheduler. The focused tile (tap a tile to focus it) is decoded at full resolution and rate,
+ * the other tiles at a lower resolution and, if the decoders are too slow, at a lower rate.
+ */
+public class GridComparatorActivity extends AppCompatActivity {
+
+    private static final String TAG = GridComparatorActivity.class.getName();
+
+    /**
+     * The uris (as strings) of the videos to compare.
+     */
+    static final String EXTRA_VIDEOS = GridComparatorActivity.class.getName() + ".videos";
+
+    /**
+     * Request identifier when adding a video.
+     */
+    static final int PICK_VIDEO_REQUEST = 1;
+
+    private static final String POSITION_KEY = "GridComparatorActivity.position";
+    private static final String FOCUS_KEY = "GridComparatorActivity.focus";
+
+    /**
+     * The decode speed assumed until the first frames are measured: A 1080p frame in 50ms.
+     */
+    private static final double ASSUMED_PIXELS_PER_MS = 1920 * 1080 / 50.0;
+
+    private static final int[] TILE_IDS = {R.id.tile1, R.id.tile2, R.id.tile3, R.id.tile4};
+    private static final int[] TILE_IMAGE_IDS = {R.id.tileImage1, R.id.tileImage2, R.id.tileImage3, R.id.tileImage4};
+    private static final int[] TILE_LABEL_IDS = {R.id.tileLabel1, R.id.tileLabel2, R.id.tileLabel3, R.id.tileLabel4};
+
+    /**
+     * The loaded videos, one per tile. The tiles are filled from the first one on.
+     */
+    private final VideoPlayState playState = new VideoPlayState(DecodeScheduler.MAX_TILES);
+
+    private final DecodeScheduler scheduler = new DecodeScheduler(PlaybackClock.SYSTEM, getDecoderLimit(), ASSUMED_PIXELS_PER_MS);
+
+    private final View[] tiles = new View[DecodeScheduler.MAX_TILES];
+    private final ImageView[] tileImages = new ImageView[DecodeScheduler.MAX_TILES];
+    private final TextView[] tileLabels = new TextView[DecodeScheduler.MAX_TILES];
+
+    private MenuItem actionPlay = null;
+    private MenuItem actionPause = null;
+    private MenuItem actionAddVideo = null;
+
+    /**
+     * Opens and releases the sources off the main thread.
+     */
+    private final ExecutorService openExecutor = Executors.newSingleThreadExecutor();
+
+    /**
+     * Runs the GridDecodeTasks of the opened sources. Replaced whenever the videos change.
+     */
+    private ExecutorService decodeExecutor = null;
+
+    private RetrieverFrameSource[] sources = null;
+
+    /**
+     * Incremented whenever the videos change. Sources opened for older videos are released right away.
+     */
+    private int openGeneration = 0;
+
+    private int focus = 0;
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_grid_comparator);
+
+        for (int i = 0; i < DecodeScheduler.MAX_TILES; i++) {
+            tiles[i] = findViewById(TILE_IDS[i]);
+            tileImages[i] = (ImageView) findViewById(TILE_IMAGE_IDS[i]);
+            tileLabels[i] = (TextView) findViewById(TILE_LABEL_IDS[i]);
+
+            final int tile = i;
+            tiles[i].setOnClickListener(new View.OnClickListener() {
+                @Override
+                public void onClick(View view) {
+                    setFocus(tile);
+                }
+            });
+        }
+
+        if (savedInstanceState == null) {
+            String[] videos = getIntent().getStringArrayExtra(EXTRA_VIDEOS);
+            if (videos != null) {
+                for (int i = 0; i < videos.length && i < DecodeScheduler.MAX_TILES; i++) {
+                    playState.setVideo(i, videos[i]);
+                }
+            }
+        } else {
+            playState.loadState(savedInstanceState.getByteArray(VideoPlayState.STATE_KEY));
+            focus = savedInstanceState.getInt(FOCUS_KEY);
+            scheduler.seekTo(savedInstanceState.getLong(POSITION_KEY));
+        }
+
+        openVideos();
+    }
+
+    @Override
+    protected void onPause() {
+        super.onPause();
+        pauseVideos();
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        closeVideos();
+        openExecutor.shutdown();
+    }
+
+    @Override
+    protected void onSaveInstanceState(Bundle outState) {
+        super.onSaveInstanceState(outState);
+        outState.putByteArray(VideoPlayState.STATE_KEY, playState.saveState());
+        outState.putInt(FOCUS_KEY, focus);
+        outState.putLong(POSITION_KEY, scheduler.getPositionMs());
+    }
+
+    /**
+     * The number of decoders used at once. The number of codec instances can only be queried from API 23 on
+     * (CodecCapabilities.getMaxSupportedInstances), so it is derived from the number of cores, which limits the decode threads anyway.
+     */
+    private static int getDecoderLimit() {
+        return Math.max(1, Math.min(DecodeScheduler.MAX_TILES, Runtime.getRuntime().availableProcessors() / 2));
+    }
+
+    private int getTileCount() {
+        int count = 0;
+        while (count < playState.getVideoCount() && playState.getSnapshot().getVideo(count) != null) {
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Opens the sources of all loaded videos in the background and starts decoding as soon as they are open.
+     */
+    private void openVideos() {
+        closeVideos();
+
+        final int tileCount = getTileCount();
+        final Uri[] videos = new Uri[tileCount];
+        for (int i = 0; i < DecodeScheduler.MAX_TILES; i++) {
+            tiles[i].setVisibility(i < tileCount ? View.VISIBLE : View.GONE);
+            tileImages[i].setImageDrawable(null);
+            if (i < tileCount) {
+                videos[i] = Uri.parse(playState.getSnapshot().getVideo(i));
+                tileLabels[i].setText(videos[i].getLastPathSegment());
+            }
+        }
+        updateGuiState();
+
+        final int generation = openGeneration;
+        final Context context = getApplicationContext();
+        openExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final RetrieverFrameSource[] opened = new RetrieverFrameSource[tileCount];
+                try {
+                    for (int i = 0; i < tileCount; i++) {
+                        opened[i] = new RetrieverFrameSource(context, videos[i], null);
+                    }
+                } catch (RuntimeException e) {
+                    //The retriever throws if the video can not be opened.
+                    Log.w(TAG, "Could not open the videos", e);
+                    release(opened);
+                    runOnUiThread(new Runnable() {
+                        @Override
+                        public void run() {
+                            if (generation == openGeneration) {
+                                Toast.makeText(GridComparatorActivity.this, R.string.grid_open_failed, Toast.LENGTH_LONG).show();
+                            }
+                        }
+                    });
+                    return;
+                }
+
+                runOnUiThread(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (generation == openGeneration) {
+                            startDecoding(opened);
+                        } else {
+                            //The videos changed in the meantime.
+                            releaseInBackground(opened, null);
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    private void startDecoding(RetrieverFrameSource[] opened) {
+        sources = opened;
+
+        int[] widths = new int[opened.length];
+        int[] heights = new int[opened.length];
+        double[] frameRates = new double[opened.length];
+        for (int i = 0; i < opened.length; i++) {
+            widths[i] = opened[i].getWidth();
+            heights[i] = opened[i].getHeight();
+            frameRates[i] = opened[i].getFrameRate();
+        }
+        scheduler.setTiles(widths, heights, frameRates);
+        if (opened.length == 0) {
+            return;
+        }
+        setFocus(Math.min(focus, opened.length - 1));
+
+        decodeExecutor = Executors.newFixedThreadPool(scheduler.getSlotCount());
+        for (int slot = 0; slot < scheduler.getSlotCount(); slot++) {
+            decodeExecutor.execute(new GridDecodeTask(scheduler, slot, opened, new GridDecodeTask.Listener() {
+                @Override
+                public void onFrameDecoded(int tile, Bitmap frame) {
+                    if (tile < getTileCount()) {
+                        tileImages[tile].setImageBitmap(frame);
+                    }
+                }
+            }));
+        }
+    }
+
+    /**
+     * Stops decoding. The sources are released in the background as soon as the decoders stopped.
+     */
+    private void closeVideos() {
+        openGeneration++;
+        if (decodeExecutor != null) {
+            decodeExecutor.shutdownNow();
+            releaseInBackground(sources, decodeExecutor);
+            decodeExecutor = null;
+            sources = null;
+        }
+    }
+
+    private void releaseInBackground(final RetrieverFrameSource[] toRelease, final ExecutorService stoppingExecutor) {
+        if (openExecutor.isShutdown()) {
+            //Destroyed: A new thread as the open executor does not take tasks anymore.
+            new Thread(createReleaseTask(toRelease, stoppingExecutor)).start();
+        } else {
+            openExecutor.execute(createReleaseTask(toRelease, stoppingExecutor));
+        }
+    }
+
+    private static Runnable createReleaseTask(final RetrieverFrameSource[] toRelease, final ExecutorService stoppingExecutor) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                if (stoppingExecutor != null) {
+                    try {
+                        stoppingExecutor.awaitTermination(1, TimeUnit.MINUTES);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                release(toRelease);
+            }
+        };
+    }
+
+    private static void release(RetrieverFrameSource[] toRelease) {
+        if (toRelease != null) {
+            for (RetrieverFrameSource source : toRelease) {
+                if (source != null) {
+                    source.release();
+                }
+            }
+        }
+    }
+
+    private void setFocus(int tile) {
+        if (tile >= scheduler.getTileCount()) {
+            return;
+        }
+        focus = tile;
+        scheduler.setFocus(tile);
+        for (int i = 0; i < DecodeScheduler.MAX_TILES; i++) {
+            tiles[i].setSelected(i == tile);
+        }
+    }
+
+    @Override
+    public boolean onCreateOptionsMenu(Menu menu) {
+        getMenuInflater().inflate(R.menu.menu_grid_comparator, menu);
+
+        actionPlay = menu.findItem(R.id.action_play);
+        actionPause = menu.findItem(R.id.action_pause);
+        actionAddVideo = menu.findItem(R.id.action_add_video);
+
+        updateGuiState();
+
+        return true;
+    }
+
+    @Override
+    public boolean onOptionsItemSelected(MenuItem item) {
+        int id = item.getItemId();
+
+        if (id == R.id.action_play) {
+            playVideos();
+            return true;
+        } else if (id == R.id.action_pause) {
+            pauseVideos();
+            return true;
+        } else if (id == R.id.action_add_video) {
+            Intent intent = new Intent();
+            intent.setType("video/*");
+            intent.setAction(Intent.ACTION_GET_CONTENT);
+            startActivityForResult(Intent.createChooser(intent, getString(R.string.select_video)), PICK_VIDEO_REQUEST);
+            return true;
+        }
+
+        return super.onOptionsItemSelected(item);
+    }
+
+    @Override
+    protected void onActivityResult(int requestCode, int resultCode, Intent data) {
+        int tileCount = getTileCount();
+        if (requestCode == PICK_VIDEO_REQUEST && resultCode == RESULT_OK && tileCount < DecodeScheduler.MAX_TILES) {
+            pauseVideos();
+            playState.setVideo(tileCount, data.getData().toString());
+            openVideos();
+        }
+    }
+
+    private void playVideos() {
+        scheduler.start();
+        for (int i = 0; i < getTileCount(); i++) {
+            playState.setState(i, VideoPlayState.State.PLAYING);
+        }
+        updateGuiState();
+    }
+
+    private void pauseVideos() {
+        scheduler.pause();
+        double positionSec = scheduler.getPositionMs() / 1000.0;
+        for (int i = 0; i < getTileCount(); i++) {
+            playState.pause(i, positionSec);
+        }
+        updateGuiState();
+    }
+
+    private void updateGuiState() {
+        boolean isLoaded = getTileCount() > 0;
+        boolean isPlaying = playState.getSnapshot().isAnyPlaying();
+
+        if (actionPlay != null) {
+            actionPlay.setVisible(isLoaded && !isPlaying);
+        }
+        if (actionPause != null) {
+            actionPause.setVisible(isPlaying);
+        }
+        if (actionAddVideo != null) {
+            actionAddVideo.setVisible(getTileCount() < DecodeScheduler.MAX_TILES);
+        }
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright (C) 2015 Erwin Betschart
+ *
+ * This file is part of Video Comparator.
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.lipsch.videocomparator;
+
+import android.graphics.Bitmap;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+/**
+ * One decoder of the grid mode: Decodes the frames of the tiles the DecodeScheduler assigns to its slot, one after the other, at the position
+ * of the shared clock and at the resolution of the plan. The frames are handed to the listener in the main thread.
+ * The task runs until its thread is interrupted.
+ */
+class GridDecodeTask implements Runnable {
+
+    private static final String TAG = GridDecodeTask.class.getName();
+
+    /**
+     * The time to wait for work while no tile is pending (e.g. while paused).
+     */
+    private static final long IDLE_WAIT_MS = 50;
+
+    /**
+     * Gets the decoded frames. Called in the main thread.
+     */
+    interface Listener {
+        void onFrameDecoded(int tile, Bitmap frame);
+    }
+
+    private final DecodeScheduler scheduler;
+    private final int slot;
+    private final RetrieverFrameSource[] sources;
+    private final Listener listener;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    /**
+     * @param scheduler The scheduler which assigns the work.
+     * @param slot      The decoder slot of this task.
+     * @param sources   The source of every tile. Shared by all tasks, a source is used by one task at a time.
+     * @param listener  Gets the decoded frames.
+     */
+    public GridDecodeTask(DecodeScheduler scheduler, int slot, RetrieverFrameSource[] sources, Listener listener) {
+        this.scheduler = scheduler;
+        this.slot = slot;
+        this.sources = sources;
+        this.listener = listener;
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                int tile = scheduler.nextTile(slot);
+                if (tile < 0) {
+                    long waitMs = scheduler.getWaitMs(slot);
+                    Thread.sleep(waitMs < 0 ? IDLE_WAIT_MS : Math.max(1, waitMs));
+                } else {
+                    decode(tile);
+                }
+            }
+        } catch (InterruptedException e) {
+            //Grid mode left
+        }
+    }
+
+    private void decode(final int tile) {
+        RetrieverFrameSource source = sources[tile];
+        int divisor = scheduler.getDivisor(tile);
+        long positionUs = Math.min(scheduler.getRequestedPositionMs(tile) * 1000, source.getDurationUs());
+
+        long startMs = SystemClock.elapsedRealtime();
+        Bitmap frame;
+        try {
+            //After a focus change the tile may move to another slot while the old one still decodes it.
+            synchronized (source) {
+                frame = source.decodeFrame(positionUs);
+            }
+        } catch (RuntimeException e) {
+            Log.w(TAG, "Could not decode tile " + tile, e);
+            frame = null;
+        }
+
+        if (Thread.currentThread().isInterrupted()) {
+            //The videos changed while decoding: The scheduler already plans the new tiles.
+            if (frame != null) {
+                frame.recycle();
+            }
+            return;
+        }
+
+        if (frame == null) {
+            scheduler.onFrameFailed(tile);
+            return;
+        }
+
+        if (divisor > 1) {
+            Bitmap scaled = Bitmap.createScaledBitmap(frame, Math.max(1, frame.getWidth() / divisor), Math.max(1, frame.getHeight() / divisor), true);
+            if (scaled != frame) {
+                frame.recycle();
+            }
+            frame = scaled;
+        }
+        scheduler.onFrameDecoded(tile, SystemClock.elapsedRealtime() - startMs);
+
+        final Bitmap decoded = frame;
+        mainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                listener.onFrameDecoded(tile, decoded);
+            }
+        });
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2015 Erwin Betschart
+ *
+ * This file is part of Video Comparator.
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.lipsch.videocomparator;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Writes the PlaybackMetrics in the background to &lt;name&gt;.json and &lt;name&gt;.csv in the output directory.
+ */
+class MetricsExportTask implements Runnable {
+
+    private static final String TAG = MetricsExportTask.class.getName();
+
+    /**
+     * Gets informed about the result of the export. Called in the main thread.
+     */
+    interface Listener {
+        void onExportDone(File json, File csv);
+
+        void onExportFailed(Exception e);
+    }
+
+    private final PlaybackMetrics metrics;
+    private final File outputDirectory;
+    private final String name;
+    private final Listener listener;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    /**
+     * @param metrics         The metrics to write. They may be recorded while they are written.
+     * @param outputDirectory The directory to write the files to.
+     * @param name            The name of the files without extension.
+     * @param listener        Gets informed about the result.
+     */
+    public MetricsExportTask(PlaybackMetrics metrics, File outputDirectory, String name, Listener listener) {
+        this.metrics = metrics;
+        this.outputDirectory = outputDirectory;
+        this.name = name;
+        this.listener = listener;
+    }
+
+    @Override
+    public void run() {
+        try {
+            if (!outputDirectory.isDirectory() && !outputDirectory.mkdirs()) {
+                throw new IOException("Could not create " + outputDirectory);
+            }
+            final File jsonFile = new File(outputDirectory, name + ".json");
+            final File csvFile = new File(outputDirectory, name + ".csv");
+
+            Writer jsonWriter = new FileWriter(jsonFile);
+            try {
+                metrics.writeJson(jsonWriter);
+            } finally {
+                jsonWriter.close();
+            }
+
+            Writer csvWriter = new FileWriter(csvFile);
+            try {
+                metrics.writeCsv(csvWriter);
+            } finally {
+                csvWriter.close();
+            }
+
+            Log.i(TAG, "Metrics written to " + jsonFile + " and " + csvFile);
+            mainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    listener.onExportDone(jsonFile, csvFile);
+                }
+            });
+        } catch (final IOException e) {
+            Log.w(TAG, "Metrics export failed", e);
+            mainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    listener.onExportFailed(e);
+                }
+            });
+        }
+    }
+}
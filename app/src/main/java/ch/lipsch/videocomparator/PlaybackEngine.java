@@ -0,0 +1,264 @@
+/*
+ * Copyright (C) 2015 Erwin Betschart
+ *
+ * This file is part of Video Comparator.
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.lipsch.videocomparator;
+
+import android.content.Context;
+import android.media.MediaPlayer;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+/**
+ * Owns the players of the compared videos. The engine is retained across configuration changes (e.g. rotation) so the decoders survive;
+ * a new activity only re-attaches its surfaces. Must be released when the activity finishes.
+ * <p/>
+ * The videos are opened and prepared in parallel in a LoaderPipeline, off the main thread. Picking another video cancels the preparation in flight.
+ * startWhenPrepared starts the videos together as soon as all of them are prepared instead of one after the other.
+ * <p/>
+ * This class must be used from the main thread only.
+ */
+class PlaybackEngine implements ComparatorSession.Players {
+
+    private static final String TAG = PlaybackEngine.class.getName();
+
+    /**
+     * Gets informed about the engine. Called in the main thread.
+     */
+    interface Listener {
+
+        /**
+         * The videos waiting for start have been started together.
+         */
+        void onStarted();
+    }
+
+    private final RetainedPlayer[] players;
+    private final LoaderPipeline<Uri, MediaPlayer> pipeline;
+
+    /**
+     * The players which are started as soon as all videos are prepared.
+     */
+    private final boolean[] startPending;
+
+    private Listener listener = null;
+
+    /**
+     * @param context     The context to open the videos. Only the application context is kept.
+     * @param playerCount The number of players.
+     */
+    public PlaybackEngine(Context context, int playerCount) {
+        players = new RetainedPlayer[playerCount];
+        for (int i = 0; i < playerCount; i++) {
+            players[i] = new RetainedPlayer();
+        }
+        startPending = new boolean[playerCount];
+
+        final Handler mainHandler = new Handler(Looper.getMainLooper());
+        Executor mainExecutor = new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                mainHandler.post(command);
+            }
+        };
+
+        //A thread per player so all videos are prepared in parallel.
+        pipeline = new LoaderPipeline<Uri, MediaPlayer>(playerCount, new MediaPlayerLoader(context.getApplicationContext()),
+                Executors.newFixedThreadPool(playerCount), mainExecutor);
+        pipeline.setCallback(new LoaderPipeline.Callback<Uri, MediaPlayer>() {
+            @Override
+            public void onLoaded(int slot, Uri source, MediaPlayer loaded) {
+                players[slot].setPrepared(loaded);
+            }
+
+            @Override
+            public void onLoadFailed(int slot, Uri source, Exception e) {
+                Log.w(TAG, "Could not prepare " + source, e);
+                startPending[slot] = false;
+                players[slot].setLoadFailed();
+            }
+
+            @Override
+            public void onAllLoaded() {
+                startPendingPlayers();
+            }
+        });
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    @Override
+    public RetainedPlayer getPlayer(int index) {
+        return players[index];
+    }
+
+    @Override
+    public int getPlayerCount() {
+        return players.length;
+    }
+
+    /**
+     * (Un)loads a video. The video is prepared in the background, the preparation of a previously loaded video is cancelled.
+     *
+     * @param player The player in which to load the video.
+     * @param video  The video or null to unload.
+     */
+    public void load(RetainedPlayer player, Uri video) {
+        int index = indexOf(player);
+
+        //A new video is not started by a play pressed before.
+        startPending[index] = false;
+        player.setLoading(video);
+
+        if (video == null) {
+            pipeline.cancel(index);
+            //The remaining videos may be prepared now.
+            startPendingPlayers();
+        } else {
+            pipeline.load(index, video);
+        }
+    }
+
+    /**
+     * @return true if a video is being prepared.
+     */
+    public boolean isPreparing() {
+        return pipeline.isLoading();
+    }
+
+    /**
+     * Starts all loaded videos as soon as all of them are prepared. Starts them immediately if they are prepared already.
+     */
+    @Override
+    public void startWhenPrepared() {
+        for (int i = 0; i < players.length; i++) {
+            startPending[i] = players[i].getUri() != null;
+        }
+
+        startPendingPlayers();
+    }
+
+    private void startPendingPlayers() {
+        if (pipeline.isLoading()) {
+            return;
+        }
+
+        boolean isStarted = false;
+        for (int i = 0; i < players.length; i++) {
+            if (startPending[i]) {
+                startPending[i] = false;
+                players[i].start();
+                isStarted = true;
+            }
+        }
+
+        if (isStarted && listener != null) {
+            listener.onStarted();
+        }
+    }
+
+    /**
+     * Pauses all videos. Videos waiting for start are not started anymore.
+     */
+    @Override
+    public void pause() {
+        for (int i = 0; i < players.length; i++) {
+            startPending[i] = false;
+            players[i].pause();
+        }
+    }
+
+    /**
+     * Stops (rewinds) all videos. Videos waiting for start are not started anymore.
+     */
+    @Override
+    public void stop() {
+        for (int i = 0; i < players.length; i++) {
+            startPending[i] = false;
+            players[i].stop();
+        }
+    }
+
+    private int indexOf(RetainedPlayer player) {
+        for (int i = 0; i < players.length; i++) {
+            if (players[i] == player) {
+                return i;
+            }
+        }
+
+        throw new IllegalArgumentException("The player does not belong to this engine");
+    }
+
+    /**
+     * Removes the listeners of the engine and all players, e.g. when the activity is destroyed.
+     */
+    public void clearListeners() {
+        listener = null;
+        for (RetainedPlayer player : players) {
+            player.setListener(null);
+        }
+    }
+
+    /**
+     * Cancels all preparations and releases all decoders.
+     */
+    public void release() {
+        clearListeners();
+        pipeline.shutdown();
+        for (RetainedPlayer player : players) {
+            player.release();
+        }
+    }
+
+    /**
+     * Opens and prepares a media player. Runs in a worker thread of the pipeline.
+     * The media player is created in a thread without looper, so its events are delivered in the main thread.
+     */
+    private static class MediaPlayerLoader implements LoaderPipeline.Loader<Uri, MediaPlayer> {
+
+        private final Context context;
+
+        MediaPlayerLoader(Context context) {
+            this.context = context;
+        }
+
+        @Override
+        public MediaPlayer load(Uri source) throws Exception {
+            MediaPlayer mediaPlayer = new MediaPlayer();
+            try {
+                mediaPlayer.setDataSource(context, source);
+                mediaPlayer.prepare();
+                return mediaPlayer;
+            } catch (Exception e) {
+                mediaPlayer.release();
+                throw e;
+            }
+        }
+
+        @Override
+        public void release(MediaPlayer loaded) {
+            loaded.release();
+        }
+    }
+}
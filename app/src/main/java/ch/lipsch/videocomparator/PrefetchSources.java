@@ -0,0 +1,79 @@
+/*
+ * Copyright (C) 2015 Erwin Betschart
+ *
+ * This file is part of Video Comparator.
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.lipsch.videocomparator;
+
+import android.content.Context;
+import android.net.Uri;
+import android.os.ParcelFileDescriptor;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+
+/**
+ * Opens the prefetch sources of videos on the device.
+ */
+final class PrefetchSources {
+
+    private PrefetchSources() {
+        //Utility class
+    }
+
+    /**
+     * @param context Any context. Only the application context is kept.
+     * @param video   The video to read ahead.
+     * @return An opener which opens the video in the prefetch thread.
+     */
+    public static PrefetchEngine.Opener opener(Context context, final Uri video) {
+        final Context applicationContext = context.getApplicationContext();
+        return new PrefetchEngine.Opener() {
+            @Override
+            public PrefetchSource open() throws IOException {
+                return open(applicationContext, video);
+            }
+        };
+    }
+
+    /**
+     * Opens a video (file or content provider). A regular file is memory mapped if possible, otherwise it is read through its channel.
+     *
+     * @return The source or null if the video can not be read ahead (e.g. a pipe of a content provider which streams the video).
+     * @throws IOException If the video could not be opened.
+     */
+    static PrefetchSource open(Context context, Uri video) throws IOException {
+        ParcelFileDescriptor fileDescriptor = context.getContentResolver().openFileDescriptor(video, "r");
+        if (fileDescriptor == null) {
+            throw new IOException("Could not open " + video);
+        }
+        if (fileDescriptor.getStatSize() <= 0) {
+            //Not a regular file: The bytes can only be read once, reading ahead would steal them from the player.
+            fileDescriptor.close();
+            return null;
+        }
+
+        FileChannel channel = new FileInputStream(fileDescriptor.getFileDescriptor()).getChannel();
+        try {
+            //Some file systems of content providers (e.g. fuse) do not support mapping.
+            channel.map(FileChannel.MapMode.READ_ONLY, 0, 1);
+            return new MappedPrefetchSource(channel, fileDescriptor);
+        } catch (IOException e) {
+            return new ChannelPrefetchSource(channel, fileDescriptor);
+        }
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2015 Erwin Betschart
+ *
+ * This file is part of Video Comparator.
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.lipsch.videocomparator;
+
+import android.view.Choreographer;
+
+/**
+ * Calls a listener on every frame (vsync) as long as it is started and the listener wants more frames.
+ * Used to update the seek bars and times while videos are playing. Nothing is done while not started, so no cpu is used while paused or in background.
+ * This class must be used from the main thread only.
+ */
+class ProgressRenderer implements Choreographer.FrameCallback {
+
+    /**
+     * Listener which renders the progress.
+     */
+    interface Listener {
+
+        /**
+         * Renders the current progress. Called on every frame.
+         *
+         * @return true if further frames are needed, false to stop the renderer.
+         */
+        boolean onRenderProgress();
+    }
+
+    private final Choreographer choreographer = Choreographer.getInstance();
+    private final Listener listener;
+
+    private boolean running = false;
+
+    /**
+     * true if a frame callback is posted to the choreographer.
+     */
+    private boolean framePosted = false;
+
+    public ProgressRenderer(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Starts rendering on every frame. Has no effect if already started.
+     */
+    public void start() {
+        running = true;
+        postFrame();
+    }
+
+    /**
+     * Stops rendering. The posted frame callback is removed, so a frame requested with requestFrame before is dropped as well.
+     * Call requestFrame afterwards to render a last frame.
+     */
+    public void stop() {
+        running = false;
+        if (framePosted) {
+            choreographer.removeFrameCallback(this);
+            framePosted = false;
+        }
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Renders the progress once on the next frame even if the renderer is stopped. E.g. after a seek while paused.
+     */
+    public void requestFrame() {
+        postFrame();
+    }
+
+    private void postFrame() {
+        if (!framePosted) {
+            framePosted = true;
+            choreographer.postFrameCallback(this);
+        }
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        framePosted = false;
+
+        boolean moreFramesNeeded = listener.onRenderProgress();
+
+        if (running && moreFramesNeeded) {
+            postFrame();
+        } else {
+            running = false;
+        }
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright (C) 2015 Erwin Betschart
+ *
+ * This file is part of Video Comparator.
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.lipsch.videocomparator;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Computes the PSNR and SSIM of all frames of two videos in the background with a QualityAnalyzer.
+ * The time series is written to &lt;name&gt;-frames.csv and the summary to &lt;name&gt;-summary.txt in the output directory.
+ * The task is cancelled by interrupting its thread.
+ */
+class QualityAnalysisTask implements Runnable {
+
+    private static final String TAG = QualityAnalysisTask.class.getName();
+
+    /**
+     * Gets informed about the result of the analysis. Called in the main thread.
+     */
+    interface Listener {
+        void onAnalysisDone(QualitySummary summary, File timeSeries, File summaryFile);
+
+        void onAnalysisFailed(Exception e);
+    }
+
+    private final Context context;
+    private final Uri video1;
+    private final Uri video2;
+    private final File outputDirectory;
+    private final String name;
+    private final Listener listener;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    /**
+     * @param context         The context to resolve the uris. Only the application context is kept.
+     * @param video1          The first video (e.g. the reference).
+     * @param video2          The second video. Scaled to the size of the first video if necessary.
+     * @param outputDirectory The directory to write the results to.
+     * @param name            The prefix of the result files.
+     * @param listener        Gets informed about the result.
+     */
+    public QualityAnalysisTask(Context context, Uri video1, Uri video2, File outputDirectory, String name, Listener listener) {
+        this.context = context.getApplicationContext();
+        this.video1 = video1;
+        this.video2 = video2;
+        this.outputDirectory = outputDirectory;
+        this.name = name;
+        this.listener = listener;
+    }
+
+    @Override
+    public void run() {
+        RetrieverFrameSource source1 = null;
+        RetrieverFrameSource source2 = null;
+        BandExecutor executor = new BandExecutor(BandExecutor.getDefaultBandCount());
+        try {
+            source1 = new RetrieverFrameSource(context, video1, null);
+            source2 = new RetrieverFrameSource(context, video2, null);
+
+            //The first video defines the size to compare at.
+            Bitmap firstFrame = source1.decodeFrame(0);
+            if (firstFrame == null) {
+                throw new IOException("Could not decode " + video1);
+            }
+            int width = firstFrame.getWidth();
+            int height = firstFrame.getHeight();
+            firstFrame.recycle();
+
+            if (!outputDirectory.isDirectory() && !outputDirectory.mkdirs()) {
+                throw new IOException("Could not create " + outputDirectory);
+            }
+            final File timeSeriesFile = new File(outputDirectory, name + "-frames.csv");
+            final File summaryFile = new File(outputDirectory, name + "-summary.txt");
+
+            final QualitySummary summary;
+            Writer timeSeries = new FileWriter(timeSeriesFile);
+            try {
+                summary = new QualityAnalyzer(executor).analyze(new RetrieverLumaSource(source1, width, height),
+                        new RetrieverLumaSource(source2, width, height), timeSeries);
+            } finally {
+                timeSeries.close();
+            }
+
+            Writer summaryWriter = new FileWriter(summaryFile);
+            try {
+                summaryWriter.write("video1=" + video1 + "\n");
+                summaryWriter.write("video2=" + video2 + "\n");
+                summary.write(summaryWriter);
+            } finally {
+                summaryWriter.close();
+            }
+
+            Log.i(TAG, "Quality analysis of " + summary.getFrameCount() + " frames written to " + timeSeriesFile);
+            mainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    listener.onAnalysisDone(summary, timeSeriesFile, summaryFile);
+                }
+            });
+        } catch (InterruptedException e) {
+            Log.i(TAG, "Quality analysis cancelled");
+        } catch (IOException e) {
+            notifyFailure(e);
+        } catch (RuntimeException e) {
+            //The retriever throws if the video can not be opened.
+            notifyFailure(e);
+        } finally {
+            executor.shutdown();
+            if (source1 != null) {
+                source1.release();
+            }
+            if (source2 != null) {
+                source2.release();
+            }
+        }
+    }
+
+    private void notifyFailure(final Exception e) {
+        Log.w(TAG, "Quality analysis failed", e);
+        mainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                listener.onAnalysisFailed(e);
+            }
+        });
+    }
+}
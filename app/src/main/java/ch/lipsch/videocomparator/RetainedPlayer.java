@@ -0,0 +1,415 @@
+/*
+ * Copyright (C) 2015 Erwin Betschart
+ *
+ * This file is part of Video Comparator.
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.lipsch.videocomparator;
+
+import android.media.MediaPlayer;
+import android.net.Uri;
+import android.view.Surface;
+import android.view.SurfaceHolder;
+
+/**
+ * A media player which outlives the activity. On a configuration change (e.g. rotation) the new activity only attaches its surface,
+ * the decoder and the play position are kept. The player is muted.
+ * The media player is prepared in the background by the PlaybackEngine and handed over when it is ready.
+ * <p/>
+ * This class must be used from the main thread only.
+ */
+class RetainedPlayer implements ComparablePlayer {
+
+    /**
+     * Gets informed about the events of the player. Called in the main thread.
+     */
+    interface Listener {
+        void onPrepared(RetainedPlayer player);
+
+        void onCompletion(RetainedPlayer player);
+
+        /**
+         * @return true if the error was handled.
+         */
+        boolean onError(RetainedPlayer player, int what, int extra);
+
+        /**
+         * @return true if the info was handled.
+         */
+        boolean onInfo(RetainedPlayer player, int what, int extra);
+
+        void onVideoSizeChanged(RetainedPlayer player, int width, int height);
+
+        /**
+         * A seek has been completed (also seeks done while preparing).
+         */
+        void onSeekComplete(RetainedPlayer player);
+
+        /**
+         * A frame has been shown on the attached surface for the first time since preparing or attaching a surface.
+         */
+        void onFirstFrame(RetainedPlayer player);
+    }
+
+    private MediaPlayer mediaPlayer = null;
+    private Uri uri = null;
+    private boolean isPrepared = false;
+
+    /**
+     * Position to seek to as soon as the player is prepared. -1 if there is none.
+     */
+    private int pendingSeekMs = -1;
+
+    private SurfaceHolder surfaceHolder = null;
+
+    /**
+     * A surface without holder (e.g. of a SurfaceTexture of the CompositorView). Only one of surfaceHolder and surface is set.
+     */
+    private Surface surface = null;
+    private boolean isWaitingForFirstFrame = false;
+    private Listener listener = null;
+
+    /**
+     * The seeks the player issues by itself go through this scheduler. null to seek directly.
+     */
+    private SeekScheduler seekScheduler = null;
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Sets the scheduler of the seeks of this player. The seeks the player issues by itself (rewinding on stop, showing a frame on a new surface
+     * or after preparing) go through it too, so the scheduler knows about every seek in flight.
+     *
+     * @param seekScheduler The scheduler or null to seek directly.
+     */
+    public void setSeekScheduler(SeekScheduler seekScheduler) {
+        this.seekScheduler = seekScheduler;
+    }
+
+    /**
+     * @return The loaded video or null.
+     */
+    public Uri getUri() {
+        return uri;
+    }
+
+    /**
+     * (Un)loads a video. The currently loaded video is released. The player is not prepared until setPrepared is called.
+     *
+     * @param video The video which is being prepared or null to unload.
+     */
+    void setLoading(Uri video) {
+        releaseMediaPlayer();
+        uri = video;
+    }
+
+    /**
+     * Takes over the prepared media player of the loading video. It is muted and shows the first frame (or the frame of a pending seek).
+     *
+     * @param preparedPlayer The prepared media player. Released by this player from now on.
+     */
+    void setPrepared(MediaPlayer preparedPlayer) {
+        mediaPlayer = preparedPlayer;
+        isPrepared = true;
+        registerMediaPlayerListeners(mediaPlayer);
+        if (surfaceHolder != null) {
+            mediaPlayer.setDisplay(surfaceHolder);
+        } else if (surface != null) {
+            mediaPlayer.setSurface(surface);
+        }
+
+        //Mute the videos
+        mediaPlayer.setVolume(0.0f, 0.0f);
+
+        //Seeking renders the first frame even if the video is not started. A pending seek is in flight in the scheduler already.
+        if (pendingSeekMs >= 0) {
+            mediaPlayer.seekTo(pendingSeekMs);
+            pendingSeekMs = -1;
+        } else {
+            seekInternally(0);
+        }
+
+        if (listener != null) {
+            listener.onPrepared(this);
+        }
+    }
+
+    /**
+     * The loading video could not be prepared.
+     */
+    void setLoadFailed() {
+        if (listener != null) {
+            listener.onError(this, MediaPlayer.MEDIA_ERROR_UNKNOWN, 0);
+        }
+    }
+
+    /**
+     * Renders the video on the given surface. Replaces a previously attached surface.
+     *
+     * @param holder The holder of the created surface.
+     */
+    public void attach(SurfaceHolder holder) {
+        surfaceHolder = holder;
+        surface = null;
+
+        if (mediaPlayer != null) {
+            mediaPlayer.setDisplay(holder);
+            showFrameOnNewSurface();
+        }
+    }
+
+    /**
+     * Renders the video on the given surface, e.g. into the texture of a SurfaceTexture. Replaces a previously attached surface.
+     *
+     * @param target The surface.
+     */
+    public void attach(Surface target) {
+        surface = target;
+        surfaceHolder = null;
+
+        if (mediaPlayer != null) {
+            mediaPlayer.setSurface(target);
+            showFrameOnNewSurface();
+        }
+    }
+
+    private void showFrameOnNewSurface() {
+        if (isPrepared) {
+            if (mediaPlayer.isPlaying()) {
+                //Frames are rendered anyway.
+                notifyFirstFrame();
+            } else {
+                //A paused player does not render on the new surface: Seek to the current position to show the frame again (no prepare needed).
+                isWaitingForFirstFrame = true;
+                seekInternally(mediaPlayer.getCurrentPosition());
+            }
+        }
+    }
+
+    /**
+     * Stops rendering on the given surface. Has no effect if another surface is attached.
+     *
+     * @param holder The holder of the destroyed surface.
+     */
+    public void detach(SurfaceHolder holder) {
+        if (surfaceHolder == holder) {
+            surfaceHolder = null;
+            isWaitingForFirstFrame = true;
+            if (mediaPlayer != null) {
+                mediaPlayer.setDisplay(null);
+            }
+        }
+    }
+
+    /**
+     * Stops rendering on the given surface. Has no effect if another surface is attached.
+     *
+     * @param target The surface which is released.
+     */
+    public void detach(Surface target) {
+        if (surface == target) {
+            surface = null;
+            isWaitingForFirstFrame = true;
+            if (mediaPlayer != null) {
+                mediaPlayer.setSurface(null);
+            }
+        }
+    }
+
+    /**
+     * Starts the video. Has no effect if the video is not prepared, use PlaybackEngine.startWhenPrepared to start the videos together.
+     */
+    @Override
+    public void start() {
+        if (isPrepared) {
+            mediaPlayer.start();
+        }
+    }
+
+    @Override
+    public void pause() {
+        if (isPrepared && mediaPlayer.isPlaying()) {
+            mediaPlayer.pause();
+        }
+    }
+
+    /**
+     * Pauses the video and rewinds it to the start. The video stays loaded.
+     */
+    public void stop() {
+        pause();
+        seekInternally(0);
+    }
+
+    /**
+     * Seeks on behalf of the player itself. Goes through the seek scheduler if there is one.
+     */
+    private void seekInternally(int positionMs) {
+        if (seekScheduler != null) {
+            seekScheduler.seekPrecise(positionMs);
+        } else {
+            seekTo(positionMs);
+        }
+    }
+
+    /**
+     * Seeks to the given position. If the video is not prepared yet, the seek is issued as soon as it is.
+     *
+     * @return Always true.
+     */
+    @Override
+    public boolean seekTo(int positionMs) {
+        if (isPrepared) {
+            mediaPlayer.seekTo(positionMs);
+        } else {
+            pendingSeekMs = positionMs;
+        }
+        return true;
+    }
+
+    /**
+     * @return The duration in milliseconds or -1 if no video is prepared.
+     */
+    @Override
+    public int getDuration() {
+        return isPrepared ? mediaPlayer.getDuration() : -1;
+    }
+
+    @Override
+    public int getCurrentPosition() {
+        return isPrepared ? mediaPlayer.getCurrentPosition() : Math.max(0, pendingSeekMs);
+    }
+
+    @Override
+    public boolean isPlaying() {
+        return isPrepared && mediaPlayer.isPlaying();
+    }
+
+    public boolean isPrepared() {
+        return isPrepared;
+    }
+
+    /**
+     * @return true if a frame of the loaded video is shown on the attached surface.
+     */
+    public boolean isShowingFrame() {
+        return isPrepared && hasSurface() && !isWaitingForFirstFrame;
+    }
+
+    public int getVideoWidth() {
+        return isPrepared ? mediaPlayer.getVideoWidth() : 0;
+    }
+
+    public int getVideoHeight() {
+        return isPrepared ? mediaPlayer.getVideoHeight() : 0;
+    }
+
+    /**
+     * MediaPlayer.setPlaybackParams needs API 23.
+     */
+    @Override
+    public boolean supportsPlaybackRate() {
+        return false;
+    }
+
+    /**
+     * Does nothing: Playback rates are not supported (see supportsPlaybackRate). The video keeps playing at normal speed.
+     */
+    @Override
+    public void setPlaybackRate(float rate) {
+        //Not supported
+    }
+
+    /**
+     * Releases the decoder. The player can be used again by loading another video.
+     */
+    public void release() {
+        releaseMediaPlayer();
+        uri = null;
+        surfaceHolder = null;
+        surface = null;
+    }
+
+    private boolean hasSurface() {
+        return surfaceHolder != null || surface != null;
+    }
+
+    private void releaseMediaPlayer() {
+        if (mediaPlayer != null) {
+            mediaPlayer.release();
+            mediaPlayer = null;
+        }
+
+        isPrepared = false;
+        pendingSeekMs = -1;
+        isWaitingForFirstFrame = true;
+    }
+
+    private void notifyFirstFrame() {
+        isWaitingForFirstFrame = false;
+        if (listener != null) {
+            listener.onFirstFrame(this);
+        }
+    }
+
+    private void registerMediaPlayerListeners(final MediaPlayer player) {
+        player.setOnSeekCompleteListener(new MediaPlayer.OnSeekCompleteListener() {
+            @Override
+            public void onSeekComplete(MediaPlayer mp) {
+                if (isWaitingForFirstFrame && hasSurface()) {
+                    notifyFirstFrame();
+                }
+                if (listener != null) {
+                    listener.onSeekComplete(RetainedPlayer.this);
+                }
+            }
+        });
+
+        player.setOnCompletionListener(new MediaPlayer.OnCompletionListener() {
+            @Override
+            public void onCompletion(MediaPlayer mp) {
+                if (listener != null) {
+                    listener.onCompletion(RetainedPlayer.this);
+                }
+            }
+        });
+
+        player.setOnErrorListener(new MediaPlayer.OnErrorListener() {
+            @Override
+            public boolean onError(MediaPlayer mp, int what, int extra) {
+                isPrepared = false;
+                return listener != null && listener.onError(RetainedPlayer.this, what, extra);
+            }
+        });
+
+        player.setOnInfoListener(new MediaPlayer.OnInfoListener() {
+            @Override
+            public boolean onInfo(MediaPlayer mp, int what, int extra) {
+                return listener != null && listener.onInfo(RetainedPlayer.this, what, extra);
+            }
+        });
+
+        player.setOnVideoSizeChangedListener(new MediaPlayer.OnVideoSizeChangedListener() {
+            @Override
+            public void onVideoSizeChanged(MediaPlayer mp, int width, int height) {
+                if (listener != null) {
+                    listener.onVideoSizeChanged(RetainedPlayer.this, width, height);
+                }
+            }
+        });
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright (C) 2015 Erwin Betschart
+ *
+ * This file is part of Video Comparator.
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.lipsch.videocomparator;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.media.MediaExtractor;
+import android.media.MediaFormat;
+import android.media.MediaMetadataRetriever;
+import android.net.Uri;
+import android.util.Log;
+
+import java.io.IOException;
+
+/**
+ * Delivers exact frames of a video with the MediaMetadataRetriever (OPTION_CLOSEST, not only key frames).
+ * Must be released after usage.
+ */
+class RetrieverFrameSource implements FrameSource<Bitmap> {
+
+    private static final String TAG = RetrieverFrameSource.class.getName();
+
+    /**
+     * Used if the container does not tell the frame rate.
+     */
+    public static final double DEFAULT_FRAME_RATE = 30.0;
+
+    private final MediaMetadataRetriever retriever = new MediaMetadataRetriever();
+    private final long durationUs;
+    private final double frameRate;
+    private final int width;
+    private final int height;
+
+    /**
+     * @param context  The context to resolve the uri.
+     * @param video    The video to decode.
+     * @param metadata The known metadata of the video or null. The frame rate is probed if the metadata is not known.
+     */
+    public RetrieverFrameSource(Context context, Uri video, VideoMetadata metadata) {
+        retriever.setDataSource(context, video);
+
+        String duration = retriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_DURATION);
+        durationUs = duration == null ? 0 : Long.parseLong(duration) * 1000;
+        width = parseInt(retriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_VIDEO_WIDTH));
+        height = parseInt(retriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_VIDEO_HEIGHT));
+        frameRate = metadata != null && metadata.getFrameRate() > 0 ? metadata.getFrameRate() : readFrameRate(context, video);
+    }
+
+    private static int parseInt(String value) {
+        try {
+            return value == null ? 0 : Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * The MediaMetadataRetriever does not deliver the frame rate before API 23, so it is read from the video track format.
+     */
+    private static double readFrameRate(Context context, Uri video) {
+        MediaExtractor extractor = new MediaExtractor();
+        try {
+            extractor.setDataSource(context, video, null);
+            for (int i = 0; i < extractor.getTrackCount(); i++) {
+                MediaFormat format = extractor.getTrackFormat(i);
+                String mime = format.getString(MediaFormat.KEY_MIME);
+                if (mime != null && mime.startsWith("video/") && format.containsKey(MediaFormat.KEY_FRAME_RATE)) {
+                    return getFrameRate(format);
+                }
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Could not read frame rate of " + video, e);
+        } finally {
+            extractor.release();
+        }
+
+        return DEFAULT_FRAME_RATE;
+    }
+
+    /**
+     * Reads the frame rate of a video track format. Depending on the extractor it is stored as integer or as float.
+     *
+     * @return The frame rate or DEFAULT_FRAME_RATE if the format has no valid frame rate.
+     */
+    static double getFrameRate(MediaFormat format) {
+        if (!format.containsKey(MediaFormat.KEY_FRAME_RATE)) {
+            return DEFAULT_FRAME_RATE;
+        }
+
+        double frameRate;
+        try {
+            frameRate = format.getInteger(MediaFormat.KEY_FRAME_RATE);
+        } catch (ClassCastException e) {
+            try {
+                frameRate = format.getFloat(MediaFormat.KEY_FRAME_RATE);
+            } catch (ClassCastException e2) {
+                return DEFAULT_FRAME_RATE;
+            }
+        }
+        return frameRate > 0 ? frameRate : DEFAULT_FRAME_RATE;
+    }
+
+    @Override
+    public Bitmap decodeFrame(long timeUs) {
+        return retriever.getFrameAtTime(timeUs, MediaMetadataRetriever.OPTION_CLOSEST);
+    }
+
+    /**
+     * Decodes the key frame nearest to the given time. Much faster than decodeFrame as no other frames have to be decoded. E.g. for thumbnails.
+     *
+     * @param timeUs The presentation time in microseconds.
+     * @return The decoded frame or null if it could not be decoded.
+     */
+    public Bitmap decodeSyncFrame(long timeUs) {
+        return retriever.getFrameAtTime(timeUs, MediaMetadataRetriever.OPTION_CLOSEST_SYNC);
+    }
+
+    @Override
+    public long getDurationUs() {
+        return durationUs;
+    }
+
+    @Override
+    public double getFrameRate() {
+        return frameRate;
+    }
+
+    /**
+     * @return The width of the video (not rotated) or 0 if unknown.
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * @return The height of the video (not rotated) or 0 if unknown.
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    public void release() {
+        retriever.release();
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2015 Erwin Betschart
+ *
+ * This file is part of Video Comparator.
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.lipsch.videocomparator;
+
+import android.graphics.Bitmap;
+
+import java.io.IOException;
+
+/**
+ * Delivers the luma planes of all frames of a video decoded with a RetrieverFrameSource. The frames are scaled to the given size if necessary,
+ * so videos of different resolutions can be compared. A lower sample rate than the frame rate of the video delivers every n-th frame only (e.g. for a fast scan).
+ */
+class RetrieverLumaSource implements LumaFrameSource {
+
+    private final RetrieverFrameSource source;
+    private final int width;
+    private final int height;
+    private final double sampleRate;
+    private final int[] pixels;
+
+    private long nextFrame = 0;
+
+    /**
+     * Delivers every frame of the video.
+     *
+     * @param source The decoder of the video.
+     * @param width  The width of the delivered planes.
+     * @param height The height of the delivered planes.
+     */
+    public RetrieverLumaSource(RetrieverFrameSource source, int width, int height) {
+        this(source, width, height, source.getFrameRate());
+    }
+
+    /**
+     * @param source     The decoder of the video.
+     * @param width      The width of the delivered planes.
+     * @param height     The height of the delivered planes.
+     * @param sampleRate The number of frames per second to deliver.
+     */
+    public RetrieverLumaSource(RetrieverFrameSource source, int width, int height, double sampleRate) {
+        this.source = source;
+        this.width = width;
+        this.height = height;
+        this.sampleRate = sampleRate;
+        this.pixels = new int[width * height];
+    }
+
+    @Override
+    public int getWidth() {
+        return width;
+    }
+
+    @Override
+    public int getHeight() {
+        return height;
+    }
+
+    @Override
+    public long readNextFrame(byte[] luma) throws IOException {
+        long timeUs = Math.round(nextFrame * 1000000.0 / sampleRate);
+        if (timeUs >= source.getDurationUs()) {
+            return -1;
+        }
+
+        Bitmap frame = source.decodeFrame(timeUs);
+        if (frame == null) {
+            throw new IOException("Could not decode the frame at " + timeUs + "us");
+        }
+
+        if (frame.getWidth() != width || frame.getHeight() != height) {
+            Bitmap scaled = Bitmap.createScaledBitmap(frame, width, height, true);
+            frame.recycle();
+            frame = scaled;
+        }
+
+        frame.getPixels(pixels, 0, width, 0, 0, width, height);
+        //Only one frame is kept in memory.
+        frame.recycle();
+        Luma.fromArgb(pixels, luma, pixels.length);
+
+        nextFrame++;
+        return timeUs;
+    }
+}
@@ -0,0 +1,196 @@
+/*
+ * Copyright (C) 2015 Erwin Betschart
+ *
+ * This file is part of Video Comparator.
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.lipsch.videocomparator;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The disk tier of the thumbnails: A persistent cache of JPEG thumbnails keyed by the ContentHash of the video and the position of the thumbnail.
+ * <p/>
+ * As the VideoMetadataCache it is limited by the total size of the files and deletes the least recently used entries if the limit is exceeded.
+ * The usage order survives restarts via the modification time of the files.
+ * <p/>
+ * This class is thread-safe.
+ */
+class ThumbnailDiskCache {
+
+    private static final String FILE_SUFFIX = ".jpg";
+    private static final int JPEG_QUALITY = 80;
+
+    private final File directory;
+    private final long maxBytes;
+
+    /**
+     * The sizes of the files in least recently used order (access order).
+     */
+    private final LinkedHashMap<String, Long> entrySizes = new LinkedHashMap<String, Long>(64, 0.75f, true);
+
+    private long totalBytes = 0;
+
+    /**
+     * Opens the cache in the given directory. Existing entries are kept (as long as they fit into the size limit).
+     *
+     * @param directory The directory of the cache. Created if it does not exist.
+     * @param maxBytes  The maximum size of all entries in bytes.
+     */
+    public ThumbnailDiskCache(File directory, long maxBytes) {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+
+        //noinspection ResultOfMethodCallIgnored
+        directory.mkdirs();
+
+        File[] files = directory.listFiles();
+        if (files != null) {
+            Arrays.sort(files, new Comparator<File>() {
+                @Override
+                public int compare(File lhs, File rhs) {
+                    long lhsModified = lhs.lastModified();
+                    long rhsModified = rhs.lastModified();
+                    return lhsModified < rhsModified ? -1 : (lhsModified == rhsModified ? 0 : 1);
+                }
+            });
+
+            for (File file : files) {
+                if (file.getName().endsWith(FILE_SUFFIX)) {
+                    entrySizes.put(file.getName(), file.length());
+                    totalBytes += file.length();
+                } else {
+                    //E.g. a temporary file of a crashed write.
+                    //noinspection ResultOfMethodCallIgnored
+                    file.delete();
+                }
+            }
+        }
+
+        synchronized (this) {
+            evict();
+        }
+    }
+
+    /**
+     * Decodes a cached thumbnail.
+     *
+     * @param contentHash The content hash of the video.
+     * @param timeMs      The position of the thumbnail.
+     * @param options     The options to decode with (e.g. a bitmap to reuse). May be null.
+     * @return The thumbnail or null if it is not cached (or the cache entry is corrupt).
+     */
+    public synchronized Bitmap get(long contentHash, long timeMs, BitmapFactory.Options options) {
+        String name = fileNameFor(contentHash, timeMs);
+        //get (not containsKey) to update the access order.
+        if (entrySizes.get(name) == null) {
+            return null;
+        }
+
+        File file = new File(directory, name);
+        Bitmap bitmap;
+        try {
+            bitmap = BitmapFactory.decodeFile(file.getPath(), options);
+        } catch (IllegalArgumentException e) {
+            //The bitmap to reuse does not fit.
+            bitmap = null;
+        }
+
+        if (bitmap == null) {
+            remove(name);
+            return null;
+        }
+
+        //noinspection ResultOfMethodCallIgnored
+        file.setLastModified(System.currentTimeMillis());
+        return bitmap;
+    }
+
+    /**
+     * Stores a thumbnail. Replaces an existing entry.
+     *
+     * @param contentHash The content hash of the video.
+     * @param timeMs      The position of the thumbnail.
+     * @param thumbnail   The thumbnail.
+     * @throws IOException If the entry could not be written.
+     */
+    public synchronized void put(long contentHash, long timeMs, Bitmap thumbnail) throws IOException {
+        String name = fileNameFor(contentHash, timeMs);
+        remove(name);
+
+        //Write to a temporary file first so a crash does not leave a half written entry.
+        File file = new File(directory, name);
+        File tempFile = new File(directory, name + ".tmp");
+        FileOutputStream out = new FileOutputStream(tempFile);
+        try {
+            if (!thumbnail.compress(Bitmap.CompressFormat.JPEG, JPEG_QUALITY, out)) {
+                throw new IOException("Could not compress " + name);
+            }
+        } finally {
+            out.close();
+        }
+
+        if (!tempFile.renameTo(file)) {
+            //noinspection ResultOfMethodCallIgnored
+            tempFile.delete();
+            throw new IOException("Could not write " + file);
+        }
+
+        entrySizes.put(name, file.length());
+        totalBytes += file.length();
+        evict();
+    }
+
+    /**
+     * @return The total size of all entries in bytes.
+     */
+    public synchronized long getSizeBytes() {
+        return totalBytes;
+    }
+
+    private void remove(String name) {
+        Long size = entrySizes.remove(name);
+        if (size != null) {
+            totalBytes -= size;
+            //noinspection ResultOfMethodCallIgnored
+            new File(directory, name).delete();
+        }
+    }
+
+    private void evict() {
+        Iterator<Map.Entry<String, Long>> iterator = entrySizes.entrySet().iterator();
+        while (totalBytes > maxBytes && iterator.hasNext()) {
+            Map.Entry<String, Long> eldest = iterator.next();
+            totalBytes -= eldest.getValue();
+            //noinspection ResultOfMethodCallIgnored
+            new File(directory, eldest.getKey()).delete();
+            iterator.remove();
+        }
+    }
+
+    private static String fileNameFor(long contentHash, long timeMs) {
+        return ContentHash.toHex(contentHash) + "-" + timeMs + FILE_SUFFIX;
+    }
+}
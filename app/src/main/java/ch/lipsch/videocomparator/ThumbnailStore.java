@@ -0,0 +1,373 @@
+/*
+ * Copyright (C) 2015 Erwin Betschart
+ *
+ * This file is part of Video Comparator.
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.lipsch.videocomparator;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Extracts the thumbnails of the filmstrips of the loaded videos in the background and holds them in two tiers:
+ * <ul>
+ * <li>A memory cache limited by the bytes of the bitmaps. Evicted bitmaps go to a BitmapPool and are reused for the next thumbnails. They are
+ * returned to the pool in the main thread after the views were invalidated, so the views do not draw a bitmap the worker overwrites.</li>
+ * <li>A ThumbnailDiskCache keyed by the content hash of the video, so reopening a known video does not decode it again.</li>
+ * </ul>
+ * The thumbnails are taken at the positions of a FilmstripPlan. Key frames are taken (the nearest sync frame) as they are decoded much faster.
+ * <p/>
+ * This class is thread-safe.
+ */
+class ThumbnailStore {
+
+    private static final String TAG = ThumbnailStore.class.getName();
+
+    /**
+     * The height of a thumbnail in pixels. The width depends on the aspect ratio of the video.
+     */
+    public static final int THUMBNAIL_HEIGHT = 72;
+
+    /**
+     * The maximum number of thumbnails per video.
+     */
+    public static final int MAX_THUMBNAILS = 64;
+
+    /**
+     * The maximum size of the disk tier.
+     */
+    public static final long DISK_CACHE_MAX_BYTES = 16 * 1024 * 1024;
+
+    private static final String CACHE_DIRECTORY = "thumbnails";
+
+    /**
+     * Gets informed when a thumbnail of a filmstrip is available. Called in the main thread.
+     */
+    interface Listener {
+        void onThumbnailLoaded(int slot);
+
+        /**
+         * Thumbnails were evicted from the memory cache. The views must be invalidated: The evicted bitmaps are reused after the next draw.
+         */
+        void onThumbnailsEvicted();
+    }
+
+    /**
+     * The key of a thumbnail in the memory cache.
+     */
+    static final class Key {
+        private final long contentHash;
+        private final long timeMs;
+
+        Key(long contentHash, long timeMs) {
+            this.contentHash = contentHash;
+            this.timeMs = timeMs;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return contentHash == other.contentHash && timeMs == other.timeMs;
+        }
+
+        @Override
+        public int hashCode() {
+            return (int) (contentHash ^ (contentHash >>> 32)) * 31 + (int) (timeMs ^ (timeMs >>> 32));
+        }
+    }
+
+    private final SizedLruCache<Key, Bitmap> memoryCache;
+    private final BitmapPool bitmapPool;
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    /**
+     * Incremented on every request or cancel of a slot. A filmstrip stops loading as soon as the generation of its slot changed.
+     */
+    private final AtomicIntegerArray generations;
+
+    /**
+     * Only accessed in the executor. Created when first needed as the cache directory depends on the context.
+     */
+    private ThumbnailDiskCache diskCache = null;
+
+    private volatile Listener listener = null;
+
+    /**
+     * true while the memory is trimmed: Evicted bitmaps are dropped instead of pooled.
+     */
+    private volatile boolean isTrimming = false;
+
+    /**
+     * The memory tier gets 1/16 and the pool 1/64 of the heap.
+     *
+     * @param slotCount The number of filmstrips loaded at the same time (e.g. one per video).
+     */
+    public ThumbnailStore(int slotCount) {
+        long maxMemory = Runtime.getRuntime().maxMemory();
+        generations = new AtomicIntegerArray(slotCount);
+        bitmapPool = new BitmapPool(maxMemory / 64);
+        memoryCache = new SizedLruCache<Key, Bitmap>(maxMemory / 16, new SizedLruCache.Sizer<Bitmap>() {
+            @Override
+            public long sizeOf(Bitmap value) {
+                return value.getByteCount();
+            }
+        });
+        memoryCache.setEvictionListener(new SizedLruCache.EvictionListener<Key, Bitmap>() {
+            @Override
+            public void onEvicted(Key key, Bitmap value) {
+                if (!isTrimming) {
+                    returnToPool(value);
+                }
+            }
+        });
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Loads the thumbnails of a filmstrip in the background (coarse to fine). Loading a filmstrip into the slot before is cancelled.
+     *
+     * @param context     The context to resolve the uri.
+     * @param slot        The slot of the filmstrip.
+     * @param video       The video.
+     * @param contentHash The content hash of the video.
+     * @param plan        The positions of the thumbnails.
+     */
+    public void requestFilmstrip(Context context, final int slot, final Uri video, final long contentHash, final FilmstripPlan plan) {
+        final int generation = generations.incrementAndGet(slot);
+        final Context applicationContext = context.getApplicationContext();
+
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (generations.get(slot) != generation) {
+                    return;
+                }
+
+                try {
+                    loadFilmstrip(applicationContext, slot, generation, video, contentHash, plan);
+                } catch (RuntimeException e) {
+                    //The retriever throws if the video can not be opened.
+                    Log.w(TAG, "Could not load the thumbnails of " + video, e);
+                }
+            }
+        });
+    }
+
+    /**
+     * Stops loading the filmstrip of a slot. Thumbnails already loaded stay in the cache.
+     */
+    public void cancel(int slot) {
+        generations.incrementAndGet(slot);
+    }
+
+    /**
+     * Delivers a thumbnail from the memory cache. Must not be recycled or modified by the caller.
+     *
+     * @return The thumbnail or null if it is not loaded (yet).
+     */
+    public Bitmap getThumbnail(long contentHash, long timeMs) {
+        return memoryCache.get(new Key(contentHash, timeMs));
+    }
+
+    /**
+     * Delivers the loaded thumbnail which is nearest to the given position. Used while scrubbing so something is shown even if
+     * the filmstrip is loaded partially only.
+     *
+     * @return The thumbnail or null if no thumbnail of the video is loaded yet.
+     */
+    public Bitmap getNearestThumbnail(long contentHash, FilmstripPlan plan, long positionMs) {
+        int index = plan.indexFor(positionMs);
+        for (int distance = 0; distance < plan.size(); distance++) {
+            if (index - distance >= 0) {
+                Bitmap thumbnail = getIfLoaded(contentHash, plan.getTimeMs(index - distance));
+                if (thumbnail != null) {
+                    return thumbnail;
+                }
+            }
+            if (distance > 0 && index + distance < plan.size()) {
+                Bitmap thumbnail = getIfLoaded(contentHash, plan.getTimeMs(index + distance));
+                if (thumbnail != null) {
+                    return thumbnail;
+                }
+            }
+        }
+        return null;
+    }
+
+    private Bitmap getIfLoaded(long contentHash, long timeMs) {
+        Key key = new Key(contentHash, timeMs);
+        //containsKey does not count the misses while searching.
+        return memoryCache.containsKey(key) ? memoryCache.get(key) : null;
+    }
+
+    /**
+     * Frees memory. The disk tier is kept.
+     *
+     * @param all true to drop all thumbnails, false to drop the least recently used half.
+     */
+    public void trimMemory(boolean all) {
+        isTrimming = true;
+        try {
+            memoryCache.trimTo(all ? 0 : memoryCache.getMaxSize() / 2);
+        } finally {
+            isTrimming = false;
+        }
+        bitmapPool.clear();
+    }
+
+    /**
+     * Puts an evicted bitmap into the pool once no view draws it anymore. A view may have got the bitmap from the cache before it was evicted.
+     */
+    private void returnToPool(final Bitmap bitmap) {
+        mainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                Listener currentListener = listener;
+                if (currentListener == null) {
+                    bitmapPool.put(bitmap);
+                    return;
+                }
+
+                currentListener.onThumbnailsEvicted();
+                //Posted after the invalidation: Runs after the next traversal, which draws the views without the evicted bitmap.
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        bitmapPool.put(bitmap);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Loads all thumbnails of a filmstrip which are not in the memory cache. Must be called in the executor.
+     */
+    private void loadFilmstrip(Context context, int slot, int generation, Uri video, long contentHash, FilmstripPlan plan) {
+        if (diskCache == null) {
+            diskCache = new ThumbnailDiskCache(new File(context.getCacheDir(), CACHE_DIRECTORY), DISK_CACHE_MAX_BYTES);
+        }
+
+        //Opened only if a thumbnail is not on disk.
+        RetrieverFrameSource source = null;
+        Paint paint = new Paint(Paint.FILTER_BITMAP_FLAG);
+        Rect destination = new Rect();
+        int thumbnailWidth = 0;
+        int extractedCount = 0;
+
+        try {
+            for (int index : plan.getLoadOrder()) {
+                if (generations.get(slot) != generation) {
+                    Log.i(TAG, "Loading the thumbnails of " + video + " cancelled");
+                    return;
+                }
+
+                long timeMs = plan.getTimeMs(index);
+                Key key = new Key(contentHash, timeMs);
+                if (memoryCache.containsKey(key)) {
+                    continue;
+                }
+
+                Bitmap thumbnail = readFromDisk(contentHash, timeMs, thumbnailWidth);
+                if (thumbnail == null) {
+                    if (source == null) {
+                        source = new RetrieverFrameSource(context, video, null);
+                    }
+
+                    Bitmap frame = source.decodeSyncFrame(timeMs * 1000);
+                    if (frame == null) {
+                        continue;
+                    }
+
+                    //Scaled into a pooled bitmap: Every thumbnail of the video has the same size.
+                    int width = Math.max(1, Math.round((float) THUMBNAIL_HEIGHT * frame.getWidth() / frame.getHeight()));
+                    thumbnail = bitmapPool.getOrCreate(width, THUMBNAIL_HEIGHT, Bitmap.Config.ARGB_8888);
+                    destination.set(0, 0, width, THUMBNAIL_HEIGHT);
+                    new Canvas(thumbnail).drawBitmap(frame, null, destination, paint);
+                    frame.recycle();
+                    extractedCount++;
+
+                    try {
+                        diskCache.put(contentHash, timeMs, thumbnail);
+                    } catch (IOException e) {
+                        Log.w(TAG, "Could not cache a thumbnail of " + video, e);
+                    }
+                }
+
+                thumbnailWidth = thumbnail.getWidth();
+                memoryCache.put(key, thumbnail);
+                notifyLoaded(slot, generation);
+            }
+
+            Log.i(TAG, "Thumbnails of " + video + " loaded, " + extractedCount + " extracted");
+        } finally {
+            if (source != null) {
+                source.release();
+            }
+        }
+    }
+
+    /**
+     * Decodes a thumbnail from the disk tier. A pooled bitmap is reused if the width is known.
+     */
+    private Bitmap readFromDisk(long contentHash, long timeMs, int width) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inMutable = true;
+        if (width > 0) {
+            options.inBitmap = bitmapPool.get(width, THUMBNAIL_HEIGHT, Bitmap.Config.ARGB_8888);
+        }
+
+        Bitmap thumbnail = diskCache.get(contentHash, timeMs, options);
+        if (thumbnail == null && options.inBitmap != null) {
+            bitmapPool.put(options.inBitmap);
+        }
+        return thumbnail;
+    }
+
+    private void notifyLoaded(final int slot, final int generation) {
+        mainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                Listener currentListener = listener;
+                if (currentListener != null && generations.get(slot) == generation) {
+                    currentListener.onThumbnailLoaded(slot);
+                }
+            }
+        });
+    }
+}
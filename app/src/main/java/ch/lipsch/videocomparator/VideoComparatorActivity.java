@@ -19,25 +19,42 @@
 
 package ch.lipsch.videocomparator;
 
+import android.content.Context;
+import android.content.DialogInterface;
 import android.content.Intent;
 import android.content.res.Configuration;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.drawable.BitmapDrawable;
+import android.graphics.drawable.Drawable;
 import android.media.MediaPlayer;
 import android.net.Uri;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.PersistableBundle;
+import android.os.SystemClock;
+import android.support.v7.app.AlertDialog;
 import android.support.v7.app.AppCompatActivity;
 import android.util.Log;
 import android.view.Menu;
 import android.view.MenuItem;
 import android.view.MotionEvent;
+import android.view.Surface;
 import android.view.View;
 import android.widget.Button;
+import android.widget.ImageView;
 import android.widget.SeekBar;
 import android.widget.TextView;
-import android.widget.VideoView;
+import android.widget.Toast;
 
-import java.util.concurrent.TimeUnit;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * The main activity which contains the two video controls.
@@ -50,53 +67,299 @@ public class VideoComparatorActivity extends AppCompatActivity {
     /**
      * Request identifier when opening video on the left / top side.
      */
-    private static final int PICK_VIDEO1_REQUEST = 1;
+    static final int PICK_VIDEO1_REQUEST = 1;
 
     /**
      * Request identifier when opening video on the right / bottom side.
      */
-    private static final int PICK_VIDEO2_REQUEST = 2;
+    static final int PICK_VIDEO2_REQUEST = 2;
 
     /**
      * Stores the current state of the videos. In order to restore it in case of app going to background or device orientation
      */
     private static final VideoPlayState VIDEO_PLAY_STATE = new VideoPlayState();
 
-    public static final int SEEK_BAR_UPDATE_DELAY_MS = 1000;
+    /**
+     * The metadata (incl. key frame indexes) of the loaded videos. Static as VIDEO_PLAY_STATE so it is probed only once per video.
+     */
+    private static final VideoMetadataStore VIDEO_METADATA_STORE = new VideoMetadataStore();
+
+    /**
+     * The thumbnails of the filmstrips of both videos. Static so the thumbnails survive configuration changes.
+     */
+    private static final ThumbnailStore THUMBNAIL_STORE = new ThumbnailStore(2);
+
+    /**
+     * Owns the two players. Static so the decoders survive configuration changes (e.g. rotation). Released when the activity finishes.
+     */
+    private static PlaybackEngine playbackEngine = null;
+
+    /**
+     * Reads the videos ahead of the players. Static and released together with the playback engine.
+     */
+    private static PrefetchEngine prefetchEngine = null;
+
+    /**
+     * Interval in which the sync engine checks the drift between the two videos.
+     */
+    public static final int SYNC_INTERVAL_MS = 100;
+
+    /**
+     * The directory (in the app's external files) the quality analysis results are written to.
+     */
+    private static final String ANALYSIS_DIRECTORY = "analysis";
+
+    /**
+     * Sub directory of the external files directory the metrics are exported to.
+     */
+    private static final String METRICS_DIRECTORY = "metrics";
+
+    /**
+     * The metrics overlay is updated at this interval.
+     */
+    public static final int METRICS_OVERLAY_INTERVAL_MS = 1000;
+
+    /**
+     * The frames buffered by one frame stepper may use this fraction of the heap (1 / divisor). Two steppers use a quarter.
+     */
+    private static final int FRAME_STEP_HEAP_DIVISOR = 8;
+
+    /**
+     * The number of pixels of a stepped frame assumed if the size of the video is not known (1080p).
+     */
+    private static final long DEFAULT_FRAME_PIXELS = 1920 * 1080;
+
+    /**
+     * The playback metrics of both players. Static as the players so the metrics survive configuration changes.
+     */
+    private static final PlaybackMetrics PLAYBACK_METRICS = new PlaybackMetrics(PlaybackClock.SYSTEM, 2);
+
+    private static boolean isMetricsOverlayShown = false;
+
+    /**
+     * The divergence hotspots found so far or null if no scan was started for the loaded videos.
+     * Static as VIDEO_PLAY_STATE so the results survive configuration changes.
+     */
+    private static List<DivergenceHotspot> divergenceHotspots = null;
+
+    private static boolean isDivergenceScanDone = false;
+
+    /**
+     * Incremented whenever the scan results get invalid (e.g. a video is loaded). Results of older scans are ignored.
+     */
+    private static int divergenceScanGeneration = 0;
+
+    /**
+     * The way the compositor composes the videos or null if the videos are shown side by side. Static so the mode survives configuration changes.
+     */
+    private static CompositorView.Mode compositorMode = null;
 
     private Button loadVideo1Button = null;
     private Button loadVideo2Button = null;
 
     /**
-     * The video control on the left / top side (depending on the device orientation.
+     * The player of the video on the left / top side (depending on the device orientation.
+     */
+    private RetainedPlayer video1 = null;
+
+    /**
+     * The player of the video on the right / bottom side (depending on the device orientation.
+     */
+    private RetainedPlayer video2 = null;
+
+    /**
+     * The surfaces the players render on.
+     */
+    private PlayerSurfaceView videoSurface1 = null;
+    private PlayerSurfaceView videoSurface2 = null;
+
+    /**
+     * Composes both videos into one surface. It is behind the video area, the surfaces of the players are hidden while it is shown.
      */
-    private VideoView video1 = null;
+    private CompositorView compositor = null;
+    private View videoArea = null;
 
     /**
-     * The video control on the right / bottom side (depending on the device orientation.
+     * Time (SystemClock.elapsedRealtime) when the activity was created or a video was loaded. Used to measure the time to the first frame.
      */
-    private VideoView video2 = null;
+    private long firstFrameTimerStartMs = 0;
+
+    /**
+     * The time from creation / loading until all loaded videos showed a frame. -1 while waiting for the first frame.
+     */
+    private long timeToFirstFrameMs = -1;
 
     private MenuItem actionPlay = null;
     private MenuItem actionPause = null;
     private MenuItem actionStop = null;
+    private MenuItem actionStepBack = null;
+    private MenuItem actionStepForward = null;
+    private MenuItem actionDifference = null;
+    private MenuItem actionAnalyze = null;
+    private MenuItem actionFindDifferences = null;
+    private MenuItem actionLink = null;
+    private MenuItem actionAlign = null;
+    private MenuItem actionGrid = null;
+    private MenuItem actionCompositor = null;
+    private MenuItem actionMetrics = null;
+
+    /**
+     * Shows the playback metrics on top of the videos.
+     */
+    private TextView metricsOverlay = null;
+    private Handler metricsHandler = null;
 
     private SeekBar video1SeekBar = null;
     private SeekBar video2SeekBar = null;
     private TextView videoTime1 = null;
     private TextView videoTime2 = null;
 
+    /**
+     * Updates the seek bars and times on every frame while a video is playing.
+     */
+    private ProgressRenderer progressRenderer = null;
+
+    /**
+     * The second currently shown in the time fields. Used to only update the text if the second changed.
+     */
+    private long shownTimeVideo1Sec = -1;
+    private long shownTimeVideo2Sec = -1;
+
+    /**
+     * Reused buffers for the formatted times so no objects are allocated per frame.
+     * One per time field: TextView.setText(char[], int, int) keeps the array instead of copying it.
+     */
+    private final char[] timeVideo1Buffer = new char[TimeFormatter.MAX_LENGTH];
+    private final char[] timeVideo2Buffer = new char[TimeFormatter.MAX_LENGTH];
+
+    /**
+     * The seek bar the user is dragging at the moment or null. Its progress is not corrected while dragging.
+     */
+    private SeekBar trackedSeekBar = null;
+
+    /**
+     * true if the dragged seek bar shows thumbnails instead of seeking the player. The player is seeked when the finger lifts.
+     */
+    private boolean isScrubbingThumbnails = false;
+
+    /**
+     * Dispatches the seeks of the seek bars to one or (if linked) both videos. At most one seek per player is in flight, the seeks requested
+     * meanwhile are coalesced.
+     */
+    private LinkedSeekCoordinator seekCoordinator = null;
+
+    /**
+     * Issues the seeks which wait for the completion of a lost seek.
+     */
+    private final Runnable seekTimeoutChecker = new Runnable() {
+        @Override
+        public void run() {
+            if (seekCoordinator.tick()) {
+                session.resync();
+            }
+        }
+    };
+
+    /**
+     * The thumbnails of the videos above the seek bars.
+     */
+    private FilmstripView filmstrip1 = null;
+    private FilmstripView filmstrip2 = null;
+
+    /**
+     * The thumbnails shown while scrubbing. Copies as a cached thumbnail may be reused for another one while it is shown.
+     */
+    private Bitmap scrubPreview1 = null;
+    private Bitmap scrubPreview2 = null;
+
+    /**
+     * Plays, pauses and stops video1 and video2 together, keeps them in sync and together while one of them stalls.
+     */
+    private ComparatorSession session = null;
+
+    /**
+     * A handler which regularly lets the sync engine correct the drift. In case this variable is set to null no further corrections will be done.
+     */
+    private Handler syncHandler = null;
+
+    /**
+     * Show the exact frames on top of the video surfaces while stepping frame by frame.
+     */
+    private ImageView frameStepImage1 = null;
+    private ImageView frameStepImage2 = null;
+
+    /**
+     * Decodes the frames while stepping. Single threaded so both videos are always stepped together.
+     */
+    private ExecutorService frameStepExecutor = null;
+
+    /**
+     * The frame steppers of the videos. Only accessed in the frameStepExecutor. null if no video is loaded or the stepper has not been used yet.
+     */
+    private FrameStepper<Bitmap> frameStepper1 = null;
+    private FrameStepper<Bitmap> frameStepper2 = null;
+    private RetrieverFrameSource frameSource1 = null;
+    private RetrieverFrameSource frameSource2 = null;
+
+    /**
+     * Frames evicted from the frame steppers which are not recycled yet because a frame step image may still show them. Only accessed in the main thread.
+     */
+    private final List<Bitmap> evictedFrames = new ArrayList<Bitmap>();
+
+    /**
+     * Hands the frames evicted in the frameStepExecutor to the main thread, which recycles them once they are not shown anymore.
+     */
+    private final FrameRingBuffer.EvictionListener<Bitmap> frameEvictionListener = new FrameRingBuffer.EvictionListener<Bitmap>() {
+        @Override
+        public void onEvicted(long frameIndex, final Bitmap frame) {
+            runOnUiThread(new Runnable() {
+                @Override
+                public void run() {
+                    evictedFrames.add(frame);
+                    recycleEvictedFrames();
+                }
+            });
+        }
+    };
+
+    /**
+     * true while the videos are stepped frame by frame. The frame steppers then know the current position.
+     */
+    private boolean isFrameStepMode = false;
 
     /**
-     * A handler which updates the position of the video seek bars. In case this variable is set to null no further updates will be done (e.g. on destroy).
+     * true while the difference of the stepped frames is shown instead of the videos.
      */
-    private Handler seekBarUpdater = null;
+    private boolean isDifferenceMode = false;
+
+    /**
+     * Shows the difference of the stepped frames and its score.
+     */
+    private ImageView differenceImage = null;
+    private TextView differenceScore = null;
+
+    /**
+     * Renders the difference of the stepped frames. Only used in the frameStepExecutor.
+     */
+    private DifferenceRenderer differenceRenderer = null;
+
+    /**
+     * Runs the quality analysis of the videos. Cancelled when the activity is destroyed.
+     */
+    private ExecutorService analysisExecutor = null;
+
+    /**
+     * true while an AlignmentTask runs. Prevents starting a second one.
+     */
+    private boolean isAligning = false;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
 
-        VIDEO_PLAY_STATE.loadState(savedInstanceState);
+        if (savedInstanceState != null) {
+            VIDEO_PLAY_STATE.loadState(savedInstanceState.getByteArray(VideoPlayState.STATE_KEY));
+        }
 
         //Layout differs depending on the rotation of the device.
         if (getResources().getConfiguration().orientation == Configuration.ORIENTATION_LANDSCAPE) {
@@ -105,16 +368,99 @@ public class VideoComparatorActivity extends AppCompatActivity {
             setContentView(R.layout.activity_video_comparator_portrait);
         }
 
-        video1 = (VideoView) findViewById(R.id.video1);
-        video2 = (VideoView) findViewById(R.id.video2);
+        firstFrameTimerStartMs = SystemClock.elapsedRealtime();
+        timeToFirstFrameMs = -1;
+
+        if (playbackEngine == null) {
+            playbackEngine = new PlaybackEngine(getApplicationContext(), 2);
+            prefetchEngine = new PrefetchEngine(2, PrefetchEngine.DEFAULT_WINDOW_BYTES);
+            prefetchEngine.start();
+        }
+        video1 = playbackEngine.getPlayer(0);
+        video2 = playbackEngine.getPlayer(1);
+        session = new ComparatorSession(PlaybackClock.SYSTEM, VIDEO_PLAY_STATE, PLAYBACK_METRICS, playbackEngine, new ComparatorSession.Listener() {
+            @Override
+            public void onPlayStateChanged() {
+                updateGuiState();
+            }
+        });
+
+        videoSurface1 = (PlayerSurfaceView) findViewById(R.id.video1);
+        videoSurface2 = (PlayerSurfaceView) findViewById(R.id.video2);
+        videoArea = findViewById(R.id.videoArea);
+        compositor = (CompositorView) findViewById(R.id.compositor);
+        compositor.setListener(new CompositorView.Listener() {
+            @Override
+            public void onStreamSurfacesCreated(Surface[] surfaces) {
+                video1.attach(surfaces[0]);
+                video2.attach(surfaces[1]);
+            }
+
+            @Override
+            public void onStreamSurfacesDestroyed(Surface[] surfaces) {
+                video1.detach(surfaces[0]);
+                video2.detach(surfaces[1]);
+            }
+        });
+        frameStepImage1 = (ImageView) findViewById(R.id.frameStepVideo1);
+        frameStepImage2 = (ImageView) findViewById(R.id.frameStepVideo2);
+        frameStepExecutor = Executors.newSingleThreadExecutor();
+        differenceImage = (ImageView) findViewById(R.id.differenceImage);
+        differenceScore = (TextView) findViewById(R.id.differenceScore);
+        metricsOverlay = (TextView) findViewById(R.id.metricsOverlay);
+        differenceRenderer = new DifferenceRenderer();
+        analysisExecutor = Executors.newSingleThreadExecutor();
 
         video1SeekBar = (SeekBar) findViewById(R.id.seekBarVideo1);
         video2SeekBar = (SeekBar) findViewById(R.id.seekBarVideo2);
         videoTime1 = (TextView) findViewById(R.id.timeVideo1);
         videoTime2 = (TextView) findViewById(R.id.timeVideo2);
+        filmstrip1 = (FilmstripView) findViewById(R.id.filmstripVideo1);
+        filmstrip2 = (FilmstripView) findViewById(R.id.filmstripVideo2);
 
         registerVideoListeners();
 
+        VIDEO_METADATA_STORE.setListener(new VideoMetadataStore.Listener() {
+            @Override
+            public void onMetadataAvailable(Uri video, VideoMetadata metadata) {
+                applyKnownMetadata(video, metadata);
+                showFilmstrip(video);
+                for (RetainedPlayer player : new RetainedPlayer[]{video1, video2}) {
+                    if (video.equals(getUriFor(player))) {
+                        //Read ahead from the key frames instead of the estimated offsets.
+                        prefetchEngine.setTimeline(getPlayerIndex(player), metadata.getKeyframeIndex(), player.getDuration());
+                    }
+                }
+            }
+        });
+
+        THUMBNAIL_STORE.setListener(new ThumbnailStore.Listener() {
+            @Override
+            public void onThumbnailLoaded(int slot) {
+                (slot == 0 ? filmstrip1 : filmstrip2).invalidate();
+            }
+
+            @Override
+            public void onThumbnailsEvicted() {
+                filmstrip1.invalidate();
+                filmstrip2.invalidate();
+            }
+        });
+        //The thumbnails are still cached after a configuration change.
+        showFilmstrip(getVideoUri(0));
+        showFilmstrip(getVideoUri(1));
+
+        seekCoordinator = new LinkedSeekCoordinator(new SeekScheduler(PlaybackClock.SYSTEM, video1), new SeekScheduler(PlaybackClock.SYSTEM, video2));
+        seekCoordinator.getScheduler(0).setLatencyHistogram(PLAYBACK_METRICS.getPlayer(0).getSeekLatency());
+        seekCoordinator.getScheduler(1).setLatencyHistogram(PLAYBACK_METRICS.getPlayer(1).getSeekLatency());
+        seekCoordinator.setLinked(VIDEO_PLAY_STATE.isLinked());
+        seekCoordinator.setOffsetMs(1, VIDEO_PLAY_STATE.getLinkOffsetMs());
+        seekCoordinator.setDurationMs(0, video1.getDuration());
+        seekCoordinator.setDurationMs(1, video2.getDuration());
+        session.setSeekCoordinator(seekCoordinator);
+        video1.setSeekScheduler(seekCoordinator.getScheduler(0));
+        video2.setSeekScheduler(seekCoordinator.getScheduler(1));
+
         loadVideo1Button = (Button) findViewById(R.id.loadVideo1Button);
         loadVideo2Button = (Button) findViewById(R.id.loadVideo2Button);
 
@@ -143,6 +489,14 @@ public class VideoComparatorActivity extends AppCompatActivity {
         loadVideo2Button.setOnTouchListener(loadVideoTouchListener);
 
         restoreState();
+
+        //Attach after restoring so a retained player renders its current frame on the new surface.
+        videoSurface1.setPlayer(video1);
+        videoSurface2.setPlayer(video2);
+
+        if (compositorMode != null) {
+            showCompositor(compositorMode);
+        }
     }
 
     @Override
@@ -150,6 +504,28 @@ public class VideoComparatorActivity extends AppCompatActivity {
         super.onStart();
 
         initializeSeekBarsAndTime();
+
+        //The players keep playing across a rotation.
+        if (VIDEO_PLAY_STATE.isVideo1Playing() || VIDEO_PLAY_STATE.isVideo2Playing()) {
+            session.startSync();
+            startSyncTicks();
+        }
+
+        if (isMetricsOverlayShown) {
+            showMetricsOverlay();
+        }
+    }
+
+    @Override
+    protected void onResume() {
+        super.onResume();
+        compositor.onResume();
+    }
+
+    @Override
+    protected void onPause() {
+        super.onPause();
+        compositor.onPause();
     }
 
     @Override
@@ -157,60 +533,161 @@ public class VideoComparatorActivity extends AppCompatActivity {
         super.onStop();
 
         //This will stop updating the seek bars.
-        seekBarUpdater = null;
+        progressRenderer.stop();
+        stopSync();
+        metricsHandler = null;
+
+        //The retained players would keep playing in the background. Only a rotation keeps them playing.
+        if (!isChangingConfigurations() && (VIDEO_PLAY_STATE.isVideo1Playing() || VIDEO_PLAY_STATE.isVideo2Playing())) {
+            pauseVideos();
+        }
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+
+        leaveFrameStepMode();
+        releaseFrameSteppers(true, true);
+        frameStepExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                differenceRenderer.release();
+            }
+        });
+        frameStepExecutor.shutdown();
+
+        //Interrupts a running analysis.
+        analysisExecutor.shutdownNow();
+        if (!isDivergenceScanDone) {
+            //The interrupted scan is started again on demand.
+            resetDivergenceScan();
+        }
+        video1SeekBar.removeCallbacks(seekTimeoutChecker);
+        video2SeekBar.removeCallbacks(seekTimeoutChecker);
+        VIDEO_METADATA_STORE.setListener(null);
+        THUMBNAIL_STORE.setListener(null);
+        //The retained players outlive the schedulers of this activity.
+        video1.setSeekScheduler(null);
+        video2.setSeekScheduler(null);
+
+        if (isFinishing()) {
+            THUMBNAIL_STORE.cancel(0);
+            THUMBNAIL_STORE.cancel(1);
+
+            //No new activity will take over the players.
+            playbackEngine.release();
+            playbackEngine = null;
+            prefetchEngine.release();
+            prefetchEngine = null;
+            compositorMode = null;
+        } else {
+            playbackEngine.clearListeners();
+        }
+    }
+
+    /**
+     * @return The time from creation (or loading a video) until all loaded videos showed their first frame in milliseconds. -1 if not all videos showed a frame yet.
+     */
+    long getTimeToFirstFrameMs() {
+        return timeToFirstFrameMs;
     }
 
     /**
-     * Starts the seek bar / time updater and listeners for user input
+     * Starts the seek bar / time updater and listeners for user input.
+     * The seek bars are only updated on every frame while a video is playing.
      */
     private void initializeSeekBarsAndTime() {
         SeekBar.OnSeekBarChangeListener seekBarChangeListener = new SeekBar.OnSeekBarChangeListener() {
             @Override
             public void onProgressChanged(SeekBar seekBar, int progress, boolean fromUser) {
                 if (fromUser) {
-                    double multiplier = (double) progress / seekBar.getMax();
-
-                    VideoView videoView = getVideoViewFor(seekBar);
-
-                    if (videoView != null) {
-
-                        int duration = videoView.getDuration();
-
-                        int seekTo = (int) (duration * multiplier);
-
-                        videoView.seekTo(seekTo);
+                    RetainedPlayer player = getPlayerFor(seekBar);
+
+                    if (player != null) {
+                        leaveFrameStepMode();
+
+                        int seekTo = getSeekPositionFor(seekBar, player);
+
+                        //While dragging show the thumbnails: No decoder is involved at all. The players are seeked when the finger lifts.
+                        int playerIndex = getPlayerIndex(player);
+                        isScrubbingThumbnails = showScrubPreview(player, seekTo);
+                        if (isScrubbingThumbnails) {
+                            if (seekCoordinator.isLinked()) {
+                                RetainedPlayer otherPlayer = player == video1 ? video2 : video1;
+                                showScrubPreview(otherPlayer, seekCoordinator.getLinkedPositionMs(playerIndex, seekTo, getPlayerIndex(otherPlayer)));
+                            }
+                            return;
+                        }
+
+                        //No thumbnails (yet): Seek to key frames. They are shown without decoding other frames first.
+                        seekCoordinator.getScheduler(0).setKeyframeIndex(VIDEO_METADATA_STORE.getKeyframeIndex(getVideoUri(0)));
+                        seekCoordinator.getScheduler(1).setKeyframeIndex(VIDEO_METADATA_STORE.getKeyframeIndex(getVideoUri(1)));
+                        seekCoordinator.seekFast(playerIndex, seekTo);
+                        prefetchEngine.setPositionMs(playerIndex, seekTo);
+
+                        if (seekCoordinator.isLinked()) {
+                            //Moves the other seek bar too.
+                            progressRenderer.requestFrame();
+                        }
                     }
                 }
             }
 
             @Override
             public void onStartTrackingTouch(SeekBar seekBar) {
-                //Nothing to do
+                trackedSeekBar = seekBar;
             }
 
             @Override
             public void onStopTrackingTouch(SeekBar seekBar) {
-                //Nothing to do
+                trackedSeekBar = null;
+
+                //The finger lifted: seek to the exact position. The player decodes from the previous key frame (pre-roll).
+                //The sync engine is resynced as soon as the seeks of all moved players completed (the user changed the offset between the videos on purpose).
+                RetainedPlayer player = getPlayerFor(seekBar);
+                if (player != null) {
+                    seekCoordinator.seekPrecise(getPlayerIndex(player), getSeekPositionFor(seekBar, player));
+
+                    //In case the player never reports the completion of the seek.
+                    seekBar.removeCallbacks(seekTimeoutChecker);
+                    seekBar.postDelayed(seekTimeoutChecker, SeekScheduler.DEFAULT_TIMEOUT_MS);
+                }
+
+                if (isScrubbingThumbnails) {
+                    isScrubbingThumbnails = false;
+                    hideScrubPreview(video1);
+                    hideScrubPreview(video2);
+                }
+
+                //Show the new time even if the videos are paused.
+                progressRenderer.requestFrame();
             }
         };
 
         video1SeekBar.setOnSeekBarChangeListener(seekBarChangeListener);
         video2SeekBar.setOnSeekBarChangeListener(seekBarChangeListener);
 
-        //This updates the seek bars regularly.
-        seekBarUpdater = new Handler();
-        seekBarUpdater.postDelayed(new Runnable() {
+        shownTimeVideo1Sec = -1;
+        shownTimeVideo2Sec = -1;
+
+        progressRenderer = new ProgressRenderer(new ProgressRenderer.Listener() {
             @Override
-            public void run() {
-                //Update the seekbar again in the future
-                if (seekBarUpdater != null) {
-                    correctVideoSeek(video1SeekBar);
-                    correctVideoSeek(video2SeekBar);
+            public boolean onRenderProgress() {
+                correctVideoSeek(video1SeekBar);
+                correctVideoSeek(video2SeekBar);
+                prefetchEngine.setPositionMs(0, video1.getCurrentPosition());
+                prefetchEngine.setPositionMs(1, video2.getCurrentPosition());
 
-                    seekBarUpdater.postDelayed(this, SEEK_BAR_UPDATE_DELAY_MS);
-                }
+                return VIDEO_PLAY_STATE.isVideo1Playing() || VIDEO_PLAY_STATE.isVideo2Playing();
             }
-        }, SEEK_BAR_UPDATE_DELAY_MS);
+        });
+
+        //Show the current position once, continue rendering in case the videos are playing.
+        progressRenderer.requestFrame();
+        if (VIDEO_PLAY_STATE.isVideo1Playing() || VIDEO_PLAY_STATE.isVideo2Playing()) {
+            progressRenderer.start();
+        }
     }
 
     /**
@@ -220,139 +697,328 @@ public class VideoComparatorActivity extends AppCompatActivity {
      * @param seekBar The seek bar to adjust.
      */
     private void correctVideoSeek(SeekBar seekBar) {
-        VideoView videoView = getVideoViewFor(seekBar);
+        RetainedPlayer player = getPlayerFor(seekBar);
 
-        if (videoView != null) {
+        if (player != null && seekBar != trackedSeekBar) {
             //Progress is from 0 to 100
-            int duration = videoView.getDuration();
+            int duration = player.getDuration();
             if (duration == -1) { //Seems the duration is -1 if no video is loaded. (not API documented!)
                 seekBar.setProgress(0);
             } else {
-                int currentPos = videoView.getCurrentPosition();
-                double multiplier = (double) currentPos / duration;
-
-                //Math.ceil because otherwise we would never reach 100% and the seek bar jumps back when manually set.
-                int seekTo = (int) Math.ceil(seekBar.getMax() * multiplier);
-
-                seekBar.setProgress(seekTo);
+                int currentPos = player.getCurrentPosition();
+                seekBar.setProgress(ComparatorSession.toProgress(currentPos, duration, seekBar.getMax()));
 
                 TextView timeField = getTimeFieldFor(seekBar);
-                if (timeField != null) {
+                long currentSec = currentPos / 1000;
+                if (timeField != null && currentSec != getShownTimeSec(seekBar)) {
                     //Formatted milliseconds to 0:21:55 -> h:mm:ss
-                    timeField.setText(String.format("%d:%02d:%02d",
-                            TimeUnit.MILLISECONDS.toHours(currentPos),
-                            TimeUnit.MILLISECONDS.toMinutes(currentPos),
-                            TimeUnit.MILLISECONDS.toSeconds(currentPos)));
+                    char[] timeBuffer = getTimeBufferFor(seekBar);
+                    int length = TimeFormatter.format(currentPos, timeBuffer);
+                    timeField.setText(timeBuffer, 0, length);
+                    setShownTimeSec(seekBar, currentSec);
                 }
             }
         }
     }
 
-    private TextView getTimeFieldFor(SeekBar seekBar) {
+    /**
+     * Maps the progress of the seek bar to a position in the video.
+     *
+     * @return The position in milliseconds.
+     */
+    private int getSeekPositionFor(SeekBar seekBar, RetainedPlayer player) {
+        return ComparatorSession.toPositionMs(seekBar.getProgress(), seekBar.getMax(), player.getDuration());
+    }
+
+    /**
+     * @param video The index of the video.
+     * @return The uri of the video or null if not loaded. The play state only holds the uri strings.
+     */
+    private static Uri getVideoUri(int video) {
+        String uri = VIDEO_PLAY_STATE.getSnapshot().getVideo(video);
+        return uri != null ? Uri.parse(uri) : null;
+    }
+
+    private Uri getUriFor(RetainedPlayer player) {
+        if (player == video1) {
+            return getVideoUri(0);
+        } else if (player == video2) {
+            return getVideoUri(1);
+        }
+
+        return null;
+    }
+
+    private long getShownTimeSec(SeekBar seekBar) {
+        return seekBar == video1SeekBar ? shownTimeVideo1Sec : shownTimeVideo2Sec;
+    }
+
+    private void setShownTimeSec(SeekBar seekBar, long timeSec) {
         if (seekBar == video1SeekBar) {
-            return videoTime1;
+            shownTimeVideo1Sec = timeSec;
         } else if (seekBar == video2SeekBar) {
-            return videoTime2;
+            shownTimeVideo2Sec = timeSec;
         }
+    }
 
-        return null;
+    /**
+     * @return The buffer the text of the time field of the seek bar is formatted into.
+     */
+    private char[] getTimeBufferFor(SeekBar seekBar) {
+        return seekBar == video1SeekBar ? timeVideo1Buffer : timeVideo2Buffer;
     }
 
-    private VideoView getVideoViewFor(SeekBar seekBar) {
+    private TextView getTimeFieldFor(SeekBar seekBar) {
         if (seekBar == video1SeekBar) {
-            return video1;
+            return videoTime1;
         } else if (seekBar == video2SeekBar) {
-            return video2;
+            return videoTime2;
         }
 
         return null;
     }
 
-    private void registerVideoListeners() {
-        video1.setOnCompletionListener(new MediaPlayer.OnCompletionListener() {
-            @Override
-            public void onCompletion(MediaPlayer mp) {
-                //Video 1 finished
-                VIDEO_PLAY_STATE.setVideo2State(VideoPlayState.State.LOADED);
-            }
-        });
-        video2.setOnCompletionListener(new MediaPlayer.OnCompletionListener() {
-            @Override
-            public void onCompletion(MediaPlayer mp) {
-                //Video2 finished
-                VIDEO_PLAY_STATE.setVideo2State(VideoPlayState.State.LOADED);
-            }
-        });
+    /**
+     * @return The index of the player in the seek coordinator.
+     */
+    private int getPlayerIndex(RetainedPlayer player) {
+        return player == video1 ? 0 : 1;
+    }
 
-        video1.setOnErrorListener(new MediaPlayer.OnErrorListener() {
-            @Override
-            public boolean onError(MediaPlayer mp, int what, int extra) {
-                VIDEO_PLAY_STATE.setVideo1State(VideoPlayState.State.ERROR);
+    private SeekBar getSeekBarFor(RetainedPlayer player) {
+        return player == video1 ? video1SeekBar : video2SeekBar;
+    }
 
-                //false -> let the video view inform the user about errors
-                return false;
-            }
-        });
-        video2.setOnErrorListener(new MediaPlayer.OnErrorListener() {
-            @Override
-            public boolean onError(MediaPlayer mp, int what, int extra) {
-                VIDEO_PLAY_STATE.setVideo2State(VideoPlayState.State.ERROR);
+    private FilmstripView getFilmstripFor(RetainedPlayer player) {
+        return player == video1 ? filmstrip1 : filmstrip2;
+    }
 
-                //false -> let the video view inform the user about errors
-                return false;
-            }
-        });
+    private ImageView getFrameStepImageFor(RetainedPlayer player) {
+        return player == video1 ? frameStepImage1 : frameStepImage2;
+    }
 
-        video1.setOnInfoListener(new MediaPlayer.OnInfoListener() {
-            @Override
-            public boolean onInfo(MediaPlayer mp, int what, int extra) {
-                boolean isHandled = handleVideoInfo(video1, what);
-                updateGuiState();
+    /**
+     * Shows the thumbnail nearest to the given position on top of the video and the position in the time field.
+     *
+     * @return false if no thumbnail of the video is loaded yet.
+     */
+    private boolean showScrubPreview(RetainedPlayer player, int positionMs) {
+        FilmstripView filmstrip = getFilmstripFor(player);
+        if (filmstrip.getPlan() == null) {
+            return false;
+        }
 
-                return isHandled;
+        Bitmap thumbnail = THUMBNAIL_STORE.getNearestThumbnail(filmstrip.getContentHash(), filmstrip.getPlan(), positionMs);
+        if (thumbnail == null) {
+            return false;
+        }
+
+        Bitmap preview = player == video1 ? scrubPreview1 : scrubPreview2;
+        if (preview == null || preview.getWidth() != thumbnail.getWidth() || preview.getHeight() != thumbnail.getHeight()) {
+            preview = Bitmap.createBitmap(thumbnail.getWidth(), thumbnail.getHeight(), Bitmap.Config.ARGB_8888);
+            if (player == video1) {
+                scrubPreview1 = preview;
+            } else {
+                scrubPreview2 = preview;
             }
-        });
+        }
+        new Canvas(preview).drawBitmap(thumbnail, 0, 0, null);
+
+        ImageView previewImage = getFrameStepImageFor(player);
+        previewImage.setImageBitmap(preview);
+        previewImage.setVisibility(View.VISIBLE);
+        recycleEvictedFrames();
+
+        SeekBar seekBar = getSeekBarFor(player);
+        TextView timeField = getTimeFieldFor(seekBar);
+        char[] timeBuffer = getTimeBufferFor(seekBar);
+        int length = TimeFormatter.format(positionMs, timeBuffer);
+        timeField.setText(timeBuffer, 0, length);
+        setShownTimeSec(seekBar, -1);
+
+        return true;
+    }
+
+    private void hideScrubPreview(RetainedPlayer player) {
+        ImageView previewImage = getFrameStepImageFor(player);
+        previewImage.setVisibility(View.GONE);
+        previewImage.setImageBitmap(null);
+        recycleEvictedFrames();
+    }
+
+    /**
+     * Shows the filmstrip of the given video and loads its thumbnails in the background.
+     * Has no effect if the video is not loaded or its metadata is not known yet (called again once the metadata is available).
+     *
+     * @param video The video.
+     */
+    private void showFilmstrip(Uri video) {
+        Long contentHash = VIDEO_METADATA_STORE.getContentHash(video);
+        VideoMetadata metadata = VIDEO_METADATA_STORE.getMetadata(video);
+        if (contentHash == null || metadata == null || metadata.getDurationMs() <= 0) {
+            return;
+        }
+
+        FilmstripPlan plan = new FilmstripPlan(metadata.getDurationMs(), ThumbnailStore.MAX_THUMBNAILS);
+        if (video.equals(getVideoUri(0))) {
+            filmstrip1.setFilmstrip(THUMBNAIL_STORE, contentHash, plan);
+            THUMBNAIL_STORE.requestFilmstrip(this, 0, video, contentHash, plan);
+        }
+        if (video.equals(getVideoUri(1))) {
+            filmstrip2.setFilmstrip(THUMBNAIL_STORE, contentHash, plan);
+            THUMBNAIL_STORE.requestFilmstrip(this, 1, video, contentHash, plan);
+        }
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+
+        //The thumbnails can be loaded from the disk again.
+        if (level >= TRIM_MEMORY_BACKGROUND) {
+            THUMBNAIL_STORE.trimMemory(true);
+        } else if (level >= TRIM_MEMORY_RUNNING_LOW) {
+            THUMBNAIL_STORE.trimMemory(false);
+        }
+    }
+
+    private RetainedPlayer getPlayerFor(SeekBar seekBar) {
+        if (seekBar == video1SeekBar) {
+            return video1;
+        } else if (seekBar == video2SeekBar) {
+            return video2;
+        }
+
+        return null;
+    }
 
-        video2.setOnInfoListener(new MediaPlayer.OnInfoListener() {
+    private void registerVideoListeners() {
+        RetainedPlayer.Listener playerListener = new RetainedPlayer.Listener() {
             @Override
-            public boolean onInfo(MediaPlayer mp, int what, int extra) {
-                boolean isHandled = handleVideoInfo(video2, what);
+            public void onPrepared(RetainedPlayer player) {
+                getSurfaceFor(player).setVideoSize(player.getVideoWidth(), player.getVideoHeight());
+                compositor.setVideoSize(getPlayerIndex(player), player.getVideoWidth(), player.getVideoHeight());
+                PLAYBACK_METRICS.getPlayer(getPlayerIndex(player)).onPrepared();
+                seekCoordinator.setDurationMs(getPlayerIndex(player), player.getDuration());
+                prefetchEngine.setTimeline(getPlayerIndex(player), VIDEO_METADATA_STORE.getKeyframeIndex(getUriFor(player)), player.getDuration());
+                if (progressRenderer != null) {
+                    //Show the duration and position of the prepared video.
+                    progressRenderer.requestFrame();
+                }
+            }
+
+            @Override
+            public void onCompletion(RetainedPlayer player) {
+                //Video finished
+                session.onCompletion(getPlayerIndex(player));
+                updateGuiState();
+            }
+
+            @Override
+            public boolean onError(RetainedPlayer player, int what, int extra) {
+                session.onError(getPlayerIndex(player));
+
+                //There is no video view anymore which informs the user about errors.
+                Toast.makeText(VideoComparatorActivity.this, R.string.video_error, Toast.LENGTH_LONG).show();
+                updateGuiState();
+                return true;
+            }
+
+            @Override
+            public boolean onInfo(RetainedPlayer player, int what, int extra) {
+                boolean isHandled = handleVideoInfo(player, what);
                 updateGuiState();
 
                 return isHandled;
             }
-        });
 
-        //Mute the videos
-        MediaPlayer.OnPreparedListener muteListener = new MediaPlayer.OnPreparedListener() {
             @Override
-            public void onPrepared(MediaPlayer mp) {
-                mp.setVolume(0.0f, 0.0f);
+            public void onVideoSizeChanged(RetainedPlayer player, int width, int height) {
+                getSurfaceFor(player).setVideoSize(width, height);
+                compositor.setVideoSize(getPlayerIndex(player), width, height);
+            }
+
+            @Override
+            public void onFirstFrame(RetainedPlayer player) {
+                PLAYBACK_METRICS.getPlayer(getPlayerIndex(player)).onFirstFrame();
+                checkFirstFrameShown();
+            }
+
+            @Override
+            public void onSeekComplete(RetainedPlayer player) {
+                boolean isSettled = seekCoordinator.onSeekComplete(getPlayerIndex(player));
+                session.onSeekComplete(getPlayerIndex(player));
+                if (isSettled && trackedSeekBar == null) {
+                    //The positions the user seeked to are reached. Keep the new offset between the videos.
+                    session.resync();
+                }
             }
         };
-        video1.setOnPreparedListener(muteListener);
-        video2.setOnPreparedListener(muteListener);
+
+        video1.setListener(playerListener);
+        video2.setListener(playerListener);
+
+        playbackEngine.setListener(new PlaybackEngine.Listener() {
+            @Override
+            public void onStarted() {
+                //The sync engine was started when play was pressed. The offsets are valid once the videos actually play.
+                session.onPlayersStarted();
+            }
+        });
+    }
+
+    private PlayerSurfaceView getSurfaceFor(RetainedPlayer player) {
+        return player == video1 ? videoSurface1 : videoSurface2;
+    }
+
+    /**
+     * Stops the time to first frame measurement in case all loaded videos are showing a frame.
+     */
+    private void checkFirstFrameShown() {
+        boolean isWaiting = (video1.getUri() != null && !video1.isShowingFrame()) || (video2.getUri() != null && !video2.isShowingFrame());
+        if (!isWaiting && timeToFirstFrameMs < 0) {
+            timeToFirstFrameMs = SystemClock.elapsedRealtime() - firstFrameTimerStartMs;
+            Log.i(TAG, "Time to first frame: " + timeToFirstFrameMs + "ms");
+        }
     }
 
     /**
      * Manages all the infos we got from the InfoListener from the two videos.
      * Have a look at registerVideoListeners where the InfoListeners are registered.
      *
-     * @param videoView The video view which emitted the info.
+     * @param player The player which emitted the info.
      * @param what      The information constant. Corresponds to MediaPlayer.MEDIA_INFO_xxx
      * @return true if the information should be treated as handled (see InfoListener.onInfo).
      */
-    private boolean handleVideoInfo(VideoView videoView, int what) {
+    private boolean handleVideoInfo(RetainedPlayer player, int what) {
         boolean isHandled = false;
         switch (what) {
-            //TODO: Think about implementing states: MediaPlayer.MEDIA_INFO_BUFFERING_START, MEDIA_INFO_BUFFERING_END
+            case MediaPlayer.MEDIA_INFO_BUFFERING_START:
+                Log.i(TAG, getPlayerNameForLogging(player) + " is buffering");
+                //The partner is paused until the stall ends.
+                session.onBufferingStart(getPlayerIndex(player));
+                isHandled = true;
+                break;
+
+            case MediaPlayer.MEDIA_INFO_BUFFERING_END:
+                session.onBufferingEnd(getPlayerIndex(player));
+                isHandled = true;
+                break;
+
+            case MediaPlayer.MEDIA_INFO_VIDEO_TRACK_LAGGING:
+                Log.i(TAG, getPlayerNameForLogging(player) + " can not decode fast enough");
+                session.onVideoTrackLagging(getPlayerIndex(player));
+                isHandled = true;
+                break;
+
             case MediaPlayer.MEDIA_INFO_NOT_SEEKABLE:
-                Log.i(TAG, getVideoViewNameForLogging(videoView) + " is not seekable");
+                Log.i(TAG, getPlayerNameForLogging(player) + " is not seekable");
 
                 //Seek should be disabled
-                if (videoView == video1) {
+                VIDEO_METADATA_STORE.setSeekable(getUriFor(player), false);
+                if (player == video1) {
                     VIDEO_PLAY_STATE.setVideo1Seekable(false);
-                } else if (videoView == video2) {
+                } else if (player == video2) {
                     VIDEO_PLAY_STATE.setVideo2Seekable(false);
                 }
                 isHandled = true;
@@ -366,10 +1032,10 @@ public class VideoComparatorActivity extends AppCompatActivity {
         return isHandled;
     }
 
-    private String getVideoViewNameForLogging(VideoView videoView) {
-        if (videoView == video1) {
+    private String getPlayerNameForLogging(RetainedPlayer player) {
+        if (player == video1) {
             return "'video 1'";
-        } else if (videoView == video2) {
+        } else if (player == video2) {
             return "'video 2'";
         } else {
             return "'unknown video'";
@@ -378,43 +1044,109 @@ public class VideoComparatorActivity extends AppCompatActivity {
 
     /**
      * Restores the video state saved in VIDEO_PLAY_STATE.
+     * Videos which are still loaded in the retained players (e.g. after a rotation) are not loaded again.
      */
     private void restoreState() {
-        loadVideo(VIDEO_PLAY_STATE.getVideo1(), video1);
-        loadVideo(VIDEO_PLAY_STATE.getVideo2(), video2);
+        restoreVideo(getVideoUri(0), VIDEO_PLAY_STATE.getVideo1PauseTime(), video1);
+        restoreVideo(getVideoUri(1), VIDEO_PLAY_STATE.getVideo2PauseTime(), video2);
 
         updateGuiState();
     }
 
+    private void restoreVideo(Uri video, Double pauseTimeInSec, RetainedPlayer player) {
+        if (video != null && video.equals(player.getUri())) {
+            //Still loaded, the player kept its position.
+            return;
+        }
+
+        loadVideo(video, player);
+
+        if (video != null && pauseTimeInSec != null) {
+            //The player is new (e.g. the process was killed): continue where the video was paused.
+            seekPreciseTo(player, (int) (pauseTimeInSec * 1000));
+            if (player == video1) {
+                VIDEO_PLAY_STATE.pauseVideo1(pauseTimeInSec);
+            } else {
+                VIDEO_PLAY_STATE.pauseVideo2(pauseTimeInSec);
+            }
+        }
+    }
+
     /**
-     * (Un)loads a video in a video view.
+     * (Un)loads a video in a player.
      * As a side effect the currently loaded video is stored in VIDEO_PLAY_STATE
      *
      * @param videoToPlay The uri to be played. In case the uri is null the video is unloaded.
-     * @param videoView   The video view in which to load the video.
+     * @param player      The player in which to load the video.
      */
-    private void loadVideo(Uri videoToPlay, VideoView videoView) {
-        if (videoToPlay == null) {
-            //Unload video
-            videoView.stopPlayback();
-            videoView.setVideoURI(null);
-        } else {
-            //Load video
-            videoView.setVideoURI(videoToPlay);
+    private void loadVideo(Uri videoToPlay, RetainedPlayer player) {
+        //Unloads the video in case the uri is null. Cancels the preparation of a video picked before.
+        playbackEngine.load(player, videoToPlay);
+        prefetchEngine.setSource(getPlayerIndex(player), videoToPlay != null ? PrefetchSources.opener(this, videoToPlay) : null);
+        if (videoToPlay != null) {
+            VIDEO_METADATA_STORE.requestMetadata(this, videoToPlay);
+            PLAYBACK_METRICS.getPlayer(getPlayerIndex(player)).onPrepareStarted();
         }
 
+        firstFrameTimerStartMs = SystemClock.elapsedRealtime();
+        timeToFirstFrameMs = -1;
+
+        //The frames of the old video are not valid anymore.
+        leaveFrameStepMode();
+        releaseFrameSteppers(player == video1, player == video2);
+        resetDivergenceScan();
+
+        seekCoordinator.reset(getPlayerIndex(player));
+        seekCoordinator.setDurationMs(getPlayerIndex(player), 0);
+
+        //The filmstrip is shown again once the metadata of the new video is known.
+        THUMBNAIL_STORE.cancel(player == video1 ? 0 : 1);
+        getFilmstripFor(player).clearFilmstrip();
+
         //Remember current video
-        if (videoView == video1) {
-            VIDEO_PLAY_STATE.setVideo1(videoToPlay);
+        if (player == video1) {
+            VIDEO_PLAY_STATE.setVideo1(videoToPlay != null ? videoToPlay.toString() : null);
             //initially a video is seekable. The media player will push an info in case this is not true.
             VIDEO_PLAY_STATE.setVideo1Seekable(videoToPlay != null);
         } else {
-            VIDEO_PLAY_STATE.setVideo2(videoToPlay);
+            VIDEO_PLAY_STATE.setVideo2(videoToPlay != null ? videoToPlay.toString() : null);
 
             //initially a video is seekable. The media player will push an info in case this is not true.
             VIDEO_PLAY_STATE.setVideo2Seekable(videoToPlay != null);
         }
 
+        //Setting a video unlinks the videos: The offset belonged to the old video.
+        seekCoordinator.setLinked(false);
+        seekCoordinator.setOffsetMs(1, 0);
+
+        applyKnownMetadata(videoToPlay, VIDEO_METADATA_STORE.getMetadata(videoToPlay));
+        if (videoToPlay != null) {
+            //In case the metadata is known already.
+            showFilmstrip(videoToPlay);
+        }
+
+        updateGuiState();
+    }
+
+    /**
+     * Applies metadata which is known from an earlier load (e.g. from the cache) so we do not have to wait for the player to find it out.
+     *
+     * @param video    The video the metadata belongs to.
+     * @param metadata The metadata or null if it is not known.
+     */
+    private void applyKnownMetadata(Uri video, VideoMetadata metadata) {
+        if (video == null || metadata == null || metadata.isSeekable()) {
+            //A video is seekable initially anyway.
+            return;
+        }
+
+        if (video.equals(getVideoUri(0))) {
+            VIDEO_PLAY_STATE.setVideo1Seekable(false);
+        }
+        if (video.equals(getVideoUri(1))) {
+            VIDEO_PLAY_STATE.setVideo2Seekable(false);
+        }
+
         updateGuiState();
     }
 
@@ -422,13 +1154,13 @@ public class VideoComparatorActivity extends AppCompatActivity {
     protected void onActivityResult(int requestCode, int resultCode, Intent data) {
         if (resultCode == RESULT_OK) {
             //Load video intent emitted from a load video button
-            VideoView videoView = video1;
+            RetainedPlayer player = video1;
 
             if (requestCode == PICK_VIDEO2_REQUEST) {
-                videoView = video2;
+                player = video2;
             }
 
-            loadVideo(data.getData(), videoView);
+            loadVideo(data.getData(), player);
         }
     }
 
@@ -436,7 +1168,7 @@ public class VideoComparatorActivity extends AppCompatActivity {
     public void onSaveInstanceState(Bundle outState, PersistableBundle outPersistentState) {
         super.onSaveInstanceState(outState, outPersistentState);
 
-        VIDEO_PLAY_STATE.saveState(outState);
+        outState.putByteArray(VideoPlayState.STATE_KEY, VIDEO_PLAY_STATE.saveState());
     }
 
     @Override
@@ -448,6 +1180,16 @@ public class VideoComparatorActivity extends AppCompatActivity {
         actionPlay = menu.findItem(R.id.action_play);
         actionPause = menu.findItem(R.id.action_pause);
         actionStop = menu.findItem(R.id.action_stop);
+        actionStepBack = menu.findItem(R.id.action_step_back);
+        actionStepForward = menu.findItem(R.id.action_step_forward);
+        actionDifference = menu.findItem(R.id.action_difference);
+        actionAnalyze = menu.findItem(R.id.action_analyze);
+        actionFindDifferences = menu.findItem(R.id.action_find_differences);
+        actionLink = menu.findItem(R.id.action_link);
+        actionAlign = menu.findItem(R.id.action_align);
+        actionGrid = menu.findItem(R.id.action_grid);
+        actionCompositor = menu.findItem(R.id.action_compositor);
+        actionMetrics = menu.findItem(R.id.action_metrics);
 
         updateGuiState();
 
@@ -471,42 +1213,683 @@ public class VideoComparatorActivity extends AppCompatActivity {
         } else if (id == R.id.action_stop) {
             stopVideos();
             return true;
+        } else if (id == R.id.action_step_back) {
+            stepFrames(-1);
+            return true;
+        } else if (id == R.id.action_step_forward) {
+            stepFrames(1);
+            return true;
+        } else if (id == R.id.action_difference) {
+            if (isDifferenceMode) {
+                leaveDifferenceMode();
+            } else {
+                //The difference is computed of the frames at the current positions.
+                isDifferenceMode = true;
+                stepFrames(0);
+            }
+            updateGuiState();
+            return true;
+        } else if (id == R.id.action_analyze) {
+            analyzeQuality();
+            return true;
+        } else if (id == R.id.action_find_differences) {
+            findDifferences();
+            return true;
+        } else if (id == R.id.action_link) {
+            if (VIDEO_PLAY_STATE.isLinked()) {
+                unlinkVideos();
+            } else {
+                //The offset the user adjusted by hand is kept.
+                int offsetMs = video2.getCurrentPosition() - video1.getCurrentPosition();
+                linkVideos(offsetMs, getString(R.string.link_offset, offsetMs / 1000.0));
+            }
+            return true;
+        } else if (id == R.id.action_align) {
+            alignVideos();
+            return true;
+        } else if (id == R.id.action_grid) {
+            showGrid();
+            return true;
+        } else if (id == R.id.action_metrics) {
+            if (isMetricsOverlayShown) {
+                hideMetricsOverlay();
+            } else {
+                showMetricsOverlay();
+            }
+            updateGuiState();
+            return true;
+        } else if (id == R.id.action_export_metrics) {
+            exportMetrics();
+            return true;
+        } else if (id == R.id.action_compositor_off) {
+            hideCompositor();
+            return true;
+        } else if (id == R.id.action_compositor_split) {
+            showCompositor(CompositorView.Mode.SPLIT);
+            return true;
+        } else if (id == R.id.action_compositor_checkerboard) {
+            showCompositor(CompositorView.Mode.CHECKERBOARD);
+            return true;
+        } else if (id == R.id.action_compositor_flicker) {
+            showCompositor(CompositorView.Mode.FLICKER);
+            return true;
         }
 
         return super.onOptionsItemSelected(item);
     }
 
     private void playVideos() {
-        video1.start();
-        video2.start();
-        VIDEO_PLAY_STATE.setVideo1State(VideoPlayState.State.PLAYING);
-        VIDEO_PLAY_STATE.setVideo2State(VideoPlayState.State.PLAYING);
+        //The videos have been seeked to the stepped frames already.
+        leaveFrameStepMode();
+
+        //The videos are started together as soon as both are prepared.
+        session.play();
+        startSyncTicks();
+        progressRenderer.start();
 
         updateGuiState();
     }
 
     private void pauseVideos() {
-        video1.pause();
-        video2.pause();
-        VIDEO_PLAY_STATE.setVideo1State(VideoPlayState.State.PAUSING);
-        VIDEO_PLAY_STATE.setVideo2State(VideoPlayState.State.PAUSING);
+        stopSync();
+        progressRenderer.stop();
+        //Remembers the positions in case the process is killed.
+        session.pause();
 
         updateGuiState();
     }
 
     private void stopVideos() {
-        //Stop playback unloads the video...
-        video1.stopPlayback();
-        video2.stopPlayback();
-        loadVideo(VIDEO_PLAY_STATE.getVideo1(), video1);
-        loadVideo(VIDEO_PLAY_STATE.getVideo2(), video2);
+        stopSync();
+        progressRenderer.stop();
+        leaveFrameStepMode();
+
+        //The videos stay loaded, they are rewound only.
+        session.stop();
+
+        progressRenderer.requestFrame();
+        updateGuiState();
+    }
+
+    /**
+     * Computes the PSNR and SSIM of all frames of both videos in the background. The results are written to the analysis directory of the app.
+     */
+    private void analyzeQuality() {
+        File baseDirectory = getExternalFilesDir(null);
+        if (baseDirectory == null) {
+            //External storage not available
+            baseDirectory = getFilesDir();
+        }
+        File outputDirectory = new File(baseDirectory, ANALYSIS_DIRECTORY);
+        String name = "quality-" + System.currentTimeMillis();
+
+        Toast.makeText(this, R.string.analysis_started, Toast.LENGTH_SHORT).show();
+
+        final Context applicationContext = getApplicationContext();
+        analysisExecutor.execute(new QualityAnalysisTask(this, getVideoUri(0), getVideoUri(1), outputDirectory, name,
+                new QualityAnalysisTask.Listener() {
+                    @Override
+                    public void onAnalysisDone(QualitySummary summary, File timeSeries, File summaryFile) {
+                        String message = applicationContext.getString(R.string.analysis_done, summary.getMeanPsnr(), summary.getMeanSsim(),
+                                summary.getFrameCount(), timeSeries.getParent());
+                        Toast.makeText(applicationContext, message, Toast.LENGTH_LONG).show();
+                    }
+
+                    @Override
+                    public void onAnalysisFailed(Exception e) {
+                        Toast.makeText(applicationContext, R.string.analysis_failed, Toast.LENGTH_LONG).show();
+                    }
+                }));
+    }
+
+    /**
+     * Links the seek bars: Either seek bar moves both videos to the same timestamp (plus the offset).
+     *
+     * @param offsetMs The offset of video 2 relative to video 1 in milliseconds.
+     * @param message  The message shown to the user.
+     */
+    private void linkVideos(int offsetMs, String message) {
+        VIDEO_PLAY_STATE.link(offsetMs);
+        seekCoordinator.setOffsetMs(1, offsetMs);
+        seekCoordinator.setLinked(true);
+
+        Toast.makeText(this, message, Toast.LENGTH_SHORT).show();
+        updateGuiState();
+    }
+
+    private void unlinkVideos() {
+        VIDEO_PLAY_STATE.unlink();
+        seekCoordinator.setLinked(false);
+        seekCoordinator.setOffsetMs(1, 0);
+        updateGuiState();
+    }
+
+    /**
+     * Opens the grid mode with the loaded videos. More videos can be added there.
+     */
+    private void showGrid() {
+        if (VIDEO_PLAY_STATE.shouldShowPauseButton()) {
+            pauseVideos();
+        }
+
+        List<String> videos = new ArrayList<String>();
+        for (int i = 0; i < VIDEO_PLAY_STATE.getVideoCount(); i++) {
+            String video = VIDEO_PLAY_STATE.getSnapshot().getVideo(i);
+            if (video != null) {
+                videos.add(video);
+            }
+        }
+
+        Intent intent = new Intent(this, GridComparatorActivity.class);
+        intent.putExtra(GridComparatorActivity.EXTRA_VIDEOS, videos.toArray(new String[videos.size()]));
+        startActivity(intent);
+    }
+
+    /**
+     * Finds the offset between the videos in the background. On success the videos are linked with the offset and video 2 is seeked
+     * to the position of video 1 plus the offset.
+     */
+    private void alignVideos() {
+        if (isAligning) {
+            Toast.makeText(this, R.string.alignment_running, Toast.LENGTH_SHORT).show();
+            return;
+        }
+
+        isAligning = true;
+        Toast.makeText(this, R.string.alignment_started, Toast.LENGTH_SHORT).show();
+
+        final Uri uri1 = getVideoUri(0);
+        final Uri uri2 = getVideoUri(1);
+        analysisExecutor.execute(new AlignmentTask(this, uri1, uri2, new AlignmentTask.Listener() {
+            @Override
+            public void onAligned(TemporalAlignment alignment) {
+                isAligning = false;
+                if (isDestroyed() || !uri1.equals(getVideoUri(0)) || !uri2.equals(getVideoUri(1))) {
+                    //A video has been loaded in the meantime.
+                    return;
+                }
+
+                if (alignment == null || !alignment.isReliable()) {
+                    Toast.makeText(VideoComparatorActivity.this, R.string.alignment_not_found, Toast.LENGTH_LONG).show();
+                    return;
+                }
+
+                int offsetMs = alignment.getOffsetMs();
+                leaveFrameStepMode();
+                linkVideos(offsetMs, getString(R.string.alignment_done, offsetMs / 1000.0, alignment.getCorrelation() * 100));
+                seekCoordinator.seekPrecise(0, video1.getCurrentPosition());
+                video2SeekBar.removeCallbacks(seekTimeoutChecker);
+                video2SeekBar.postDelayed(seekTimeoutChecker, SeekScheduler.DEFAULT_TIMEOUT_MS);
+                progressRenderer.requestFrame();
+            }
+
+            @Override
+            public void onAlignmentFailed(Exception e) {
+                isAligning = false;
+                if (!isDestroyed()) {
+                    Toast.makeText(VideoComparatorActivity.this, R.string.alignment_failed, Toast.LENGTH_LONG).show();
+                }
+            }
+        }));
+    }
+
+    /**
+     * Starts the scan for the positions where the videos differ the most. Shows the hotspots found so far if the scan is already running or done.
+     */
+    private void findDifferences() {
+        if (divergenceHotspots == null) {
+            startDivergenceScan();
+            Toast.makeText(this, R.string.divergence_scan_started, Toast.LENGTH_SHORT).show();
+        } else {
+            showDivergenceHotspots();
+        }
+    }
+
+    private void startDivergenceScan() {
+        final int generation = divergenceScanGeneration;
+        final Context applicationContext = getApplicationContext();
+        divergenceHotspots = Collections.emptyList();
+        isDivergenceScanDone = false;
+
+        analysisExecutor.execute(new DivergenceScanTask(this, getVideoUri(0), getVideoUri(1),
+                new DivergenceScanTask.Listener() {
+                    @Override
+                    public void onHotspotsChanged(List<DivergenceHotspot> hotspots, boolean isDone) {
+                        if (generation != divergenceScanGeneration) {
+                            //A video has been loaded in the meantime.
+                            return;
+                        }
+                        divergenceHotspots = hotspots;
+                        isDivergenceScanDone = isDone;
+                        if (isDone) {
+                            Toast.makeText(applicationContext, applicationContext.getString(R.string.divergence_scan_done, hotspots.size()),
+                                    Toast.LENGTH_SHORT).show();
+                        }
+                    }
+
+                    @Override
+                    public void onScanFailed(Exception e) {
+                        if (generation == divergenceScanGeneration) {
+                            resetDivergenceScan();
+                            Toast.makeText(applicationContext, R.string.divergence_scan_failed, Toast.LENGTH_LONG).show();
+                        }
+                    }
+                }));
+    }
+
+    /**
+     * Forgets the results of the divergence scan. A running scan is not stopped but its results are ignored.
+     */
+    private static void resetDivergenceScan() {
+        divergenceScanGeneration++;
+        divergenceHotspots = null;
+        isDivergenceScanDone = false;
+    }
+
+    /**
+     * Shows the hotspots found so far in a dialog. Selecting one seeks both videos to it.
+     */
+    private void showDivergenceHotspots() {
+        final List<DivergenceHotspot> hotspots = divergenceHotspots;
+        if (hotspots.isEmpty() && isDivergenceScanDone) {
+            Toast.makeText(this, R.string.divergence_none, Toast.LENGTH_SHORT).show();
+            return;
+        }
+
+        char[] buffer = new char[TimeFormatter.MAX_LENGTH];
+        CharSequence[] items = new CharSequence[hotspots.size()];
+        for (int i = 0; i < items.length; i++) {
+            DivergenceHotspot hotspot = hotspots.get(i);
+            String time1 = new String(buffer, 0, TimeFormatter.format(hotspot.getTimeUs1() / 1000, buffer));
+            String time2 = new String(buffer, 0, TimeFormatter.format(hotspot.getTimeUs2() / 1000, buffer));
+            items[i] = getString(R.string.divergence_hotspot, time1, time2, hotspot.getScore() * 100);
+        }
+
+        AlertDialog.Builder builder = new AlertDialog.Builder(this);
+        builder.setTitle(isDivergenceScanDone ? R.string.divergence_title : R.string.divergence_title_scanning);
+        if (items.length == 0) {
+            builder.setMessage(R.string.divergence_none_yet);
+        } else {
+            builder.setItems(items, new DialogInterface.OnClickListener() {
+                @Override
+                public void onClick(DialogInterface dialog, int which) {
+                    seekToHotspot(hotspots.get(which));
+                }
+            });
+        }
+        builder.show();
+    }
+
+    /**
+     * Pauses the videos at the positions of the given hotspot.
+     */
+    private void seekToHotspot(DivergenceHotspot hotspot) {
+        leaveFrameStepMode();
+        if (VIDEO_PLAY_STATE.getVideo1() == null || VIDEO_PLAY_STATE.getVideo2() == null) {
+            //A video was unloaded meanwhile.
+            return;
+        }
 
-        VIDEO_PLAY_STATE.setVideo1State(VideoPlayState.State.LOADED);
-        VIDEO_PLAY_STATE.setVideo2State(VideoPlayState.State.LOADED);
+        seekPreciseEach(new int[]{(int) (hotspot.getTimeUs1() / 1000), (int) (hotspot.getTimeUs2() / 1000)});
+
+        //Remembers the new positions as pause times.
+        pauseVideos();
+        progressRenderer.requestFrame();
+    }
+
+    /**
+     * Steps both videos by the given number of frames. The frames are decoded in the background and shown on top of the video surfaces.
+     *
+     * @param frames The number of frames to step. Negative to step back.
+     */
+    private void stepFrames(final int frames) {
+        //Positions must be read in the main thread.
+        final boolean isEntering = !isFrameStepMode;
+        final int position1 = video1.getCurrentPosition();
+        final int position2 = video2.getCurrentPosition();
+        final Uri uri1 = getVideoUri(0);
+        final Uri uri2 = getVideoUri(1);
+        final boolean showDifference = isDifferenceMode;
+
+        isFrameStepMode = true;
+
+        frameStepExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    if (uri1 != null && frameStepper1 == null) {
+                        frameSource1 = new RetrieverFrameSource(VideoComparatorActivity.this, uri1, VIDEO_METADATA_STORE.getMetadata(uri1));
+                        frameStepper1 = createFrameStepper(frameSource1);
+                    }
+                    if (uri2 != null && frameStepper2 == null) {
+                        frameSource2 = new RetrieverFrameSource(VideoComparatorActivity.this, uri2, VIDEO_METADATA_STORE.getMetadata(uri2));
+                        frameStepper2 = createFrameStepper(frameSource2);
+                    }
+                } catch (RuntimeException e) {
+                    //The retriever throws if the video can not be opened. The stepper stays null and the video is not stepped.
+                    Log.w(TAG, "Could not open video for frame stepping", e);
+                }
+
+                final Bitmap frame1 = stepFrameStepper(frameStepper1, isEntering, position1, frames);
+                final Bitmap frame2 = stepFrameStepper(frameStepper2, isEntering, position2, frames);
+                final int steppedPosition1 = frameStepper1 == null ? 0 : (int) frameStepper1.getPositionMs();
+                final int steppedPosition2 = frameStepper2 == null ? 0 : (int) frameStepper2.getPositionMs();
+
+                final Bitmap difference;
+                final double score;
+                if (showDifference && frame1 != null && frame2 != null) {
+                    difference = differenceRenderer.render(frame1, frame2, FrameDifference.Mode.HEATMAP);
+                    score = differenceRenderer.getLastScore();
+                } else {
+                    difference = null;
+                    score = 0.0;
+                }
+
+                //Show both frames at once.
+                runOnUiThread(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (!isFrameStepMode) {
+                            //Left frame step mode in the meantime (e.g. play pressed).
+                            return;
+                        }
+
+                        showSteppedFrame(video1, frameStepImage1, frame1, steppedPosition1);
+                        showSteppedFrame(video2, frameStepImage2, frame2, steppedPosition2);
+                        recycleEvictedFrames();
+                        showDifference(difference, score);
+                        progressRenderer.requestFrame();
+                    }
+                });
+            }
+        });
+
+        if (VIDEO_PLAY_STATE.isVideo1Playing() || VIDEO_PLAY_STATE.isVideo2Playing()) {
+            pauseVideos();
+        }
+    }
 
+    /**
+     * Creates a frame stepper which buffers as many frames as fit into its share of the heap. Must be called in the frameStepExecutor.
+     */
+    private FrameStepper<Bitmap> createFrameStepper(RetrieverFrameSource source) {
+        //The retriever decodes full resolution ARGB_8888 frames.
+        long pixels = source.getWidth() > 0 && source.getHeight() > 0 ? (long) source.getWidth() * source.getHeight() : DEFAULT_FRAME_PIXELS;
+        int capacity = FrameStepper.capacityForBudget(Runtime.getRuntime().maxMemory() / FRAME_STEP_HEAP_DIVISOR, pixels * 4);
+        FrameStepper<Bitmap> frameStepper = new FrameStepper<Bitmap>(source, capacity, FrameStepper.readAheadForCapacity(capacity));
+        frameStepper.setEvictionListener(frameEvictionListener);
+        return frameStepper;
+    }
+
+    /**
+     * Recycles the evicted frames which are not shown by a frame step image anymore. Must be called in the main thread whenever a frame step image changes.
+     */
+    private void recycleEvictedFrames() {
+        for (Iterator<Bitmap> iterator = evictedFrames.iterator(); iterator.hasNext(); ) {
+            Bitmap frame = iterator.next();
+            if (!isShowing(frameStepImage1, frame) && !isShowing(frameStepImage2, frame)) {
+                frame.recycle();
+                iterator.remove();
+            }
+        }
+    }
+
+    private static boolean isShowing(ImageView image, Bitmap bitmap) {
+        Drawable drawable = image.getDrawable();
+        return drawable instanceof BitmapDrawable && ((BitmapDrawable) drawable).getBitmap() == bitmap;
+    }
+
+    /**
+     * Steps a frame stepper. Must be called in the frameStepExecutor.
+     *
+     * @return The frame after stepping or null if no video is loaded.
+     */
+    private static Bitmap stepFrameStepper(FrameStepper<Bitmap> frameStepper, boolean isEntering, int positionMs, int frames) {
+        if (frameStepper == null) {
+            return null;
+        }
+
+        if (isEntering) {
+            frameStepper.setPosition(positionMs);
+        }
+
+        return frameStepper.step(frames);
+    }
+
+    private void showSteppedFrame(RetainedPlayer player, ImageView frameStepImage, Bitmap frame, int positionMs) {
+        if (frame == null) {
+            frameStepImage.setVisibility(View.GONE);
+        } else {
+            frameStepImage.setImageBitmap(frame);
+            frameStepImage.setVisibility(View.VISIBLE);
+
+            //Keep the video at the frame so play continues from there. The player shows the key frame only, that's why the image is shown on top.
+            seekPreciseTo(player, positionMs);
+        }
+    }
+
+    /**
+     * Seeks one video exactly through the seek coordinator, the other videos are left alone even if linked.
+     */
+    private void seekPreciseTo(RetainedPlayer player, int positionMs) {
+        int[] positionsMs = {-1, -1};
+        positionsMs[getPlayerIndex(player)] = positionMs;
+        seekPreciseEach(positionsMs);
+    }
+
+    /**
+     * Seeks every video exactly to its own target through the seek coordinator.
+     *
+     * @param positionsMs The target of every video in milliseconds. Negative to leave the video alone.
+     */
+    private void seekPreciseEach(int[] positionsMs) {
+        seekCoordinator.seekPreciseEach(positionsMs);
+
+        //In case a player never reports the completion of its seek.
+        video1SeekBar.removeCallbacks(seekTimeoutChecker);
+        video1SeekBar.postDelayed(seekTimeoutChecker, SeekScheduler.DEFAULT_TIMEOUT_MS);
+    }
+
+    private void showDifference(Bitmap difference, double score) {
+        if (difference == null || !isDifferenceMode) {
+            differenceImage.setVisibility(View.GONE);
+            differenceScore.setVisibility(View.GONE);
+        } else {
+            differenceImage.setImageBitmap(difference);
+            differenceImage.setVisibility(View.VISIBLE);
+            differenceScore.setText(getString(R.string.difference_score, score * 100));
+            differenceScore.setVisibility(View.VISIBLE);
+        }
+    }
+
+    /**
+     * Shows the metrics overlay and updates it regularly until it is hidden or the activity is stopped.
+     */
+    private void showMetricsOverlay() {
+        isMetricsOverlayShown = true;
+        metricsOverlay.setVisibility(View.VISIBLE);
+
+        //Compare against the local handler like the sync handler: A runnable of a previous start must not continue.
+        final Handler handler = new Handler();
+        metricsHandler = handler;
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (metricsHandler == handler) {
+                    metricsOverlay.setText(PLAYBACK_METRICS.formatSummary());
+                    handler.postDelayed(this, METRICS_OVERLAY_INTERVAL_MS);
+                }
+            }
+        });
+    }
+
+    private void hideMetricsOverlay() {
+        isMetricsOverlayShown = false;
+        metricsHandler = null;
+        metricsOverlay.setVisibility(View.GONE);
+    }
+
+    /**
+     * Writes the playback metrics as JSON and CSV in the background.
+     */
+    private void exportMetrics() {
+        File baseDirectory = getExternalFilesDir(null);
+        if (baseDirectory == null) {
+            //External storage not available
+            baseDirectory = getFilesDir();
+        }
+        File outputDirectory = new File(baseDirectory, METRICS_DIRECTORY);
+        String name = "metrics-" + System.currentTimeMillis();
+
+        //Not in the analysisExecutor: A running quality analysis would delay the export by minutes.
+        final Context applicationContext = getApplicationContext();
+        new Thread(new MetricsExportTask(PLAYBACK_METRICS, outputDirectory, name, new MetricsExportTask.Listener() {
+            @Override
+            public void onExportDone(File json, File csv) {
+                Toast.makeText(applicationContext, applicationContext.getString(R.string.metrics_exported, json.getParent()), Toast.LENGTH_LONG).show();
+            }
+
+            @Override
+            public void onExportFailed(Exception e) {
+                Toast.makeText(applicationContext, R.string.metrics_export_failed, Toast.LENGTH_LONG).show();
+            }
+        }), "MetricsExport").start();
+    }
+
+    /**
+     * Shows both videos composed into one surface instead of side by side.
+     * The players render directly into the textures of the compositor, so there is no copy of the frames.
+     *
+     * @param mode The way the videos are composed.
+     */
+    private void showCompositor(CompositorView.Mode mode) {
+        //The stepped frames are shown side by side, they would hide the composition.
+        leaveFrameStepMode();
+
+        compositorMode = mode;
+        compositor.setMode(mode);
+        compositor.setVideoSize(0, video1.getVideoWidth(), video1.getVideoHeight());
+        compositor.setVideoSize(1, video2.getVideoWidth(), video2.getVideoHeight());
+
+        if (compositor.getVisibility() != View.VISIBLE) {
+            //Hiding the surfaces detaches the players, the compositor attaches them to its textures as soon as they are created.
+            videoSurface1.setVisibility(View.INVISIBLE);
+            videoSurface2.setVisibility(View.INVISIBLE);
+            videoArea.setBackgroundColor(Color.TRANSPARENT);
+            compositor.setVisibility(View.VISIBLE);
+        }
         updateGuiState();
     }
 
+    /**
+     * Shows the videos side by side again. Has no effect if the compositor is not shown.
+     */
+    private void hideCompositor() {
+        compositorMode = null;
+
+        if (compositor.getVisibility() == View.VISIBLE) {
+            FramePacingStats pacingStats = compositor.getPacingStats();
+            Log.i(TAG, "Compositor frame pacing: " + pacingStats);
+            RenderTimeStats zoomedRenderTime = compositor.getZoomedRenderTime();
+            if (zoomedRenderTime.getFrameCount() > 0) {
+                Log.i(TAG, "Compositor render time while zoomed: " + zoomedRenderTime);
+                zoomedRenderTime.reset();
+            }
+            for (int i = 0; i < CompositorView.STREAM_COUNT; i++) {
+                PLAYBACK_METRICS.getPlayer(i).addDroppedFrames(pacingStats.getDroppedSourceFrames(i));
+            }
+            compositor.setVisibility(View.GONE);
+            videoArea.setBackgroundResource(android.R.color.background_dark);
+            videoSurface1.setVisibility(View.VISIBLE);
+            videoSurface2.setVisibility(View.VISIBLE);
+        }
+        updateGuiState();
+    }
+
+    /**
+     * Hides the difference. The stepped frames are still shown.
+     */
+    private void leaveDifferenceMode() {
+        isDifferenceMode = false;
+        if (actionDifference != null) {
+            actionDifference.setChecked(false);
+        }
+        differenceImage.setVisibility(View.GONE);
+        differenceImage.setImageBitmap(null);
+        differenceScore.setVisibility(View.GONE);
+    }
+
+    /**
+     * Hides the stepped frames and the difference. Has no effect if not in frame step mode.
+     */
+    private void leaveFrameStepMode() {
+        leaveDifferenceMode();
+        isFrameStepMode = false;
+        frameStepImage1.setVisibility(View.GONE);
+        frameStepImage1.setImageBitmap(null);
+        frameStepImage2.setVisibility(View.GONE);
+        frameStepImage2.setImageBitmap(null);
+        recycleEvictedFrames();
+    }
+
+    /**
+     * Releases the frame steppers of the given videos in the frameStepExecutor.
+     */
+    private void releaseFrameSteppers(final boolean releaseVideo1, final boolean releaseVideo2) {
+        frameStepExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (releaseVideo1 && frameSource1 != null) {
+                    //The buffered frames are recycled in the main thread.
+                    if (frameStepper1 != null) {
+                        frameStepper1.clear();
+                    }
+                    frameSource1.release();
+                    frameSource1 = null;
+                    frameStepper1 = null;
+                }
+                if (releaseVideo2 && frameSource2 != null) {
+                    if (frameStepper2 != null) {
+                        frameStepper2.clear();
+                    }
+                    frameSource2.release();
+                    frameSource2 = null;
+                    frameStepper2 = null;
+                }
+            }
+        });
+    }
+
+    /**
+     * Starts the handler which lets the session correct the drift regularly. The session must be syncing already.
+     */
+    private void startSyncTicks() {
+        //Compare against the local handler: A runnable of a previous start must not continue after a restart.
+        final Handler handler = new Handler();
+        syncHandler = handler;
+        handler.postDelayed(new Runnable() {
+            @Override
+            public void run() {
+                if (syncHandler == handler) {
+                    session.tickSync();
+                    handler.postDelayed(this, SYNC_INTERVAL_MS);
+                }
+            }
+        }, SYNC_INTERVAL_MS);
+    }
+
+    /**
+     * Stops syncing and the handler. Has no effect if not syncing.
+     */
+    private void stopSync() {
+        syncHandler = null;
+
+        if (session != null && session.stopSync()) {
+            VideoSyncEngine syncEngine = session.getSyncEngine();
+            Log.i(TAG, "Max drift between videos: " + syncEngine.getMaxDriftMs() + "ms, corrective seeks: " + syncEngine.getCorrectiveSeekCount());
+        }
+    }
+
     /**
      * Updates the state of widgets. E.g. enables / disables the play button according to current video plays.
      */
@@ -524,6 +1907,47 @@ public class VideoComparatorActivity extends AppCompatActivity {
             actionStop.setVisible(VIDEO_PLAY_STATE.shouldShowStopButton());
         }
 
+        if (actionStepBack != null && actionStepForward != null) {
+            boolean showFrameStep = VIDEO_PLAY_STATE.shouldShowFrameStepButtons();
+            actionStepBack.setVisible(showFrameStep);
+            actionStepForward.setVisible(showFrameStep);
+        }
+
+        if (actionDifference != null) {
+            actionDifference.setVisible(VIDEO_PLAY_STATE.shouldShowDifferenceButton());
+            actionDifference.setChecked(isDifferenceMode);
+        }
+
+        if (actionAnalyze != null) {
+            actionAnalyze.setVisible(VIDEO_PLAY_STATE.shouldShowAnalyzeButton());
+        }
+
+        if (actionFindDifferences != null) {
+            actionFindDifferences.setVisible(VIDEO_PLAY_STATE.shouldShowAnalyzeButton());
+        }
+
+        if (actionLink != null) {
+            actionLink.setVisible(VIDEO_PLAY_STATE.shouldShowLinkButton());
+            actionLink.setChecked(VIDEO_PLAY_STATE.isLinked());
+        }
+
+        if (actionAlign != null) {
+            actionAlign.setVisible(VIDEO_PLAY_STATE.shouldShowLinkButton());
+        }
+
+        if (actionGrid != null) {
+            actionGrid.setVisible(VIDEO_PLAY_STATE.getSnapshot().isAnyLoaded());
+        }
+
+        if (actionMetrics != null) {
+            actionMetrics.setChecked(isMetricsOverlayShown);
+        }
+
+        if (actionCompositor != null) {
+            actionCompositor.setVisible(VIDEO_PLAY_STATE.shouldShowLinkButton());
+            actionCompositor.getSubMenu().findItem(getCompositorActionId()).setChecked(true);
+        }
+
         //Seekbar visibility
         if (VIDEO_PLAY_STATE.getVideo1() != null && VIDEO_PLAY_STATE.isVideo1Seekable()) {
             video1SeekBar.setVisibility(View.VISIBLE);
@@ -537,4 +1961,22 @@ public class VideoComparatorActivity extends AppCompatActivity {
             video2SeekBar.setVisibility(View.INVISIBLE);
         }
     }
+
+    /**
+     * @return The id of the menu item of the current compositor mode.
+     */
+    private static int getCompositorActionId() {
+        if (compositorMode == null) {
+            return R.id.action_compositor_off;
+        }
+
+        switch (compositorMode) {
+            case SPLIT:
+                return R.id.action_compositor_split;
+            case CHECKERBOARD:
+                return R.id.action_compositor_checkerboard;
+            default:
+                return R.id.action_compositor_flicker;
+        }
+    }
 }
@@ -0,0 +1,257 @@
+/*
+ * Copyright (C) 2015 Erwin Betschart
+ *
+ * This file is part of Video Comparator.
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.lipsch.videocomparator;
+
+import android.content.Context;
+import android.media.MediaExtractor;
+import android.media.MediaFormat;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.ParcelFileDescriptor;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Finds out the metadata (duration, frame rate, resolution, key frame index...) of every loaded video once in the background.
+ * The metadata is persisted in a VideoMetadataCache keyed by the content hash of the video, so reopening a known video skips the probing.
+ * This class is thread-safe.
+ */
+class VideoMetadataStore {
+
+    private static final String TAG = VideoMetadataStore.class.getName();
+
+    /**
+     * The maximum size of the persistent cache.
+     */
+    public static final long CACHE_MAX_BYTES = 4 * 1024 * 1024;
+
+    private static final String CACHE_DIRECTORY = "video-metadata";
+
+    /**
+     * Gets informed when the metadata of a video is available. Called in the main thread.
+     */
+    interface Listener {
+        void onMetadataAvailable(Uri video, VideoMetadata metadata);
+    }
+
+    private final Map<Uri, VideoMetadata> metadata = new ConcurrentHashMap<Uri, VideoMetadata>();
+    private final Map<Uri, Long> contentHashes = new ConcurrentHashMap<Uri, Long>();
+
+    /**
+     * The videos for which the metadata is being probed or could not be probed. Prevents probing twice.
+     */
+    private final Set<Uri> requested = Collections.synchronizedSet(new HashSet<Uri>());
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    /**
+     * Only accessed in the executor. Created when first needed as the cache directory depends on the context.
+     */
+    private VideoMetadataCache cache = null;
+
+    private volatile Listener listener = null;
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Probes the metadata of the given video in the background or reads it from the cache.
+     * Has no effect if the metadata is already known or being probed.
+     *
+     * @param context The context to resolve the uri.
+     * @param video   The video.
+     */
+    public void requestMetadata(Context context, final Uri video) {
+        if (video == null || !requested.add(video)) {
+            return;
+        }
+
+        final Context applicationContext = context.getApplicationContext();
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    final VideoMetadata result = loadMetadata(applicationContext, video);
+                    metadata.put(video, result);
+
+                    mainHandler.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            Listener currentListener = listener;
+                            if (currentListener != null) {
+                                currentListener.onMetadataAvailable(video, result);
+                            }
+                        }
+                    });
+                } catch (IOException e) {
+                    Log.w(TAG, "Could not probe " + video, e);
+                } catch (RuntimeException e) {
+                    Log.w(TAG, "Could not probe " + video, e);
+                }
+            }
+        });
+    }
+
+    /**
+     * @param video The video.
+     * @return The metadata of the video or null if it is not available (yet).
+     */
+    public VideoMetadata getMetadata(Uri video) {
+        return video == null ? null : metadata.get(video);
+    }
+
+    /**
+     * @param video The video.
+     * @return The key frame index of the video or null if it is not available (yet).
+     */
+    public KeyframeIndex getKeyframeIndex(Uri video) {
+        VideoMetadata videoMetadata = getMetadata(video);
+        return videoMetadata == null ? null : videoMetadata.getKeyframeIndex();
+    }
+
+    /**
+     * @param video The video.
+     * @return The content hash of the video or null if it is not known (yet). Known as soon as the metadata is available.
+     */
+    public Long getContentHash(Uri video) {
+        return video == null ? null : contentHashes.get(video);
+    }
+
+    /**
+     * Remembers the seekability of a video (the player tells it only after preparing).
+     *
+     * @param video    The video.
+     * @param seekable true if the video is seekable.
+     */
+    public void setSeekable(final Uri video, final boolean seekable) {
+        final VideoMetadata current = getMetadata(video);
+        if (current == null || current.isSeekable() == seekable) {
+            return;
+        }
+
+        final VideoMetadata updated = current.withSeekable(seekable);
+        metadata.put(video, updated);
+
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                Long contentHash = contentHashes.get(video);
+                if (cache != null && contentHash != null) {
+                    try {
+                        cache.put(contentHash, updated);
+                    } catch (IOException e) {
+                        Log.w(TAG, "Could not cache metadata of " + video, e);
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Reads the metadata from the cache or probes it. Must be called in the executor.
+     */
+    private VideoMetadata loadMetadata(Context context, Uri video) throws IOException {
+        if (cache == null) {
+            cache = new VideoMetadataCache(new File(context.getCacheDir(), CACHE_DIRECTORY), CACHE_MAX_BYTES);
+        }
+
+        ParcelFileDescriptor fileDescriptor = context.getContentResolver().openFileDescriptor(video, "r");
+        if (fileDescriptor == null) {
+            throw new IOException("Could not open " + video);
+        }
+
+        FileInputStream in = new FileInputStream(fileDescriptor.getFileDescriptor());
+        try {
+            FileChannel channel = in.getChannel();
+            long contentHash = ContentHash.compute(channel, ContentHash.DEFAULT_SAMPLE_BYTES);
+            contentHashes.put(video, contentHash);
+
+            VideoMetadata cached = cache.get(contentHash);
+            if (cached != null) {
+                Log.i(TAG, "Metadata of " + video + " found in cache");
+                return cached;
+            }
+
+            VideoMetadata probed = probe(context, video, channel);
+            try {
+                cache.put(contentHash, probed);
+            } catch (IOException e) {
+                Log.w(TAG, "Could not cache metadata of " + video, e);
+            }
+            return probed;
+        } finally {
+            in.close();
+            fileDescriptor.close();
+        }
+    }
+
+    private static VideoMetadata probe(Context context, Uri video, FileChannel channel) throws IOException {
+        double frameRate = RetrieverFrameSource.DEFAULT_FRAME_RATE;
+        int width = 0;
+        int height = 0;
+        long durationMs = 0;
+
+        MediaExtractor extractor = new MediaExtractor();
+        try {
+            extractor.setDataSource(context, video, null);
+            for (int i = 0; i < extractor.getTrackCount(); i++) {
+                MediaFormat format = extractor.getTrackFormat(i);
+                String mime = format.getString(MediaFormat.KEY_MIME);
+                if (mime != null && mime.startsWith("video/")) {
+                    //Stored as integer or float depending on the extractor.
+                    frameRate = RetrieverFrameSource.getFrameRate(format);
+                    width = format.getInteger(MediaFormat.KEY_WIDTH);
+                    height = format.getInteger(MediaFormat.KEY_HEIGHT);
+                    if (format.containsKey(MediaFormat.KEY_DURATION)) {
+                        durationMs = format.getLong(MediaFormat.KEY_DURATION) / 1000;
+                    }
+                    break;
+                }
+            }
+        } finally {
+            extractor.release();
+        }
+
+        KeyframeIndex keyframeIndex = null;
+        try {
+            keyframeIndex = Mp4KeyframeIndexParser.parse(channel);
+            Log.i(TAG, "Indexed " + keyframeIndex.size() + " key frames of " + video);
+        } catch (IOException e) {
+            //E.g. not an MP4 file. Seeks are done without index.
+            Log.i(TAG, "No key frame index for " + video + ": " + e.getMessage());
+        }
+
+        //Initially a video is seekable. The media player will push an info in case this is not true.
+        return new VideoMetadata(durationMs, true, frameRate, width, height, keyframeIndex);
+    }
+}
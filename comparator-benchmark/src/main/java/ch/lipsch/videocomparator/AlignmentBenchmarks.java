@@ -0,0 +1,71 @@
+/*
+ * Copyright (C) 2015 Erwin Betschart
+ *
+ * This file is part of Video Comparator.
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.lipsch.videocomparator;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Temporal alignment of two one hour videos sampled at 4 frames per second (14400 samples each), searching offsets of up to five minutes.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class AlignmentBenchmarks {
+
+    private static final double SAMPLE_RATE = 4.0;
+    private static final int SAMPLES = (int) (3600 * SAMPLE_RATE);
+    private static final int SHIFT = 1000;
+
+    private final TemporalAligner aligner = new TemporalAligner(SAMPLE_RATE, 5 * 60 * 1000, 10 * 1000);
+    private ActivitySignal signal1;
+    private ActivitySignal signal2;
+
+    @Setup
+    public void setUp() {
+        //Sparse cuts on a noisy background, the content of the first signal appears SHIFT samples later in the second.
+        Random random = new Random(1);
+        double[] values = new double[SAMPLES + SHIFT];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = random.nextDouble() * 0.5;
+            if (random.nextInt(20) == 0) {
+                values[i] += 10 + random.nextDouble() * 10;
+            }
+        }
+        signal1 = new ActivitySignal(SAMPLES);
+        signal2 = new ActivitySignal(SAMPLES);
+        for (int i = 0; i < SAMPLES; i++) {
+            signal1.append(values[i + SHIFT]);
+            signal2.append(values[i]);
+        }
+    }
+
+    @Benchmark
+    public double align() {
+        return aligner.align(signal1, signal2).getCorrelation();
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright (C) 2015 Erwin Betschart
+ *
+ * This file is part of Video Comparator.
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.lipsch.videocomparator;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Compares the results of a JMH run with a baseline and fails if a benchmark got slower than the threshold allows.
+ * Benchmarks which are not part of the baseline (new ones) are reported but never fail.
+ * <p/>
+ * Usage: BenchmarkRegressionCheck results.json baseline.json [threshold], the threshold is the allowed relative change (default 0.10).
+ */
+public final class BenchmarkRegressionCheck {
+
+    public static final double DEFAULT_THRESHOLD = 0.10;
+
+    private BenchmarkRegressionCheck() {
+        //Utility class
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: BenchmarkRegressionCheck results.json baseline.json [threshold]");
+            System.exit(2);
+        }
+
+        File baselineFile = new File(args[1]);
+        if (!baselineFile.isFile()) {
+            System.out.println("No baseline at " + baselineFile + ", nothing to compare. Store the results as baseline to enable the check.");
+            return;
+        }
+
+        double threshold = args.length > 2 ? Double.parseDouble(args[2]) : DEFAULT_THRESHOLD;
+        List<String> regressions = check(read(new File(args[0])), read(baselineFile), threshold, System.out);
+        if (!regressions.isEmpty()) {
+            System.out.println(regressions.size() + " benchmark(s) regressed by more than " + Math.round(threshold * 100) + "%");
+            System.exit(1);
+        }
+    }
+
+    private static BenchmarkResults read(File file) throws IOException {
+        Reader reader = new InputStreamReader(new FileInputStream(file), "UTF-8");
+        try {
+            return BenchmarkResults.read(reader);
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Compares every result with the baseline and prints one line per benchmark.
+     *
+     * @param results   The results of the current run.
+     * @param baseline  The results to compare with.
+     * @param threshold The allowed relative change in the worse direction, e.g. 0.1 for 10%.
+     * @param report    Receives the comparison.
+     * @return The keys of the benchmarks which regressed.
+     */
+    static List<String> check(BenchmarkResults results, BenchmarkResults baseline, double threshold, PrintStream report) {
+        List<String> regressions = new ArrayList<String>();
+        for (BenchmarkResults.Result result : results.getAll()) {
+            BenchmarkResults.Result base = baseline.get(result.getKey());
+            if (base == null || base.getScore() <= 0 || !result.getUnit().equals(base.getUnit())) {
+                report.println(String.format(Locale.US, "NEW        %s: %.3f %s", result.getKey(), result.getScore(), result.getUnit()));
+                continue;
+            }
+
+            double change = result.getScore() / base.getScore() - 1;
+            //Positive if the benchmark got worse.
+            double worsening = result.isHigherBetter() ? -change : change;
+            boolean isRegression = worsening > threshold;
+            if (isRegression) {
+                regressions.add(result.getKey());
+            }
+            report.println(String.format(Locale.US, "%-10s %s: %.3f -> %.3f %s (%+.1f%%)", isRegression ? "REGRESSION" : "OK",
+                    result.getKey(), base.getScore(), result.getScore(), result.getUnit(), change * 100));
+        }
+        return regressions;
+    }
+}
@@ -0,0 +1,297 @@
+/*
+ * Copyright (C) 2015 Erwin Betschart
+ *
+ * This file is part of Video Comparator.
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.lipsch.videocomparator;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The results of a JMH run read from its JSON output (-rf json): The primary score of every benchmark and parameter combination.
+ * Only the parts of JSON which JMH writes are supported.
+ */
+final class BenchmarkResults {
+
+    /**
+     * The score of one benchmark with one combination of parameters.
+     */
+    static final class Result {
+        private final String key;
+        private final String mode;
+        private final double score;
+        private final String unit;
+
+        Result(String key, String mode, double score, String unit) {
+            this.key = key;
+            this.mode = mode;
+            this.score = score;
+            this.unit = unit;
+        }
+
+        /**
+         * @return The benchmark and its parameters, e.g. "ch.lipsch.videocomparator.FrameKernelBenchmarks.psnr{resolution=1920x1080}".
+         */
+        public String getKey() {
+            return key;
+        }
+
+        /**
+         * @return The JMH mode, e.g. "avgt" or "thrpt".
+         */
+        public String getMode() {
+            return mode;
+        }
+
+        public double getScore() {
+            return score;
+        }
+
+        public String getUnit() {
+            return unit;
+        }
+
+        /**
+         * @return true if a higher score is better (throughput), false if a lower one is better (times).
+         */
+        public boolean isHigherBetter() {
+            return "thrpt".equals(mode);
+        }
+    }
+
+    private final Map<String, Result> results;
+
+    private BenchmarkResults(Map<String, Result> results) {
+        this.results = results;
+    }
+
+    /**
+     * @return The result of the benchmark or null if it is not part of the results.
+     */
+    public Result get(String key) {
+        return results.get(key);
+    }
+
+    public List<Result> getAll() {
+        return new ArrayList<Result>(results.values());
+    }
+
+    /**
+     * Reads the JSON written by JMH.
+     *
+     * @throws IOException If the JSON could not be read or is not a result of JMH.
+     */
+    @SuppressWarnings("unchecked")
+    public static BenchmarkResults read(Reader reader) throws IOException {
+        Object json = new JsonParser(reader).parseValue();
+        if (!(json instanceof List)) {
+            throw new IOException("Not a JMH result: The root must be an array");
+        }
+
+        Map<String, Result> results = new LinkedHashMap<String, Result>();
+        for (Object entry : (List<Object>) json) {
+            Map<String, Object> benchmark = (Map<String, Object>) entry;
+            Map<String, Object> primaryMetric = (Map<String, Object>) benchmark.get("primaryMetric");
+            if (primaryMetric == null || !(benchmark.get("benchmark") instanceof String)) {
+                throw new IOException("Not a JMH result: benchmark or primaryMetric missing");
+            }
+
+            String key = toKey((String) benchmark.get("benchmark"), (Map<String, Object>) benchmark.get("params"));
+            Number score = (Number) primaryMetric.get("score");
+            results.put(key, new Result(key, (String) benchmark.get("mode"), score.doubleValue(), (String) primaryMetric.get("scoreUnit")));
+        }
+        return new BenchmarkResults(results);
+    }
+
+    private static String toKey(String benchmark, Map<String, Object> params) {
+        if (params == null || params.isEmpty()) {
+            return benchmark;
+        }
+
+        //Sorted so the order of the parameters in the JSON does not matter.
+        StringBuilder key = new StringBuilder(benchmark).append('{');
+        String separator = "";
+        for (Map.Entry<String, Object> param : new TreeMap<String, Object>(params).entrySet()) {
+            key.append(separator).append(param.getKey()).append('=').append(param.getValue());
+            separator = ",";
+        }
+        return key.append('}').toString();
+    }
+
+    /**
+     * A minimal recursive descent JSON parser. Objects are read as maps, arrays as lists and numbers as doubles.
+     * JMH writes "NaN" as string for missing scores, which is kept as string.
+     */
+    private static final class JsonParser {
+        private final Reader reader;
+        private int next;
+
+        JsonParser(Reader reader) throws IOException {
+            this.reader = reader;
+            next = reader.read();
+        }
+
+        Object parseValue() throws IOException {
+            skipWhitespace();
+            switch (next) {
+                case '{':
+                    return parseObject();
+                case '[':
+                    return parseArray();
+                case '"':
+                    return parseString();
+                case 't':
+                    expectWord("true");
+                    return Boolean.TRUE;
+                case 'f':
+                    expectWord("false");
+                    return Boolean.FALSE;
+                case 'n':
+                    expectWord("null");
+                    return null;
+                default:
+                    return parseNumber();
+            }
+        }
+
+        private Map<String, Object> parseObject() throws IOException {
+            Map<String, Object> object = new LinkedHashMap<String, Object>();
+            expect('{');
+            skipWhitespace();
+            if (next == '}') {
+                expect('}');
+                return object;
+            }
+            do {
+                skipWhitespace();
+                String name = parseString();
+                skipWhitespace();
+                expect(':');
+                object.put(name, parseValue());
+                skipWhitespace();
+            } while (consume(','));
+            expect('}');
+            return object;
+        }
+
+        private List<Object> parseArray() throws IOException {
+            List<Object> array = new ArrayList<Object>();
+            expect('[');
+            skipWhitespace();
+            if (next == ']') {
+                expect(']');
+                return array;
+            }
+            do {
+                array.add(parseValue());
+                skipWhitespace();
+            } while (consume(','));
+            expect(']');
+            return array;
+        }
+
+        private String parseString() throws IOException {
+            expect('"');
+            StringBuilder string = new StringBuilder();
+            while (next != '"') {
+                if (next < 0) {
+                    throw new IOException("Unterminated string");
+                }
+                if (next == '\\') {
+                    next = reader.read();
+                    switch (next) {
+                        case 'n':
+                            string.append('\n');
+                            break;
+                        case 't':
+                            string.append('\t');
+                            break;
+                        case 'r':
+                            string.append('\r');
+                            break;
+                        case 'b':
+                            string.append('\b');
+                            break;
+                        case 'f':
+                            string.append('\f');
+                            break;
+                        case 'u':
+                            char[] hex = new char[4];
+                            for (int i = 0; i < hex.length; i++) {
+                                hex[i] = (char) reader.read();
+                            }
+                            string.append((char) Integer.parseInt(new String(hex), 16));
+                            break;
+                        default:
+                            //Quote, backslash and slash stand for themselves.
+                            string.append((char) next);
+                    }
+                } else {
+                    string.append((char) next);
+                }
+                next = reader.read();
+            }
+            expect('"');
+            return string.toString();
+        }
+
+        private Double parseNumber() throws IOException {
+            StringBuilder number = new StringBuilder();
+            while (next >= 0 && "+-0123456789.eE".indexOf(next) >= 0) {
+                number.append((char) next);
+                next = reader.read();
+            }
+            try {
+                return Double.valueOf(number.toString());
+            } catch (NumberFormatException e) {
+                throw new IOException("Invalid value: " + number + (char) next);
+            }
+        }
+
+        private void expectWord(String word) throws IOException {
+            for (int i = 0; i < word.length(); i++) {
+                expect(word.charAt(i));
+            }
+        }
+
+        private void expect(char expected) throws IOException {
+            if (next != expected) {
+                throw new IOException("Expected " + expected + " but was " + (next < 0 ? "end" : String.valueOf((char) next)));
+            }
+            next = reader.read();
+        }
+
+        private boolean consume(char expected) throws IOException {
+            if (next == expected) {
+                next = reader.read();
+                return true;
+            }
+            return false;
+        }
+
+        private void skipWhitespace() throws IOException {
+            while (next == ' ' || next == '\n' || next == '\r' || next == '\t') {
+                next = reader.read();
+            }
+        }
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright (C) 2015 Erwin Betschart
+ *
+ * This file is part of Video Comparator.
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.lipsch.videocomparator;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The per frame kernels on synthetic frames of the standard resolutions: Difference, PSNR, SSIM, luma conversion, signature (hash and
+ * histogram), activity and content hashing. The kernels which can run in bands use one band so the results do not depend on the cores.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class FrameKernelBenchmarks {
+
+    @Param({"640x480", "1280x720", "1920x1080", "3840x2160"})
+    public String resolution;
+
+    private int width;
+    private int height;
+    private byte[] luma1;
+    private byte[] luma2;
+    private int[] argb1;
+    private int[] argb2;
+    private int[] difference;
+    private byte[] lumaOut;
+
+    private BandExecutor executor;
+    private FrameDifference frameDifference;
+    private PsnrCalculator psnrCalculator;
+    private SsimCalculator ssimCalculator;
+    private final SignatureExtractor signatureExtractor = new SignatureExtractor();
+    private SignatureStream signatureStream;
+    private ActivitySignal activitySignal;
+
+    private File videoFile;
+    private RandomAccessFile video;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        int[] size = SyntheticFrames.parseResolution(resolution);
+        width = size[0];
+        height = size[1];
+
+        luma1 = SyntheticFrames.createLuma(width, height, 1);
+        luma2 = SyntheticFrames.createLuma(width, height, 2);
+        byte[] u = SyntheticFrames.createChroma(width, height, 3);
+        byte[] v = SyntheticFrames.createChroma(width, height, 4);
+        argb1 = SyntheticFrames.toArgb(luma1, u, v, width, height);
+        argb2 = SyntheticFrames.toArgb(luma2, u, v, width, height);
+        difference = new int[argb1.length];
+        lumaOut = new byte[luma1.length];
+
+        executor = new BandExecutor(1);
+        frameDifference = new FrameDifference(executor);
+        psnrCalculator = new PsnrCalculator(executor);
+        ssimCalculator = new SsimCalculator(executor);
+
+        //A "video" of 100 frames for the content hash, which samples the file.
+        videoFile = File.createTempFile("benchmark", ".yuv");
+        FileOutputStream out = new FileOutputStream(videoFile);
+        try {
+            for (int i = 0; i < 100; i++) {
+                out.write(i % 2 == 0 ? luma1 : luma2);
+            }
+        } finally {
+            out.close();
+        }
+        video = new RandomAccessFile(videoFile, "r");
+    }
+
+    @Setup(Level.Iteration)
+    public void setUpIteration() {
+        //The streams grow with every frame.
+        signatureStream = new SignatureStream();
+        activitySignal = new ActivitySignal();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        executor.shutdown();
+        video.close();
+        if (!videoFile.delete()) {
+            videoFile.deleteOnExit();
+        }
+    }
+
+    @Benchmark
+    public double differenceHeatmap() {
+        return frameDifference.compute(argb1, argb2, difference, argb1.length, FrameDifference.Mode.HEATMAP);
+    }
+
+    @Benchmark
+    public double psnr() {
+        return psnrCalculator.compute(luma1, luma2, luma1.length);
+    }
+
+    @Benchmark
+    public double ssim() {
+        return ssimCalculator.compute(luma1, luma2, width, height);
+    }
+
+    @Benchmark
+    public byte[] lumaFromArgb() {
+        Luma.fromArgb(argb1, lumaOut, argb1.length);
+        return lumaOut;
+    }
+
+    @Benchmark
+    public int signature() {
+        signatureExtractor.extract(luma1, width, height, 0, signatureStream);
+        return signatureStream.size();
+    }
+
+    @Benchmark
+    public int activity() {
+        activitySignal.add(luma1, width, height);
+        return activitySignal.size();
+    }
+
+    @Benchmark
+    public long contentHash() throws IOException {
+        return ContentHash.compute(video.getChannel(), ContentHash.DEFAULT_SAMPLE_BYTES);
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright (C) 2015 Erwin Betschart
+ *
+ * This file is part of Video Comparator.
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.lipsch.videocomparator;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The state transitions of VideoPlayState (every one builds and swaps in a new snapshot) and saving / restoring the state blob,
+ * which is done on every configuration change.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class PlayStateBenchmarks {
+
+    private VideoPlayState playState;
+    private VideoPlayState restored;
+    private byte[] blob;
+
+    @Setup
+    public void setUp() {
+        playState = new VideoPlayState();
+        playState.setVideo1("content://media/external/video/media/4711");
+        playState.setVideo2("content://media/external/video/media/4712");
+        playState.link(-1200);
+        playState.pauseVideo2(7.5);
+
+        restored = new VideoPlayState();
+        blob = playState.saveState();
+    }
+
+    /**
+     * Play and pause both videos: Four transitions.
+     */
+    @Benchmark
+    public VideoPlayState.State playPause() {
+        playState.apply(0, PlayStateMachine.Event.PLAY);
+        playState.apply(1, PlayStateMachine.Event.PLAY);
+        playState.apply(0, PlayStateMachine.Event.PAUSE);
+        return playState.apply(1, PlayStateMachine.Event.PAUSE);
+    }
+
+    /**
+     * A stall of one video: The partner waits and both resume.
+     */
+    @Benchmark
+    public VideoPlayState.State stall() {
+        playState.apply(0, PlayStateMachine.Event.PLAY);
+        playState.apply(1, PlayStateMachine.Event.PLAY);
+        playState.apply(0, PlayStateMachine.Event.BUFFERING_START);
+        playState.apply(1, PlayStateMachine.Event.PARTNER_STALLED);
+        playState.apply(0, PlayStateMachine.Event.BUFFERING_END);
+        playState.apply(0, PlayStateMachine.Event.PARTNER_RESUMED);
+        return playState.apply(1, PlayStateMachine.Event.PARTNER_RESUMED);
+    }
+
+    /**
+     * The queries done on every frame while playing.
+     */
+    @Benchmark
+    public boolean query() {
+        return playState.isVideo1Playing() | playState.isVideo2Playing() | playState.shouldShowPauseButton();
+    }
+
+    @Benchmark
+    public byte[] saveState() {
+        return playState.saveState();
+    }
+
+    @Benchmark
+    public VideoPlayState loadState() {
+        restored.loadState(blob);
+        return restored;
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright (C) 2015 Erwin Betschart
+ *
+ * This file is part of Video Comparator.
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.lipsch.videocomparator;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The seek position math done on every frame while playing (position to seek bar progress) and on every move of a seek bar while seeking
+ * (progress to position, linked position of the other video, key frame before the position).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class SeekMathBenchmarks {
+
+    private static final int DURATION_MS = 3600 * 1000;
+    private static final int MAX_PROGRESS = 1000;
+
+    private LinkedSeekCoordinator coordinator;
+    private KeyframeIndex keyframeIndex;
+
+    /**
+     * Moves through the video so every call maps another position.
+     */
+    private int positionMs = 0;
+
+    @Setup
+    public void setUp() {
+        SyncablePlayer player = new IdlePlayer();
+        coordinator = new LinkedSeekCoordinator(new SeekScheduler(PlaybackClock.SYSTEM, player), new SeekScheduler(PlaybackClock.SYSTEM, player));
+        coordinator.setLinked(true);
+        coordinator.setOffsetMs(1, -1200);
+        coordinator.setDurationMs(0, DURATION_MS);
+        coordinator.setDurationMs(1, DURATION_MS - 5000);
+
+        //One key frame every two seconds.
+        int keyframeCount = DURATION_MS / 2000;
+        long[] timesUs = new long[keyframeCount];
+        long[] byteOffsets = new long[keyframeCount];
+        for (int i = 0; i < keyframeCount; i++) {
+            timesUs[i] = i * 2000000L;
+            byteOffsets[i] = i * 500000L;
+        }
+        keyframeIndex = new KeyframeIndex(timesUs, byteOffsets, DURATION_MS * 1000L);
+    }
+
+    private int nextPositionMs() {
+        positionMs = (positionMs + 7919) % DURATION_MS;
+        return positionMs;
+    }
+
+    @Benchmark
+    public int positionToProgress() {
+        return ComparatorSession.toProgress(nextPositionMs(), DURATION_MS, MAX_PROGRESS);
+    }
+
+    @Benchmark
+    public int progressToPosition() {
+        return ComparatorSession.toPositionMs(nextPositionMs() % MAX_PROGRESS, MAX_PROGRESS, DURATION_MS);
+    }
+
+    @Benchmark
+    public int linkedPosition() {
+        return coordinator.getLinkedPositionMs(0, nextPositionMs(), 1);
+    }
+
+    @Benchmark
+    public long keyframeBefore() {
+        return keyframeIndex.getKeyframeTimeBeforeMs(nextPositionMs());
+    }
+
+    /**
+     * The schedulers need a player, it is never seeked by the benchmarked methods.
+     */
+    private static class IdlePlayer implements SyncablePlayer {
+
+        @Override
+        public int getCurrentPosition() {
+            return 0;
+        }
+
+        @Override
+        public boolean isPlaying() {
+            return false;
+        }
+
+        @Override
+        public boolean seekTo(int positionMs) {
+            //Never called
+            return true;
+        }
+
+        @Override
+        public boolean supportsPlaybackRate() {
+            return false;
+        }
+
+        @Override
+        public void setPlaybackRate(float rate) {
+            //Never called
+        }
+    }
+}
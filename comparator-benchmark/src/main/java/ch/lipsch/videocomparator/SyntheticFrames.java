@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) 2015 Erwin Betschart
+ *
+ * This file is part of Video Comparator.
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.lipsch.videocomparator;
+
+import java.util.Random;
+
+/**
+ * Synthetic YUV 4:2:0 frames of the standard resolutions for the benchmarks: A diagonal gradient with noise, like a frame of a real video
+ * it has smooth areas and fine detail. The second frame of a pair is the first one with slightly different noise (e.g. another encode).
+ */
+final class SyntheticFrames {
+
+    private SyntheticFrames() {
+        //Utility class
+    }
+
+    /**
+     * @param resolution The resolution as WIDTHxHEIGHT, e.g. 1920x1080.
+     * @return The width and the height.
+     */
+    static int[] parseResolution(String resolution) {
+        int separator = resolution.indexOf('x');
+        return new int[]{Integer.parseInt(resolution.substring(0, separator)), Integer.parseInt(resolution.substring(separator + 1))};
+    }
+
+    /**
+     * @return The luma plane of a frame (row by row without padding).
+     */
+    static byte[] createLuma(int width, int height, long seed) {
+        Random random = new Random(seed);
+        byte[] luma = new byte[width * height];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int value = (x + y) * 255 / (width + height) + random.nextInt(9) - 4;
+                luma[y * width + x] = (byte) Math.max(0, Math.min(255, value));
+            }
+        }
+        return luma;
+    }
+
+    /**
+     * @return A chroma plane (half the width and the height of the frame).
+     */
+    static byte[] createChroma(int width, int height, long seed) {
+        Random random = new Random(seed);
+        int chromaWidth = (width + 1) / 2;
+        int chromaHeight = (height + 1) / 2;
+        byte[] chroma = new byte[chromaWidth * chromaHeight];
+        for (int i = 0; i < chroma.length; i++) {
+            chroma[i] = (byte) (128 + random.nextInt(33) - 16);
+        }
+        return chroma;
+    }
+
+    /**
+     * Converts a YUV 4:2:0 frame to ARGB (BT.601, full range), the format of the decoded bitmaps.
+     */
+    static int[] toArgb(byte[] luma, byte[] u, byte[] v, int width, int height) {
+        int chromaWidth = (width + 1) / 2;
+        int[] argb = new int[width * height];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int chroma = y / 2 * chromaWidth + x / 2;
+                int lumaValue = luma[y * width + x] & 0xFF;
+                int uValue = (u[chroma] & 0xFF) - 128;
+                int vValue = (v[chroma] & 0xFF) - 128;
+
+                int r = clamp(lumaValue + (int) (1.402 * vValue));
+                int g = clamp(lumaValue - (int) (0.344 * uValue + 0.714 * vValue));
+                int b = clamp(lumaValue + (int) (1.772 * uValue));
+                argb[y * width + x] = 0xFF000000 | r << 16 | g << 8 | b;
+            }
+        }
+        return argb;
+    }
+
+    private static int clamp(int value) {
+        return Math.max(0, Math.min(255, value));
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright (C) 2015 Erwin Betschart
+ *
+ * This file is part of Video Comparator.
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.lipsch.videocomparator;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * TimeFormatter, which formats the play times on every frame, compared with the String.format path it replaced.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class TimeFormatterBenchmarks {
+
+    private final char[] buffer = new char[TimeFormatter.MAX_LENGTH];
+    private long timeMs = 0;
+
+    private long nextTimeMs() {
+        timeMs = (timeMs + 997) % (10 * 3600 * 1000);
+        return timeMs;
+    }
+
+    @Benchmark
+    public int timeFormatter() {
+        return TimeFormatter.format(nextTimeMs(), buffer);
+    }
+
+    @Benchmark
+    public String stringFormat() {
+        long time = nextTimeMs();
+        return String.format("%d:%02d:%02d",
+                TimeUnit.MILLISECONDS.toHours(time),
+                TimeUnit.MILLISECONDS.toMinutes(time) % 60,
+                TimeUnit.MILLISECONDS.toSeconds(time) % 60);
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright (C) 2015 Erwin Betschart
+ *
+ * This file is part of Video Comparator.
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.lipsch.videocomparator;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Test for the classes BenchmarkRegressionCheck and BenchmarkResults.
+ */
+public class BenchmarkRegressionCheckTest extends TestCase {
+
+    private static final String BASELINE = "[\n"
+            + "  {\"benchmark\": \"a.Bench.psnr\", \"mode\": \"avgt\", \"threads\": 1, \"forks\": 1,\n"
+            + "   \"params\": {\"resolution\": \"640x480\"},\n"
+            + "   \"primaryMetric\": {\"score\": 100.0, \"scoreError\": 1.5, \"scoreUnit\": \"us/op\",\n"
+            + "     \"scoreConfidence\": [98.5, 101.5], \"rawData\": [[99.0, 101.0]]},\n"
+            + "   \"secondaryMetrics\": {}},\n"
+            + "  {\"benchmark\": \"a.Bench.ops\", \"mode\": \"thrpt\",\n"
+            + "   \"primaryMetric\": {\"score\": 2.0E3, \"scoreUnit\": \"ops/s\"}}\n"
+            + "]";
+
+    private final ByteArrayOutputStream report = new ByteArrayOutputStream();
+
+    public void testRead() throws IOException {
+        BenchmarkResults results = read(BASELINE);
+
+        assertEquals(2, results.getAll().size());
+        BenchmarkResults.Result psnr = results.get("a.Bench.psnr{resolution=640x480}");
+        assertEquals(100.0, psnr.getScore(), 0.0);
+        assertEquals("us/op", psnr.getUnit());
+        assertFalse(psnr.isHigherBetter());
+        BenchmarkResults.Result ops = results.get("a.Bench.ops");
+        assertEquals(2000.0, ops.getScore(), 0.0);
+        assertTrue(ops.isHigherBetter());
+    }
+
+    public void testReadSortsParams() throws IOException {
+        BenchmarkResults results = read("[{\"benchmark\": \"b\", \"mode\": \"avgt\", \"params\": {\"z\": \"1\", \"a\": \"2\"},"
+                + " \"primaryMetric\": {\"score\": 1, \"scoreUnit\": \"ns/op\"}}]");
+
+        assertNotNull(results.get("b{a=2,z=1}"));
+    }
+
+    public void testReadInvalid() {
+        try {
+            read("{\"benchmark\": \"b\"}");
+            fail("Expected IOException");
+        } catch (IOException e) {
+            //Expected
+        }
+        try {
+            read("[{\"benchmark\": \"b\", \"primaryMetric\": {\"score\": 1}");
+            fail("Expected IOException");
+        } catch (IOException e) {
+            //Expected
+        }
+    }
+
+    public void testCheckWithinThreshold() throws IOException {
+        BenchmarkResults results = read(replaceScores("105.0", "1900.0"));
+
+        assertEquals(Collections.<String>emptyList(), check(results));
+        assertTrue(report.toString().contains("OK"));
+    }
+
+    public void testCheckSlowerTime() throws IOException {
+        BenchmarkResults results = read(replaceScores("120.0", "2000.0"));
+
+        assertEquals(Arrays.asList("a.Bench.psnr{resolution=640x480}"), check(results));
+        assertTrue(report.toString().contains("REGRESSION"));
+    }
+
+    public void testCheckLowerThroughput() throws IOException {
+        BenchmarkResults results = read(replaceScores("50.0", "1500.0"));
+
+        assertEquals(Arrays.asList("a.Bench.ops"), check(results));
+    }
+
+    public void testCheckNewBenchmark() throws IOException {
+        BenchmarkResults results = read("[{\"benchmark\": \"a.Bench.new\", \"mode\": \"avgt\","
+                + " \"primaryMetric\": {\"score\": 1000, \"scoreUnit\": \"us/op\"}}]");
+
+        assertEquals(Collections.<String>emptyList(), check(results));
+        assertTrue(report.toString().startsWith("NEW"));
+    }
+
+    private List<String> check(BenchmarkResults results) throws IOException {
+        return BenchmarkRegressionCheck.check(results, read(BASELINE), 0.1, new PrintStream(report, true));
+    }
+
+    private static String replaceScores(String psnrScore, String opsScore) {
+        return BASELINE.replace("100.0", psnrScore).replace("2.0E3", opsScore);
+    }
+
+    private static BenchmarkResults read(String json) throws IOException {
+        return BenchmarkResults.read(new StringReader(json));
+    }
+}
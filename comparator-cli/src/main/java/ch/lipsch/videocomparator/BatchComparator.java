@@ -0,0 +1,252 @@
+/*
+ * Copyright (C) 2015 Erwin Betschart
+ *
+ * This file is part of Video Comparator.
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.lipsch.videocomparator;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Compares the pairs of a manifest headless, e.g. all encodes of a nightly build. The pairs are compared concurrently and every result is
+ * appended to a JSON lines file as soon as the pair is done (see ResultLog). The throughput is printed at the end.
+ * <p/>
+ * Usage: BatchComparator [options] manifest results.jsonl
+ * <pre>
+ *   --threads N   The number of pairs compared concurrently. Default: The number of cores.
+ *   --resume      Continues a previous run: Pairs with a successful result in the results file are skipped.
+ *   --size WxH    The size of raw .yuv inputs (I420).
+ *   --fps N[:D]   The frame rate of raw .yuv inputs, e.g. 30000:1001. Default: 25.
+ * </pre>
+ * The exit code is 1 if a pair failed and 2 for invalid arguments.
+ */
+public final class BatchComparator {
+
+    /**
+     * The number of pairs per thread which are queued in the pool. Bounds the pending work for large manifests
+     * while keeping every worker busy.
+     */
+    private static final int QUEUED_PAIRS_PER_THREAD = 2;
+
+    /**
+     * The outcome of a batch.
+     */
+    static final class BatchResult {
+        private final int comparedCount;
+        private final int failedCount;
+        private final int skippedCount;
+        private final long elapsedMs;
+
+        BatchResult(int comparedCount, int failedCount, int skippedCount, long elapsedMs) {
+            this.comparedCount = comparedCount;
+            this.failedCount = failedCount;
+            this.skippedCount = skippedCount;
+            this.elapsedMs = elapsedMs;
+        }
+
+        /**
+         * @return The number of pairs compared in this run including the failed ones.
+         */
+        public int getComparedCount() {
+            return comparedCount;
+        }
+
+        public int getFailedCount() {
+            return failedCount;
+        }
+
+        /**
+         * @return The number of pairs which were completed by a previous run.
+         */
+        public int getSkippedCount() {
+            return skippedCount;
+        }
+
+        public long getElapsedMs() {
+            return elapsedMs;
+        }
+
+        public double getPairsPerMinute() {
+            return elapsedMs == 0 ? 0.0 : comparedCount * 60000.0 / elapsedMs;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "Compared %d pairs (%d failed, %d skipped) in %.1f s: %.1f pairs/min",
+                    comparedCount, failedCount, skippedCount, elapsedMs / 1000.0, getPairsPerMinute());
+        }
+    }
+
+    private final PairComparator comparator;
+    private final int threadCount;
+
+    /**
+     * @param comparator  Compares a pair.
+     * @param threadCount The number of pairs compared concurrently.
+     */
+    BatchComparator(PairComparator comparator, int threadCount) {
+        if (threadCount < 1) {
+            throw new IllegalArgumentException("At least one thread is needed");
+        }
+        this.comparator = comparator;
+        this.threadCount = threadCount;
+    }
+
+    /**
+     * Compares all pairs which are not completed in the log yet and waits until they are done.
+     *
+     * @param pairs The pairs of the manifest.
+     * @param log   Receives the results.
+     * @return The outcome.
+     * @throws IOException          In case a result could not be written. The batch is cancelled.
+     * @throws InterruptedException In case the thread was interrupted. The batch is cancelled.
+     */
+    BatchResult run(List<ComparisonPair> pairs, final ResultLog log) throws IOException, InterruptedException {
+        long startNs = System.nanoTime();
+        //Idle workers steal pending pairs, so long videos do not hold up the rest of the batch.
+        ForkJoinPool pool = new ForkJoinPool(threadCount);
+        int slotCount = threadCount * QUEUED_PAIRS_PER_THREAD;
+        final Semaphore slots = new Semaphore(slotCount);
+        final AtomicInteger comparedCount = new AtomicInteger();
+        final AtomicInteger failedCount = new AtomicInteger();
+        final AtomicReference<IOException> logFailure = new AtomicReference<IOException>();
+        int skippedCount = 0;
+
+        try {
+            for (final ComparisonPair pair : pairs) {
+                if (log.isCompleted(pair.getId())) {
+                    skippedCount++;
+                    continue;
+                }
+
+                slots.acquire();
+                if (logFailure.get() != null) {
+                    slots.release();
+                    break;
+                }
+                pool.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            String result = comparator.compare(pair);
+                            log.append(result);
+                            comparedCount.incrementAndGet();
+                            if (!ResultLog.isSuccess(result)) {
+                                failedCount.incrementAndGet();
+                            }
+                        } catch (IOException e) {
+                            logFailure.compareAndSet(null, e);
+                        } catch (InterruptedException e) {
+                            //The pool is shut down, the pair is compared again when resuming.
+                        } finally {
+                            slots.release();
+                        }
+                    }
+                });
+            }
+
+            //All slots are free again when the last pair is done.
+            slots.acquire(slotCount);
+        } finally {
+            pool.shutdownNow();
+        }
+
+        if (logFailure.get() != null) {
+            throw logFailure.get();
+        }
+        return new BatchResult(comparedCount.get(), failedCount.get(), skippedCount, (System.nanoTime() - startNs) / 1000000);
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int threadCount = Runtime.getRuntime().availableProcessors();
+        boolean resume = false;
+        int rawWidth = 0;
+        int rawHeight = 0;
+        int rawFrameRateNumerator = 25;
+        int rawFrameRateDenominator = 1;
+
+        int argument = 0;
+        try {
+            for (; argument < args.length && args[argument].startsWith("--"); argument++) {
+                String option = args[argument];
+                if (option.equals("--resume")) {
+                    resume = true;
+                } else if (option.equals("--threads")) {
+                    threadCount = Integer.parseInt(args[++argument]);
+                } else if (option.equals("--size")) {
+                    String[] size = args[++argument].split("x");
+                    rawWidth = Integer.parseInt(size[0]);
+                    rawHeight = Integer.parseInt(size[1]);
+                } else if (option.equals("--fps")) {
+                    String[] rate = args[++argument].split(":");
+                    rawFrameRateNumerator = Integer.parseInt(rate[0]);
+                    rawFrameRateDenominator = rate.length > 1 ? Integer.parseInt(rate[1]) : 1;
+                } else {
+                    exitWithUsage("Unknown option " + option);
+                }
+            }
+        } catch (RuntimeException e) {
+            //A missing or invalid value.
+            exitWithUsage("Invalid value of " + args[argument - 1]);
+        }
+        if (args.length - argument != 2 || threadCount < 1 || rawWidth < 0 || rawHeight < 0
+                || rawFrameRateNumerator <= 0 || rawFrameRateDenominator <= 0) {
+            exitWithUsage(null);
+        }
+
+        File manifestFile = new File(args[argument]);
+        File resultFile = new File(args[argument + 1]);
+        List<ComparisonPair> pairs;
+        Reader manifest = new InputStreamReader(new FileInputStream(manifestFile), "UTF-8");
+        try {
+            pairs = ComparisonPair.readManifest(manifest, manifestFile.getAbsoluteFile().getParentFile());
+        } finally {
+            manifest.close();
+        }
+
+        ResultLog log = resume ? ResultLog.resume(resultFile) : ResultLog.create(resultFile);
+        BatchResult result;
+        try {
+            PairComparator comparator = new PairComparator(rawWidth, rawHeight, rawFrameRateNumerator, rawFrameRateDenominator);
+            result = new BatchComparator(comparator, threadCount).run(pairs, log);
+        } finally {
+            log.close();
+        }
+
+        System.out.println(result);
+        if (result.getFailedCount() > 0) {
+            System.exit(1);
+        }
+    }
+
+    private static void exitWithUsage(String error) {
+        if (error != null) {
+            System.err.println(error);
+        }
+        System.err.println("Usage: BatchComparator [--threads N] [--resume] [--size WxH] [--fps N[:D]] manifest results.jsonl");
+        System.exit(2);
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2015 Erwin Betschart
+ *
+ * This file is part of Video Comparator.
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.lipsch.videocomparator;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Two videos to compare (e.g. a reference and its encode) as listed in the manifest of a batch.
+ * <p/>
+ * The manifest has one pair per line: "[id] reference encode", separated by tabs. Without an id the path of the encode is used.
+ * Empty lines and lines starting with # are ignored. Relative paths are resolved against the directory of the manifest.
+ */
+final class ComparisonPair {
+
+    private final String id;
+    private final File reference;
+    private final File encode;
+
+    ComparisonPair(String id, File reference, File encode) {
+        this.id = id;
+        this.reference = reference;
+        this.encode = encode;
+    }
+
+    /**
+     * @return Identifies the pair in the results, unique within the manifest.
+     */
+    public String getId() {
+        return id;
+    }
+
+    public File getReference() {
+        return reference;
+    }
+
+    public File getEncode() {
+        return encode;
+    }
+
+    /**
+     * Reads all pairs of a manifest.
+     *
+     * @param manifest  The content of the manifest.
+     * @param directory The directory relative paths are resolved against. null for the working directory.
+     * @return The pairs in the order of the manifest.
+     * @throws IOException In case the manifest can not be read, has an invalid line or the same id twice.
+     */
+    public static List<ComparisonPair> readManifest(Reader manifest, File directory) throws IOException {
+        BufferedReader reader = new BufferedReader(manifest);
+        List<ComparisonPair> pairs = new ArrayList<ComparisonPair>();
+        Set<String> ids = new HashSet<String>();
+
+        String line;
+        int lineNumber = 0;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            String trimmed = line.trim();
+            if (trimmed.isEmpty() || trimmed.startsWith("#")) {
+                continue;
+            }
+
+            String[] columns = trimmed.split("\t");
+            ComparisonPair pair;
+            if (columns.length == 2) {
+                pair = new ComparisonPair(columns[1].trim(), resolve(directory, columns[0]), resolve(directory, columns[1]));
+            } else if (columns.length == 3) {
+                pair = new ComparisonPair(columns[0].trim(), resolve(directory, columns[1]), resolve(directory, columns[2]));
+            } else {
+                throw new IOException("Line " + lineNumber + ": Expected [id] reference encode separated by tabs");
+            }
+
+            if (!ids.add(pair.getId())) {
+                throw new IOException("Line " + lineNumber + ": Duplicate id " + pair.getId());
+            }
+            pairs.add(pair);
+        }
+        return pairs;
+    }
+
+    private static File resolve(File directory, String path) {
+        File file = new File(path.trim());
+        return file.isAbsolute() || directory == null ? file : new File(directory, file.getPath());
+    }
+}
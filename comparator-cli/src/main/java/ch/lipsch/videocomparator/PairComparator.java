@@ -0,0 +1,165 @@
+/*
+ * Copyright (C) 2015 Erwin Betschart
+ *
+ * This file is part of Video Comparator.
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.lipsch.videocomparator;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Compares the videos of a pair: The quality metrics (PSNR, SSIM) of all frames and the timestamps where the videos diverge the most.
+ * The videos are read from uncompressed files (see YuvFileFrameSource): .y4m files carry their format, .yuv files are I420 of the configured format.
+ * <p/>
+ * This class is thread-safe: Every comparison uses its own analyzers, so pairs can be compared concurrently.
+ */
+class PairComparator {
+
+    /**
+     * The maximum offset between the videos which is searched when aligning, in seconds.
+     */
+    private static final double MAX_OFFSET_S = 2.0;
+
+    /**
+     * The minimum distance between two divergence timestamps, in seconds.
+     */
+    private static final double MIN_GAP_S = 5.0;
+
+    public static final int MAX_DIVERGENCES = 10;
+
+    private final int rawWidth;
+    private final int rawHeight;
+    private final int rawFrameRateNumerator;
+    private final int rawFrameRateDenominator;
+
+    /**
+     * Compares .y4m files only.
+     */
+    public PairComparator() {
+        this(0, 0, 25, 1);
+    }
+
+    /**
+     * @param rawWidth                The width of .yuv files. 0 if .yuv files are not supported.
+     * @param rawHeight               The height of .yuv files.
+     * @param rawFrameRateNumerator   Together with the denominator the frame rate of .yuv files.
+     * @param rawFrameRateDenominator See rawFrameRateNumerator.
+     */
+    public PairComparator(int rawWidth, int rawHeight, int rawFrameRateNumerator, int rawFrameRateDenominator) {
+        this.rawWidth = rawWidth;
+        this.rawHeight = rawHeight;
+        this.rawFrameRateNumerator = rawFrameRateNumerator;
+        this.rawFrameRateDenominator = rawFrameRateDenominator;
+    }
+
+    /**
+     * Compares a pair.
+     *
+     * @return The result as one line of JSON (without line terminator). Failures are reported in the result, too.
+     * @throws InterruptedException In case the thread was interrupted. The comparison is cancelled.
+     */
+    public String compare(ComparisonPair pair) throws InterruptedException {
+        long startNs = System.nanoTime();
+        StringBuilder result = new StringBuilder();
+        result.append("{\"id\":").append(ResultLog.quote(pair.getId()));
+        result.append(",\"reference\":").append(ResultLog.quote(pair.getReference().getPath()));
+        result.append(",\"encode\":").append(ResultLog.quote(pair.getEncode().getPath()));
+
+        try {
+            appendMetrics(pair, result);
+        } catch (IOException e) {
+            appendError(e, result);
+        } catch (RuntimeException e) {
+            //E.g. videos of different sizes.
+            appendError(e, result);
+        }
+
+        result.append(",\"elapsed_ms\":").append((System.nanoTime() - startNs) / 1000000);
+        return result.append('}').toString();
+    }
+
+    private void appendMetrics(ComparisonPair pair, StringBuilder result) throws IOException, InterruptedException {
+        YuvFileFrameSource reference = open(pair.getReference());
+        try {
+            YuvFileFrameSource encode = open(pair.getEncode());
+            //The pairs are compared in parallel, so every pair is analyzed in its own thread only.
+            BandExecutor executor = new BandExecutor(1);
+            try {
+                QualitySummary summary = new QualityAnalyzer(executor).analyze(reference, encode, null);
+
+                reference.setNextFrame(0);
+                encode.setNextFrame(0);
+                double frameRate = reference.getFrameRate();
+                DivergenceScanner scanner = new DivergenceScanner((int) Math.ceil(MAX_OFFSET_S * frameRate), (int) Math.ceil(MIN_GAP_S * frameRate),
+                        MAX_DIVERGENCES);
+                DivergenceDetector detector = scanner.scan(reference, encode, new DivergenceScanner.Listener() {
+                    @Override
+                    public void onHotspotsChanged(List<DivergenceHotspot> hotspots, int scannedFrames, boolean isDone) {
+                        //Only the final hotspots are reported.
+                    }
+                });
+
+                appendSummary(summary, result);
+                appendDivergences(detector, result);
+            } finally {
+                executor.shutdown();
+                encode.close();
+            }
+        } finally {
+            reference.close();
+        }
+    }
+
+    private YuvFileFrameSource open(File file) throws IOException {
+        if (file.getName().toLowerCase(Locale.US).endsWith(".yuv")) {
+            if (rawWidth <= 0) {
+                throw new IOException("The size of raw .yuv files is not configured: " + file);
+            }
+            return YuvFileFrameSource.openRaw(file, rawWidth, rawHeight, rawFrameRateNumerator, rawFrameRateDenominator);
+        }
+        return YuvFileFrameSource.openY4m(file);
+    }
+
+    private static void appendSummary(QualitySummary summary, StringBuilder result) {
+        result.append(",\"status\":\"ok\"");
+        result.append(",\"frames\":").append(summary.getFrameCount());
+        //Equal frames have an infinite PSNR which JSON can not represent, they count with the maximum as in the mean.
+        result.append(String.format(Locale.US, ",\"psnr_mean_db\":%.4f,\"psnr_min_db\":%.4f,\"psnr_min_frame\":%d",
+                summary.getMeanPsnr(), Math.min(summary.getMinPsnr(), PsnrCalculator.MAX_PSNR_DB), summary.getMinPsnrFrame()));
+        result.append(String.format(Locale.US, ",\"ssim_mean\":%.6f,\"ssim_min\":%.6f,\"ssim_min_frame\":%d",
+                summary.getMeanSsim(), summary.getFrameCount() > 0 ? summary.getMinSsim() : 0.0, summary.getMinSsimFrame()));
+    }
+
+    private static void appendDivergences(DivergenceDetector detector, StringBuilder result) {
+        result.append(",\"aligned\":").append(detector.isAligned());
+        result.append(",\"offset_frames\":").append(detector.getOffsetFrames());
+        result.append(",\"divergences\":[");
+        String separator = "";
+        for (DivergenceHotspot hotspot : detector.getHotspots()) {
+            result.append(String.format(Locale.US, "%s{\"reference_ms\":%d,\"encode_ms\":%d,\"score\":%.4f}",
+                    separator, hotspot.getTimeUs1() / 1000, hotspot.getTimeUs2() / 1000, hotspot.getScore()));
+            separator = ",";
+        }
+        result.append(']');
+    }
+
+    private static void appendError(Exception e, StringBuilder result) {
+        result.append(",\"status\":\"error\",\"error\":").append(ResultLog.quote(String.valueOf(e.getMessage())));
+    }
+}
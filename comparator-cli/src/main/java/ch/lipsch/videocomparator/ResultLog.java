@@ -0,0 +1,193 @@
+/*
+ * Copyright (C) 2015 Erwin Betschart
+ *
+ * This file is part of Video Comparator.
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.lipsch.videocomparator;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * The results of a batch as JSON lines: One object per pair, appended as soon as the pair is done and flushed immediately,
+ * so a batch which is killed keeps all finished results.
+ * <p/>
+ * A log can be resumed: The pairs with a successful result are read and need not be compared again. Failed pairs are compared again, so their
+ * results are removed and every pair has at most one result. A partially written last line (e.g. the process was killed while writing) is removed
+ * as well. The cleaned log replaces the old one atomically.
+ * <p/>
+ * This class is thread-safe.
+ */
+class ResultLog {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final String ID_KEY = "\"id\":";
+    private static final String STATUS_OK = "\"status\":\"ok\"";
+
+    private final Writer writer;
+    private final Set<String> completedIds;
+
+    private ResultLog(Writer writer, Set<String> completedIds) {
+        this.writer = writer;
+        this.completedIds = completedIds;
+    }
+
+    /**
+     * Creates a new log. An existing file is replaced.
+     */
+    public static ResultLog create(File file) throws IOException {
+        return new ResultLog(new OutputStreamWriter(new FileOutputStream(file), UTF_8), new HashSet<String>());
+    }
+
+    /**
+     * Continues an existing log. Creates a new one if the file does not exist.
+     *
+     * @throws IOException In case the file could not be read or written.
+     */
+    public static ResultLog resume(File file) throws IOException {
+        Set<String> completedIds = new HashSet<String>();
+        if (file.exists()) {
+            byte[] content;
+            RandomAccessFile log = new RandomAccessFile(file, "r");
+            try {
+                if (log.length() > Integer.MAX_VALUE) {
+                    throw new IOException("Result log too large: " + file);
+                }
+                content = new byte[(int) log.length()];
+                log.readFully(content);
+            } finally {
+                log.close();
+            }
+
+            int end = content.length;
+            while (end > 0 && content[end - 1] != '\n') {
+                end--;
+            }
+
+            //Drops the partial line and the results of failed pairs: Those pairs are compared again.
+            StringBuilder kept = new StringBuilder(end);
+            for (String line : new String(content, 0, end, UTF_8).split("\n")) {
+                String id = readId(line);
+                if (line.isEmpty() || id != null && !isSuccess(line)) {
+                    continue;
+                }
+                if (id != null) {
+                    completedIds.add(id);
+                }
+                kept.append(line).append('\n');
+            }
+
+            File cleaned = new File(file.getPath() + ".tmp");
+            Writer writer = new OutputStreamWriter(new FileOutputStream(cleaned), UTF_8);
+            try {
+                writer.write(kept.toString());
+            } finally {
+                writer.close();
+            }
+            Files.move(cleaned.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        return new ResultLog(new OutputStreamWriter(new FileOutputStream(file, true), UTF_8), completedIds);
+    }
+
+    /**
+     * @return true if the pair has a successful result from a previous run.
+     */
+    public boolean isCompleted(String id) {
+        return completedIds.contains(id);
+    }
+
+    public int getCompletedCount() {
+        return completedIds.size();
+    }
+
+    /**
+     * Appends a result and flushes it to the file.
+     *
+     * @param result One JSON object without line terminator.
+     */
+    public synchronized void append(String result) throws IOException {
+        writer.write(result);
+        writer.write('\n');
+        writer.flush();
+    }
+
+    public synchronized void close() throws IOException {
+        writer.close();
+    }
+
+    /**
+     * @return The string as JSON string literal including the quotes.
+     */
+    static String quote(String string) {
+        StringBuilder quoted = new StringBuilder(string.length() + 2).append('"');
+        for (int i = 0; i < string.length(); i++) {
+            char c = string.charAt(i);
+            if (c == '"' || c == '\\') {
+                quoted.append('\\').append(c);
+            } else if (c < 0x20) {
+                quoted.append(String.format("\\u%04x", (int) c));
+            } else {
+                quoted.append(c);
+            }
+        }
+        return quoted.append('"').toString();
+    }
+
+    /**
+     * @return true if the result written by PairComparator is successful.
+     */
+    static boolean isSuccess(String result) {
+        //Quotes in strings are escaped, so the status can not be faked by an id or a path.
+        return result.contains(STATUS_OK);
+    }
+
+    /**
+     * Reads the id of a result written by PairComparator, which is always the first member.
+     *
+     * @return The id or null if the line is no result.
+     */
+    static String readId(String line) {
+        if (!line.startsWith("{" + ID_KEY + "\"") || !line.endsWith("}")) {
+            return null;
+        }
+
+        StringBuilder id = new StringBuilder();
+        for (int i = ID_KEY.length() + 2; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c == '"') {
+                return id.toString();
+            }
+            if (c == '\\' && i + 1 < line.length()) {
+                c = line.charAt(++i);
+                if (c == 'u' && i + 4 < line.length()) {
+                    c = (char) Integer.parseInt(line.substring(i + 1, i + 5), 16);
+                    i += 4;
+                }
+            }
+            id.append(c);
+        }
+        return null;
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) 2015 Erwin Betschart
+ *
+ * This file is part of Video Comparator.
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.lipsch.videocomparator;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Test for the classes BatchComparator and PairComparator.
+ */
+public class BatchComparatorTest extends TestCase {
+
+    private static final int SIZE = 16;
+    private static final int FRAME_COUNT = 12;
+
+    private File reference;
+    private File results;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        reference = writeY4m(0);
+        results = File.createTempFile("results", ".jsonl");
+        results.deleteOnExit();
+    }
+
+    public void testCompare() throws InterruptedException, IOException {
+        String equal = new PairComparator().compare(new ComparisonPair("equal", reference, writeY4m(0)));
+        String noisy = new PairComparator().compare(new ComparisonPair("noisy", reference, writeY4m(8)));
+
+        assertTrue(equal, equal.startsWith("{\"id\":\"equal\""));
+        assertTrue(equal, equal.contains("\"status\":\"ok\",\"frames\":12,\"psnr_mean_db\":100.0000,\"psnr_min_db\":100.0000"));
+        assertTrue(equal, equal.contains("\"ssim_mean\":1.000000"));
+        assertTrue(equal, equal.contains("\"divergences\":[]"));
+        assertTrue(noisy, noisy.contains("\"status\":\"ok\",\"frames\":12"));
+        assertFalse(noisy, noisy.contains("\"psnr_mean_db\":100.0000"));
+        assertTrue(noisy, noisy.endsWith("}"));
+    }
+
+    public void testCompareFailure() throws InterruptedException {
+        String missing = new PairComparator().compare(new ComparisonPair("missing", reference, new File(reference.getPath() + ".missing")));
+        String raw = new PairComparator().compare(new ComparisonPair("raw", reference, new File("encode.yuv")));
+
+        assertTrue(missing, missing.contains("\"status\":\"error\",\"error\":"));
+        assertFalse(ResultLog.isSuccess(missing));
+        assertTrue(raw, raw.contains("\"status\":\"error\",\"error\":\"The size of raw .yuv files is not configured"));
+    }
+
+    public void testRun() throws IOException, InterruptedException {
+        List<ComparisonPair> pairs = Arrays.asList(
+                new ComparisonPair("a", reference, writeY4m(0)),
+                new ComparisonPair("b", reference, writeY4m(4)),
+                new ComparisonPair("c", reference, new File(reference.getPath() + ".missing")),
+                new ComparisonPair("d", reference, writeY4m(8)),
+                new ComparisonPair("e", reference, writeY4m(12)));
+
+        ResultLog log = ResultLog.create(results);
+        BatchComparator.BatchResult result = new BatchComparator(new PairComparator(), 2).run(pairs, log);
+        log.close();
+
+        assertEquals(5, result.getComparedCount());
+        assertEquals(1, result.getFailedCount());
+        assertEquals(0, result.getSkippedCount());
+        assertTrue(result.toString().contains("pairs/min"));
+
+        //All pairs but the failed one are skipped when resuming.
+        log = ResultLog.resume(results);
+        result = new BatchComparator(new PairComparator(), 3).run(pairs, log);
+        log.close();
+
+        assertEquals(1, result.getComparedCount());
+        assertEquals(1, result.getFailedCount());
+        assertEquals(4, result.getSkippedCount());
+        log = ResultLog.resume(results);
+        log.close();
+        assertEquals(4, log.getCompletedCount());
+    }
+
+    /**
+     * Writes a Y4M file with a moving gradient. Each sample is changed by up to +/- noise.
+     */
+    private static File writeY4m(int noise) throws IOException {
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        content.write(("YUV4MPEG2 W" + SIZE + " H" + SIZE + " F10:1 C420jpeg\n").getBytes("US-ASCII"));
+        byte[] frame = new byte[SIZE * SIZE * 3 / 2];
+        for (int i = 0; i < FRAME_COUNT; i++) {
+            content.write("FRAME\n".getBytes("US-ASCII"));
+            Arrays.fill(frame, (byte) 128);
+            for (int y = 0; y < SIZE; y++) {
+                for (int x = 0; x < SIZE; x++) {
+                    int value = (x * 13 + y * 7 + i * 9) % 200 + 20 + ((x ^ y) % 2 == 0 ? noise : -noise);
+                    frame[y * SIZE + x] = (byte) value;
+                }
+            }
+            content.write(frame);
+        }
+
+        File file = File.createTempFile("frames", ".y4m");
+        file.deleteOnExit();
+        RandomAccessFile out = new RandomAccessFile(file, "rw");
+        try {
+            out.write(content.toByteArray());
+        } finally {
+            out.close();
+        }
+        return file;
+    }
+}
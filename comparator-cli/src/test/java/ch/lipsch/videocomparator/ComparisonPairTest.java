@@ -0,0 +1,74 @@
+/*
+ * Copyright (C) 2015 Erwin Betschart
+ *
+ * This file is part of Video Comparator.
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.lipsch.videocomparator;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.List;
+
+/**
+ * Test for the class ComparisonPair.
+ */
+public class ComparisonPairTest extends TestCase {
+
+    private static final File DIRECTORY = new File("/data/encodes");
+
+    public void testReadManifest() throws IOException {
+        List<ComparisonPair> pairs = read("# nightly\n"
+                + "\n"
+                + "ref/a.y4m\tout/a.y4m\n"
+                + "b-crf23\t/abs/ref/b.y4m\tout/b.y4m  \n");
+
+        assertEquals(2, pairs.size());
+        assertEquals("out/a.y4m", pairs.get(0).getId());
+        assertEquals(new File(DIRECTORY, "ref/a.y4m"), pairs.get(0).getReference());
+        assertEquals(new File(DIRECTORY, "out/a.y4m"), pairs.get(0).getEncode());
+        assertEquals("b-crf23", pairs.get(1).getId());
+        assertEquals(new File("/abs/ref/b.y4m"), pairs.get(1).getReference());
+        assertEquals(new File(DIRECTORY, "out/b.y4m"), pairs.get(1).getEncode());
+    }
+
+    public void testReadManifestWithoutDirectory() throws IOException {
+        List<ComparisonPair> pairs = ComparisonPair.readManifest(new StringReader("a.y4m\tb.y4m"), null);
+
+        assertEquals(new File("a.y4m"), pairs.get(0).getReference());
+    }
+
+    public void testReadManifestInvalid() {
+        assertInvalid("a.y4m\n");
+        assertInvalid("a\tb\tc\td\n");
+        assertInvalid("x\ta.y4m\tb.y4m\nx\tc.y4m\td.y4m\n");
+    }
+
+    private static void assertInvalid(String manifest) {
+        try {
+            read(manifest);
+            fail("Expected IOException for " + manifest);
+        } catch (IOException e) {
+            //Expected
+        }
+    }
+
+    private static List<ComparisonPair> read(String manifest) throws IOException {
+        return ComparisonPair.readManifest(new StringReader(manifest), DIRECTORY);
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright (C) 2015 Erwin Betschart
+ *
+ * This file is part of Video Comparator.
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.lipsch.videocomparator;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+/**
+ * Test for the class ResultLog.
+ */
+public class ResultLogTest extends TestCase {
+
+    private File file;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        file = File.createTempFile("results", ".jsonl");
+        file.deleteOnExit();
+    }
+
+    public void testCreateReplacesFile() throws IOException {
+        write("{\"id\":\"a\",\"status\":\"ok\"}\n");
+
+        ResultLog log = ResultLog.create(file);
+        log.append("{\"id\":\"b\",\"status\":\"ok\"}");
+        log.close();
+
+        assertFalse(log.isCompleted("a"));
+        assertEquals("{\"id\":\"b\",\"status\":\"ok\"}\n", read());
+    }
+
+    public void testResume() throws IOException {
+        write("{\"id\":\"a\",\"status\":\"ok\",\"frames\":3}\n"
+                + "{\"id\":\"b\",\"status\":\"error\",\"error\":\"missing\"}\n"
+                + "{\"id\":\"c \\\"q\\\"\",\"status\":\"ok\"}\n"
+                + "{\"id\":\"d\",\"status\":\"o");
+
+        ResultLog log = ResultLog.resume(file);
+        log.append("{\"id\":\"b\",\"status\":\"ok\"}");
+        log.close();
+
+        assertEquals(2, log.getCompletedCount());
+        assertTrue(log.isCompleted("a"));
+        assertFalse(log.isCompleted("b"));
+        assertTrue(log.isCompleted("c \"q\""));
+        //The partial line is removed.
+        assertFalse(log.isCompleted("d"));
+        //The failed result is replaced by the one of the new comparison.
+        assertEquals("{\"id\":\"a\",\"status\":\"ok\",\"frames\":3}\n"
+                + "{\"id\":\"c \\\"q\\\"\",\"status\":\"ok\"}\n"
+                + "{\"id\":\"b\",\"status\":\"ok\"}\n", read());
+    }
+
+    public void testResumeWithoutFile() throws IOException {
+        assertTrue(file.delete());
+
+        ResultLog log = ResultLog.resume(file);
+        log.close();
+
+        assertEquals(0, log.getCompletedCount());
+        assertTrue(file.exists());
+    }
+
+    public void testQuote() {
+        assertEquals("\"a\\\"b\\\\c\\u000a\u00e4\"", ResultLog.quote("a\"b\\c\n\u00e4"));
+    }
+
+    public void testReadId() {
+        assertEquals("a\"b\\c\n", ResultLog.readId("{\"id\":" + ResultLog.quote("a\"b\\c\n") + ",\"status\":\"ok\"}"));
+        assertNull(ResultLog.readId("{\"other\":\"a\"}"));
+        assertNull(ResultLog.readId("{\"id\":\"a"));
+        assertNull(ResultLog.readId(""));
+    }
+
+    private void write(String content) throws IOException {
+        RandomAccessFile out = new RandomAccessFile(file, "rw");
+        try {
+            out.setLength(0);
+            out.write(content.getBytes("UTF-8"));
+        } finally {
+            out.close();
+        }
+    }
+
+    private String read() throws IOException {
+        RandomAccessFile in = new RandomAccessFile(file, "r");
+        try {
+            byte[] content = new byte[(int) in.length()];
+            in.readFully(content);
+            return new String(content, "UTF-8");
+        } finally {
+            in.close();
+        }
+    }
+}
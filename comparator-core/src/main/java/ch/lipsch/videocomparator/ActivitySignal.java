@@ -0,0 +1,118 @@
+/*
+ * Copyright (C) 2015 Erwin Betschart
+ *
+ * This file is part of Video Comparator.
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.lipsch.videocomparator;
+
+import java.util.Arrays;
+
+/**
+ * A lightweight per-frame signature of a video for the temporal alignment: The activity of every frame, i.e. the mean absolute change of a
+ * coarse grid of cell means compared to the previous frame. Cuts and motion give peaks at the same moments in all encodes of the same content,
+ * while constant differences (brightness, scaling, encoding noise) mostly cancel out.
+ * <p/>
+ * The frames are added one by one (streaming), only the cells of the previous frame are kept. The values are held in a growing primitive array.
+ * <p/>
+ * This class is not thread-safe. Adding a frame does not allocate any objects (except when the array grows).
+ */
+class ActivitySignal {
+
+    private static final int GRID_COLUMNS = 16;
+    private static final int GRID_ROWS = 9;
+
+    /**
+     * The plane must be at least as large as the grid.
+     */
+    public static final int MIN_WIDTH = GRID_COLUMNS;
+    public static final int MIN_HEIGHT = GRID_ROWS;
+
+    private final long[] cellSums = new long[GRID_COLUMNS * GRID_ROWS];
+    private final int[] cellCounts = new int[GRID_COLUMNS * GRID_ROWS];
+    private final double[] previousCells = new double[GRID_COLUMNS * GRID_ROWS];
+
+    private double[] values;
+    private int size = 0;
+
+    public ActivitySignal() {
+        this(1024);
+    }
+
+    /**
+     * @param initialCapacity The number of frames to reserve space for.
+     */
+    public ActivitySignal(int initialCapacity) {
+        values = new double[Math.max(1, initialCapacity)];
+    }
+
+    /**
+     * Adds the activity of the next frame. The activity of the first frame is 0.
+     *
+     * @param luma   The luma plane (row by row without padding).
+     * @param width  The width of the plane. At least MIN_WIDTH.
+     * @param height The height of the plane. At least MIN_HEIGHT.
+     */
+    public void add(byte[] luma, int width, int height) {
+        if (width < MIN_WIDTH || height < MIN_HEIGHT) {
+            throw new IllegalArgumentException("The plane must be at least " + MIN_WIDTH + "x" + MIN_HEIGHT);
+        }
+
+        Arrays.fill(cellSums, 0);
+        Arrays.fill(cellCounts, 0);
+        for (int y = 0; y < height; y++) {
+            int cellRow = y * GRID_ROWS / height * GRID_COLUMNS;
+            int offset = y * width;
+            for (int x = 0; x < width; x++) {
+                int cell = cellRow + x * GRID_COLUMNS / width;
+                cellSums[cell] += luma[offset + x] & 0xFF;
+                cellCounts[cell]++;
+            }
+        }
+
+        double change = 0;
+        for (int cell = 0; cell < cellSums.length; cell++) {
+            double mean = (double) cellSums[cell] / cellCounts[cell];
+            change += Math.abs(mean - previousCells[cell]);
+            previousCells[cell] = mean;
+        }
+
+        append(size == 0 ? 0 : change / cellSums.length);
+    }
+
+    /**
+     * Adds a value directly (e.g. a precomputed or synthetic signal).
+     */
+    public void append(double value) {
+        if (size == values.length) {
+            values = Arrays.copyOf(values, values.length * 2);
+        }
+        values[size++] = value;
+    }
+
+    /**
+     * @return The number of frames.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return The values. Only the first size() values are valid. The array is replaced when the signal grows.
+     */
+    public double[] getValues() {
+        return values;
+    }
+}
@@ -0,0 +1,219 @@
+/*
+ * Copyright (C) 2015 Erwin Betschart
+ *
+ * This file is part of Video Comparator.
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.lipsch.videocomparator;
+
+/**
+ * Splits work on a range (e.g. the pixels of a frame) into bands and processes them in parallel on all cores (fork/join).
+ * The calling thread processes the first band itself and waits for the other bands to be done.
+ * <p/>
+ * The worker threads are started once and reused, executing a task does not allocate any objects. The ForkJoinPool is not used because it needs API 21.
+ * <p/>
+ * This class is thread-safe: Concurrent calls of execute are processed one after the other.
+ */
+class BandExecutor {
+
+    /**
+     * A task which processes a part of a range.
+     */
+    interface BandTask {
+
+        /**
+         * Processes the band. Called in parallel for the different bands.
+         *
+         * @param band  The index of the band.
+         * @param start The start of the band (inclusive).
+         * @param end   The end of the band (exclusive).
+         */
+        void runBand(int band, int start, int end);
+    }
+
+    private final int bandCount;
+    private final Object lock = new Object();
+
+    //The following fields are guarded by lock.
+    private BandTask task = null;
+    private int size = 0;
+    private int generation = 0;
+    private int pendingBands = 0;
+    private Throwable failure = null;
+    private boolean isShutdown = false;
+
+    /**
+     * @return The number of available cores.
+     */
+    public static int getDefaultBandCount() {
+        return Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * @param bandCount The number of bands a range is split into. A worker thread is started for every band except the first one.
+     */
+    public BandExecutor(int bandCount) {
+        if (bandCount < 1) {
+            throw new IllegalArgumentException("At least one band is needed");
+        }
+
+        this.bandCount = bandCount;
+        for (int band = 1; band < bandCount; band++) {
+            Thread worker = new Thread(new Worker(band), "BandExecutor-" + band);
+            worker.setDaemon(true);
+            worker.start();
+        }
+    }
+
+    public int getBandCount() {
+        return bandCount;
+    }
+
+    /**
+     * Executes the task on the range 0 .. size-1 and waits for all bands to be done.
+     * A range smaller than the number of bands is processed in the calling thread only.
+     *
+     * @param task The task.
+     * @param size The size of the range.
+     * @throws RuntimeException An exception thrown by the task in any band.
+     */
+    public synchronized void execute(BandTask task, int size) {
+        if (bandCount == 1 || size < bandCount) {
+            task.runBand(0, 0, size);
+            return;
+        }
+
+        synchronized (lock) {
+            if (isShutdown) {
+                throw new IllegalStateException("The executor is shut down");
+            }
+
+            this.task = task;
+            this.size = size;
+            this.pendingBands = bandCount - 1;
+            this.failure = null;
+            generation++;
+            lock.notifyAll();
+        }
+
+        Throwable ownFailure = null;
+        try {
+            task.runBand(0, 0, getBandEnd(0, size));
+        } catch (RuntimeException e) {
+            ownFailure = e;
+        } catch (Error e) {
+            ownFailure = e;
+        }
+
+        Throwable workerFailure;
+        boolean isInterrupted = false;
+        synchronized (lock) {
+            while (pendingBands > 0) {
+                try {
+                    lock.wait();
+                } catch (InterruptedException e) {
+                    //The bands use the arrays of the caller: Wait until they are done in any case.
+                    isInterrupted = true;
+                }
+            }
+            this.task = null;
+            workerFailure = failure;
+        }
+
+        if (isInterrupted) {
+            Thread.currentThread().interrupt();
+        }
+
+        rethrow(ownFailure != null ? ownFailure : workerFailure);
+    }
+
+    private static void rethrow(Throwable failure) {
+        if (failure instanceof RuntimeException) {
+            throw (RuntimeException) failure;
+        } else if (failure instanceof Error) {
+            throw (Error) failure;
+        } else if (failure != null) {
+            throw new RuntimeException(failure);
+        }
+    }
+
+    private int getBandEnd(int band, int rangeSize) {
+        return (int) ((long) rangeSize * (band + 1) / bandCount);
+    }
+
+    private int getBandStart(int band, int rangeSize) {
+        return (int) ((long) rangeSize * band / bandCount);
+    }
+
+    /**
+     * Stops the worker threads. Tasks can not be executed anymore.
+     */
+    public void shutdown() {
+        synchronized (lock) {
+            isShutdown = true;
+            lock.notifyAll();
+        }
+    }
+
+    private class Worker implements Runnable {
+        private final int band;
+
+        Worker(int band) {
+            this.band = band;
+        }
+
+        @Override
+        public void run() {
+            int doneGeneration = 0;
+            while (true) {
+                BandTask currentTask;
+                int currentSize;
+                synchronized (lock) {
+                    while (generation == doneGeneration && !isShutdown) {
+                        try {
+                            lock.wait();
+                        } catch (InterruptedException e) {
+                            //Only shutdown stops the worker.
+                        }
+                    }
+                    if (isShutdown) {
+                        return;
+                    }
+
+                    doneGeneration = generation;
+                    currentTask = task;
+                    currentSize = size;
+                }
+
+                Throwable bandFailure = null;
+                try {
+                    currentTask.runBand(band, getBandStart(band, currentSize), getBandEnd(band, currentSize));
+                } catch (Throwable e) {
+                    bandFailure = e;
+                }
+
+                synchronized (lock) {
+                    if (bandFailure != null && failure == null) {
+                        failure = bandFailure;
+                    }
+                    pendingBands--;
+                    if (pendingBands == 0) {
+                        lock.notifyAll();
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) 2015 Erwin Betschart
+ *
+ * This file is part of Video Comparator.
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.lipsch.videocomparator;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A fixed set of direct byte buffers of the same size. Direct buffers are expensive to allocate and are freed late (by the garbage collector),
+ * so they are allocated once and reused for every read.
+ * <p/>
+ * This class is thread-safe.
+ */
+class ByteBufferPool {
+
+    private final int bufferSize;
+    private final int capacity;
+    private final List<ByteBuffer> buffers = new ArrayList<ByteBuffer>();
+
+    /**
+     * The number of buffers created so far. At most capacity.
+     */
+    private int createdCount = 0;
+
+    /**
+     * @param bufferSize The size of every buffer in bytes.
+     * @param capacity   The maximum number of buffers.
+     */
+    public ByteBufferPool(int bufferSize, int capacity) {
+        if (bufferSize <= 0 || capacity <= 0) {
+            throw new IllegalArgumentException("Buffer size and capacity must be positive");
+        }
+        this.bufferSize = bufferSize;
+        this.capacity = capacity;
+    }
+
+    /**
+     * Delivers a cleared buffer. Buffers are created lazily up to the capacity.
+     *
+     * @return The buffer or null if all buffers are in use.
+     */
+    public synchronized ByteBuffer acquire() {
+        ByteBuffer buffer;
+        if (!buffers.isEmpty()) {
+            buffer = buffers.remove(buffers.size() - 1);
+        } else if (createdCount < capacity) {
+            buffer = ByteBuffer.allocateDirect(bufferSize);
+            createdCount++;
+        } else {
+            return null;
+        }
+
+        buffer.clear();
+        return buffer;
+    }
+
+    /**
+     * Hands a buffer back to the pool. The buffer must not be used by the caller afterwards.
+     *
+     * @param buffer A buffer delivered by acquire.
+     */
+    public synchronized void release(ByteBuffer buffer) {
+        if (buffer.capacity() != bufferSize || !buffer.isDirect()) {
+            throw new IllegalArgumentException("Not a buffer of this pool");
+        }
+        buffers.add(buffer);
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    /**
+     * @return The number of buffers currently in the pool (not in use).
+     */
+    public synchronized int getAvailableCount() {
+        return buffers.size() + capacity - createdCount;
+    }
+}
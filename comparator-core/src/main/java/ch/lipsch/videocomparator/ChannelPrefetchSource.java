@@ -0,0 +1,80 @@
+/*
+ * Copyright (C) 2015 Erwin Betschart
+ *
+ * This file is part of Video Comparator.
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.lipsch.videocomparator;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Reads ahead with large positional reads into pooled direct buffers. Used for sources which can not be mapped, e.g. a file descriptor
+ * of a content provider on a file system without mmap support.
+ */
+class ChannelPrefetchSource implements PrefetchSource {
+
+    private final FileChannel channel;
+    private final Closeable owner;
+    private final long size;
+
+    /**
+     * @param channel The channel. Must support positional reads.
+     * @param owner   Closed together with the channel (e.g. the file descriptor the channel belongs to). May be null.
+     * @throws IOException If the size is not known.
+     */
+    public ChannelPrefetchSource(FileChannel channel, Closeable owner) throws IOException {
+        this.channel = channel;
+        this.owner = owner;
+        this.size = channel.size();
+    }
+
+    @Override
+    public long size() {
+        return size;
+    }
+
+    @Override
+    public int prefetch(long position, ByteBuffer buffer) throws IOException {
+        int total = 0;
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + total);
+            if (read < 0) {
+                break;
+            }
+            total += read;
+        }
+        return total;
+    }
+
+    @Override
+    public void close() {
+        closeQuietly(channel);
+        closeQuietly(owner);
+    }
+
+    static void closeQuietly(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                //Nothing left to do.
+            }
+        }
+    }
+}
@@ -0,0 +1,358 @@
+/*
+ * Copyright (C) 2015 Erwin Betschart
+ *
+ * This file is part of Video Comparator.
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.lipsch.videocomparator;
+
+/**
+ * Orchestrates the comparison of the videos: Playing, pausing and stopping all of them together, keeping them in sync and keeping them
+ * together while one of them stalls. The play state, the sync engine, the stall handler and the metrics are updated consistently.
+ * <p/>
+ * The session does not depend on android: The players are accessed through the Players interface and the ticks are driven by the caller
+ * (e.g. a handler of the activity), so it can be tested and benchmarked on the JVM. The activity only adapts the widgets and the player
+ * callbacks to the session.
+ * <p/>
+ * This class is not thread-safe: All calls must be done in the same thread (usually the main thread).
+ */
+class ComparatorSession {
+
+    /**
+     * The group of players which plays the videos.
+     */
+    interface Players {
+
+        int getPlayerCount();
+
+        ComparablePlayer getPlayer(int index);
+
+        /**
+         * Starts all loaded players together as soon as all of them are prepared.
+         */
+        void startWhenPrepared();
+
+        /**
+         * Pauses all players.
+         */
+        void pause();
+
+        /**
+         * Stops all players and rewinds them. The videos stay loaded.
+         */
+        void stop();
+    }
+
+    /**
+     * Gets informed about changes the session made by itself.
+     */
+    interface Listener {
+
+        /**
+         * The state of a video changed without a call of the caller, e.g. a video was paused because its partner stalls.
+         */
+        void onPlayStateChanged();
+    }
+
+    private final VideoPlayState playState;
+    private final PlaybackMetrics metrics;
+    private final Players players;
+    private final Listener listener;
+    private final VideoSyncEngine syncEngine;
+    private final StallHandler stallHandler;
+    private LinkedSeekCoordinator seekCoordinator = null;
+
+    /**
+     * @param clock     The clock of the sync engine and the stall handler.
+     * @param playState The states of the videos. One video per player.
+     * @param metrics   Records the drift, the stalls and the player events.
+     * @param players   The players.
+     * @param listener  Gets informed about changes of the play state.
+     */
+    public ComparatorSession(PlaybackClock clock, VideoPlayState playState, PlaybackMetrics metrics, final Players players, final Listener listener) {
+        if (playState.getVideoCount() != players.getPlayerCount() || metrics.getPlayerCount() != players.getPlayerCount()) {
+            throw new IllegalArgumentException("The play state and the metrics must have one entry per player");
+        }
+
+        this.playState = playState;
+        this.metrics = metrics;
+        this.players = players;
+        this.listener = listener;
+
+        SyncablePlayer[] syncablePlayers = new SyncablePlayer[players.getPlayerCount()];
+        for (int i = 0; i < syncablePlayers.length; i++) {
+            syncablePlayers[i] = new CorrectedPlayer(i);
+        }
+        syncEngine = new VideoSyncEngine(clock, syncablePlayers);
+
+        stallHandler = new StallHandler(playState, clock, new StallHandler.Listener() {
+            @Override
+            public void onPauseForStall(int video) {
+                players.getPlayer(video).pause();
+                listener.onPlayStateChanged();
+            }
+
+            @Override
+            public void onResumeAfterStall(int[] videos) {
+                for (int video : videos) {
+                    players.getPlayer(video).start();
+                }
+                if (syncEngine.isRunning()) {
+                    //The stalled video fell behind while the other one was paused already.
+                    syncEngine.resync();
+                }
+                listener.onPlayStateChanged();
+            }
+        });
+    }
+
+    /**
+     * Routes the corrective seeks of the sync engine through the seek schedulers of the coordinator. This way the schedulers know about every
+     * seek of the players and do not take the completion of a corrective seek for the one of a user seek.
+     *
+     * @param seekCoordinator The coordinator of the user seeks or null to seek the players directly.
+     */
+    public void setSeekCoordinator(LinkedSeekCoordinator seekCoordinator) {
+        this.seekCoordinator = seekCoordinator;
+    }
+
+    public VideoSyncEngine getSyncEngine() {
+        return syncEngine;
+    }
+
+    /**
+     * Plays all loaded videos. The players are started together as soon as all of them are prepared.
+     */
+    public void play() {
+        players.startWhenPrepared();
+        for (int i = 0; i < players.getPlayerCount(); i++) {
+            playState.apply(i, PlayStateMachine.Event.PLAY);
+        }
+
+        stallHandler.startSession();
+        startSync();
+    }
+
+    /**
+     * Pauses all videos. The positions are remembered in the play state in case the process is killed.
+     */
+    public void pause() {
+        endPlaySession();
+        stopSync();
+        players.pause();
+
+        VideoPlayState.Snapshot snapshot = playState.getSnapshot();
+        for (int i = 0; i < players.getPlayerCount(); i++) {
+            if (snapshot.getVideo(i) != null) {
+                playState.pause(i, players.getPlayer(i).getCurrentPosition() / 1000.0);
+            }
+        }
+    }
+
+    /**
+     * Stops and rewinds all videos. The videos stay loaded.
+     */
+    public void stop() {
+        endPlaySession();
+        stopSync();
+        players.stop();
+
+        for (int i = 0; i < players.getPlayerCount(); i++) {
+            playState.stop(i);
+        }
+    }
+
+    /**
+     * Starts syncing the players. tickSync must be called regularly from now on. Called by play, must only be called directly if the players
+     * are playing already (e.g. after a configuration change).
+     */
+    public void startSync() {
+        syncEngine.start();
+        syncEngine.resetStatistics();
+    }
+
+    /**
+     * Stops syncing. Has no effect if not syncing.
+     *
+     * @return true if the sync engine was running. Its statistics are kept until the next start.
+     */
+    public boolean stopSync() {
+        if (!syncEngine.isRunning()) {
+            return false;
+        }
+        syncEngine.stop();
+        return true;
+    }
+
+    /**
+     * Lets the sync engine correct the drift and records it. Should be called regularly while syncing (e.g. every 100ms).
+     */
+    public void tickSync() {
+        if (!syncEngine.isRunning()) {
+            return;
+        }
+
+        int correctiveSeekCount = syncEngine.getCorrectiveSeekCount();
+        syncEngine.tick();
+        metrics.recordDrift(syncEngine.getLastDriftMs());
+        if (syncEngine.getCorrectiveSeekCount() > correctiveSeekCount) {
+            metrics.recordCorrectiveSeek(syncEngine.getLastDriftMs());
+        }
+    }
+
+    /**
+     * Must be called when a player reports that a seek completed, after the seek coordinator was informed. Lets the sync engine sample the player
+     * again once no seek of it is in flight anymore.
+     *
+     * @param video The index of the player.
+     */
+    public void onSeekComplete(int video) {
+        if (seekCoordinator == null || !seekCoordinator.getScheduler(video).isBusy()) {
+            syncEngine.onSeekComplete(video);
+        }
+    }
+
+    /**
+     * Takes the current positions of the players as new reference. Must be called after the user seeked the players.
+     */
+    public void resync() {
+        syncEngine.resync();
+    }
+
+    /**
+     * The players actually started playing (they were prepared). The offsets are valid from now on.
+     */
+    public void onPlayersStarted() {
+        if (syncEngine.isRunning()) {
+            syncEngine.resync();
+        }
+    }
+
+    /**
+     * The video of the player played to the end.
+     */
+    public void onCompletion(int player) {
+        playState.apply(player, PlayStateMachine.Event.COMPLETE);
+        stallHandler.onStallerGone();
+    }
+
+    /**
+     * The player failed.
+     */
+    public void onError(int player) {
+        playState.apply(player, PlayStateMachine.Event.FAIL);
+        stallHandler.onStallerGone();
+    }
+
+    /**
+     * The player stalls to buffer. The partners are paused until the stall ends.
+     */
+    public void onBufferingStart(int player) {
+        metrics.getPlayer(player).onBufferingStart();
+        stallHandler.onBufferingStart(player);
+    }
+
+    /**
+     * The player is done buffering. All videos are resumed together as soon as no video is buffering anymore.
+     */
+    public void onBufferingEnd(int player) {
+        metrics.getPlayer(player).onBufferingEnd();
+        stallHandler.onBufferingEnd(player);
+    }
+
+    /**
+     * The player can not decode fast enough.
+     */
+    public void onVideoTrackLagging(int player) {
+        metrics.getPlayer(player).onVideoTrackLagging();
+    }
+
+    /**
+     * Ends a running stall and records the stall time of the play session.
+     */
+    private void endPlaySession() {
+        stallHandler.onPlaybackStopped();
+        if (stallHandler.getSessionStallCount() > 0) {
+            metrics.recordSessionStall(stallHandler.getSessionStallMs());
+        }
+        stallHandler.startSession();
+    }
+
+    /**
+     * Maps a position in a video to the progress of a seek bar.
+     *
+     * @param positionMs  The position in milliseconds.
+     * @param durationMs  The duration of the video in milliseconds. -1 if no video is loaded.
+     * @param maxProgress The maximum progress of the seek bar.
+     * @return The progress. Rounded up, otherwise the end is never reached and the seek bar jumps back when set manually.
+     */
+    public static int toProgress(int positionMs, int durationMs, int maxProgress) {
+        if (durationMs <= 0) {
+            return 0;
+        }
+        return (int) Math.ceil(maxProgress * ((double) positionMs / durationMs));
+    }
+
+    /**
+     * Maps the progress of a seek bar to a position in a video.
+     *
+     * @param progress    The progress.
+     * @param maxProgress The maximum progress of the seek bar.
+     * @param durationMs  The duration of the video in milliseconds.
+     * @return The position in milliseconds.
+     */
+    public static int toPositionMs(int progress, int maxProgress, int durationMs) {
+        return (int) (durationMs * ((double) progress / maxProgress));
+    }
+
+    /**
+     * A player as seen by the sync engine: Seeks go through the seek scheduler of the player if there is a seek coordinator.
+     */
+    private class CorrectedPlayer implements SyncablePlayer {
+        private final int index;
+
+        CorrectedPlayer(int index) {
+            this.index = index;
+        }
+
+        @Override
+        public int getCurrentPosition() {
+            return players.getPlayer(index).getCurrentPosition();
+        }
+
+        @Override
+        public boolean isPlaying() {
+            return players.getPlayer(index).isPlaying();
+        }
+
+        @Override
+        public boolean seekTo(int positionMs) {
+            if (seekCoordinator == null) {
+                return players.getPlayer(index).seekTo(positionMs);
+            }
+            return seekCoordinator.getScheduler(index).seekCorrective(positionMs);
+        }
+
+        @Override
+        public boolean supportsPlaybackRate() {
+            return players.getPlayer(index).supportsPlaybackRate();
+        }
+
+        @Override
+        public void setPlaybackRate(float rate) {
+            players.getPlayer(index).setPlaybackRate(rate);
+        }
+    }
+}
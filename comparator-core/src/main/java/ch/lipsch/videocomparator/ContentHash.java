@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2015 Erwin Betschart
+ *
+ * This file is part of Video Comparator.
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.lipsch.videocomparator;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A fast hash which identifies a video file by its content without reading it completely: The first and last bytes and the size are hashed (FNV-1a, 64 bit).
+ * Two different videos with identical size, start and end are practically impossible.
+ */
+final class ContentHash {
+
+    /**
+     * Default number of bytes hashed at the start and at the end of the file.
+     */
+    public static final int DEFAULT_SAMPLE_BYTES = 64 * 1024;
+
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private ContentHash() {
+        //Utility class
+    }
+
+    /**
+     * Hashes the given file.
+     *
+     * @param channel     The channel of the file. Only read, the position is not changed.
+     * @param sampleBytes The number of bytes hashed at the start and at the end.
+     * @return The hash.
+     * @throws IOException If the file could not be read.
+     */
+    public static long compute(FileChannel channel, int sampleBytes) throws IOException {
+        long size = channel.size();
+        ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(sampleBytes, size));
+
+        long hash = FNV_OFFSET_BASIS;
+        for (int i = 0; i < 8; i++) {
+            hash = update(hash, (byte) (size >>> (i * 8)));
+        }
+
+        hash = update(hash, channel, 0, buffer);
+        if (size > sampleBytes) {
+            //The end may overlap with the start for small files, it is hashed anyway.
+            hash = update(hash, channel, size - buffer.capacity(), buffer);
+        }
+
+        return hash;
+    }
+
+    private static long update(long hash, FileChannel channel, long position, ByteBuffer buffer) throws IOException {
+        buffer.clear();
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read < 0) {
+                break;
+            }
+        }
+        buffer.flip();
+
+        long result = hash;
+        while (buffer.hasRemaining()) {
+            result = update(result, buffer.get());
+        }
+        return result;
+    }
+
+    private static long update(long hash, byte value) {
+        return (hash ^ (value & 0xFF)) * FNV_PRIME;
+    }
+
+    /**
+     * @return The hash as 16 hex digits, e.g. to be used in a file name.
+     */
+    public static String toHex(long hash) {
+        String hex = Long.toHexString(hash);
+        StringBuilder result = new StringBuilder(16);
+        for (int i = hex.length(); i < 16; i++) {
+            result.append('0');
+        }
+        return result.append(hex).toString();
+    }
+}
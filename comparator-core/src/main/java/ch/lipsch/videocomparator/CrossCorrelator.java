@@ -0,0 +1,196 @@
+/*
+ * Copyright (C) 2015 Erwin Betschart
+ *
+ * This file is part of Video Comparator.
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.lipsch.videocomparator;
+
+/**
+ * Finds the lag at which two signals match best with a normalized cross-correlation computed by FFT.
+ * <p/>
+ * The correlation at lag L compares a[i] with b[i + L], i.e. a positive lag means that the content of a appears L samples later in b.
+ * Every lag is normalized by the energy of the overlapping parts only (Pearson correlation of the overlap), so lags with a short overlap are not
+ * preferred or penalized just because fewer samples are summed up. Lags whose overlap is shorter than the minimum overlap are ignored.
+ * <p/>
+ * The work arrays are kept between calls. This class is not thread-safe.
+ */
+class CrossCorrelator {
+
+    /**
+     * Lags closer to the best lag than this are not taken as the second best peak (the neighbours of a peak are high as well).
+     */
+    public static final int PEAK_EXCLUSION = 2;
+
+    private double[] realA = new double[0];
+    private double[] imaginaryA = new double[0];
+    private double[] realB = new double[0];
+    private double[] imaginaryB = new double[0];
+    private double[] energyA = new double[0];
+    private double[] energyB = new double[0];
+    private double[] correlations = new double[0];
+
+    private int maxLag = 0;
+    private int bestLag = 0;
+    private double bestCorrelation = Double.NaN;
+    private double secondBestCorrelation = Double.NaN;
+
+    /**
+     * Correlates the signals.
+     *
+     * @param a          The first signal.
+     * @param lengthA    The number of valid values of the first signal.
+     * @param b          The second signal.
+     * @param lengthB    The number of valid values of the second signal.
+     * @param maxLag     The largest lag (in both directions) which is searched.
+     * @param minOverlap The minimum number of overlapping samples a lag needs to count. At least 2.
+     * @return true if a best lag was found. False if no lag has enough overlap or the signals are constant.
+     */
+    public boolean correlate(double[] a, int lengthA, double[] b, int lengthB, int maxLag, int minOverlap) {
+        if (maxLag < 0 || minOverlap < 2 || lengthA < 0 || lengthB < 0) {
+            throw new IllegalArgumentException("Invalid lag or overlap");
+        }
+
+        this.maxLag = maxLag;
+        bestLag = 0;
+        bestCorrelation = Double.NaN;
+        secondBestCorrelation = Double.NaN;
+        if (lengthA < minOverlap || lengthB < minOverlap) {
+            return false;
+        }
+
+        //Large enough that the circular correlation does not wrap around.
+        int n = Fft.sizeFor(lengthA + lengthB);
+        ensureCapacity(n, Math.max(lengthA, lengthB) + 1, 2 * maxLag + 1);
+
+        load(a, lengthA, realA, imaginaryA, energyA, n);
+        load(b, lengthB, realB, imaginaryB, energyB, n);
+        Fft.transform(realA, imaginaryA, n, false);
+        Fft.transform(realB, imaginaryB, n, false);
+
+        //conj(A) * B, stored in A.
+        for (int i = 0; i < n; i++) {
+            double real = realA[i] * realB[i] + imaginaryA[i] * imaginaryB[i];
+            double imaginary = realA[i] * imaginaryB[i] - imaginaryA[i] * realB[i];
+            realA[i] = real;
+            imaginaryA[i] = imaginary;
+        }
+        Fft.transform(realA, imaginaryA, n, true);
+
+        for (int lag = -maxLag; lag <= maxLag; lag++) {
+            int start = Math.max(0, -lag);
+            int end = Math.min(lengthA, lengthB - lag);
+            double correlation = Double.NaN;
+
+            if (end - start >= minOverlap) {
+                double energy = (energyA[end] - energyA[start]) * (energyB[end + lag] - energyB[start + lag]);
+                if (energy > 0) {
+                    correlation = realA[lag >= 0 ? lag : n + lag] / Math.sqrt(energy);
+                }
+            }
+
+            correlations[lag + maxLag] = correlation;
+            if (correlation > bestCorrelation || (Double.isNaN(bestCorrelation) && !Double.isNaN(correlation))) {
+                bestCorrelation = correlation;
+                bestLag = lag;
+            }
+        }
+
+        if (Double.isNaN(bestCorrelation)) {
+            return false;
+        }
+
+        for (int lag = -maxLag; lag <= maxLag; lag++) {
+            double correlation = correlations[lag + maxLag];
+            if (Math.abs(lag - bestLag) > PEAK_EXCLUSION && (correlation > secondBestCorrelation || Double.isNaN(secondBestCorrelation))) {
+                secondBestCorrelation = correlation;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Copies the signal without its mean into the work arrays and computes the prefix sums of the squares.
+     */
+    private static void load(double[] signal, int length, double[] real, double[] imaginary, double[] energy, int n) {
+        double sum = 0;
+        for (int i = 0; i < length; i++) {
+            sum += signal[i];
+        }
+        double mean = sum / length;
+
+        energy[0] = 0;
+        for (int i = 0; i < length; i++) {
+            double value = signal[i] - mean;
+            real[i] = value;
+            energy[i + 1] = energy[i] + value * value;
+        }
+        for (int i = length; i < n; i++) {
+            real[i] = 0;
+        }
+        for (int i = 0; i < n; i++) {
+            imaginary[i] = 0;
+        }
+    }
+
+    private void ensureCapacity(int n, int energySize, int lagCount) {
+        if (realA.length < n) {
+            realA = new double[n];
+            imaginaryA = new double[n];
+            realB = new double[n];
+            imaginaryB = new double[n];
+        }
+        if (energyA.length < energySize) {
+            energyA = new double[energySize];
+            energyB = new double[energySize];
+        }
+        if (correlations.length < lagCount) {
+            correlations = new double[lagCount];
+        }
+    }
+
+    /**
+     * @return The lag with the highest correlation of the last call of correlate.
+     */
+    public int getBestLag() {
+        return bestLag;
+    }
+
+    /**
+     * @return The highest correlation (-1..1) or NaN if none was found.
+     */
+    public double getBestCorrelation() {
+        return bestCorrelation;
+    }
+
+    /**
+     * @return The highest correlation outside the best peak or NaN if there is none. The ratio to the best correlation tells how unique the match is.
+     */
+    public double getSecondBestCorrelation() {
+        return secondBestCorrelation;
+    }
+
+    /**
+     * @param lag A lag within the searched range.
+     * @return The correlation at the lag or NaN if the overlap was too short.
+     */
+    public double getCorrelation(int lag) {
+        if (lag < -maxLag || lag > maxLag) {
+            throw new IndexOutOfBoundsException("Lag not searched: " + lag);
+        }
+        return correlations[lag + maxLag];
+    }
+}
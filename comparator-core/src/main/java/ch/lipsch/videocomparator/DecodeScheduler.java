@@ -0,0 +1,444 @@
+/*
+ * Copyright (C) 2015 Erwin Betschart
+ *
+ * This file is part of Video Comparator.
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.lipsch.videocomparator;
+
+import java.util.Arrays;
+
+/**
+ * Decides which tile of the grid mode is decoded when and at which resolution, so that up to MAX_TILES videos share the few decoders of a device.
+ * <p/>
+ * Every decoder (slot) decodes one frame at a time. If there are more tiles than decoders, the focused tile keeps a decoder for itself and the
+ * other tiles share the remaining decoders: They are time-sliced, i.e. refreshed one after the other at a lower rate. Off-focus tiles are decoded
+ * at a lower resolution (OFF_FOCUS_DIVISOR, down to MAX_DIVISOR) and their refresh rate is lowered until the decoders are no longer overloaded.
+ * <p/>
+ * The cost of a frame is measured with every decoded frame, the plan is adapted when the costs differ from the estimates.
+ * All tiles decode the frame at the position of one shared clock, so the tiles show the same moment (off-focus tiles at most one refresh
+ * interval late).
+ * <p/>
+ * This class is thread-safe: The decoders ask for work from their own threads.
+ */
+class DecodeScheduler {
+
+    public static final int MAX_TILES = 4;
+
+    /**
+     * Off-focus tiles are decoded at least at half the width and height.
+     */
+    public static final int OFF_FOCUS_DIVISOR = 2;
+
+    /**
+     * The width and height of a tile is divided by at most this value.
+     */
+    public static final int MAX_DIVISOR = 4;
+
+    /**
+     * Off-focus tiles are refreshed at least once per second, even if the decoders are overloaded.
+     */
+    public static final double MIN_REFRESH_RATE = 1.0;
+
+    /**
+     * The share of the time a decoder is planned to be busy. The rest absorbs jitter of the decode costs.
+     */
+    private static final double TARGET_UTILIZATION = 0.9;
+
+    /**
+     * The weight of a new measurement in the moving average of the frame costs.
+     */
+    private static final double COST_SMOOTHING = 0.2;
+
+    /**
+     * The plan is made again if a measured cost differs by more than this fraction from the cost the plan is based on.
+     */
+    private static final double REPLAN_THRESHOLD = 0.25;
+
+    private static final long NEVER = Long.MIN_VALUE;
+
+    private final PlaybackClock clock;
+    private final int decoderLimit;
+    private final double assumedPixelsPerMs;
+
+    private int tileCount = 0;
+    private int focus = 0;
+    private int slotCount = 0;
+
+    //The properties of the tiles, indexed by the tile.
+    private final int[] pixels = new int[MAX_TILES];
+    private final double[] frameRates = new double[MAX_TILES];
+    private final int[] slots = new int[MAX_TILES];
+    private final int[] divisors = new int[MAX_TILES];
+    private final double[] refreshRates = new double[MAX_TILES];
+
+    /**
+     * The measured (or estimated) cost of a frame at the current divisor in milliseconds.
+     */
+    private final double[] costsMs = new double[MAX_TILES];
+
+    /**
+     * The costs the current plan is based on.
+     */
+    private final double[] plannedCostsMs = new double[MAX_TILES];
+
+    private final long[] lastRequestMs = new long[MAX_TILES];
+    private final long[] requestedPositionsMs = new long[MAX_TILES];
+    private final long[] decodedPositionsMs = new long[MAX_TILES];
+    private final boolean[] inFlight = new boolean[MAX_TILES];
+
+    private boolean playing = false;
+    private long anchorTimeMs = 0;
+    private long anchorPositionMs = 0;
+
+    private int planCount = 0;
+
+    /**
+     * @param clock              The shared clock.
+     * @param decoderLimit       The number of frames which can be decoded at once (the number of decoder instances of the device).
+     * @param assumedPixelsPerMs The decode speed of one decoder assumed until the first frames are measured.
+     */
+    public DecodeScheduler(PlaybackClock clock, int decoderLimit, double assumedPixelsPerMs) {
+        if (clock == null || decoderLimit < 1 || assumedPixelsPerMs <= 0) {
+            throw new IllegalArgumentException("A clock, at least one decoder and a positive speed are needed");
+        }
+        this.clock = clock;
+        this.decoderLimit = decoderLimit;
+        this.assumedPixelsPerMs = assumedPixelsPerMs;
+    }
+
+    /**
+     * Sets the videos of the tiles. The focus is moved to the first tile and all tiles are decoded again.
+     *
+     * @param widths     The width of the video of every tile.
+     * @param heights    The height of the video of every tile.
+     * @param frameRates The frame rate of the video of every tile. The tiles are refreshed at most at this rate.
+     */
+    public synchronized void setTiles(int[] widths, int[] heights, double[] frameRates) {
+        if (widths.length != heights.length || widths.length != frameRates.length || widths.length > MAX_TILES) {
+            throw new IllegalArgumentException("At most " + MAX_TILES + " tiles with a width, height and frame rate each");
+        }
+
+        tileCount = widths.length;
+        focus = 0;
+        for (int i = 0; i < tileCount; i++) {
+            pixels[i] = Math.max(1, widths[i] * heights[i]);
+            this.frameRates[i] = frameRates[i] > 0 ? frameRates[i] : MIN_REFRESH_RATE;
+            divisors[i] = 1;
+            costsMs[i] = pixels[i] / assumedPixelsPerMs;
+        }
+        Arrays.fill(lastRequestMs, NEVER);
+        Arrays.fill(decodedPositionsMs, NEVER);
+        Arrays.fill(inFlight, false);
+        plan();
+    }
+
+    public synchronized int getTileCount() {
+        return tileCount;
+    }
+
+    /**
+     * Moves the focus: The tile gets a decoder of its own (if there are more tiles than decoders) and is decoded at full resolution and rate.
+     */
+    public synchronized void setFocus(int tile) {
+        checkTile(tile);
+        focus = tile;
+        plan();
+    }
+
+    public synchronized int getFocus() {
+        return focus;
+    }
+
+    /**
+     * @return The number of decoders which are used. Decoder threads with a higher slot number can be stopped.
+     */
+    public synchronized int getSlotCount() {
+        return slotCount;
+    }
+
+    /**
+     * @return The decoder slot of the tile.
+     */
+    public synchronized int getSlot(int tile) {
+        checkTile(tile);
+        return slots[tile];
+    }
+
+    /**
+     * @return The value the width and height of the tile are divided by when decoding (1, 2 or 4).
+     */
+    public synchronized int getDivisor(int tile) {
+        checkTile(tile);
+        return divisors[tile];
+    }
+
+    /**
+     * @return The planned number of frames per second of the tile while playing.
+     */
+    public synchronized double getRefreshRate(int tile) {
+        checkTile(tile);
+        return refreshRates[tile];
+    }
+
+    /**
+     * @return The number of times the plan was made. For tests and statistics.
+     */
+    public synchronized int getPlanCount() {
+        return planCount;
+    }
+
+    /**
+     * Starts the shared clock at the current position.
+     */
+    public synchronized void start() {
+        if (!playing) {
+            anchorPositionMs = getPositionMs();
+            anchorTimeMs = clock.getTimeMs();
+            playing = true;
+        }
+    }
+
+    /**
+     * Stops the shared clock. Every tile is decoded once more at the position where it stopped.
+     */
+    public synchronized void pause() {
+        anchorPositionMs = getPositionMs();
+        anchorTimeMs = clock.getTimeMs();
+        playing = false;
+    }
+
+    public synchronized boolean isPlaying() {
+        return playing;
+    }
+
+    /**
+     * Moves the shared clock. Every tile is decoded at the new position as soon as possible.
+     */
+    public synchronized void seekTo(long positionMs) {
+        anchorPositionMs = Math.max(0, positionMs);
+        anchorTimeMs = clock.getTimeMs();
+        Arrays.fill(lastRequestMs, NEVER);
+    }
+
+    /**
+     * @return The position of the shared clock in milliseconds.
+     */
+    public synchronized long getPositionMs() {
+        return playing ? anchorPositionMs + clock.getTimeMs() - anchorTimeMs : anchorPositionMs;
+    }
+
+    /**
+     * Picks the tile a decoder should decode next: The due tile of the slot which is most overdue. The focused tile wins ties.
+     *
+     * @param slot The slot of the asking decoder.
+     * @return The tile or -1 if no tile of the slot is due. The position to decode is returned by getRequestedPositionMs.
+     */
+    public synchronized int nextTile(int slot) {
+        long now = clock.getTimeMs();
+        long position = getPositionMs();
+
+        int best = -1;
+        double bestOverdueMs = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < tileCount; i++) {
+            if (slots[i] != slot || inFlight[i]) {
+                continue;
+            }
+
+            double overdueMs;
+            if (lastRequestMs[i] == NEVER) {
+                overdueMs = Double.MAX_VALUE;
+            } else if (playing) {
+                overdueMs = now - lastRequestMs[i] - 1000 / refreshRates[i];
+            } else {
+                //Paused: Only the frame at the current position is needed.
+                overdueMs = decodedPositionsMs[i] == position ? -1 : 0;
+            }
+
+            if (overdueMs >= 0 && (overdueMs > bestOverdueMs || (overdueMs == bestOverdueMs && i == focus))) {
+                best = i;
+                bestOverdueMs = overdueMs;
+            }
+        }
+
+        if (best >= 0) {
+            inFlight[best] = true;
+            lastRequestMs[best] = now;
+            requestedPositionsMs[best] = position;
+        }
+        return best;
+    }
+
+    /**
+     * @return The time in milliseconds until a tile of the slot gets due (0 if one is due now), or -1 if no tile is pending (e.g. while paused).
+     */
+    public synchronized long getWaitMs(int slot) {
+        long now = clock.getTimeMs();
+        long position = getPositionMs();
+        long waitMs = -1;
+
+        for (int i = 0; i < tileCount; i++) {
+            if (slots[i] != slot || inFlight[i]) {
+                continue;
+            }
+
+            long tileWaitMs;
+            if (lastRequestMs[i] == NEVER || (!playing && decodedPositionsMs[i] != position)) {
+                tileWaitMs = 0;
+            } else if (playing) {
+                tileWaitMs = Math.max(0, lastRequestMs[i] + (long) Math.ceil(1000 / refreshRates[i]) - now);
+            } else {
+                continue;
+            }
+
+            waitMs = waitMs < 0 ? tileWaitMs : Math.min(waitMs, tileWaitMs);
+        }
+        return waitMs;
+    }
+
+    /**
+     * @return The position in milliseconds the tile was last requested at by nextTile.
+     */
+    public synchronized long getRequestedPositionMs(int tile) {
+        checkTile(tile);
+        return requestedPositionsMs[tile];
+    }
+
+    /**
+     * A decoder finished the frame of a tile it got by nextTile. The cost is measured and the plan is adapted if needed.
+     *
+     * @param tile     The tile.
+     * @param decodeMs The time needed to decode the frame.
+     */
+    public synchronized void onFrameDecoded(int tile, long decodeMs) {
+        checkTile(tile);
+        inFlight[tile] = false;
+        decodedPositionsMs[tile] = requestedPositionsMs[tile];
+
+        costsMs[tile] += COST_SMOOTHING * (Math.max(0.1, decodeMs) - costsMs[tile]);
+        if (Math.abs(costsMs[tile] - plannedCostsMs[tile]) > REPLAN_THRESHOLD * plannedCostsMs[tile]) {
+            plan();
+        }
+    }
+
+    /**
+     * A decoder could not decode the frame of a tile. The tile is tried again at its next refresh.
+     */
+    public synchronized void onFrameFailed(int tile) {
+        checkTile(tile);
+        inFlight[tile] = false;
+    }
+
+    /**
+     * Assigns the tiles to the decoders and plans the resolution and refresh rate of every tile.
+     */
+    private void plan() {
+        planCount++;
+        slotCount = Math.min(decoderLimit, tileCount);
+
+        //The focused tile gets a decoder of its own if there are more tiles than decoders, the others share the rest round robin.
+        int nextSlot = slotCount > 1 && tileCount > slotCount ? 1 : 0;
+        for (int i = 0; i < tileCount; i++) {
+            if (i == focus && nextSlot == 1) {
+                slots[i] = 0;
+            } else {
+                slots[i] = nextSlot;
+                nextSlot++;
+                if (nextSlot >= slotCount) {
+                    nextSlot = slotCount > 1 && tileCount > slotCount ? 1 : 0;
+                }
+            }
+        }
+
+        for (int slot = 0; slot < slotCount; slot++) {
+            planSlot(slot);
+        }
+
+        System.arraycopy(costsMs, 0, plannedCostsMs, 0, tileCount);
+    }
+
+    private void planSlot(int slot) {
+        double budget = TARGET_UTILIZATION;
+
+        //The focused tile first: Full resolution at up to its frame rate.
+        if (tileCount > 0 && slots[focus] == slot) {
+            setDivisor(focus, 1);
+            refreshRates[focus] = Math.min(frameRates[focus], budget * 1000 / costsMs[focus]);
+            budget -= refreshRates[focus] * costsMs[focus] / 1000;
+        }
+
+        for (int i = 0; i < tileCount; i++) {
+            if (slots[i] == slot && i != focus) {
+                setDivisor(i, OFF_FOCUS_DIVISOR);
+                refreshRates[i] = frameRates[i];
+            }
+        }
+
+        //Lower the resolution of the most expensive tile until the others fit or all are at the lowest resolution.
+        double demand = getOffFocusDemand(slot);
+        while (demand > budget) {
+            int mostExpensive = -1;
+            for (int i = 0; i < tileCount; i++) {
+                if (slots[i] == slot && i != focus && divisors[i] < MAX_DIVISOR
+                        && (mostExpensive < 0 || costsMs[i] * refreshRates[i] > costsMs[mostExpensive] * refreshRates[mostExpensive])) {
+                    mostExpensive = i;
+                }
+            }
+            if (mostExpensive < 0) {
+                break;
+            }
+            setDivisor(mostExpensive, divisors[mostExpensive] * 2);
+            demand = getOffFocusDemand(slot);
+        }
+
+        //Then lower the refresh rates: The tiles are time-sliced.
+        if (demand > budget) {
+            double factor = Math.max(0, budget) / demand;
+            for (int i = 0; i < tileCount; i++) {
+                if (slots[i] == slot && i != focus) {
+                    refreshRates[i] = Math.max(MIN_REFRESH_RATE, refreshRates[i] * factor);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return The share of the time the off-focus tiles of the slot need at their planned rates.
+     */
+    private double getOffFocusDemand(int slot) {
+        double demand = 0;
+        for (int i = 0; i < tileCount; i++) {
+            if (slots[i] == slot && i != focus) {
+                demand += refreshRates[i] * costsMs[i] / 1000;
+            }
+        }
+        return demand;
+    }
+
+    /**
+     * Changes the divisor of a tile. The cost estimate is scaled with the number of pixels until the next frame is measured.
+     */
+    private void setDivisor(int tile, int divisor) {
+        double ratio = (double) divisors[tile] / divisor;
+        costsMs[tile] *= ratio * ratio;
+        divisors[tile] = divisor;
+    }
+
+    private void checkTile(int tile) {
+        if (tile < 0 || tile >= tileCount) {
+            throw new IndexOutOfBoundsException("No such tile: " + tile);
+        }
+    }
+}
@@ -0,0 +1,243 @@
+/*
+ * Copyright (C) 2015 Erwin Betschart
+ *
+ * This file is part of Video Comparator.
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.lipsch.videocomparator;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Finds the positions where two videos differ most (divergence hotspots) by comparing their frame signatures.
+ * <p/>
+ * The detector works incrementally: The signature streams may grow while the videos are scanned and update processes the frames added since the last call.
+ * First the streams are aligned: The offset (in frames) of the second video which matches the first frames best is searched within maxOffsetFrames.
+ * Then every aligned frame pair is scored. The best hotspots are kept ranked, a hotspot suppresses lower scored frames closer than minGapFrames,
+ * so a long divergent scene shows up as one hotspot.
+ * <p/>
+ * This class is not thread-safe.
+ */
+class DivergenceDetector {
+
+    /**
+     * Frame pairs with a lower divergence are never hotspots (e.g. encoding noise).
+     */
+    public static final double MIN_SCORE = 0.05;
+
+    /**
+     * The minimum number of frames compared to find the alignment.
+     */
+    private static final int MIN_ALIGNMENT_FRAMES = 8;
+
+    private static final Comparator<DivergenceHotspot> BY_SCORE = new Comparator<DivergenceHotspot>() {
+        @Override
+        public int compare(DivergenceHotspot hotspot1, DivergenceHotspot hotspot2) {
+            return Double.compare(hotspot2.getScore(), hotspot1.getScore());
+        }
+    };
+
+    private final SignatureStream stream1;
+    private final SignatureStream stream2;
+    private final int maxOffsetFrames;
+    private final int minGapFrames;
+    private final int maxHotspots;
+
+    private final List<DivergenceHotspot> hotspots = new ArrayList<DivergenceHotspot>();
+
+    private boolean isAligned = false;
+    private int offsetFrames = 0;
+
+    /**
+     * The next frame of the first stream to score.
+     */
+    private int nextFrame = 0;
+
+    /**
+     * @param stream1         The signatures of the first video.
+     * @param stream2         The signatures of the second video.
+     * @param maxOffsetFrames The maximum offset between the videos which is searched when aligning.
+     * @param minGapFrames    The minimum distance between two hotspots.
+     * @param maxHotspots     The maximum number of hotspots kept.
+     */
+    public DivergenceDetector(SignatureStream stream1, SignatureStream stream2, int maxOffsetFrames, int minGapFrames, int maxHotspots) {
+        if (maxOffsetFrames < 0 || minGapFrames < 1 || maxHotspots < 1) {
+            throw new IllegalArgumentException("Invalid parameters");
+        }
+
+        this.stream1 = stream1;
+        this.stream2 = stream2;
+        this.maxOffsetFrames = maxOffsetFrames;
+        this.minGapFrames = minGapFrames;
+        this.maxHotspots = maxHotspots;
+    }
+
+    /**
+     * Processes the frames added to the streams since the last call.
+     * The streams are aligned as soon as enough frames are available.
+     *
+     * @return true if the hotspots changed.
+     */
+    public boolean update() {
+        if (!isAligned) {
+            int alignmentFrames = getAlignmentFrames();
+            if (stream1.size() < alignmentFrames || stream2.size() < alignmentFrames) {
+                return false;
+            }
+            align();
+        }
+
+        return scoreNewFrames();
+    }
+
+    /**
+     * Processes the remaining frames when the streams are complete. Aligns with the available frames if the videos are too short for a regular alignment.
+     *
+     * @return true if the hotspots changed.
+     */
+    public boolean finish() {
+        if (!isAligned && stream1.size() > 0 && stream2.size() > 0) {
+            align();
+        }
+
+        return isAligned && scoreNewFrames();
+    }
+
+    /**
+     * The number of frames of both streams needed to align: The offsets of both directions must be comparable with at least MIN_ALIGNMENT_FRAMES.
+     */
+    private int getAlignmentFrames() {
+        return 2 * maxOffsetFrames + MIN_ALIGNMENT_FRAMES;
+    }
+
+    private void align() {
+        int frames = Math.min(getAlignmentFrames(), Math.min(stream1.size(), stream2.size()));
+        double bestDistance = Double.MAX_VALUE;
+
+        //At least half of the frames must overlap, a few frames match by chance (only relevant for very short videos).
+        int searchedOffsetFrames = Math.min(maxOffsetFrames, frames / 2);
+        for (int offset = 0; offset <= searchedOffsetFrames; offset++) {
+            //Try the smaller offsets first, so equal distances prefer them.
+            for (int sign = 1; sign >= -1; sign -= 2) {
+                int signedOffset = offset * sign;
+                double distance = meanDistance(signedOffset, frames);
+                if (distance < bestDistance) {
+                    bestDistance = distance;
+                    offsetFrames = signedOffset;
+                }
+                if (offset == 0) {
+                    break;
+                }
+            }
+        }
+
+        isAligned = true;
+        nextFrame = Math.max(0, -offsetFrames);
+    }
+
+    /**
+     * @return The mean distance of the first frames with the given offset or Double.MAX_VALUE if no frames overlap.
+     */
+    private double meanDistance(int offset, int frames) {
+        double sum = 0;
+        int count = 0;
+        for (int frame = Math.max(0, -offset); frame < frames && frame + offset < frames; frame++) {
+            sum += stream1.distance(frame, stream2, frame + offset);
+            count++;
+        }
+
+        return count == 0 ? Double.MAX_VALUE : sum / count;
+    }
+
+    private boolean scoreNewFrames() {
+        boolean isChanged = false;
+        while (nextFrame < stream1.size() && nextFrame + offsetFrames < stream2.size()) {
+            int frame2 = nextFrame + offsetFrames;
+            double score = stream1.distance(nextFrame, stream2, frame2);
+            if (score >= MIN_SCORE) {
+                isChanged |= addCandidate(new DivergenceHotspot(nextFrame, frame2, stream1.getTimeUs(nextFrame), stream2.getTimeUs(frame2), score));
+            }
+            nextFrame++;
+        }
+
+        return isChanged;
+    }
+
+    /**
+     * Adds a scored frame pair to the hotspots unless a close hotspot with a higher score suppresses it. Close hotspots with lower scores are replaced.
+     *
+     * @return true if the candidate was added.
+     */
+    boolean addCandidate(DivergenceHotspot candidate) {
+        //All close hotspots are checked before any is removed: A suppressed candidate must not remove anything.
+        for (DivergenceHotspot hotspot : hotspots) {
+            if (isClose(hotspot, candidate) && hotspot.getScore() >= candidate.getScore()) {
+                return false;
+            }
+        }
+
+        boolean isReplacing = false;
+        for (int i = hotspots.size() - 1; i >= 0; i--) {
+            if (isClose(hotspots.get(i), candidate)) {
+                hotspots.remove(i);
+                isReplacing = true;
+            }
+        }
+
+        if (!isReplacing && hotspots.size() >= maxHotspots) {
+            DivergenceHotspot lowest = hotspots.get(hotspots.size() - 1);
+            if (lowest.getScore() >= candidate.getScore()) {
+                return false;
+            }
+            hotspots.remove(hotspots.size() - 1);
+        }
+
+        hotspots.add(candidate);
+        Collections.sort(hotspots, BY_SCORE);
+        return true;
+    }
+
+    private boolean isClose(DivergenceHotspot hotspot1, DivergenceHotspot hotspot2) {
+        return Math.abs(hotspot1.getFrame1() - hotspot2.getFrame1()) < minGapFrames;
+    }
+
+    /**
+     * @return The hotspots found so far, ranked by score (highest first). A copy.
+     */
+    public List<DivergenceHotspot> getHotspots() {
+        return new ArrayList<DivergenceHotspot>(hotspots);
+    }
+
+    public boolean isAligned() {
+        return isAligned;
+    }
+
+    /**
+     * @return The offset of the second video in frames: Frame n of the first video matches frame n + offset of the second video.
+     */
+    public int getOffsetFrames() {
+        return offsetFrames;
+    }
+
+    /**
+     * @return The number of frames of the first video which have been scored.
+     */
+    public int getScoredFrames() {
+        return nextFrame;
+    }
+}
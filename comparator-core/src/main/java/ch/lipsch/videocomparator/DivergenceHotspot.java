@@ -0,0 +1,71 @@
+/*
+ * Copyright (C) 2015 Erwin Betschart
+ *
+ * This file is part of Video Comparator.
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.lipsch.videocomparator;
+
+/**
+ * A position where two videos differ a lot. Immutable.
+ */
+class DivergenceHotspot {
+
+    private final int frame1;
+    private final int frame2;
+    private final long timeUs1;
+    private final long timeUs2;
+    private final double score;
+
+    /**
+     * @param frame1  The index of the frame in the first video.
+     * @param frame2  The index of the aligned frame in the second video.
+     * @param timeUs1 The time of the frame in the first video.
+     * @param timeUs2 The time of the frame in the second video.
+     * @param score   The divergence: 0.0 equal .. 1.0 completely different.
+     */
+    public DivergenceHotspot(int frame1, int frame2, long timeUs1, long timeUs2, double score) {
+        this.frame1 = frame1;
+        this.frame2 = frame2;
+        this.timeUs1 = timeUs1;
+        this.timeUs2 = timeUs2;
+        this.score = score;
+    }
+
+    public int getFrame1() {
+        return frame1;
+    }
+
+    public int getFrame2() {
+        return frame2;
+    }
+
+    public long getTimeUs1() {
+        return timeUs1;
+    }
+
+    public long getTimeUs2() {
+        return timeUs2;
+    }
+
+    public double getScore() {
+        return score;
+    }
+
+    @Override
+    public String toString() {
+        return "DivergenceHotspot{frame1=" + frame1 + ", frame2=" + frame2 + ", score=" + score + "}";
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright (C) 2015 Erwin Betschart
+ *
+ * This file is part of Video Comparator.
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.lipsch.videocomparator;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Scans two videos in the background and reports the divergence hotspots while scanning. The first hotspots are reported long before the videos are
+ * scanned completely. Only the signatures of the frames are kept, the luma planes of the current frames are reused.
+ * <p/>
+ * This class is not thread-safe: scan must not be called concurrently.
+ */
+class DivergenceScanner {
+
+    /**
+     * Gets informed about the progress of the scan. Called in the scanning thread.
+     */
+    interface Listener {
+
+        /**
+         * @param hotspots      The hotspots found so far, ranked by score (highest first).
+         * @param scannedFrames The number of frames of the first video which have been compared.
+         * @param isDone        true if the scan is complete.
+         */
+        void onHotspotsChanged(List<DivergenceHotspot> hotspots, int scannedFrames, boolean isDone);
+    }
+
+    private final int maxOffsetFrames;
+    private final int minGapFrames;
+    private final int maxHotspots;
+
+    private final SignatureExtractor extractor = new SignatureExtractor();
+
+    /**
+     * @param maxOffsetFrames The maximum offset between the videos which is searched when aligning.
+     * @param minGapFrames    The minimum distance between two hotspots.
+     * @param maxHotspots     The maximum number of hotspots reported.
+     */
+    public DivergenceScanner(int maxOffsetFrames, int minGapFrames, int maxHotspots) {
+        this.maxOffsetFrames = maxOffsetFrames;
+        this.minGapFrames = minGapFrames;
+        this.maxHotspots = maxHotspots;
+    }
+
+    /**
+     * Scans both videos completely.
+     *
+     * @param source1  The first video.
+     * @param source2  The second video.
+     * @param listener Gets informed whenever the hotspots change and when the scan is done.
+     * @return The detector with the final hotspots and the alignment.
+     * @throws IOException          In case a frame can not be read.
+     * @throws InterruptedException In case the thread was interrupted. The scan is cancelled.
+     */
+    public DivergenceDetector scan(LumaFrameSource source1, LumaFrameSource source2, Listener listener) throws IOException, InterruptedException {
+        SignatureStream stream1 = new SignatureStream();
+        SignatureStream stream2 = new SignatureStream();
+        DivergenceDetector detector = new DivergenceDetector(stream1, stream2, maxOffsetFrames, minGapFrames, maxHotspots);
+
+        byte[] luma1 = new byte[source1.getWidth() * source1.getHeight()];
+        byte[] luma2 = new byte[source2.getWidth() * source2.getHeight()];
+        boolean hasFrames1 = true;
+        boolean hasFrames2 = true;
+
+        //The streams are read until both end: With an offset the second video may have frames after the end of the first one.
+        while (hasFrames1 || hasFrames2) {
+            if (Thread.interrupted()) {
+                throw new InterruptedException("Scan cancelled");
+            }
+
+            hasFrames1 = hasFrames1 && readSignature(source1, luma1, stream1);
+            hasFrames2 = hasFrames2 && readSignature(source2, luma2, stream2);
+
+            if (detector.update()) {
+                listener.onHotspotsChanged(detector.getHotspots(), detector.getScoredFrames(), false);
+            }
+        }
+
+        detector.finish();
+        listener.onHotspotsChanged(detector.getHotspots(), detector.getScoredFrames(), true);
+        return detector;
+    }
+
+    private boolean readSignature(LumaFrameSource source, byte[] luma, SignatureStream stream) throws IOException {
+        long timeUs = source.readNextFrame(luma);
+        if (timeUs < 0) {
+            return false;
+        }
+
+        extractor.extract(luma, source.getWidth(), source.getHeight(), timeUs, stream);
+        return true;
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2015 Erwin Betschart
+ *
+ * This file is part of Video Comparator.
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.lipsch.videocomparator;
+
+/**
+ * Decides which stream may read the next chunk so all streams which need data get the same bandwidth.
+ * <p/>
+ * Every stream accounts the bytes it was served. The stream with the fewest bytes is served next (fair queuing). A stream which did not need
+ * data for a while is not allowed to catch up on the bandwidth it did not use: When it needs data again, its account is raised to the
+ * smallest account of the other streams which need data. Otherwise it would starve the others until it is even.
+ * <p/>
+ * This class is not thread-safe.
+ */
+class FairPrefetchScheduler {
+
+    private final long[] servedBytes;
+    private final boolean[] wasNeedingData;
+
+    /**
+     * @param streamCount The number of streams.
+     */
+    public FairPrefetchScheduler(int streamCount) {
+        if (streamCount <= 0) {
+            throw new IllegalArgumentException("At least one stream is needed");
+        }
+        servedBytes = new long[streamCount];
+        wasNeedingData = new boolean[streamCount];
+    }
+
+    /**
+     * @param windows The read ahead window of every stream.
+     * @return The stream to serve next or -1 if no stream needs data.
+     */
+    public int nextStream(ReadAheadWindow[] windows) {
+        long minNeedingServed = Long.MAX_VALUE;
+        for (int i = 0; i < servedBytes.length; i++) {
+            if (wasNeedingData[i] && windows[i].needsData()) {
+                minNeedingServed = Math.min(minNeedingServed, servedBytes[i]);
+            }
+        }
+
+        int next = -1;
+        for (int i = 0; i < servedBytes.length; i++) {
+            boolean needsData = windows[i].needsData();
+            if (needsData && !wasNeedingData[i] && minNeedingServed != Long.MAX_VALUE) {
+                servedBytes[i] = Math.max(servedBytes[i], minNeedingServed);
+            }
+            wasNeedingData[i] = needsData;
+
+            if (needsData && (next < 0 || servedBytes[i] < servedBytes[next])) {
+                next = i;
+            }
+        }
+        return next;
+    }
+
+    /**
+     * The stream was served.
+     *
+     * @param stream The stream.
+     * @param bytes  The number of bytes read.
+     */
+    public void onServed(int stream, long bytes) {
+        servedBytes[stream] += bytes;
+    }
+
+    /**
+     * @return The number of bytes accounted for the stream.
+     */
+    public long getServedBytes(int stream) {
+        return servedBytes[stream];
+    }
+}
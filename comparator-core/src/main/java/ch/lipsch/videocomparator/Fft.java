@@ -0,0 +1,111 @@
+/*
+ * Copyright (C) 2015 Erwin Betschart
+ *
+ * This file is part of Video Comparator.
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.lipsch.videocomparator;
+
+/**
+ * An in-place radix-2 fast Fourier transform of complex values held in two primitive arrays (real and imaginary parts).
+ */
+final class Fft {
+
+    private Fft() {
+        //Utility class
+    }
+
+    /**
+     * @return The smallest power of two which is at least the given size.
+     */
+    public static int sizeFor(int minSize) {
+        if (minSize <= 1) {
+            return 1;
+        }
+        int size = Integer.highestOneBit(minSize - 1) << 1;
+        if (size <= 0) {
+            throw new IllegalArgumentException("Too large: " + minSize);
+        }
+        return size;
+    }
+
+    /**
+     * Transforms the values in place. The inverse transform is scaled by 1/n, so inverse(forward(x)) == x.
+     *
+     * @param real      The real parts.
+     * @param imaginary The imaginary parts.
+     * @param n         The number of values. Must be a power of two and not larger than the arrays.
+     * @param inverse   true for the inverse transform.
+     */
+    public static void transform(double[] real, double[] imaginary, int n, boolean inverse) {
+        if (n <= 0 || Integer.bitCount(n) != 1 || n > real.length || n > imaginary.length) {
+            throw new IllegalArgumentException("The size must be a power of two within the arrays: " + n);
+        }
+
+        //Bit reversal permutation
+        for (int i = 1, j = 0; i < n; i++) {
+            int bit = n >> 1;
+            for (; (j & bit) != 0; bit >>= 1) {
+                j ^= bit;
+            }
+            j ^= bit;
+
+            if (i < j) {
+                double temp = real[i];
+                real[i] = real[j];
+                real[j] = temp;
+                temp = imaginary[i];
+                imaginary[i] = imaginary[j];
+                imaginary[j] = temp;
+            }
+        }
+
+        for (int length = 2; length <= n; length <<= 1) {
+            double angle = (inverse ? 2 : -2) * Math.PI / length;
+            double stepReal = Math.cos(angle);
+            double stepImaginary = Math.sin(angle);
+            int half = length >> 1;
+
+            for (int start = 0; start < n; start += length) {
+                //The twiddle factor is advanced by multiplication. Accurate enough for the sizes used here.
+                double wReal = 1;
+                double wImaginary = 0;
+                for (int k = 0; k < half; k++) {
+                    int even = start + k;
+                    int odd = even + half;
+                    double oddReal = real[odd] * wReal - imaginary[odd] * wImaginary;
+                    double oddImaginary = real[odd] * wImaginary + imaginary[odd] * wReal;
+
+                    real[odd] = real[even] - oddReal;
+                    imaginary[odd] = imaginary[even] - oddImaginary;
+                    real[even] += oddReal;
+                    imaginary[even] += oddImaginary;
+
+                    double nextReal = wReal * stepReal - wImaginary * stepImaginary;
+                    wImaginary = wReal * stepImaginary + wImaginary * stepReal;
+                    wReal = nextReal;
+                }
+            }
+        }
+
+        if (inverse) {
+            double scale = 1.0 / n;
+            for (int i = 0; i < n; i++) {
+                real[i] *= scale;
+                imaginary[i] *= scale;
+            }
+        }
+    }
+}
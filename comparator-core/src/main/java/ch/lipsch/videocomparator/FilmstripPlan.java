@@ -0,0 +1,126 @@
+/*
+ * Copyright (C) 2015 Erwin Betschart
+ *
+ * This file is part of Video Comparator.
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.lipsch.videocomparator;
+
+/**
+ * Decides at which positions of a video the thumbnails of a filmstrip are taken.
+ * <p/>
+ * The interval adapts to the duration of the video: The smallest interval of a fixed ladder (1s, 2s, 5s, 10s...) is taken with which the number of
+ * thumbnails does not exceed the maximum. As the positions depend on the duration only, they stay the same across configuration changes and restarts
+ * (the thumbnails can be cached by position).
+ * <p/>
+ * The thumbnails are loaded coarse to fine (first, middle, quarters...) so the whole filmstrip is roughly visible early.
+ * <p/>
+ * This class is immutable.
+ */
+final class FilmstripPlan {
+
+    /**
+     * The possible intervals between two thumbnails in milliseconds.
+     */
+    private static final long[] INTERVALS_MS = {1000, 2000, 5000, 10000, 15000, 30000, 60000, 120000, 300000, 600000, 1800000, 3600000};
+
+    private final long durationMs;
+    private final long intervalMs;
+    private final int size;
+
+    /**
+     * @param durationMs    The duration of the video in milliseconds.
+     * @param maxThumbnails The maximum number of thumbnails. Exceeded only for videos longer than maxThumbnails hours.
+     */
+    public FilmstripPlan(long durationMs, int maxThumbnails) {
+        if (durationMs < 0 || maxThumbnails <= 0) {
+            throw new IllegalArgumentException("Invalid duration or thumbnail count");
+        }
+
+        long interval = INTERVALS_MS[INTERVALS_MS.length - 1];
+        for (long candidate : INTERVALS_MS) {
+            if (thumbnailCount(durationMs, candidate) <= maxThumbnails) {
+                interval = candidate;
+                break;
+            }
+        }
+
+        this.durationMs = durationMs;
+        this.intervalMs = interval;
+        this.size = thumbnailCount(durationMs, interval);
+    }
+
+    private static int thumbnailCount(long durationMs, long intervalMs) {
+        //One thumbnail at 0 and one at every interval before the end.
+        return (int) Math.min(Integer.MAX_VALUE, Math.max(1, (durationMs + intervalMs - 1) / intervalMs));
+    }
+
+    public long getDurationMs() {
+        return durationMs;
+    }
+
+    public long getIntervalMs() {
+        return intervalMs;
+    }
+
+    /**
+     * @return The number of thumbnails.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param index The index of the thumbnail.
+     * @return The position of the thumbnail in milliseconds.
+     */
+    public long getTimeMs(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Invalid thumbnail " + index);
+        }
+        return index * intervalMs;
+    }
+
+    /**
+     * @param positionMs A position in the video in milliseconds.
+     * @return The index of the thumbnail which is nearest to the position.
+     */
+    public int indexFor(long positionMs) {
+        long index = (positionMs + intervalMs / 2) / intervalMs;
+        return (int) Math.max(0, Math.min(size - 1, index));
+    }
+
+    /**
+     * @return The indexes of all thumbnails in coarse to fine order: 0, then the middle, then the quarters etc.
+     */
+    public int[] getLoadOrder() {
+        int[] order = new int[size];
+        boolean[] added = new boolean[size];
+        int count = 0;
+
+        int step = Integer.highestOneBit(Math.max(1, size - 1));
+        while (step >= 1) {
+            for (int i = 0; i < size; i += step) {
+                if (!added[i]) {
+                    added[i] = true;
+                    order[count++] = i;
+                }
+            }
+            step /= 2;
+        }
+
+        return order;
+    }
+}
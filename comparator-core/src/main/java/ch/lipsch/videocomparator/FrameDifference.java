@@ -0,0 +1,220 @@
+/*
+ * Copyright (C) 2015 Erwin Betschart
+ *
+ * This file is part of Video Comparator.
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.lipsch.videocomparator;
+
+/**
+ * Computes the per-pixel absolute difference of two frames and a scalar difference score. Used to spot encoding regressions.
+ * <p/>
+ * The frames are ARGB pixels (as delivered by Bitmap.getPixels) of the same size. The difference is rendered either per channel (|r1 - r2|, |g1 - g2|, |b1 - b2|)
+ * or as a heatmap of the largest channel difference. The pixels are split into bands which are computed in parallel by a BandExecutor.
+ * Computing a difference does not allocate any objects.
+ * <p/>
+ * This class is not thread-safe: compute must not be called concurrently.
+ */
+class FrameDifference implements BandExecutor.BandTask {
+
+    /**
+     * The way the difference is rendered.
+     */
+    public enum Mode {
+        /**
+         * Every channel shows the absolute difference of the channel. Black means equal.
+         */
+        ABSOLUTE,
+
+        /**
+         * The largest channel difference mapped to a color ramp (black, blue, red, yellow, white). Small differences are amplified by HEATMAP_GAIN.
+         */
+        HEATMAP
+    }
+
+    /**
+     * Differences are multiplied by this factor in the heatmap, otherwise the usual encoding differences (a few levels) would be invisible.
+     */
+    public static final int HEATMAP_GAIN = 4;
+
+    private static final int OPAQUE = 0xFF000000;
+    private static final int MAX_CHANNEL_SUM = 3 * 255;
+
+    /**
+     * Maps the largest channel difference (0..255) to a heatmap color.
+     */
+    private static final int[] HEATMAP_COLORS = createHeatmapColors();
+
+    private final BandExecutor executor;
+
+    /**
+     * The sum of the channel differences of every band. Summed up after all bands are done.
+     */
+    private final long[] bandSums;
+
+    //The arguments of the current compute call. Read by the bands.
+    private int[] frame1 = null;
+    private int[] frame2 = null;
+    private int[] difference = null;
+    private Mode mode = Mode.ABSOLUTE;
+
+    /**
+     * @param executor The executor which computes the bands in parallel.
+     */
+    public FrameDifference(BandExecutor executor) {
+        this.executor = executor;
+        this.bandSums = new long[executor.getBandCount()];
+    }
+
+    /**
+     * Computes the difference of two frames.
+     *
+     * @param frame1     The ARGB pixels of the first frame. The alpha channel is ignored.
+     * @param frame2     The ARGB pixels of the second frame. Must have the same size as frame1.
+     * @param difference Receives the rendered difference (opaque ARGB pixels). May be the same array as frame1 or frame2.
+     *                   null to compute the score only.
+     * @param pixelCount The number of pixels to compare (width * height).
+     * @param mode       The way the difference is rendered.
+     * @return The difference score: 0.0 if the frames are equal, 1.0 if every channel differs by 255 (e.g. black vs. white).
+     */
+    public double compute(int[] frame1, int[] frame2, int[] difference, int pixelCount, Mode mode) {
+        if (frame1.length < pixelCount || frame2.length < pixelCount || (difference != null && difference.length < pixelCount)) {
+            throw new IllegalArgumentException("The frames must have at least " + pixelCount + " pixels");
+        }
+        if (pixelCount == 0) {
+            return 0.0;
+        }
+
+        this.frame1 = frame1;
+        this.frame2 = frame2;
+        this.difference = difference;
+        this.mode = mode;
+        try {
+            executor.execute(this, pixelCount);
+        } finally {
+            //Do not keep the frames alive.
+            this.frame1 = null;
+            this.frame2 = null;
+            this.difference = null;
+        }
+
+        long sum = 0;
+        for (int band = 0; band < bandSums.length; band++) {
+            sum += bandSums[band];
+            bandSums[band] = 0;
+        }
+
+        return (double) sum / ((long) pixelCount * MAX_CHANNEL_SUM);
+    }
+
+    @Override
+    public void runBand(int band, int start, int end) {
+        if (difference == null) {
+            bandSums[band] = sumDifference(frame1, frame2, start, end);
+        } else if (mode == Mode.HEATMAP) {
+            bandSums[band] = renderHeatmap(frame1, frame2, difference, start, end);
+        } else {
+            bandSums[band] = renderAbsolute(frame1, frame2, difference, start, end);
+        }
+    }
+
+    private static long sumDifference(int[] frame1, int[] frame2, int start, int end) {
+        long sum = 0;
+        for (int i = start; i < end; i++) {
+            int pixel1 = frame1[i];
+            int pixel2 = frame2[i];
+            sum += Math.abs(((pixel1 >> 16) & 0xFF) - ((pixel2 >> 16) & 0xFF))
+                    + Math.abs(((pixel1 >> 8) & 0xFF) - ((pixel2 >> 8) & 0xFF))
+                    + Math.abs((pixel1 & 0xFF) - (pixel2 & 0xFF));
+        }
+        return sum;
+    }
+
+    private static long renderAbsolute(int[] frame1, int[] frame2, int[] difference, int start, int end) {
+        long sum = 0;
+        for (int i = start; i < end; i++) {
+            int pixel1 = frame1[i];
+            int pixel2 = frame2[i];
+            int red = Math.abs(((pixel1 >> 16) & 0xFF) - ((pixel2 >> 16) & 0xFF));
+            int green = Math.abs(((pixel1 >> 8) & 0xFF) - ((pixel2 >> 8) & 0xFF));
+            int blue = Math.abs((pixel1 & 0xFF) - (pixel2 & 0xFF));
+
+            sum += red + green + blue;
+            difference[i] = OPAQUE | (red << 16) | (green << 8) | blue;
+        }
+        return sum;
+    }
+
+    private static long renderHeatmap(int[] frame1, int[] frame2, int[] difference, int start, int end) {
+        long sum = 0;
+        for (int i = start; i < end; i++) {
+            int pixel1 = frame1[i];
+            int pixel2 = frame2[i];
+            int red = Math.abs(((pixel1 >> 16) & 0xFF) - ((pixel2 >> 16) & 0xFF));
+            int green = Math.abs(((pixel1 >> 8) & 0xFF) - ((pixel2 >> 8) & 0xFF));
+            int blue = Math.abs((pixel1 & 0xFF) - (pixel2 & 0xFF));
+
+            sum += red + green + blue;
+            difference[i] = HEATMAP_COLORS[Math.max(red, Math.max(green, blue))];
+        }
+        return sum;
+    }
+
+    /**
+     * @param channelDifference The largest channel difference (0..255).
+     * @return The heatmap color (opaque ARGB) of the difference.
+     */
+    static int getHeatmapColor(int channelDifference) {
+        return HEATMAP_COLORS[channelDifference];
+    }
+
+    private static int[] createHeatmapColors() {
+        int[] colors = new int[256];
+        for (int i = 0; i < colors.length; i++) {
+            //Four ramps of 64 levels each: black -> blue -> red -> yellow -> white
+            int level = Math.min(255, i * HEATMAP_GAIN);
+            int ramp = level / 64;
+            int step = (level % 64) * 4;
+
+            int red;
+            int green;
+            int blue;
+            switch (ramp) {
+                case 0:
+                    red = 0;
+                    green = 0;
+                    blue = step;
+                    break;
+                case 1:
+                    red = step;
+                    green = 0;
+                    blue = 255 - step;
+                    break;
+                case 2:
+                    red = 255;
+                    green = step;
+                    blue = 0;
+                    break;
+                default:
+                    red = 255;
+                    green = 255;
+                    blue = step;
+            }
+
+            colors[i] = OPAQUE | (red << 16) | (green << 8) | blue;
+        }
+        return colors;
+    }
+}
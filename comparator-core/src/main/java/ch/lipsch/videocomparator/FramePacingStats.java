@@ -0,0 +1,155 @@
+/*
+ * Copyright (C) 2015 Erwin Betschart
+ *
+ * This file is part of Video Comparator.
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.lipsch.videocomparator;
+
+/**
+ * Frame pacing statistics of a renderer which composes several video streams: The intervals between the drawn frames (average, maximum, janks)
+ * and the source frames of every stream which were replaced by a newer one before they could be drawn (dropped).
+ * <p/>
+ * The renderer reports every available source frame and every drawn frame, a drawn frame consumes the newest available frame of every stream.
+ * This class is thread-safe: The renderer records in its thread, the statistics are read in the main thread.
+ */
+class FramePacingStats {
+
+    /**
+     * The frame interval of a 60Hz display.
+     */
+    public static final long DEFAULT_FRAME_INTERVAL_NS = 1000000000L / 60;
+
+    /**
+     * A frame interval longer than this factor times the expected interval counts as jank.
+     */
+    public static final double JANK_FACTOR = 1.5;
+
+    private final long expectedIntervalNs;
+    private final int[] pendingSourceFrames;
+    private final long[] sourceFrames;
+    private final long[] droppedSourceFrames;
+
+    private long drawnFrames = 0;
+    private long lastFrameTimeNs = 0;
+    private long totalIntervalNs = 0;
+    private long maxIntervalNs = 0;
+    private long jankCount = 0;
+
+    /**
+     * @param streamCount        The number of composed streams.
+     * @param expectedIntervalNs The interval between two frames if the renderer keeps up (e.g. DEFAULT_FRAME_INTERVAL_NS).
+     */
+    public FramePacingStats(int streamCount, long expectedIntervalNs) {
+        if (streamCount < 1 || expectedIntervalNs <= 0) {
+            throw new IllegalArgumentException("At least one stream and a positive interval are needed");
+        }
+        this.expectedIntervalNs = expectedIntervalNs;
+        pendingSourceFrames = new int[streamCount];
+        sourceFrames = new long[streamCount];
+        droppedSourceFrames = new long[streamCount];
+    }
+
+    /**
+     * A new frame of a stream is available for drawing.
+     */
+    public synchronized void onSourceFrameAvailable(int stream) {
+        pendingSourceFrames[stream]++;
+        sourceFrames[stream]++;
+    }
+
+    /**
+     * A frame was drawn. It shows the newest available frame of every stream, the older ones are counted as dropped.
+     *
+     * @param timeNs The time the frame was drawn (monotonic, e.g. System.nanoTime()).
+     */
+    public synchronized void onFrameDrawn(long timeNs) {
+        for (int i = 0; i < pendingSourceFrames.length; i++) {
+            if (pendingSourceFrames[i] > 1) {
+                droppedSourceFrames[i] += pendingSourceFrames[i] - 1;
+            }
+            pendingSourceFrames[i] = 0;
+        }
+
+        if (drawnFrames > 0) {
+            long intervalNs = timeNs - lastFrameTimeNs;
+            totalIntervalNs += intervalNs;
+            maxIntervalNs = Math.max(maxIntervalNs, intervalNs);
+            if (intervalNs > JANK_FACTOR * expectedIntervalNs) {
+                jankCount++;
+            }
+        }
+        lastFrameTimeNs = timeNs;
+        drawnFrames++;
+    }
+
+    public synchronized long getDrawnFrames() {
+        return drawnFrames;
+    }
+
+    /**
+     * @return The average interval between two drawn frames in milliseconds or 0 if less than two frames were drawn.
+     */
+    public synchronized double getAverageIntervalMs() {
+        return drawnFrames < 2 ? 0 : totalIntervalNs / 1e6 / (drawnFrames - 1);
+    }
+
+    public synchronized double getMaxIntervalMs() {
+        return maxIntervalNs / 1e6;
+    }
+
+    /**
+     * @return The number of intervals which were longer than JANK_FACTOR times the expected interval.
+     */
+    public synchronized long getJankCount() {
+        return jankCount;
+    }
+
+    public synchronized long getSourceFrames(int stream) {
+        return sourceFrames[stream];
+    }
+
+    /**
+     * @return The number of source frames of the stream which were never drawn as a newer one was available before the next draw.
+     */
+    public synchronized long getDroppedSourceFrames(int stream) {
+        return droppedSourceFrames[stream];
+    }
+
+    public synchronized void reset() {
+        for (int i = 0; i < sourceFrames.length; i++) {
+            pendingSourceFrames[i] = 0;
+            sourceFrames[i] = 0;
+            droppedSourceFrames[i] = 0;
+        }
+        drawnFrames = 0;
+        lastFrameTimeNs = 0;
+        totalIntervalNs = 0;
+        maxIntervalNs = 0;
+        jankCount = 0;
+    }
+
+    @Override
+    public synchronized String toString() {
+        StringBuilder builder = new StringBuilder("FramePacingStats{drawn=").append(drawnFrames)
+                .append(", averageIntervalMs=").append(getAverageIntervalMs())
+                .append(", maxIntervalMs=").append(getMaxIntervalMs())
+                .append(", janks=").append(jankCount);
+        for (int i = 0; i < sourceFrames.length; i++) {
+            builder.append(", stream").append(i).append('=').append(sourceFrames[i]).append('/').append(droppedSourceFrames[i]).append(" dropped");
+        }
+        return builder.append('}').toString();
+    }
+}
@@ -0,0 +1,227 @@
+/*
+ * Copyright (C) 2015 Erwin Betschart
+ *
+ * This file is part of Video Comparator.
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.lipsch.videocomparator;
+
+/**
+ * A ring buffer of decoded frames which holds a window of consecutive frame indexes (e.g. the frames around the current play position).
+ * <p/>
+ * Frames can be added at both ends of the window. If the buffer is full the frame at the other end is evicted.
+ * Adding a frame which does not border the window drops the whole window (the user jumped to another position).
+ * <p/>
+ * This class is not thread-safe.
+ *
+ * @param <T> The type of a decoded frame.
+ */
+class FrameRingBuffer<T> {
+
+    /**
+     * Gets informed about frames removed from the buffer. E.g. to release memory.
+     */
+    interface EvictionListener<T> {
+        void onEvicted(long frameIndex, T frame);
+    }
+
+    private final Object[] frames;
+    private EvictionListener<T> evictionListener = null;
+
+    /**
+     * The frame index of the first frame in the window.
+     */
+    private long firstIndex = 0;
+
+    /**
+     * The position of the first frame in the frames array.
+     */
+    private int start = 0;
+
+    /**
+     * Number of frames in the window.
+     */
+    private int count = 0;
+
+    private long hitCount = 0;
+    private long missCount = 0;
+    private long evictionCount = 0;
+
+    /**
+     * @param capacity The maximum number of frames held.
+     */
+    public FrameRingBuffer(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive");
+        }
+        frames = new Object[capacity];
+    }
+
+    public void setEvictionListener(EvictionListener<T> evictionListener) {
+        this.evictionListener = evictionListener;
+    }
+
+    /**
+     * Delivers a frame from the buffer. Counts as hit or miss.
+     *
+     * @param frameIndex The index of the frame.
+     * @return The frame or null if it is not in the buffer.
+     */
+    public T get(long frameIndex) {
+        if (contains(frameIndex)) {
+            hitCount++;
+            return frameAt(frameIndex);
+        } else {
+            missCount++;
+            return null;
+        }
+    }
+
+    /**
+     * @param frameIndex The index of the frame.
+     * @return true if the frame is in the buffer. Does not count as hit or miss.
+     */
+    public boolean contains(long frameIndex) {
+        return count > 0 && frameIndex >= firstIndex && frameIndex < firstIndex + count;
+    }
+
+    /**
+     * Adds a frame to the buffer.
+     *
+     * @param frameIndex The index of the frame.
+     * @param frame      The decoded frame. Must not be null.
+     */
+    public void put(long frameIndex, T frame) {
+        if (frame == null) {
+            throw new IllegalArgumentException("frame must not be null");
+        }
+
+        if (contains(frameIndex)) {
+            int pos = positionOf(frameIndex);
+            T old = frameAt(frameIndex);
+            frames[pos] = frame;
+            if (old != frame) {
+                evicted(frameIndex, old);
+            }
+        } else if (count > 0 && frameIndex == firstIndex + count) {
+            //Append at the end
+            if (count == frames.length) {
+                evicted(firstIndex, removeFirst());
+            }
+            frames[(start + count) % frames.length] = frame;
+            count++;
+        } else if (count > 0 && frameIndex == firstIndex - 1) {
+            //Prepend at the beginning
+            if (count == frames.length) {
+                evicted(firstIndex + count - 1, removeLast());
+            }
+            start = (start - 1 + frames.length) % frames.length;
+            frames[start] = frame;
+            firstIndex = frameIndex;
+            count++;
+        } else {
+            clear();
+            firstIndex = frameIndex;
+            start = 0;
+            frames[0] = frame;
+            count = 1;
+        }
+    }
+
+    /**
+     * Removes all frames. The eviction listener is informed about each of them.
+     */
+    public void clear() {
+        while (count > 0) {
+            long index = firstIndex;
+            evicted(index, removeFirst());
+        }
+    }
+
+    public int size() {
+        return count;
+    }
+
+    public int capacity() {
+        return frames.length;
+    }
+
+    /**
+     * @return The index of the first frame in the window. Only valid if size() > 0.
+     */
+    public long getFirstIndex() {
+        return firstIndex;
+    }
+
+    /**
+     * @return The index of the last frame in the window. Only valid if size() > 0.
+     */
+    public long getLastIndex() {
+        return firstIndex + count - 1;
+    }
+
+    public long getHitCount() {
+        return hitCount;
+    }
+
+    public long getMissCount() {
+        return missCount;
+    }
+
+    public long getEvictionCount() {
+        return evictionCount;
+    }
+
+    /**
+     * @return The ratio of hits to all gets (0.0 .. 1.0). 0.0 if get was never called.
+     */
+    public double getHitRate() {
+        long total = hitCount + missCount;
+        return total == 0 ? 0.0 : (double) hitCount / total;
+    }
+
+    private int positionOf(long frameIndex) {
+        return (int) ((start + (frameIndex - firstIndex)) % frames.length);
+    }
+
+    @SuppressWarnings("unchecked")
+    private T frameAt(long frameIndex) {
+        return (T) frames[positionOf(frameIndex)];
+    }
+
+    private T removeFirst() {
+        T frame = frameAt(firstIndex);
+        frames[start] = null;
+        start = (start + 1) % frames.length;
+        firstIndex++;
+        count--;
+        return frame;
+    }
+
+    private T removeLast() {
+        long lastIndex = firstIndex + count - 1;
+        T frame = frameAt(lastIndex);
+        frames[positionOf(lastIndex)] = null;
+        count--;
+        return frame;
+    }
+
+    private void evicted(long frameIndex, T frame) {
+        evictionCount++;
+        if (evictionListener != null) {
+            evictionListener.onEvicted(frameIndex, frame);
+        }
+    }
+}
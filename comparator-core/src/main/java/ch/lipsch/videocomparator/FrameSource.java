@@ -0,0 +1,45 @@
+/*
+ * Copyright (C) 2015 Erwin Betschart
+ *
+ * This file is part of Video Comparator.
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.lipsch.videocomparator;
+
+/**
+ * Delivers decoded frames of a video at exact positions.
+ *
+ * @param <T> The type of a decoded frame (e.g. a Bitmap on android).
+ */
+interface FrameSource<T> {
+
+    /**
+     * Decodes the frame which is displayed at the given time.
+     *
+     * @param timeUs The presentation time in microseconds.
+     * @return The decoded frame or null if it could not be decoded.
+     */
+    T decodeFrame(long timeUs);
+
+    /**
+     * @return The duration of the video in microseconds.
+     */
+    long getDurationUs();
+
+    /**
+     * @return The number of frames per second.
+     */
+    double getFrameRate();
+}
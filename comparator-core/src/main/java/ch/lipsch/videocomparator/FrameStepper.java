@@ -0,0 +1,212 @@
+/*
+ * Copyright (C) 2015 Erwin Betschart
+ *
+ * This file is part of Video Comparator.
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.lipsch.videocomparator;
+
+/**
+ * Steps frame by frame through a video. Decoded frames are kept in a ring buffer around the current position so repeated steps are served from memory.
+ * On a buffer miss a few frames in the step direction are decoded in advance (read ahead).
+ * <p/>
+ * This class is not thread-safe. Decoding may be slow, so it should not be used from the main thread.
+ *
+ * @param <T> The type of a decoded frame.
+ */
+class FrameStepper<T> {
+
+    /**
+     * Default number of frames held in the ring buffer.
+     */
+    public static final int DEFAULT_BUFFER_CAPACITY = 16;
+
+    /**
+     * Default number of frames decoded in advance on a buffer miss.
+     */
+    public static final int DEFAULT_READ_AHEAD = 4;
+
+    private final FrameSource<T> source;
+    private final FrameRingBuffer<T> buffer;
+    private final double frameRate;
+    private final long frameCount;
+    private final int readAhead;
+
+    private long currentFrame = 0;
+    private int decodeCount = 0;
+
+    public FrameStepper(FrameSource<T> source) {
+        this(source, DEFAULT_BUFFER_CAPACITY, DEFAULT_READ_AHEAD);
+    }
+
+    /**
+     * @param source         The source of the decoded frames.
+     * @param bufferCapacity The number of frames held in memory.
+     * @param readAhead      The number of frames decoded in advance on a buffer miss. Must be smaller than the buffer capacity.
+     */
+    public FrameStepper(FrameSource<T> source, int bufferCapacity, int readAhead) {
+        if (source.getFrameRate() <= 0) {
+            throw new IllegalArgumentException("Frame rate must be positive");
+        }
+        if (readAhead < 0 || readAhead >= bufferCapacity) {
+            throw new IllegalArgumentException("Read ahead must be between 0 and the buffer capacity");
+        }
+
+        this.source = source;
+        this.buffer = new FrameRingBuffer<T>(bufferCapacity);
+        this.frameRate = source.getFrameRate();
+        this.frameCount = Math.max(1, (long) Math.floor(source.getDurationUs() * frameRate / 1000000.0));
+        this.readAhead = readAhead;
+    }
+
+    /**
+     * Moves to the frame which is displayed at the given position. Does not decode anything.
+     *
+     * @param positionMs The position in milliseconds (e.g. the current position of the player).
+     */
+    public void setPosition(long positionMs) {
+        currentFrame = clampFrame(toFrameIndex(positionMs * 1000));
+    }
+
+    /**
+     * @return The presentation time of the current frame in milliseconds.
+     */
+    public long getPositionMs() {
+        return toTimeUs(currentFrame) / 1000;
+    }
+
+    public long getCurrentFrame() {
+        return currentFrame;
+    }
+
+    public long getFrameCount() {
+        return frameCount;
+    }
+
+    /**
+     * Steps the given number of frames and delivers the frame at the new position.
+     *
+     * @param frames The number of frames to step. Negative to step back.
+     * @return The decoded frame or null if it could not be decoded.
+     */
+    public T step(int frames) {
+        currentFrame = clampFrame(currentFrame + frames);
+        return getFrame(currentFrame, frames < 0 ? -1 : 1);
+    }
+
+    /**
+     * @return The frame at the current position.
+     */
+    public T getCurrent() {
+        return getFrame(currentFrame, 1);
+    }
+
+    /**
+     * Computes the number of frames which fit into a memory budget, e.g. to keep large bitmaps from exhausting the heap.
+     *
+     * @param budgetBytes The memory available for the buffered frames.
+     * @param frameBytes  The memory of one decoded frame.
+     * @return The buffer capacity: Between 1 and DEFAULT_BUFFER_CAPACITY.
+     */
+    public static int capacityForBudget(long budgetBytes, long frameBytes) {
+        if (frameBytes <= 0) {
+            return DEFAULT_BUFFER_CAPACITY;
+        }
+        return (int) Math.max(1, Math.min(DEFAULT_BUFFER_CAPACITY, budgetBytes / frameBytes));
+    }
+
+    /**
+     * @return The read ahead for a buffer of the given capacity: DEFAULT_READ_AHEAD as long as the buffer holds more frames.
+     */
+    public static int readAheadForCapacity(int bufferCapacity) {
+        return Math.max(0, Math.min(DEFAULT_READ_AHEAD, bufferCapacity - 1));
+    }
+
+    /**
+     * Sets the listener which is informed about frames removed from the buffer, e.g. to release their memory.
+     * The frame delivered by the last step stays in the buffer until the next step.
+     */
+    public void setEvictionListener(FrameRingBuffer.EvictionListener<T> evictionListener) {
+        buffer.setEvictionListener(evictionListener);
+    }
+
+    /**
+     * Removes all frames from the buffer. The eviction listener is informed about each of them.
+     */
+    public void clear() {
+        buffer.clear();
+    }
+
+    /**
+     * @return The buffer of decoded frames. E.g. to read the hit rate.
+     */
+    public FrameRingBuffer<T> getBuffer() {
+        return buffer;
+    }
+
+    /**
+     * @return The number of frames decoded by the source so far.
+     */
+    public int getDecodeCount() {
+        return decodeCount;
+    }
+
+    private T getFrame(long frameIndex, int direction) {
+        T frame = buffer.get(frameIndex);
+        if (frame != null) {
+            return frame;
+        }
+
+        frame = decode(frameIndex);
+        if (frame == null) {
+            return null;
+        }
+
+        //In case we jumped to a position outside the buffer the buffer is restarted at this frame.
+        buffer.put(frameIndex, frame);
+
+        for (int i = 1; i <= readAhead; i++) {
+            long index = frameIndex + i * direction;
+            if (index < 0 || index >= frameCount || buffer.contains(index)) {
+                break;
+            }
+
+            T nextFrame = decode(index);
+            if (nextFrame == null) {
+                break;
+            }
+            buffer.put(index, nextFrame);
+        }
+
+        return frame;
+    }
+
+    private T decode(long frameIndex) {
+        decodeCount++;
+        return source.decodeFrame(toTimeUs(frameIndex));
+    }
+
+    private long toFrameIndex(long timeUs) {
+        return (long) Math.floor(timeUs * frameRate / 1000000.0);
+    }
+
+    private long toTimeUs(long frameIndex) {
+        return (long) Math.ceil(frameIndex * 1000000.0 / frameRate);
+    }
+
+    private long clampFrame(long frameIndex) {
+        return Math.max(0, Math.min(frameCount - 1, frameIndex));
+    }
+}
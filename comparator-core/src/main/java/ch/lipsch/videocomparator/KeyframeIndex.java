@@ -0,0 +1,122 @@
+/*
+ * Copyright (C) 2015 Erwin Betschart
+ *
+ * This file is part of Video Comparator.
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.lipsch.videocomparator;
+
+import java.util.Arrays;
+
+/**
+ * The key frames (sync samples) of a video: Their presentation times and byte offsets in the file.
+ * The times are sorted so a key frame can be found by binary search in O(log n).
+ * Instances are immutable and thus thread-safe.
+ */
+final class KeyframeIndex {
+
+    private final long[] timesUs;
+    private final long[] byteOffsets;
+    private final long durationUs;
+
+    /**
+     * @param timesUs     The presentation times of the key frames in microseconds. Must be sorted ascending.
+     * @param byteOffsets The byte offsets of the key frames in the file. Same length as timesUs.
+     * @param durationUs  The duration of the video track in microseconds.
+     */
+    public KeyframeIndex(long[] timesUs, long[] byteOffsets, long durationUs) {
+        if (timesUs.length != byteOffsets.length) {
+            throw new IllegalArgumentException("times and offsets must have the same length");
+        }
+        for (int i = 1; i < timesUs.length; i++) {
+            if (timesUs[i] < timesUs[i - 1]) {
+                throw new IllegalArgumentException("times must be sorted");
+            }
+        }
+
+        this.timesUs = timesUs.clone();
+        this.byteOffsets = byteOffsets.clone();
+        this.durationUs = durationUs;
+    }
+
+    /**
+     * @return The number of key frames.
+     */
+    public int size() {
+        return timesUs.length;
+    }
+
+    public long getDurationUs() {
+        return durationUs;
+    }
+
+    public long getTimeUs(int index) {
+        return timesUs[index];
+    }
+
+    public long getByteOffset(int index) {
+        return byteOffsets[index];
+    }
+
+    /**
+     * Finds the last key frame at or before the given time. That's the key frame from where a decoder has to start (pre-roll) to show the given time.
+     *
+     * @param timeUs The time in microseconds.
+     * @return The index of the key frame. 0 if the time is before the first key frame, -1 if there are no key frames.
+     */
+    public int floorIndex(long timeUs) {
+        if (timesUs.length == 0) {
+            return -1;
+        }
+
+        int pos = Arrays.binarySearch(timesUs, timeUs);
+        if (pos >= 0) {
+            //Several key frames with the same time: take the first one.
+            while (pos > 0 && timesUs[pos - 1] == timeUs) {
+                pos--;
+            }
+            return pos;
+        }
+
+        int insertionPoint = -pos - 1;
+        return Math.max(0, insertionPoint - 1);
+    }
+
+    /**
+     * Finds the key frame closest to the given time.
+     *
+     * @param timeUs The time in microseconds.
+     * @return The index of the key frame or -1 if there are no key frames.
+     */
+    public int nearestIndex(long timeUs) {
+        int floor = floorIndex(timeUs);
+        if (floor < 0 || floor == timesUs.length - 1) {
+            return floor;
+        }
+
+        long distanceBefore = Math.abs(timeUs - timesUs[floor]);
+        long distanceAfter = Math.abs(timesUs[floor + 1] - timeUs);
+        return distanceAfter < distanceBefore ? floor + 1 : floor;
+    }
+
+    /**
+     * @param timeMs The time in milliseconds.
+     * @return The time of the last key frame at or before the given time in milliseconds. The given time if there are no key frames.
+     */
+    public long getKeyframeTimeBeforeMs(long timeMs) {
+        int index = floorIndex(timeMs * 1000);
+        return index < 0 ? timeMs : timesUs[index] / 1000;
+    }
+}
@@ -0,0 +1,172 @@
+/*
+ * Copyright (C) 2015 Erwin Betschart
+ *
+ * This file is part of Video Comparator.
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.lipsch.videocomparator;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A histogram of durations in milliseconds with fixed buckets.
+ * <p/>
+ * Recording is lock-free and does not allocate, so it can be done on every frame and from any thread (e.g. the listener threads of the players).
+ * The values are not read atomically together: A read while another thread records may see the new value in the count but not yet in its bucket.
+ * This is good enough for statistics.
+ */
+final class LatencyHistogram {
+
+    /**
+     * The default upper bounds (inclusive) of the buckets in milliseconds. Values above the last bound are counted in an overflow bucket.
+     */
+    static final long[] DEFAULT_UPPER_BOUNDS_MS = {1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000, 10000};
+
+    private final long[] upperBoundsMs;
+
+    /**
+     * One counter per bucket plus the overflow bucket.
+     */
+    private final AtomicLongArray bucketCounts;
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sumMs = new AtomicLong();
+    private final AtomicLong maxMs = new AtomicLong();
+
+    public LatencyHistogram() {
+        this(DEFAULT_UPPER_BOUNDS_MS);
+    }
+
+    /**
+     * @param upperBoundsMs The upper bounds (inclusive) of the buckets in milliseconds. Must be ascending and not negative.
+     */
+    public LatencyHistogram(long[] upperBoundsMs) {
+        if (upperBoundsMs == null || upperBoundsMs.length == 0) {
+            throw new IllegalArgumentException("At least one bucket is needed");
+        }
+        for (int i = 0; i < upperBoundsMs.length; i++) {
+            if (upperBoundsMs[i] < 0 || (i > 0 && upperBoundsMs[i] <= upperBoundsMs[i - 1])) {
+                throw new IllegalArgumentException("Upper bounds must be ascending and not negative");
+            }
+        }
+
+        this.upperBoundsMs = upperBoundsMs.clone();
+        this.bucketCounts = new AtomicLongArray(upperBoundsMs.length + 1);
+    }
+
+    /**
+     * Records a duration. Negative durations (e.g. of a clock mismatch) are recorded as 0.
+     *
+     * @param valueMs The duration in milliseconds.
+     */
+    public void record(long valueMs) {
+        long value = Math.max(0, valueMs);
+
+        //Linear search: There are only a few buckets and most values are in the first ones.
+        int bucket = 0;
+        while (bucket < upperBoundsMs.length && value > upperBoundsMs[bucket]) {
+            bucket++;
+        }
+
+        bucketCounts.incrementAndGet(bucket);
+        count.incrementAndGet();
+        sumMs.addAndGet(value);
+
+        long max = maxMs.get();
+        while (value > max && !maxMs.compareAndSet(max, value)) {
+            max = maxMs.get();
+        }
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    /**
+     * @return The mean of the recorded durations in milliseconds. 0 if nothing was recorded.
+     */
+    public double getMeanMs() {
+        long currentCount = count.get();
+        return currentCount == 0 ? 0 : (double) sumMs.get() / currentCount;
+    }
+
+    /**
+     * @return The largest recorded duration in milliseconds. 0 if nothing was recorded.
+     */
+    public long getMaxMs() {
+        return maxMs.get();
+    }
+
+    /**
+     * @return The number of buckets including the overflow bucket.
+     */
+    public int getBucketCount() {
+        return bucketCounts.length();
+    }
+
+    /**
+     * @return The upper bound (inclusive) of the bucket in milliseconds. Long.MAX_VALUE for the overflow bucket.
+     */
+    public long getUpperBoundMs(int bucket) {
+        return bucket < upperBoundsMs.length ? upperBoundsMs[bucket] : Long.MAX_VALUE;
+    }
+
+    /**
+     * @return The number of durations recorded in the bucket.
+     */
+    public long getCountInBucket(int bucket) {
+        return bucketCounts.get(bucket);
+    }
+
+    /**
+     * Estimates a percentile with the resolution of the buckets: The upper bound of the bucket which contains the percentile is returned,
+     * but never more than the maximum.
+     *
+     * @param fraction The percentile as fraction, e.g. 0.95.
+     * @return The estimated percentile in milliseconds. 0 if nothing was recorded.
+     */
+    public long getPercentileMs(double fraction) {
+        if (fraction < 0 || fraction > 1) {
+            throw new IllegalArgumentException("Fraction must be between 0 and 1");
+        }
+
+        long total = 0;
+        for (int i = 0; i < bucketCounts.length(); i++) {
+            total += bucketCounts.get(i);
+        }
+        if (total == 0) {
+            return 0;
+        }
+
+        long rank = Math.max(1, (long) Math.ceil(fraction * total));
+        long seen = 0;
+        for (int i = 0; i < bucketCounts.length(); i++) {
+            seen += bucketCounts.get(i);
+            if (seen >= rank) {
+                return Math.min(getUpperBoundMs(i), maxMs.get());
+            }
+        }
+        return maxMs.get();
+    }
+
+    public void reset() {
+        for (int i = 0; i < bucketCounts.length(); i++) {
+            bucketCounts.set(i, 0);
+        }
+        count.set(0);
+        sumMs.set(0);
+        maxMs.set(0);
+    }
+}
@@ -0,0 +1,234 @@
+/*
+ * Copyright (C) 2015 Erwin Betschart
+ *
+ * This file is part of Video Comparator.
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.lipsch.videocomparator;
+
+/**
+ * Routes all user seeks of several players through one path. Owns a SeekScheduler per player.
+ * <p/>
+ * If the players are linked a seek of one player moves all players to the same timestamp plus their offset: The position of player i is
+ * the position of player 0 plus the offset of player i (e.g. the second take starts 1.5 seconds later). The targets are clamped to the durations.
+ * <p/>
+ * A coordinated seek is settled when the seeks of all involved players completed. Only then the positions should be read (e.g. to resync the
+ * VideoSyncEngine), otherwise a player which is still seeking reports its old position.
+ * <p/>
+ * This class is not thread-safe: All calls must be done in the same thread (usually the main thread).
+ */
+class LinkedSeekCoordinator {
+
+    private final SeekScheduler[] schedulers;
+
+    /**
+     * The offset of every player relative to player 0 in milliseconds.
+     */
+    private final int[] offsetsMs;
+
+    /**
+     * The duration of every player in milliseconds. 0 if unknown (no clamping at the end).
+     */
+    private final int[] durationsMs;
+
+    /**
+     * true for the players which are part of the seek which is not settled yet.
+     */
+    private final boolean[] involved;
+
+    private boolean linked = false;
+    private boolean unsettled = false;
+
+    /**
+     * @param schedulers The seek schedulers of the players. Player i is the player of scheduler i.
+     */
+    public LinkedSeekCoordinator(SeekScheduler... schedulers) {
+        if (schedulers == null || schedulers.length == 0) {
+            throw new IllegalArgumentException("At least one scheduler is needed");
+        }
+        this.schedulers = schedulers.clone();
+        this.offsetsMs = new int[schedulers.length];
+        this.durationsMs = new int[schedulers.length];
+        this.involved = new boolean[schedulers.length];
+    }
+
+    public SeekScheduler getScheduler(int player) {
+        return schedulers[player];
+    }
+
+    /**
+     * Links or unlinks the players. While unlinked a seek moves only the player it was requested for.
+     */
+    public void setLinked(boolean linked) {
+        this.linked = linked;
+    }
+
+    public boolean isLinked() {
+        return linked;
+    }
+
+    /**
+     * Sets the offset of a player relative to player 0. The offset of player 0 itself is always 0.
+     *
+     * @param player   The player (1 or higher).
+     * @param offsetMs The offset in milliseconds. Positive if the player is ahead of player 0.
+     */
+    public void setOffsetMs(int player, int offsetMs) {
+        if (player == 0 && offsetMs != 0) {
+            throw new IllegalArgumentException("Player 0 is the reference");
+        }
+        offsetsMs[player] = offsetMs;
+    }
+
+    public int getOffsetMs(int player) {
+        return offsetsMs[player];
+    }
+
+    /**
+     * Sets the duration of the video of a player. Targets of linked seeks are clamped to it.
+     *
+     * @param durationMs The duration in milliseconds. 0 or negative if unknown.
+     */
+    public void setDurationMs(int player, int durationMs) {
+        durationsMs[player] = Math.max(0, durationMs);
+    }
+
+    /**
+     * Maps a position of one player to the linked position of another player.
+     *
+     * @param sourcePlayer The player the position belongs to.
+     * @param positionMs   The position in milliseconds.
+     * @param player       The player to map the position to.
+     * @return The position of the other player, clamped to its duration.
+     */
+    public int getLinkedPositionMs(int sourcePlayer, int positionMs, int player) {
+        long target = (long) positionMs - offsetsMs[sourcePlayer] + offsetsMs[player];
+        if (durationsMs[player] > 0) {
+            target = Math.min(target, durationsMs[player]);
+        }
+        return (int) Math.max(0, target);
+    }
+
+    /**
+     * Seeks fast (to key frames) while dragging. Moves all players if linked.
+     *
+     * @param sourcePlayer The player the user seeks.
+     * @param positionMs   The target of the player in milliseconds.
+     */
+    public void seekFast(int sourcePlayer, int positionMs) {
+        seek(sourcePlayer, positionMs, false);
+    }
+
+    /**
+     * Seeks exactly (e.g. when the finger lifts). Moves all players if linked, so they show the same frame.
+     *
+     * @param sourcePlayer The player the user seeks.
+     * @param positionMs   The target of the player in milliseconds.
+     */
+    public void seekPrecise(int sourcePlayer, int positionMs) {
+        seek(sourcePlayer, positionMs, true);
+    }
+
+    /**
+     * Seeks every player exactly to its own target, whether linked or not. E.g. to the positions of a divergence hotspot or to a stepped frame.
+     * The targets are clamped to the durations.
+     *
+     * @param positionsMs The target of every player in milliseconds. Negative to leave the player alone.
+     */
+    public void seekPreciseEach(int[] positionsMs) {
+        if (positionsMs.length != schedulers.length) {
+            throw new IllegalArgumentException("One target per player is needed");
+        }
+
+        for (int i = 0; i < schedulers.length; i++) {
+            if (positionsMs[i] >= 0) {
+                unsettled = true;
+                involved[i] = true;
+                schedulers[i].seekPrecise(durationsMs[i] > 0 ? Math.min(positionsMs[i], durationsMs[i]) : positionsMs[i]);
+            }
+        }
+    }
+
+    private void seek(int sourcePlayer, int positionMs, boolean isPrecise) {
+        unsettled = true;
+        for (int i = 0; i < schedulers.length; i++) {
+            if (i == sourcePlayer || linked) {
+                int target = i == sourcePlayer ? positionMs : getLinkedPositionMs(sourcePlayer, positionMs, i);
+                involved[i] = true;
+                if (isPrecise) {
+                    schedulers[i].seekPrecise(target);
+                } else {
+                    schedulers[i].seekFast(target);
+                }
+            }
+        }
+    }
+
+    /**
+     * Must be called when a player reports that a seek completed.
+     *
+     * @param player The player.
+     * @return true if this completion settled the coordinated seek, i.e. no involved player is seeking anymore.
+     */
+    public boolean onSeekComplete(int player) {
+        schedulers[player].onSeekComplete();
+        return checkSettled();
+    }
+
+    /**
+     * Checks the timeouts of the seeks in flight. Should be called regularly as long as isSettled is false.
+     *
+     * @return true if the coordinated seek settled.
+     */
+    public boolean tick() {
+        for (SeekScheduler scheduler : schedulers) {
+            scheduler.tick();
+        }
+        return checkSettled();
+    }
+
+    private boolean checkSettled() {
+        if (!unsettled) {
+            return false;
+        }
+
+        for (int i = 0; i < schedulers.length; i++) {
+            if (involved[i] && schedulers[i].isBusy()) {
+                return false;
+            }
+        }
+
+        unsettled = false;
+        for (int i = 0; i < involved.length; i++) {
+            involved[i] = false;
+        }
+        return true;
+    }
+
+    /**
+     * @return true if no seek of the players involved in the last seek is in flight.
+     */
+    public boolean isSettled() {
+        return !unsettled;
+    }
+
+    /**
+     * Forgets the seeks of a player (e.g. a new video is loaded).
+     */
+    public void reset(int player) {
+        schedulers[player].reset();
+        checkSettled();
+    }
+}
@@ -0,0 +1,209 @@
+/*
+ * Copyright (C) 2015 Erwin Betschart
+ *
+ * This file is part of Video Comparator.
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.lipsch.videocomparator;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Loads the sources of several slots (e.g. the two compared videos) in parallel on worker threads.
+ * <p/>
+ * Loading a new source into a slot cancels the work in flight for that slot: a stale result is released as soon as it is done and never delivered.
+ * The results are delivered through the callback executor (usually the main thread). Once every slot with a source is loaded, the callback is informed as well,
+ * so the slots can be started together.
+ * <p/>
+ * All methods must be called in the thread of the callback executor.
+ *
+ * @param <S> The type of the sources (e.g. an uri).
+ * @param <T> The type of the loaded sources (e.g. a prepared media player).
+ */
+class LoaderPipeline<S, T> {
+
+    /**
+     * Loads a source. Called in a worker thread.
+     */
+    interface Loader<S, T> {
+
+        /**
+         * @param source The source to load.
+         * @return The loaded source.
+         * @throws Exception In case the source can not be loaded.
+         */
+        T load(S source) throws Exception;
+
+        /**
+         * Releases a loaded source which is not needed anymore (e.g. because the load was cancelled).
+         */
+        void release(T loaded);
+    }
+
+    /**
+     * Gets informed about the loads. Called in the callback executor.
+     */
+    interface Callback<S, T> {
+
+        /**
+         * The source of a slot is loaded. The loaded source belongs to the callback from now on.
+         */
+        void onLoaded(int slot, S source, T loaded);
+
+        void onLoadFailed(int slot, S source, Exception e);
+
+        /**
+         * All slots with a source are loaded (or failed to load).
+         */
+        void onAllLoaded();
+    }
+
+    private final Loader<S, T> loader;
+    private final ExecutorService workers;
+    private final Executor callbackExecutor;
+
+    /**
+     * Incremented on every load or cancel of a slot. A result is only delivered if the generation did not change in the meantime.
+     * Read in the workers to skip cancelled loads which did not start yet.
+     */
+    private final AtomicIntegerArray generations;
+
+    private final Future<?>[] inFlight;
+
+    private Callback<S, T> callback = null;
+
+    /**
+     * @param slotCount        The number of slots.
+     * @param loader           Loads the sources.
+     * @param workers          The threads which load the sources. Should have a thread per slot to load all slots in parallel.
+     * @param callbackExecutor The executor in which the results are delivered.
+     */
+    public LoaderPipeline(int slotCount, Loader<S, T> loader, ExecutorService workers, Executor callbackExecutor) {
+        this.loader = loader;
+        this.workers = workers;
+        this.callbackExecutor = callbackExecutor;
+        this.generations = new AtomicIntegerArray(slotCount);
+        this.inFlight = new Future<?>[slotCount];
+    }
+
+    public void setCallback(Callback<S, T> callback) {
+        this.callback = callback;
+    }
+
+    /**
+     * Loads a source into a slot. Work in flight for the slot is cancelled.
+     *
+     * @param slot   The slot.
+     * @param source The source to load.
+     */
+    public void load(final int slot, final S source) {
+        cancel(slot);
+
+        final int generation = generations.get(slot);
+        inFlight[slot] = workers.submit(new Runnable() {
+            @Override
+            public void run() {
+                if (generations.get(slot) != generation) {
+                    //Cancelled before it started.
+                    return;
+                }
+
+                T loaded = null;
+                Exception failure = null;
+                try {
+                    loaded = loader.load(source);
+                } catch (Exception e) {
+                    failure = e;
+                }
+
+                deliver(slot, generation, source, loaded, failure);
+            }
+        });
+    }
+
+    private void deliver(final int slot, final int generation, final S source, final T loaded, final Exception failure) {
+        callbackExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (generations.get(slot) != generation) {
+                    //Another source was picked in the meantime.
+                    if (loaded != null) {
+                        loader.release(loaded);
+                    }
+                    return;
+                }
+
+                inFlight[slot] = null;
+                if (callback != null) {
+                    if (failure == null) {
+                        callback.onLoaded(slot, source, loaded);
+                    } else {
+                        callback.onLoadFailed(slot, source, failure);
+                    }
+                }
+
+                if (!isLoading() && callback != null) {
+                    callback.onAllLoaded();
+                }
+            }
+        });
+    }
+
+    /**
+     * Cancels the work in flight for a slot. The result of a load which already runs is released when it is done.
+     *
+     * @param slot The slot.
+     */
+    public void cancel(int slot) {
+        generations.incrementAndGet(slot);
+        if (inFlight[slot] != null) {
+            //A load which did not start yet is dropped. A running load can not be interrupted (e.g. preparing a media player).
+            inFlight[slot].cancel(false);
+            inFlight[slot] = null;
+        }
+    }
+
+    /**
+     * @return true if a slot is being loaded.
+     */
+    public boolean isLoading(int slot) {
+        return inFlight[slot] != null;
+    }
+
+    /**
+     * @return true if any slot is being loaded.
+     */
+    public boolean isLoading() {
+        for (int i = 0; i < inFlight.length; i++) {
+            if (inFlight[i] != null) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Cancels all work and stops the workers.
+     */
+    public void shutdown() {
+        for (int i = 0; i < inFlight.length; i++) {
+            cancel(i);
+        }
+        workers.shutdown();
+    }
+}
@@ -0,0 +1,44 @@
+/*
+ * Copyright (C) 2015 Erwin Betschart
+ *
+ * This file is part of Video Comparator.
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.lipsch.videocomparator;
+
+/**
+ * Converts ARGB pixels to luma (Y) planes. The quality metrics are computed on the luma plane only, like most video quality tools do.
+ */
+final class Luma {
+
+    private Luma() {
+        //Utility class
+    }
+
+    /**
+     * Converts ARGB pixels to full range luma (BT.601 weights, as used by JPEG).
+     *
+     * @param argb       The ARGB pixels. The alpha channel is ignored.
+     * @param luma       Receives the luma values (0..255).
+     * @param pixelCount The number of pixels to convert.
+     */
+    public static void fromArgb(int[] argb, byte[] luma, int pixelCount) {
+        for (int i = 0; i < pixelCount; i++) {
+            int pixel = argb[i];
+            //0.299 R + 0.587 G + 0.114 B in 8 bit fixed point
+            luma[i] = (byte) ((77 * ((pixel >> 16) & 0xFF) + 150 * ((pixel >> 8) & 0xFF) + 29 * (pixel & 0xFF) + 128) >> 8);
+        }
+    }
+}
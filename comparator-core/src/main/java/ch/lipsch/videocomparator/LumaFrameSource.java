@@ -0,0 +1,40 @@
+/*
+ * Copyright (C) 2015 Erwin Betschart
+ *
+ * This file is part of Video Comparator.
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.lipsch.videocomparator;
+
+import java.io.IOException;
+
+/**
+ * Delivers the luma planes of the frames of a video one after the other. Used to analyze whole videos without keeping more than one frame in memory.
+ */
+interface LumaFrameSource {
+
+    int getWidth();
+
+    int getHeight();
+
+    /**
+     * Reads the luma plane of the next frame.
+     *
+     * @param luma Receives the luma plane (width * height values, row by row).
+     * @return The presentation time of the frame in microseconds or -1 if there are no more frames.
+     * @throws IOException In case the frame can not be read.
+     */
+    long readNextFrame(byte[] luma) throws IOException;
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright (C) 2015 Erwin Betschart
+ *
+ * This file is part of Video Comparator.
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.lipsch.videocomparator;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Reads ahead a local file with memory mapped I/O: The range is mapped and loaded into physical memory. No bytes are copied.
+ */
+class MappedPrefetchSource implements PrefetchSource {
+
+    private final FileChannel channel;
+    private final Closeable owner;
+    private final long size;
+
+    /**
+     * @param channel The channel of the file. Must be a regular file.
+     * @param owner   Closed together with the channel (e.g. the file descriptor the channel belongs to). May be null.
+     * @throws IOException If the size is not known.
+     */
+    public MappedPrefetchSource(FileChannel channel, Closeable owner) throws IOException {
+        this.channel = channel;
+        this.owner = owner;
+        this.size = channel.size();
+    }
+
+    @Override
+    public long size() {
+        return size;
+    }
+
+    @Override
+    public int prefetch(long position, ByteBuffer buffer) throws IOException {
+        //Nothing is copied, the buffer is not needed.
+        int mappedLength = (int) Math.min(buffer.remaining(), size - position);
+        if (mappedLength <= 0) {
+            return 0;
+        }
+
+        //The mapping is unmapped by the garbage collector. Loading it pages the range in.
+        MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, position, mappedLength);
+        mapped.load();
+        return mappedLength;
+    }
+
+    @Override
+    public void close() {
+        ChannelPrefetchSource.closeQuietly(channel);
+        ChannelPrefetchSource.closeQuietly(owner);
+    }
+}
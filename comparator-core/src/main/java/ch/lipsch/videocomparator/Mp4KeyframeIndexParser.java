@@ -0,0 +1,359 @@
+/*
+ * Copyright (C) 2015 Erwin Betschart
+ *
+ * This file is part of Video Comparator.
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.lipsch.videocomparator;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Builds a KeyframeIndex from the sample tables of an MP4 / 3GP / MOV file.
+ * <p/>
+ * Only the moov box is memory mapped, the media data is never read. The first video track is used.
+ * The boxes read are mdhd (time scale), hdlr (track type), stts (decode times), ctts (composition offsets), stss (sync samples),
+ * stsc (sample to chunk), stsz (sample sizes) and stco / co64 (chunk offsets).
+ */
+final class Mp4KeyframeIndexParser {
+
+    private static final int HEADER_SIZE = 8;
+    private static final int LARGE_HEADER_SIZE = 16;
+
+    private Mp4KeyframeIndexParser() {
+        //Utility class
+    }
+
+    /**
+     * Parses the given file.
+     *
+     * @param channel The channel of the file. Only read, the position is not changed.
+     * @return The index of the first video track.
+     * @throws IOException In case the file could not be read or is not a valid MP4 file with a video track.
+     */
+    public static KeyframeIndex parse(FileChannel channel) throws IOException {
+        long size = channel.size();
+        long position = 0;
+        ByteBuffer header = ByteBuffer.allocate(LARGE_HEADER_SIZE);
+
+        while (position + HEADER_SIZE <= size) {
+            header.clear();
+            channel.read(header, position);
+            header.flip();
+            if (header.remaining() < HEADER_SIZE) {
+                break;
+            }
+
+            long boxSize = header.getInt(0) & 0xFFFFFFFFL;
+            int type = header.getInt(4);
+            int headerSize = HEADER_SIZE;
+            if (boxSize == 1) {
+                if (header.remaining() < LARGE_HEADER_SIZE) {
+                    break;
+                }
+                boxSize = header.getLong(8);
+                headerSize = LARGE_HEADER_SIZE;
+            } else if (boxSize == 0) {
+                boxSize = size - position;
+            }
+
+            if (boxSize < headerSize) {
+                throw new IOException("Invalid box size " + boxSize + " at " + position);
+            }
+
+            if (type == fourCc("moov")) {
+                long contentSize = Math.min(boxSize, size - position) - headerSize;
+                if (contentSize > Integer.MAX_VALUE) {
+                    throw new IOException("moov box too large");
+                }
+                ByteBuffer moov = channel.map(FileChannel.MapMode.READ_ONLY, position + headerSize, contentSize);
+                return parseMoov(moov);
+            }
+
+            position += boxSize;
+        }
+
+        throw new IOException("No moov box found");
+    }
+
+    /**
+     * Parses the content of a moov box (without its header).
+     *
+     * @param moov The content of the moov box. Read with absolute gets only, position and limit are not changed.
+     * @return The index of the first video track.
+     * @throws IOException In case there is no valid video track.
+     */
+    public static KeyframeIndex parseMoov(ByteBuffer moov) throws IOException {
+        int position = moov.position();
+        int end = moov.limit();
+
+        while (position + HEADER_SIZE <= end) {
+            int boxSize = boxSize(moov, position, end);
+            if (moov.getInt(position + 4) == fourCc("trak")) {
+                Track track = new Track();
+                parseContainer(moov, position + HEADER_SIZE, position + boxSize, track);
+                if (track.isVideo) {
+                    return track.buildIndex();
+                }
+            }
+            position += boxSize;
+        }
+
+        throw new IOException("No video track found");
+    }
+
+    /**
+     * Parses the children of a container box and collects the found tables in the track.
+     */
+    private static void parseContainer(ByteBuffer buffer, int start, int end, Track track) throws IOException {
+        int position = start;
+        while (position + HEADER_SIZE <= end) {
+            int boxSize = boxSize(buffer, position, end);
+            int type = buffer.getInt(position + 4);
+            int content = position + HEADER_SIZE;
+            int contentEnd = position + boxSize;
+
+            if (type == fourCc("mdia") || type == fourCc("minf") || type == fourCc("stbl")) {
+                parseContainer(buffer, content, contentEnd, track);
+            } else if (type == fourCc("hdlr")) {
+                //version/flags (4), pre_defined (4), handler_type (4)
+                track.isVideo = buffer.getInt(content + 8) == fourCc("vide");
+            } else if (type == fourCc("mdhd")) {
+                parseMdhd(buffer, content, track);
+            } else if (type == fourCc("stts")) {
+                track.stts = readPairs(buffer, content, contentEnd);
+            } else if (type == fourCc("ctts")) {
+                track.ctts = readPairs(buffer, content, contentEnd);
+            } else if (type == fourCc("stss")) {
+                track.stss = readInts(buffer, content + 4, contentEnd, 1);
+            } else if (type == fourCc("stsc")) {
+                track.stsc = readInts(buffer, content + 4, contentEnd, 3);
+            } else if (type == fourCc("stsz")) {
+                parseStsz(buffer, content, contentEnd, track);
+            } else if (type == fourCc("stco")) {
+                int[] offsets = readInts(buffer, content + 4, contentEnd, 1);
+                track.chunkOffsets = new long[offsets.length];
+                for (int i = 0; i < offsets.length; i++) {
+                    track.chunkOffsets[i] = offsets[i] & 0xFFFFFFFFL;
+                }
+            } else if (type == fourCc("co64")) {
+                int count = checkedCount(buffer, content + 4, contentEnd, 8);
+                track.chunkOffsets = new long[count];
+                for (int i = 0; i < count; i++) {
+                    track.chunkOffsets[i] = buffer.getLong(content + 8 + i * 8);
+                }
+            }
+
+            position += boxSize;
+        }
+    }
+
+    private static void parseMdhd(ByteBuffer buffer, int content, Track track) {
+        int version = buffer.get(content) & 0xFF;
+        if (version == 1) {
+            //version/flags (4), creation_time (8), modification_time (8), timescale (4), duration (8)
+            track.timeScale = buffer.getInt(content + 20) & 0xFFFFFFFFL;
+            track.duration = buffer.getLong(content + 24);
+        } else {
+            //version/flags (4), creation_time (4), modification_time (4), timescale (4), duration (4)
+            track.timeScale = buffer.getInt(content + 12) & 0xFFFFFFFFL;
+            track.duration = buffer.getInt(content + 16) & 0xFFFFFFFFL;
+        }
+    }
+
+    private static void parseStsz(ByteBuffer buffer, int content, int contentEnd, Track track) throws IOException {
+        //version/flags (4), sample_size (4), sample_count (4), entry_size (4) * sample_count if sample_size is 0
+        int sampleSize = buffer.getInt(content + 4);
+        int sampleCount = buffer.getInt(content + 8);
+        if (sampleCount < 0) {
+            throw new IOException("Invalid sample count " + sampleCount);
+        }
+
+        track.sampleCount = sampleCount;
+        if (sampleSize == 0) {
+            track.sampleSizes = readInts(buffer, content + 8, contentEnd, 1);
+        } else {
+            track.constantSampleSize = sampleSize;
+        }
+    }
+
+    /**
+     * Reads a table of (count, value) pairs as used by stts and ctts.
+     */
+    private static int[] readPairs(ByteBuffer buffer, int content, int contentEnd) throws IOException {
+        return readInts(buffer, content + 4, contentEnd, 2);
+    }
+
+    /**
+     * Reads a table with an entry count followed by the entries.
+     *
+     * @param countPosition The position of the entry count.
+     * @param intsPerEntry  The number of ints per entry.
+     */
+    private static int[] readInts(ByteBuffer buffer, int countPosition, int contentEnd, int intsPerEntry) throws IOException {
+        int count = checkedCount(buffer, countPosition, contentEnd, 4 * intsPerEntry);
+        int[] values = new int[count * intsPerEntry];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = buffer.getInt(countPosition + 4 + i * 4);
+        }
+        return values;
+    }
+
+    private static int checkedCount(ByteBuffer buffer, int countPosition, int contentEnd, int entrySize) throws IOException {
+        int count = buffer.getInt(countPosition);
+        if (count < 0 || (long) count * entrySize > contentEnd - countPosition - 4) {
+            throw new IOException("Invalid entry count " + count);
+        }
+        return count;
+    }
+
+    private static int boxSize(ByteBuffer buffer, int position, int end) throws IOException {
+        long size = buffer.getInt(position) & 0xFFFFFFFFL;
+        if (size == 0) {
+            size = end - position;
+        }
+        if (size < HEADER_SIZE || position + size > end) {
+            throw new IOException("Invalid box size " + size + " at " + position);
+        }
+        return (int) size;
+    }
+
+    static int fourCc(String type) {
+        return (type.charAt(0) << 24) | (type.charAt(1) << 16) | (type.charAt(2) << 8) | type.charAt(3);
+    }
+
+    /**
+     * The tables of a track collected while parsing.
+     */
+    private static class Track {
+        boolean isVideo = false;
+        long timeScale = 0;
+        long duration = 0;
+        int[] stts = null;
+        int[] ctts = null;
+        int[] stss = null;
+        int[] stsc = null;
+        int[] sampleSizes = null;
+        int constantSampleSize = 0;
+        int sampleCount = 0;
+        long[] chunkOffsets = null;
+
+        KeyframeIndex buildIndex() throws IOException {
+            if (timeScale <= 0 || stts == null || stsc == null || stsc.length == 0 || chunkOffsets == null) {
+                throw new IOException("Incomplete sample table");
+            }
+
+            //Without stss every sample is a sync sample.
+            int keyframeCount = stss == null ? sampleCount : stss.length;
+            long[] timesUs = new long[keyframeCount];
+            long[] byteOffsets = new long[keyframeCount];
+
+            //Walk through all samples once and track decode time, composition offset, chunk and offset within the chunk.
+            int keyframe = 0;
+            int sttsEntry = 0;
+            int sttsRemaining = stts.length > 0 ? stts[0] : 0;
+            long decodeTime = 0;
+            int cttsEntry = 0;
+            int cttsRemaining = ctts != null && ctts.length > 0 ? ctts[0] : 0;
+            int stscEntry = 0;
+            int chunk = 0;
+            int samplesInChunkRemaining = 0;
+            long offset = 0;
+
+            for (int sample = 0; sample < sampleCount && keyframe < keyframeCount; sample++) {
+                //Chunk: stsc first_chunk is 1 based.
+                if (samplesInChunkRemaining == 0) {
+                    if (sample > 0) {
+                        chunk++;
+                    }
+                    while (stscEntry + 1 < stsc.length / 3 && stsc[(stscEntry + 1) * 3] - 1 <= chunk) {
+                        stscEntry++;
+                    }
+                    if (chunk >= chunkOffsets.length) {
+                        throw new IOException("Sample " + sample + " is not in a chunk");
+                    }
+                    samplesInChunkRemaining = stsc[stscEntry * 3 + 1];
+                    offset = chunkOffsets[chunk];
+                }
+
+                long compositionOffset = 0;
+                if (ctts != null && cttsEntry * 2 < ctts.length) {
+                    compositionOffset = ctts[cttsEntry * 2 + 1];
+                }
+
+                boolean isKeyframe = stss == null || stss[keyframe] - 1 == sample;
+                if (isKeyframe) {
+                    timesUs[keyframe] = Math.max(0, (decodeTime + compositionOffset) * 1000000L / timeScale);
+                    byteOffsets[keyframe] = offset;
+                    keyframe++;
+                }
+
+                offset += sampleSizes == null ? constantSampleSize : sampleSizes[sample];
+                samplesInChunkRemaining--;
+
+                //Advance time to the next sample.
+                if (sttsEntry * 2 < stts.length) {
+                    decodeTime += stts[sttsEntry * 2 + 1];
+                    sttsRemaining--;
+                    while (sttsRemaining <= 0 && ++sttsEntry * 2 < stts.length) {
+                        sttsRemaining = stts[sttsEntry * 2];
+                    }
+                }
+                if (ctts != null && cttsEntry * 2 < ctts.length) {
+                    cttsRemaining--;
+                    while (cttsRemaining <= 0 && ++cttsEntry * 2 < ctts.length) {
+                        cttsRemaining = ctts[cttsEntry * 2];
+                    }
+                }
+            }
+
+            if (keyframe < keyframeCount) {
+                throw new IOException("Sync sample table references missing samples");
+            }
+
+            sortByTime(timesUs, byteOffsets);
+            return new KeyframeIndex(timesUs, byteOffsets, duration * 1000000L / timeScale);
+        }
+
+        /**
+         * Composition offsets may reorder the key frames (rare). Sorts both arrays by time in that case.
+         */
+        private static void sortByTime(long[] timesUs, long[] byteOffsets) {
+            for (int i = 1; i < timesUs.length; i++) {
+                if (timesUs[i] < timesUs[i - 1]) {
+                    long[][] pairs = new long[timesUs.length][];
+                    for (int j = 0; j < timesUs.length; j++) {
+                        pairs[j] = new long[]{timesUs[j], byteOffsets[j]};
+                    }
+                    Arrays.sort(pairs, new Comparator<long[]>() {
+                        @Override
+                        public int compare(long[] lhs, long[] rhs) {
+                            return lhs[0] < rhs[0] ? -1 : (lhs[0] == rhs[0] ? 0 : 1);
+                        }
+                    });
+                    for (int j = 0; j < timesUs.length; j++) {
+                        timesUs[j] = pairs[j][0];
+                        byteOffsets[j] = pairs[j][1];
+                    }
+                    return;
+                }
+            }
+        }
+    }
+}
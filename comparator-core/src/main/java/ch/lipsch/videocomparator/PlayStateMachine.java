@@ -0,0 +1,132 @@
+/*
+ * Copyright (C) 2015 Erwin Betschart
+ *
+ * This file is part of Video Comparator.
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.lipsch.videocomparator;
+
+import ch.lipsch.videocomparator.VideoPlayState.State;
+
+/**
+ * The transitions between the play states of a video, as a table of state x event.
+ * An event which is not allowed in a state is ignored, i.e. the state stays the same (e.g. the end of buffering of a paused video).
+ */
+final class PlayStateMachine {
+
+    /**
+     * The events which change the play state of a video.
+     */
+    enum Event {
+        /**
+         * A video was loaded into the player.
+         */
+        LOAD,
+        /**
+         * The video was removed from the player.
+         */
+        UNLOAD,
+        PLAY,
+        PAUSE,
+        /**
+         * The video was rewound to the start.
+         */
+        STOP,
+        /**
+         * The video played to its end.
+         */
+        COMPLETE,
+        FAIL,
+        /**
+         * The player stalls to buffer (MEDIA_INFO_BUFFERING_START).
+         */
+        BUFFERING_START,
+        /**
+         * The player continues after buffering (MEDIA_INFO_BUFFERING_END). It waits until all stalled partners are done as well.
+         */
+        BUFFERING_END,
+        /**
+         * Another player stalls: This one is paused until the other one continues.
+         */
+        PARTNER_STALLED,
+        /**
+         * All stalled players are done buffering: The waiting players continue together.
+         */
+        PARTNER_RESUMED
+    }
+
+    private static final State[][] TRANSITIONS = new State[State.values().length][Event.values().length];
+
+    static {
+        for (State state : State.values()) {
+            //A video can be (un)loaded in any state.
+            add(state, Event.LOAD, State.LOADED);
+            add(state, Event.UNLOAD, State.EMPTY);
+        }
+
+        add(State.LOADED, Event.PLAY, State.PLAYING);
+        add(State.LOADED, Event.STOP, State.LOADED);
+        add(State.LOADED, Event.FAIL, State.ERROR);
+
+        add(State.PLAYING, Event.PAUSE, State.PAUSING);
+        add(State.PLAYING, Event.STOP, State.LOADED);
+        add(State.PLAYING, Event.COMPLETE, State.LOADED);
+        add(State.PLAYING, Event.FAIL, State.ERROR);
+        add(State.PLAYING, Event.BUFFERING_START, State.BUFFERING);
+        add(State.PLAYING, Event.PARTNER_STALLED, State.WAITING);
+
+        add(State.PAUSING, Event.PLAY, State.PLAYING);
+        add(State.PAUSING, Event.STOP, State.LOADED);
+        add(State.PAUSING, Event.FAIL, State.ERROR);
+
+        add(State.BUFFERING, Event.PAUSE, State.PAUSING);
+        add(State.BUFFERING, Event.STOP, State.LOADED);
+        add(State.BUFFERING, Event.COMPLETE, State.LOADED);
+        add(State.BUFFERING, Event.FAIL, State.ERROR);
+        add(State.BUFFERING, Event.BUFFERING_END, State.WAITING);
+
+        add(State.WAITING, Event.PAUSE, State.PAUSING);
+        add(State.WAITING, Event.STOP, State.LOADED);
+        add(State.WAITING, Event.COMPLETE, State.LOADED);
+        add(State.WAITING, Event.FAIL, State.ERROR);
+        add(State.WAITING, Event.BUFFERING_START, State.BUFFERING);
+        add(State.WAITING, Event.PARTNER_RESUMED, State.PLAYING);
+    }
+
+    private PlayStateMachine() {
+        //Utility class
+    }
+
+    private static void add(State from, Event event, State to) {
+        TRANSITIONS[from.ordinal()][event.ordinal()] = to;
+    }
+
+    /**
+     * @param state The current state.
+     * @param event The event.
+     * @return The state after the event. The current state if the event is not allowed in the current state.
+     */
+    public static State next(State state, Event event) {
+        State next = TRANSITIONS[state.ordinal()][event.ordinal()];
+        return next == null ? state : next;
+    }
+
+    /**
+     * @return true if the event changes the state or is explicitly allowed to keep it (e.g. stopping a loaded video).
+     */
+    public static boolean isAllowed(State state, Event event) {
+        return TRANSITIONS[state.ordinal()][event.ordinal()] != null;
+    }
+}
@@ -0,0 +1,40 @@
+/*
+ * Copyright (C) 2015 Erwin Betschart
+ *
+ * This file is part of Video Comparator.
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.lipsch.videocomparator;
+
+/**
+ * A monotonic clock in milliseconds. Exists so timing dependent logic can be tested with a fake clock.
+ */
+interface PlaybackClock {
+
+    /**
+     * The clock used in production. Based on System.nanoTime() which is monotonic.
+     */
+    PlaybackClock SYSTEM = new PlaybackClock() {
+        @Override
+        public long getTimeMs() {
+            return System.nanoTime() / 1000000L;
+        }
+    };
+
+    /**
+     * @return The current time in milliseconds. Only differences between two values are meaningful.
+     */
+    long getTimeMs();
+}
@@ -0,0 +1,209 @@
+/*
+ * Copyright (C) 2015 Erwin Betschart
+ *
+ * This file is part of Video Comparator.
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.lipsch.videocomparator;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Locale;
+
+/**
+ * The metrics of all players and the drift between them. Can be written as JSON or CSV and formatted as short summary for the metrics overlay.
+ * <p/>
+ * Recording is lock-free (see LatencyHistogram and PlayerMetrics). Writing reads the live values, so it can be done in a background thread
+ * while the players keep recording.
+ */
+final class PlaybackMetrics {
+
+    /**
+     * The columns of the CSV dump. Counters only have a count.
+     */
+    static final String CSV_HEADER = "scope,metric,count,mean_ms,p50_ms,p95_ms,max_ms";
+
+    private final PlayerMetrics[] players;
+    private final LatencyHistogram drift = new LatencyHistogram();
+    private final LatencyHistogram correctiveSeeks = new LatencyHistogram();
+    private final LatencyHistogram sessionStalls = new LatencyHistogram();
+
+    /**
+     * @param clock       The clock to time the events of the players.
+     * @param playerCount The number of players.
+     */
+    public PlaybackMetrics(PlaybackClock clock, int playerCount) {
+        if (playerCount <= 0) {
+            throw new IllegalArgumentException("At least one player is needed");
+        }
+
+        players = new PlayerMetrics[playerCount];
+        for (int i = 0; i < playerCount; i++) {
+            players[i] = new PlayerMetrics(clock);
+        }
+    }
+
+    public int getPlayerCount() {
+        return players.length;
+    }
+
+    public PlayerMetrics getPlayer(int player) {
+        return players[player];
+    }
+
+    /**
+     * Records the drift between the players measured by the VideoSyncEngine.
+     *
+     * @param driftMs The drift in milliseconds.
+     */
+    public void recordDrift(long driftMs) {
+        drift.record(driftMs);
+    }
+
+    /**
+     * Records a seek of the VideoSyncEngine to correct a drift.
+     *
+     * @param driftMs The corrected drift in milliseconds.
+     */
+    public void recordCorrectiveSeek(long driftMs) {
+        correctiveSeeks.record(driftMs);
+    }
+
+    /**
+     * Records the time during which at least one video stalled in a play session (see StallHandler).
+     *
+     * @param stallMs The stall time of the session in milliseconds.
+     */
+    public void recordSessionStall(long stallMs) {
+        sessionStalls.record(stallMs);
+    }
+
+    public LatencyHistogram getSessionStalls() {
+        return sessionStalls;
+    }
+
+    public LatencyHistogram getDrift() {
+        return drift;
+    }
+
+    /**
+     * @return The drifts which were corrected with a seek.
+     */
+    public LatencyHistogram getCorrectiveSeeks() {
+        return correctiveSeeks;
+    }
+
+    public void reset() {
+        for (PlayerMetrics player : players) {
+            player.reset();
+        }
+        drift.reset();
+        correctiveSeeks.reset();
+        sessionStalls.reset();
+    }
+
+    /**
+     * Formats a short summary (a few lines) for the overlay.
+     */
+    public String formatSummary() {
+        StringBuilder summary = new StringBuilder();
+        for (int i = 0; i < players.length; i++) {
+            PlayerMetrics player = players[i];
+            summary.append(String.format(Locale.US, "video %d: prepare %d ms, first frame %d ms%n", i + 1,
+                    player.getPrepareLatency().getMaxMs(), player.getTimeToFirstFrame().getMaxMs()));
+            summary.append(String.format(Locale.US, "  seek p50 %d / p95 %d ms (%d), stalls %d (%d ms), dropped %d, lagging %d%s%n",
+                    player.getSeekLatency().getPercentileMs(0.5), player.getSeekLatency().getPercentileMs(0.95), player.getSeekLatency().getCount(),
+                    player.getBufferingStalls(), player.getStallDuration().getMaxMs(), player.getDroppedFrames(), player.getLaggingReports(),
+                    player.isBuffering() ? ", buffering" : ""));
+        }
+        summary.append(String.format(Locale.US, "drift p50 %d / p95 %d / max %d ms, corrective seeks %d",
+                drift.getPercentileMs(0.5), drift.getPercentileMs(0.95), drift.getMaxMs(), correctiveSeeks.getCount()));
+        return summary.toString();
+    }
+
+    /**
+     * Writes all metrics including the buckets of the histograms as JSON object.
+     */
+    public void writeJson(Writer writer) throws IOException {
+        writer.write("{\n  \"players\": [");
+        for (int i = 0; i < players.length; i++) {
+            PlayerMetrics player = players[i];
+            writer.write(i == 0 ? "\n" : ",\n");
+            writer.write("    {\n");
+            writer.write("      \"player\": " + (i + 1) + ",\n");
+            writer.write("      \"bufferingStalls\": " + player.getBufferingStalls() + ",\n");
+            writer.write("      \"droppedFrames\": " + player.getDroppedFrames() + ",\n");
+            writer.write("      \"laggingReports\": " + player.getLaggingReports() + ",\n");
+            writeJsonHistogram(writer, "prepareLatency", player.getPrepareLatency(), "      ", true);
+            writeJsonHistogram(writer, "timeToFirstFrame", player.getTimeToFirstFrame(), "      ", true);
+            writeJsonHistogram(writer, "seekLatency", player.getSeekLatency(), "      ", true);
+            writeJsonHistogram(writer, "stallDuration", player.getStallDuration(), "      ", false);
+            writer.write("    }");
+        }
+        writer.write("\n  ],\n");
+        writeJsonHistogram(writer, "drift", drift, "  ", true);
+        writeJsonHistogram(writer, "correctiveSeeks", correctiveSeeks, "  ", true);
+        writeJsonHistogram(writer, "sessionStalls", sessionStalls, "  ", false);
+        writer.write("}\n");
+    }
+
+    private static void writeJsonHistogram(Writer writer, String name, LatencyHistogram histogram, String indent, boolean hasNext) throws IOException {
+        writer.write(indent + "\"" + name + "\": {");
+        writer.write("\"count\": " + histogram.getCount());
+        writer.write(String.format(Locale.US, ", \"meanMs\": %.2f", histogram.getMeanMs()));
+        writer.write(", \"p50Ms\": " + histogram.getPercentileMs(0.5));
+        writer.write(", \"p95Ms\": " + histogram.getPercentileMs(0.95));
+        writer.write(", \"maxMs\": " + histogram.getMaxMs());
+
+        //The overflow bucket has no upper bound: null in JSON.
+        writer.write(", \"buckets\": [");
+        for (int i = 0; i < histogram.getBucketCount(); i++) {
+            long upperBound = histogram.getUpperBoundMs(i);
+            writer.write(i == 0 ? "" : ", ");
+            writer.write("{\"upToMs\": " + (upperBound == Long.MAX_VALUE ? "null" : String.valueOf(upperBound)) + ", \"count\": " + histogram.getCountInBucket(i) + "}");
+        }
+        writer.write("]}" + (hasNext ? ",\n" : "\n"));
+    }
+
+    /**
+     * Writes the summary of every metric as one CSV line (see CSV_HEADER).
+     */
+    public void writeCsv(Writer writer) throws IOException {
+        writer.write(CSV_HEADER + "\n");
+        for (int i = 0; i < players.length; i++) {
+            PlayerMetrics player = players[i];
+            String scope = "player" + (i + 1);
+            writeCsvHistogram(writer, scope, "prepare_latency", player.getPrepareLatency());
+            writeCsvHistogram(writer, scope, "time_to_first_frame", player.getTimeToFirstFrame());
+            writeCsvHistogram(writer, scope, "seek_latency", player.getSeekLatency());
+            writeCsvHistogram(writer, scope, "stall_duration", player.getStallDuration());
+            writeCsvCounter(writer, scope, "buffering_stalls", player.getBufferingStalls());
+            writeCsvCounter(writer, scope, "dropped_frames", player.getDroppedFrames());
+            writeCsvCounter(writer, scope, "lagging_reports", player.getLaggingReports());
+        }
+        writeCsvHistogram(writer, "sync", "drift", drift);
+        writeCsvHistogram(writer, "sync", "corrective_seeks", correctiveSeeks);
+        writeCsvHistogram(writer, "sync", "session_stall_time", sessionStalls);
+    }
+
+    private static void writeCsvHistogram(Writer writer, String scope, String metric, LatencyHistogram histogram) throws IOException {
+        writer.write(String.format(Locale.US, "%s,%s,%d,%.2f,%d,%d,%d\n", scope, metric, histogram.getCount(), histogram.getMeanMs(),
+                histogram.getPercentileMs(0.5), histogram.getPercentileMs(0.95), histogram.getMaxMs()));
+    }
+
+    private static void writeCsvCounter(Writer writer, String scope, String metric, long count) throws IOException {
+        writer.write(scope + "," + metric + "," + count + ",,,,\n");
+    }
+}
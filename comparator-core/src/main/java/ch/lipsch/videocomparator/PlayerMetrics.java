@@ -0,0 +1,172 @@
+/*
+ * Copyright (C) 2015 Erwin Betschart
+ *
+ * This file is part of Video Comparator.
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.lipsch.videocomparator;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The metrics of one player: Latencies of prepare, the first frame and seeks, buffering stalls and dropped frames.
+ * <p/>
+ * The events are reported as they happen and timed with a PlaybackClock. Like LatencyHistogram everything is lock-free and allocation free,
+ * so the events can be reported from any thread.
+ */
+final class PlayerMetrics {
+
+    /**
+     * Start time of an interval which is not running.
+     */
+    private static final long NOT_STARTED = -1;
+
+    private final PlaybackClock clock;
+
+    private final LatencyHistogram prepareLatency = new LatencyHistogram();
+    private final LatencyHistogram timeToFirstFrame = new LatencyHistogram();
+    private final LatencyHistogram seekLatency = new LatencyHistogram();
+    private final LatencyHistogram stallDuration = new LatencyHistogram();
+
+    private final AtomicLong bufferingStalls = new AtomicLong();
+    private final AtomicLong droppedFrames = new AtomicLong();
+    private final AtomicLong laggingReports = new AtomicLong();
+
+    private final AtomicLong prepareStartMs = new AtomicLong(NOT_STARTED);
+    private final AtomicLong firstFrameStartMs = new AtomicLong(NOT_STARTED);
+    private final AtomicLong bufferingStartMs = new AtomicLong(NOT_STARTED);
+
+    /**
+     * @param clock The clock to time the events.
+     */
+    public PlayerMetrics(PlaybackClock clock) {
+        if (clock == null) {
+            throw new IllegalArgumentException("A clock is needed");
+        }
+        this.clock = clock;
+    }
+
+    /**
+     * A video starts loading. Starts the prepare and the time to first frame measurement.
+     */
+    public void onPrepareStarted() {
+        long now = clock.getTimeMs();
+        prepareStartMs.set(now);
+        firstFrameStartMs.set(now);
+        bufferingStartMs.set(NOT_STARTED);
+    }
+
+    /**
+     * The loading video is prepared. Has no effect if onPrepareStarted was not called (e.g. a retained player after a rotation).
+     */
+    public void onPrepared() {
+        long start = prepareStartMs.getAndSet(NOT_STARTED);
+        if (start != NOT_STARTED) {
+            prepareLatency.record(clock.getTimeMs() - start);
+        }
+    }
+
+    /**
+     * The loaded video shows its first frame. Only the first frame after onPrepareStarted is measured,
+     * a frame shown again on a new surface is not.
+     */
+    public void onFirstFrame() {
+        long start = firstFrameStartMs.getAndSet(NOT_STARTED);
+        if (start != NOT_STARTED) {
+            timeToFirstFrame.record(clock.getTimeMs() - start);
+        }
+    }
+
+    /**
+     * The player stalls to buffer. Has no effect if it is buffering already.
+     */
+    public void onBufferingStart() {
+        if (bufferingStartMs.compareAndSet(NOT_STARTED, clock.getTimeMs())) {
+            bufferingStalls.incrementAndGet();
+        }
+    }
+
+    /**
+     * The player continues after buffering. Has no effect if it was not buffering.
+     */
+    public void onBufferingEnd() {
+        long start = bufferingStartMs.getAndSet(NOT_STARTED);
+        if (start != NOT_STARTED) {
+            stallDuration.record(clock.getTimeMs() - start);
+        }
+    }
+
+    /**
+     * The decoder reported that it can not keep up (MEDIA_INFO_VIDEO_TRACK_LAGGING). The player drops frames then, but does not tell how many.
+     */
+    public void onVideoTrackLagging() {
+        laggingReports.incrementAndGet();
+    }
+
+    /**
+     * Counts frames which were decoded but never shown, e.g. replaced in the compositor before they were drawn.
+     */
+    public void addDroppedFrames(long frames) {
+        droppedFrames.addAndGet(frames);
+    }
+
+    public boolean isBuffering() {
+        return bufferingStartMs.get() != NOT_STARTED;
+    }
+
+    public LatencyHistogram getPrepareLatency() {
+        return prepareLatency;
+    }
+
+    public LatencyHistogram getTimeToFirstFrame() {
+        return timeToFirstFrame;
+    }
+
+    /**
+     * @return The histogram of the seek latencies. The seeks are timed by the SeekScheduler of the player.
+     */
+    public LatencyHistogram getSeekLatency() {
+        return seekLatency;
+    }
+
+    public LatencyHistogram getStallDuration() {
+        return stallDuration;
+    }
+
+    public long getBufferingStalls() {
+        return bufferingStalls.get();
+    }
+
+    public long getDroppedFrames() {
+        return droppedFrames.get();
+    }
+
+    public long getLaggingReports() {
+        return laggingReports.get();
+    }
+
+    /**
+     * Resets the statistics. Running measurements (e.g. a prepare) are not interrupted.
+     */
+    public void reset() {
+        prepareLatency.reset();
+        timeToFirstFrame.reset();
+        seekLatency.reset();
+        stallDuration.reset();
+        bufferingStalls.set(0);
+        droppedFrames.set(0);
+        laggingReports.set(0);
+    }
+}
@@ -0,0 +1,372 @@
+/*
+ * Copyright (C) 2015 Erwin Betschart
+ *
+ * This file is part of Video Comparator.
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.lipsch.videocomparator;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Reads the videos ahead of the players in one background thread, so two players do not compete for slow storage (SD cards,
+ * cloud backed content providers) with small random reads.
+ * <p/>
+ * Every stream has a ReadAheadWindow which follows the playback position and the seek targets. The positions are mapped to byte offsets
+ * with the KeyframeIndex of the video (or linearly if it is not known). The windows are read in large sequential chunks into pooled direct
+ * buffers (or memory mapped) and the FairPrefetchScheduler shares the bandwidth between the streams.
+ * <p/>
+ * The methods may be called from any thread. The sources are opened, read and closed in the prefetch thread only.
+ */
+class PrefetchEngine {
+
+    /**
+     * The size of one read in bytes.
+     */
+    public static final int CHUNK_SIZE = 256 * 1024;
+
+    /**
+     * Default number of bytes read ahead of the position of every stream.
+     */
+    public static final long DEFAULT_WINDOW_BYTES = 8L * 1024 * 1024;
+
+    /**
+     * Opens a source. Called in the prefetch thread as opening may block (e.g. a content provider which downloads the file).
+     */
+    interface Opener {
+        PrefetchSource open() throws IOException;
+    }
+
+    private final Object lock = new Object();
+    private final ReadAheadWindow[] windows;
+    private final FairPrefetchScheduler scheduler;
+
+    /**
+     * Only one thread reads, so one buffer is enough.
+     */
+    private final ByteBufferPool pool = new ByteBufferPool(CHUNK_SIZE, 1);
+
+    /**
+     * The open sources. Only accessed in the prefetch thread.
+     */
+    private final PrefetchSource[] sources;
+
+    /**
+     * The sources to open next. Guarded by lock.
+     */
+    private final Opener[] pendingOpeners;
+    private final boolean[] isSourcePending;
+
+    /**
+     * Incremented whenever the source of a stream changes. A source which was opened for an older generation is closed immediately.
+     */
+    private final int[] generations;
+
+    /**
+     * The sizes of the open sources in bytes. Guarded by lock.
+     */
+    private final long[] sizes;
+
+    private final KeyframeIndex[] keyframeIndexes;
+    private final long[] durationsMs;
+    private final long[] positionsMs;
+    private final long[] prefetchedBytes;
+    private final int[] failures;
+
+    private Thread thread = null;
+    private boolean isReleased = false;
+
+    /**
+     * @param streamCount The number of streams.
+     * @param windowBytes The number of bytes read ahead of the position of every stream.
+     */
+    public PrefetchEngine(int streamCount, long windowBytes) {
+        windows = new ReadAheadWindow[streamCount];
+        for (int i = 0; i < streamCount; i++) {
+            windows[i] = new ReadAheadWindow(windowBytes);
+        }
+        scheduler = new FairPrefetchScheduler(streamCount);
+        sources = new PrefetchSource[streamCount];
+        pendingOpeners = new Opener[streamCount];
+        isSourcePending = new boolean[streamCount];
+        generations = new int[streamCount];
+        sizes = new long[streamCount];
+        keyframeIndexes = new KeyframeIndex[streamCount];
+        durationsMs = new long[streamCount];
+        positionsMs = new long[streamCount];
+        prefetchedBytes = new long[streamCount];
+        failures = new int[streamCount];
+    }
+
+    /**
+     * Starts the prefetch thread. Has no effect if already started.
+     */
+    public void start() {
+        synchronized (lock) {
+            if (thread != null || isReleased) {
+                return;
+            }
+            thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    prefetchLoop();
+                }
+            }, "Prefetch");
+            thread.start();
+        }
+    }
+
+    /**
+     * Stops the prefetch thread and closes the sources. The engine can not be used anymore.
+     */
+    public void release() {
+        synchronized (lock) {
+            isReleased = true;
+            lock.notifyAll();
+        }
+    }
+
+    /**
+     * Sets the source of a stream. The old source is closed. The timeline (key frames and duration) is reset.
+     *
+     * @param stream The stream.
+     * @param opener Opens the new source or null to only close the old one.
+     */
+    public void setSource(int stream, Opener opener) {
+        synchronized (lock) {
+            generations[stream]++;
+            pendingOpeners[stream] = opener;
+            isSourcePending[stream] = true;
+            sizes[stream] = 0;
+            keyframeIndexes[stream] = null;
+            durationsMs[stream] = 0;
+            positionsMs[stream] = 0;
+            //Nothing of the old source is read anymore.
+            windows[stream].reset(0);
+            lock.notifyAll();
+        }
+    }
+
+    /**
+     * Sets the information to map the playback position to a byte offset.
+     *
+     * @param stream        The stream.
+     * @param keyframeIndex The key frames of the video or null if not known.
+     * @param durationMs    The duration of the video in milliseconds. Used if the key frames are not known.
+     */
+    public void setTimeline(int stream, KeyframeIndex keyframeIndex, long durationMs) {
+        synchronized (lock) {
+            keyframeIndexes[stream] = keyframeIndex;
+            durationsMs[stream] = durationMs;
+            updateWindow(stream);
+        }
+    }
+
+    /**
+     * Moves the read ahead window of the stream. Called with the playback position and with seek targets.
+     *
+     * @param stream     The stream.
+     * @param positionMs The position in milliseconds.
+     */
+    public void setPositionMs(int stream, long positionMs) {
+        synchronized (lock) {
+            if (positionsMs[stream] != positionMs) {
+                positionsMs[stream] = positionMs;
+                updateWindow(stream);
+            }
+        }
+    }
+
+    /**
+     * @return The number of bytes read ahead of the current position of the stream.
+     */
+    public long getAheadBytes(int stream) {
+        synchronized (lock) {
+            return windows[stream].getAheadBytes();
+        }
+    }
+
+    /**
+     * @return The number of bytes read of the stream since its source was set.
+     */
+    public long getPrefetchedBytes(int stream) {
+        synchronized (lock) {
+            return prefetchedBytes[stream];
+        }
+    }
+
+    /**
+     * @return The number of sources of the stream which could not be opened or read.
+     */
+    public int getFailureCount(int stream) {
+        synchronized (lock) {
+            return failures[stream];
+        }
+    }
+
+    private void updateWindow(int stream) {
+        windows[stream].setPosition(toByteOffset(positionsMs[stream], keyframeIndexes[stream], durationsMs[stream], sizes[stream]));
+        lock.notifyAll();
+    }
+
+    /**
+     * Maps a playback position to the byte offset where the player reads.
+     *
+     * @param positionMs    The position in milliseconds.
+     * @param keyframeIndex The key frames. The decoder starts reading at the key frame before the position.
+     * @param durationMs    The duration, used to map linearly if there are no key frames.
+     * @param size          The size of the source in bytes.
+     * @return The byte offset.
+     */
+    static long toByteOffset(long positionMs, KeyframeIndex keyframeIndex, long durationMs, long size) {
+        if (keyframeIndex != null && keyframeIndex.size() > 0) {
+            return keyframeIndex.getByteOffset(keyframeIndex.floorIndex(positionMs * 1000));
+        } else if (durationMs > 0) {
+            return (long) ((double) size * Math.max(0, Math.min(positionMs, durationMs)) / durationMs);
+        }
+        return 0;
+    }
+
+    private void prefetchLoop() {
+        ByteBuffer buffer = pool.acquire();
+        try {
+            while (true) {
+                int stream = -1;
+                int generation;
+                Opener opener = null;
+                boolean isOpening = false;
+                long offset = 0;
+                int length = 0;
+
+                synchronized (lock) {
+                    while (!isReleased) {
+                        stream = getPendingSource();
+                        if (stream >= 0) {
+                            isOpening = true;
+                            opener = pendingOpeners[stream];
+                            pendingOpeners[stream] = null;
+                            isSourcePending[stream] = false;
+                            break;
+                        }
+
+                        stream = scheduler.nextStream(windows);
+                        if (stream >= 0) {
+                            offset = windows[stream].getNextOffset();
+                            length = windows[stream].getNextLength(CHUNK_SIZE);
+                            break;
+                        }
+                        lock.wait();
+                    }
+                    if (isReleased) {
+                        break;
+                    }
+                    generation = generations[stream];
+                }
+
+                if (isOpening) {
+                    openSource(stream, opener, generation);
+                } else {
+                    read(stream, offset, length, generation, buffer);
+                }
+            }
+        } catch (InterruptedException e) {
+            //Stop prefetching.
+        } finally {
+            for (int i = 0; i < sources.length; i++) {
+                closeSource(i);
+            }
+            pool.release(buffer);
+        }
+    }
+
+    private int getPendingSource() {
+        for (int i = 0; i < isSourcePending.length; i++) {
+            if (isSourcePending[i]) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private void openSource(int stream, Opener opener, int generation) {
+        closeSource(stream);
+        if (opener == null) {
+            return;
+        }
+
+        PrefetchSource source = null;
+        try {
+            source = opener.open();
+        } catch (IOException e) {
+            synchronized (lock) {
+                failures[stream]++;
+            }
+        }
+        if (source == null) {
+            return;
+        }
+
+        boolean isCurrent;
+        synchronized (lock) {
+            isCurrent = generations[stream] == generation;
+            if (isCurrent) {
+                sources[stream] = source;
+                sizes[stream] = source.size();
+                prefetchedBytes[stream] = 0;
+                windows[stream].reset(source.size());
+                updateWindow(stream);
+            }
+        }
+        if (!isCurrent) {
+            //Replaced while opening.
+            source.close();
+        }
+    }
+
+    private void closeSource(int stream) {
+        if (sources[stream] != null) {
+            sources[stream].close();
+            sources[stream] = null;
+        }
+    }
+
+    private void read(int stream, long offset, int length, int generation, ByteBuffer buffer) {
+        PrefetchSource source = sources[stream];
+        int read;
+        try {
+            buffer.clear();
+            buffer.limit(length);
+            read = source.prefetch(offset, buffer);
+        } catch (IOException e) {
+            synchronized (lock) {
+                failures[stream]++;
+                if (generations[stream] == generation) {
+                    //Do not try again: A broken source would keep the thread busy.
+                    windows[stream].reset(0);
+                }
+            }
+            return;
+        }
+
+        synchronized (lock) {
+            scheduler.onServed(stream, read);
+            if (generations[stream] == generation) {
+                windows[stream].onRead(offset, read);
+                prefetchedBytes[stream] += read;
+            }
+        }
+    }
+}
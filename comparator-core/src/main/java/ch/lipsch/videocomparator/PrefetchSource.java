@@ -0,0 +1,51 @@
+/*
+ * Copyright (C) 2015 Erwin Betschart
+ *
+ * This file is part of Video Comparator.
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.lipsch.videocomparator;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * The bytes of a video which can be read ahead, e.g. a local file or the file descriptor of a content provider.
+ * Reading ahead makes the operating system (and the content provider) keep the bytes in memory, so the player which reads the same bytes
+ * shortly after does not wait for the storage.
+ */
+interface PrefetchSource {
+
+    /**
+     * @return The size of the video in bytes.
+     */
+    long size();
+
+    /**
+     * Reads the range starting at the position with the length of the remaining bytes of the buffer. The bytes are only read into memory,
+     * the content of the buffer is undefined afterwards. Called in the prefetch thread only.
+     *
+     * @param position The start of the range in bytes.
+     * @param buffer   A scratch buffer for sources which have to copy the bytes.
+     * @return The number of bytes read. 0 at the end of the source.
+     * @throws IOException If reading failed.
+     */
+    int prefetch(long position, ByteBuffer buffer) throws IOException;
+
+    /**
+     * Releases the source. Called in the prefetch thread only.
+     */
+    void close();
+}
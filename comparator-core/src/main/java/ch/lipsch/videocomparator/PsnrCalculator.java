@@ -0,0 +1,119 @@
+/*
+ * Copyright (C) 2015 Erwin Betschart
+ *
+ * This file is part of Video Comparator.
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.lipsch.videocomparator;
+
+/**
+ * Computes the peak signal-to-noise ratio (PSNR) of two 8 bit planes (e.g. the luma planes of two frames).
+ * The planes are split into bands which are computed in parallel by a BandExecutor. Computing the PSNR does not allocate any objects.
+ * <p/>
+ * This class is not thread-safe: compute must not be called concurrently.
+ */
+class PsnrCalculator implements BandExecutor.BandTask {
+
+    /**
+     * Used instead of infinity for equal planes when PSNR values are averaged.
+     */
+    public static final double MAX_PSNR_DB = 100.0;
+
+    private static final double MAX_VALUE_SQUARED = 255.0 * 255.0;
+
+    private final BandExecutor executor;
+
+    /**
+     * The sum of the squared errors of every band.
+     */
+    private final long[] bandSums;
+
+    //The arguments of the current compute call. Read by the bands.
+    private byte[] plane1 = null;
+    private byte[] plane2 = null;
+
+    private double lastMse = 0.0;
+
+    /**
+     * @param executor The executor which computes the bands in parallel.
+     */
+    public PsnrCalculator(BandExecutor executor) {
+        this.executor = executor;
+        this.bandSums = new long[executor.getBandCount()];
+    }
+
+    /**
+     * Computes the PSNR of two planes.
+     *
+     * @param plane1     The first plane.
+     * @param plane2     The second plane.
+     * @param pixelCount The number of values to compare.
+     * @return The PSNR in dB. Double.POSITIVE_INFINITY if the planes are equal.
+     */
+    public double compute(byte[] plane1, byte[] plane2, int pixelCount) {
+        if (pixelCount <= 0 || plane1.length < pixelCount || plane2.length < pixelCount) {
+            throw new IllegalArgumentException("The planes must have at least " + pixelCount + " values");
+        }
+
+        this.plane1 = plane1;
+        this.plane2 = plane2;
+        try {
+            executor.execute(this, pixelCount);
+        } finally {
+            this.plane1 = null;
+            this.plane2 = null;
+        }
+
+        long sum = 0;
+        for (int band = 0; band < bandSums.length; band++) {
+            sum += bandSums[band];
+            bandSums[band] = 0;
+        }
+
+        lastMse = (double) sum / pixelCount;
+        return toPsnr(lastMse);
+    }
+
+    /**
+     * @return The mean squared error of the last computed planes.
+     */
+    public double getLastMse() {
+        return lastMse;
+    }
+
+    /**
+     * @param mse A mean squared error of 8 bit values.
+     * @return The PSNR in dB. Double.POSITIVE_INFINITY if the error is 0.
+     */
+    public static double toPsnr(double mse) {
+        if (mse == 0.0) {
+            return Double.POSITIVE_INFINITY;
+        }
+        return 10.0 * Math.log10(MAX_VALUE_SQUARED / mse);
+    }
+
+    @Override
+    public void runBand(int band, int start, int end) {
+        byte[] values1 = plane1;
+        byte[] values2 = plane2;
+
+        long sum = 0;
+        for (int i = start; i < end; i++) {
+            int error = (values1[i] & 0xFF) - (values2[i] & 0xFF);
+            sum += error * error;
+        }
+        bandSums[band] = sum;
+    }
+}
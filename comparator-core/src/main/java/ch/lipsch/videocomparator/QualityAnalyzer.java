@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2015 Erwin Betschart
+ *
+ * This file is part of Video Comparator.
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.lipsch.videocomparator;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Locale;
+
+/**
+ * Decodes two videos in lockstep and computes the PSNR and SSIM of every frame pair.
+ * Only the luma planes of the current frame pair are held in memory. The metrics of every frame are written as CSV time series.
+ * <p/>
+ * This class is not thread-safe: analyze must not be called concurrently.
+ */
+class QualityAnalyzer {
+
+    /**
+     * The header of the CSV time series.
+     */
+    public static final String CSV_HEADER = "frame,time_ms,psnr_db,ssim";
+
+    private final PsnrCalculator psnrCalculator;
+    private final SsimCalculator ssimCalculator;
+
+    private byte[] luma1 = null;
+    private byte[] luma2 = null;
+
+    /**
+     * @param executor The executor which computes the metrics in parallel.
+     */
+    public QualityAnalyzer(BandExecutor executor) {
+        psnrCalculator = new PsnrCalculator(executor);
+        ssimCalculator = new SsimCalculator(executor);
+    }
+
+    /**
+     * Analyzes the frames of both sources until one of them has no more frames.
+     *
+     * @param source1    The first video (e.g. the reference).
+     * @param source2    The second video. Must have the same size as the first video.
+     * @param timeSeries Receives the metrics of every frame as CSV. null if not needed.
+     * @return The summary of all frames.
+     * @throws IOException          In case a frame can not be read or the time series can not be written.
+     * @throws InterruptedException In case the thread was interrupted. The analysis is cancelled.
+     */
+    public QualitySummary analyze(LumaFrameSource source1, LumaFrameSource source2, Writer timeSeries) throws IOException, InterruptedException {
+        int width = source1.getWidth();
+        int height = source1.getHeight();
+        if (source2.getWidth() != width || source2.getHeight() != height) {
+            throw new IllegalArgumentException("The videos must have the same size: " + width + "x" + height + " vs. "
+                    + source2.getWidth() + "x" + source2.getHeight());
+        }
+
+        int pixelCount = width * height;
+        if (luma1 == null || luma1.length != pixelCount) {
+            luma1 = new byte[pixelCount];
+            luma2 = new byte[pixelCount];
+        }
+
+        if (timeSeries != null) {
+            timeSeries.write(CSV_HEADER + "\n");
+        }
+
+        QualitySummary summary = new QualitySummary();
+        for (int frame = 0; ; frame++) {
+            if (Thread.interrupted()) {
+                throw new InterruptedException("Analysis cancelled");
+            }
+
+            long timeUs = source1.readNextFrame(luma1);
+            if (timeUs < 0 || source2.readNextFrame(luma2) < 0) {
+                break;
+            }
+
+            double psnr = psnrCalculator.compute(luma1, luma2, pixelCount);
+            double ssim = ssimCalculator.compute(luma1, luma2, width, height);
+            summary.add(frame, psnr, ssim);
+
+            if (timeSeries != null) {
+                timeSeries.write(String.format(Locale.US, "%d,%d,%s,%.6f\n", frame, timeUs / 1000, formatPsnr(psnr), ssim));
+            }
+        }
+
+        return summary;
+    }
+
+    private static String formatPsnr(double psnrDb) {
+        return Double.isInfinite(psnrDb) ? "inf" : String.format(Locale.US, "%.4f", psnrDb);
+    }
+}
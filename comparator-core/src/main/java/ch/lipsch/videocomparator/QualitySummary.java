@@ -0,0 +1,115 @@
+/*
+ * Copyright (C) 2015 Erwin Betschart
+ *
+ * This file is part of Video Comparator.
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.lipsch.videocomparator;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Locale;
+
+/**
+ * The summary of the quality metrics (PSNR and SSIM) of all frames of a video pair.
+ * Frames which are equal count with PsnrCalculator.MAX_PSNR_DB in the mean PSNR.
+ */
+class QualitySummary {
+
+    private int frameCount = 0;
+    private double psnrSum = 0.0;
+    private double ssimSum = 0.0;
+    private double minPsnr = Double.POSITIVE_INFINITY;
+    private double minSsim = Double.POSITIVE_INFINITY;
+    private int minPsnrFrame = -1;
+    private int minSsimFrame = -1;
+
+    /**
+     * Adds the metrics of a frame.
+     */
+    void add(int frameIndex, double psnrDb, double ssim) {
+        frameCount++;
+        psnrSum += Math.min(psnrDb, PsnrCalculator.MAX_PSNR_DB);
+        ssimSum += ssim;
+
+        if (psnrDb < minPsnr) {
+            minPsnr = psnrDb;
+            minPsnrFrame = frameIndex;
+        }
+        if (ssim < minSsim) {
+            minSsim = ssim;
+            minSsimFrame = frameIndex;
+        }
+    }
+
+    public int getFrameCount() {
+        return frameCount;
+    }
+
+    /**
+     * @return The mean PSNR in dB or 0.0 if no frames were analyzed.
+     */
+    public double getMeanPsnr() {
+        return frameCount == 0 ? 0.0 : psnrSum / frameCount;
+    }
+
+    /**
+     * @return The mean SSIM or 0.0 if no frames were analyzed.
+     */
+    public double getMeanSsim() {
+        return frameCount == 0 ? 0.0 : ssimSum / frameCount;
+    }
+
+    /**
+     * @return The PSNR of the worst frame in dB.
+     */
+    public double getMinPsnr() {
+        return minPsnr;
+    }
+
+    /**
+     * @return The SSIM of the worst frame.
+     */
+    public double getMinSsim() {
+        return minSsim;
+    }
+
+    /**
+     * @return The index of the frame with the lowest PSNR or -1 if no frames were analyzed.
+     */
+    public int getMinPsnrFrame() {
+        return minPsnrFrame;
+    }
+
+    /**
+     * @return The index of the frame with the lowest SSIM or -1 if no frames were analyzed.
+     */
+    public int getMinSsimFrame() {
+        return minSsimFrame;
+    }
+
+    /**
+     * Writes the summary as key value lines.
+     */
+    public void write(Writer writer) throws IOException {
+        writer.write("frames=" + frameCount + "\n");
+        writer.write(String.format(Locale.US, "psnr_mean_db=%.4f\n", getMeanPsnr()));
+        writer.write(String.format(Locale.US, "psnr_min_db=%.4f\n", minPsnr));
+        writer.write("psnr_min_frame=" + minPsnrFrame + "\n");
+        writer.write(String.format(Locale.US, "ssim_mean=%.6f\n", getMeanSsim()));
+        writer.write(String.format(Locale.US, "ssim_min=%.6f\n", minSsim));
+        writer.write("ssim_min_frame=" + minSsimFrame + "\n");
+    }
+}
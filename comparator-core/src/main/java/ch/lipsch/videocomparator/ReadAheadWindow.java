@@ -0,0 +1,137 @@
+/*
+ * Copyright (C) 2015 Erwin Betschart
+ *
+ * This file is part of Video Comparator.
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.lipsch.videocomparator;
+
+/**
+ * The range of a source which should be read ahead: From the current read position (of the playback or a seek target) up to the window size.
+ * <p/>
+ * The window remembers the range which was read contiguously from the position. As long as the position moves forward inside this range
+ * (i.e. the video plays) the read progress is kept, otherwise (a seek) reading starts again at the new position.
+ * <p/>
+ * This class is not thread-safe.
+ */
+class ReadAheadWindow {
+
+    private final long windowBytes;
+
+    /**
+     * The size of the source. 0 if there is no source.
+     */
+    private long size = 0;
+    private long position = 0;
+
+    /**
+     * The range [readStart, readEnd) has been read.
+     */
+    private long readStart = 0;
+    private long readEnd = 0;
+
+    /**
+     * @param windowBytes How many bytes ahead of the position are read.
+     */
+    public ReadAheadWindow(long windowBytes) {
+        if (windowBytes <= 0) {
+            throw new IllegalArgumentException("Window must be positive");
+        }
+        this.windowBytes = windowBytes;
+    }
+
+    /**
+     * Sets a new source. Nothing of it has been read yet.
+     *
+     * @param size The size of the source in bytes. 0 if there is no source.
+     */
+    public void reset(long size) {
+        this.size = Math.max(0, size);
+        position = 0;
+        readStart = 0;
+        readEnd = 0;
+    }
+
+    /**
+     * Moves the window.
+     *
+     * @param bytes The read position in bytes.
+     */
+    public void setPosition(long bytes) {
+        long clamped = Math.max(0, Math.min(size, bytes));
+        if (clamped < readStart || clamped > readEnd) {
+            //Seeked out of the read range.
+            readStart = clamped;
+            readEnd = clamped;
+        }
+        position = clamped;
+    }
+
+    public long getPosition() {
+        return position;
+    }
+
+    /**
+     * @return true if the window is not completely read.
+     */
+    public boolean needsData() {
+        return readEnd < getWindowEnd();
+    }
+
+    /**
+     * @return The offset of the next range to read. Only valid if needsData.
+     */
+    public long getNextOffset() {
+        return readEnd;
+    }
+
+    /**
+     * @param maxLength The maximum length in bytes.
+     * @return The length of the next range to read. 0 if the window is completely read.
+     */
+    public int getNextLength(int maxLength) {
+        return (int) Math.max(0, Math.min(maxLength, getWindowEnd() - readEnd));
+    }
+
+    /**
+     * A range was read. Ignored if the window moved meanwhile so the range does not continue the read range.
+     *
+     * @param offset The offset of the range.
+     * @param length The number of bytes read. 0 if the source ended before its size.
+     */
+    public void onRead(long offset, int length) {
+        if (offset != readEnd) {
+            return;
+        }
+
+        if (length <= 0) {
+            //The source is shorter than announced.
+            size = readEnd;
+        } else {
+            readEnd += length;
+        }
+    }
+
+    /**
+     * @return The number of bytes read ahead of the position.
+     */
+    public long getAheadBytes() {
+        return Math.max(0, readEnd - position);
+    }
+
+    private long getWindowEnd() {
+        return Math.min(size, position + windowBytes);
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright (C) 2015 Erwin Betschart
+ *
+ * This file is part of Video Comparator.
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.lipsch.videocomparator;
+
+/**
+ * The time a renderer needs to draw a frame: Average, maximum and the number of frames which took longer than the frame budget
+ * (they can not be shown at the display's frame rate).
+ * <p/>
+ * This class is thread-safe: The renderer records in its thread, the statistics are read in the main thread. Recording does not allocate.
+ */
+class RenderTimeStats {
+
+    private final long budgetNs;
+
+    private long frameCount = 0;
+    private long totalNs = 0;
+    private long maxNs = 0;
+    private long overBudgetCount = 0;
+
+    /**
+     * @param budgetNs The time available to draw a frame (e.g. FramePacingStats.DEFAULT_FRAME_INTERVAL_NS).
+     */
+    public RenderTimeStats(long budgetNs) {
+        if (budgetNs <= 0) {
+            throw new IllegalArgumentException("The budget must be positive");
+        }
+        this.budgetNs = budgetNs;
+    }
+
+    /**
+     * Records a drawn frame.
+     *
+     * @param renderTimeNs The time it took to draw the frame.
+     */
+    public synchronized void onFrameRendered(long renderTimeNs) {
+        frameCount++;
+        totalNs += renderTimeNs;
+        maxNs = Math.max(maxNs, renderTimeNs);
+        if (renderTimeNs > budgetNs) {
+            overBudgetCount++;
+        }
+    }
+
+    public synchronized long getFrameCount() {
+        return frameCount;
+    }
+
+    /**
+     * @return The average render time in milliseconds or 0 if no frame was recorded.
+     */
+    public synchronized double getAverageMs() {
+        return frameCount == 0 ? 0 : totalNs / 1e6 / frameCount;
+    }
+
+    public synchronized double getMaxMs() {
+        return maxNs / 1e6;
+    }
+
+    /**
+     * @return The number of frames which took longer than the budget.
+     */
+    public synchronized long getOverBudgetCount() {
+        return overBudgetCount;
+    }
+
+    public synchronized void reset() {
+        frameCount = 0;
+        totalNs = 0;
+        maxNs = 0;
+        overBudgetCount = 0;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "RenderTimeStats{frames=" + frameCount + ", averageMs=" + getAverageMs() + ", maxMs=" + getMaxMs()
+                + ", overBudget=" + overBudgetCount + "}";
+    }
+}
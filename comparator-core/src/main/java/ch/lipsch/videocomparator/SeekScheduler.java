@@ -0,0 +1,342 @@
+/*
+ * Copyright (C) 2015 Erwin Betschart
+ *
+ * This file is part of Video Comparator.
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.lipsch.videocomparator;
+
+/**
+ * Dispatches the seeks of one player so a fast drag of a seek bar does not flood the decoder.
+ * <p/>
+ * At most one seek is in flight. Seeks requested meanwhile are coalesced: Only the latest target is kept and issued as soon as the seek in flight
+ * completes. A seek whose completion is not reported within the timeout (e.g. the player dropped it) counts as completed.
+ * <p/>
+ * The player reports completions without telling which seek completed. So every seek of the player must be issued through this scheduler
+ * (the corrective seeks of the VideoSyncEngine with seekCorrective), and the first completion within another timeout after a timeout is taken
+ * for the late completion of the timed out seek and dropped.
+ * <p/>
+ * Fast seeks (while dragging) are snapped to the key frame before the target if a KeyframeIndex is known, as key frames are shown without decoding
+ * other frames first. A fast seek to the key frame which was issued last is dropped: It would show the same frame again.
+ * Precise seeks (e.g. when the finger lifts) go to the exact target.
+ * <p/>
+ * A pure state machine: The time comes from a PlaybackClock and the completion of a seek has to be reported with onSeekComplete,
+ * so it can be tested with a fake clock and player.
+ * This class is not thread-safe: All calls must be done in the same thread (usually the main thread).
+ */
+class SeekScheduler {
+
+    /**
+     * Default time in milliseconds after which a seek in flight is considered completed.
+     */
+    public static final int DEFAULT_TIMEOUT_MS = 500;
+
+    private final PlaybackClock clock;
+    private final SyncablePlayer player;
+    private int timeoutMs = DEFAULT_TIMEOUT_MS;
+    private KeyframeIndex keyframeIndex = null;
+    private LatencyHistogram latencyHistogram = null;
+
+    private boolean isInFlight = false;
+    private long issueTimeMs = 0;
+
+    /**
+     * The position of the seek in flight (as issued, i.e. snapped to a key frame for fast seeks).
+     */
+    private int inFlightPositionMs = -1;
+
+    /**
+     * The position of the last issued seek. -1 if unknown.
+     */
+    private int lastIssuedPositionMs = -1;
+
+    /**
+     * The latest target requested while a seek is in flight. -1 if there is none.
+     */
+    private int pendingPositionMs = -1;
+    private boolean isPendingPrecise = false;
+
+    /**
+     * true after a timeout: The next completion is the late one of the timed out seek.
+     */
+    private boolean isLateCompletionExpected = false;
+    private long lateCompletionDeadlineMs = 0;
+
+    /**
+     * true if a completion was dropped while the seek in flight was issued.
+     */
+    private boolean isCompletionDropped = false;
+
+    private long requestedCount = 0;
+    private long issuedCount = 0;
+    private long coalescedCount = 0;
+    private long timeoutCount = 0;
+    private long completedCount = 0;
+    private long totalLatencyMs = 0;
+    private long maxLatencyMs = 0;
+
+    /**
+     * @param clock  The clock to measure the timeout and the latency.
+     * @param player The player to seek.
+     */
+    public SeekScheduler(PlaybackClock clock, SyncablePlayer player) {
+        if (clock == null || player == null) {
+            throw new IllegalArgumentException("A clock and a player are needed");
+        }
+        this.clock = clock;
+        this.player = player;
+    }
+
+    /**
+     * Sets the key frames of the loaded video which fast seeks are snapped to.
+     *
+     * @param keyframeIndex The index or null if it is not known (fast seeks go to the exact target then).
+     */
+    public void setKeyframeIndex(KeyframeIndex keyframeIndex) {
+        this.keyframeIndex = keyframeIndex;
+    }
+
+    /**
+     * Sets a histogram which records the latency of every completed seek in addition to the statistics of this scheduler.
+     *
+     * @param latencyHistogram The histogram or null.
+     */
+    public void setLatencyHistogram(LatencyHistogram latencyHistogram) {
+        this.latencyHistogram = latencyHistogram;
+    }
+
+    /**
+     * Sets the time after which a seek in flight is considered completed.
+     *
+     * @param timeoutMs The timeout in milliseconds. Must be positive.
+     */
+    public void setTimeoutMs(int timeoutMs) {
+        if (timeoutMs <= 0) {
+            throw new IllegalArgumentException("Timeout must be positive");
+        }
+        this.timeoutMs = timeoutMs;
+    }
+
+    public int getTimeoutMs() {
+        return timeoutMs;
+    }
+
+    /**
+     * Seeks to the key frame before the target. Used while dragging.
+     *
+     * @param positionMs The target in milliseconds.
+     */
+    public void seekFast(int positionMs) {
+        request(positionMs, false);
+    }
+
+    /**
+     * Seeks to the exact target. Used when the finger lifts. The player decodes from the previous key frame (pre-roll).
+     *
+     * @param positionMs The target in milliseconds.
+     */
+    public void seekPrecise(int positionMs) {
+        request(positionMs, true);
+    }
+
+    /**
+     * Seeks to the exact target on behalf of the VideoSyncEngine. The seek is dropped while a user seek is in flight or pending:
+     * The engine is resynced once the user seek settled anyway.
+     *
+     * @param positionMs The target in milliseconds.
+     * @return true if the seek was issued.
+     */
+    public boolean seekCorrective(int positionMs) {
+        checkTimeout();
+        if (isInFlight || pendingPositionMs >= 0) {
+            return false;
+        }
+        issue(positionMs, true);
+        return true;
+    }
+
+    private void request(int positionMs, boolean isPrecise) {
+        requestedCount++;
+        checkTimeout();
+
+        if (isInFlight) {
+            if (pendingPositionMs >= 0) {
+                //Replaced by the newer target.
+                coalescedCount++;
+            }
+            pendingPositionMs = positionMs;
+            isPendingPrecise = isPrecise;
+        } else {
+            issue(positionMs, isPrecise);
+        }
+    }
+
+    /**
+     * Must be called when the player reports that the seek completed. Issues the pending seek if there is one.
+     * Completions without a seek in flight (e.g. of a seek not issued by this scheduler) are ignored, as is the late completion of a timed out seek.
+     */
+    public void onSeekComplete() {
+        if (isLateCompletionExpected && clock.getTimeMs() < lateCompletionDeadlineMs) {
+            isLateCompletionExpected = false;
+            isCompletionDropped = true;
+            return;
+        }
+        isLateCompletionExpected = false;
+        if (!isInFlight) {
+            return;
+        }
+
+        long latencyMs = clock.getTimeMs() - issueTimeMs;
+        totalLatencyMs += latencyMs;
+        maxLatencyMs = Math.max(maxLatencyMs, latencyMs);
+        completedCount++;
+        if (latencyHistogram != null) {
+            latencyHistogram.record(latencyMs);
+        }
+
+        finishInFlight();
+    }
+
+    /**
+     * Checks the timeout of the seek in flight. Should be called regularly (e.g. on every frame) as long as isBusy is true,
+     * in case a completion is never reported.
+     */
+    public void tick() {
+        checkTimeout();
+    }
+
+    /**
+     * Forgets a pending seek and the seek in flight (e.g. a new video is loaded). The statistics are kept.
+     */
+    public void reset() {
+        isInFlight = false;
+        inFlightPositionMs = -1;
+        lastIssuedPositionMs = -1;
+        pendingPositionMs = -1;
+        isLateCompletionExpected = false;
+    }
+
+    private void checkTimeout() {
+        if (isInFlight && clock.getTimeMs() - issueTimeMs >= timeoutMs) {
+            timeoutCount++;
+            //If a completion was dropped meanwhile it most likely was the one of this seek (the one of the seek before got lost).
+            //Expecting another late completion would drop the completions of all following seeks.
+            isLateCompletionExpected = !isCompletionDropped;
+            lateCompletionDeadlineMs = clock.getTimeMs() + timeoutMs;
+            finishInFlight();
+        }
+    }
+
+    private void finishInFlight() {
+        isInFlight = false;
+        inFlightPositionMs = -1;
+
+        if (pendingPositionMs >= 0) {
+            int positionMs = pendingPositionMs;
+            pendingPositionMs = -1;
+            issue(positionMs, isPendingPrecise);
+        }
+    }
+
+    private void issue(int positionMs, boolean isPrecise) {
+        int target = positionMs;
+        if (!isPrecise && keyframeIndex != null) {
+            target = (int) keyframeIndex.getKeyframeTimeBeforeMs(positionMs);
+            if (target == lastIssuedPositionMs) {
+                //Same key frame as before: Nothing would change.
+                coalescedCount++;
+                return;
+            }
+        }
+
+        isInFlight = true;
+        inFlightPositionMs = target;
+        lastIssuedPositionMs = target;
+        issueTimeMs = clock.getTimeMs();
+        isCompletionDropped = false;
+        issuedCount++;
+        player.seekTo(target);
+    }
+
+    /**
+     * @return true if a seek is in flight.
+     */
+    public boolean isBusy() {
+        return isInFlight;
+    }
+
+    /**
+     * @return The position of the seek in flight in milliseconds or -1 if no seek is in flight.
+     */
+    public int getInFlightPositionMs() {
+        return inFlightPositionMs;
+    }
+
+    /**
+     * @return The target which is issued when the seek in flight completes or -1 if there is none.
+     */
+    public int getPendingPositionMs() {
+        return pendingPositionMs;
+    }
+
+    /**
+     * @return The number of seeks requested by the user.
+     */
+    public long getRequestedCount() {
+        return requestedCount;
+    }
+
+    /**
+     * @return The number of seeks issued to the player.
+     */
+    public long getIssuedCount() {
+        return issuedCount;
+    }
+
+    /**
+     * @return The number of requested seeks which were replaced by a newer one before being issued or dropped as they would show the same key frame.
+     */
+    public long getCoalescedCount() {
+        return coalescedCount;
+    }
+
+    /**
+     * @return The number of seeks whose completion was not reported within the timeout.
+     */
+    public long getTimeoutCount() {
+        return timeoutCount;
+    }
+
+    /**
+     * @return The average time from issuing a seek until its completion was reported in milliseconds. Timed out seeks are not counted.
+     */
+    public double getAverageLatencyMs() {
+        return completedCount == 0 ? 0 : (double) totalLatencyMs / completedCount;
+    }
+
+    public long getMaxLatencyMs() {
+        return maxLatencyMs;
+    }
+
+    public void resetStatistics() {
+        requestedCount = 0;
+        issuedCount = 0;
+        coalescedCount = 0;
+        timeoutCount = 0;
+        completedCount = 0;
+        totalLatencyMs = 0;
+        maxLatencyMs = 0;
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright (C) 2015 Erwin Betschart
+ *
+ * This file is part of Video Comparator.
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.lipsch.videocomparator;
+
+/**
+ * Computes the signature (difference hash and luma histogram) of a luma plane and adds it to a SignatureStream.
+ * <p/>
+ * The difference hash shrinks the plane to 9x8 cells and sets a bit for every cell which is darker than its right neighbour. It is robust against
+ * scaling and small encoding errors but changes with the content. The histogram catches global changes like brightness or color grading.
+ * <p/>
+ * This class is not thread-safe. Extracting a signature does not allocate any objects.
+ */
+class SignatureExtractor {
+
+    private static final int HASH_COLUMNS = 9;
+    private static final int HASH_ROWS = 8;
+
+    /**
+     * The plane must be at least as large as the cells of the hash.
+     */
+    public static final int MIN_WIDTH = HASH_COLUMNS;
+    public static final int MIN_HEIGHT = HASH_ROWS;
+
+    private final long[] cellSums = new long[HASH_COLUMNS * HASH_ROWS];
+    private final int[] cellCounts = new int[HASH_COLUMNS * HASH_ROWS];
+    private final int[] histogram = new int[SignatureStream.HISTOGRAM_BINS];
+
+    /**
+     * Computes the signature of the plane and adds it to the stream.
+     *
+     * @param luma   The luma plane (row by row without padding).
+     * @param width  The width of the plane. At least MIN_WIDTH.
+     * @param height The height of the plane. At least MIN_HEIGHT.
+     * @param timeUs The presentation time of the frame.
+     * @param stream The stream to add the signature to.
+     */
+    public void extract(byte[] luma, int width, int height, long timeUs, SignatureStream stream) {
+        if (width < MIN_WIDTH || height < MIN_HEIGHT) {
+            throw new IllegalArgumentException("The plane must be at least " + MIN_WIDTH + "x" + MIN_HEIGHT);
+        }
+
+        for (int i = 0; i < cellSums.length; i++) {
+            cellSums[i] = 0;
+            cellCounts[i] = 0;
+        }
+        for (int bin = 0; bin < histogram.length; bin++) {
+            histogram[bin] = 0;
+        }
+
+        for (int y = 0; y < height; y++) {
+            int cellRow = y * HASH_ROWS / height * HASH_COLUMNS;
+            int offset = y * width;
+            for (int x = 0; x < width; x++) {
+                int value = luma[offset + x] & 0xFF;
+                int cell = cellRow + x * HASH_COLUMNS / width;
+                cellSums[cell] += value;
+                cellCounts[cell]++;
+                histogram[value >> 4]++;
+            }
+        }
+
+        long hash = 0;
+        for (int row = 0; row < HASH_ROWS; row++) {
+            for (int column = 0; column < HASH_COLUMNS - 1; column++) {
+                int cell = row * HASH_COLUMNS + column;
+                //Compare the means without division: sum1 / count1 < sum2 / count2
+                hash <<= 1;
+                if (cellSums[cell] * cellCounts[cell + 1] < cellSums[cell + 1] * cellCounts[cell]) {
+                    hash |= 1;
+                }
+            }
+        }
+
+        long pixelCount = (long) width * height;
+        for (int bin = 0; bin < histogram.length; bin++) {
+            histogram[bin] = (int) (histogram[bin] * (long) SignatureStream.HISTOGRAM_SCALE / pixelCount);
+        }
+
+        stream.add(timeUs, hash, histogram);
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2015 Erwin Betschart
+ *
+ * This file is part of Video Comparator.
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.lipsch.videocomparator;
+
+import java.util.Arrays;
+
+/**
+ * The compact signatures of the frames of a video: a 64 bit difference hash (dHash) and a luma histogram per frame.
+ * The signatures are stored in growing primitive arrays, so a long video needs a few hundred bytes per frame and no objects per frame.
+ * <p/>
+ * This class is not thread-safe.
+ */
+class SignatureStream {
+
+    /**
+     * The number of bins of the luma histograms.
+     */
+    public static final int HISTOGRAM_BINS = 16;
+
+    /**
+     * The histograms are normalized to this sum, so frames of different sizes can be compared.
+     */
+    public static final int HISTOGRAM_SCALE = 1 << 16;
+
+    private static final int INITIAL_CAPACITY = 256;
+
+    private long[] timesUs = new long[INITIAL_CAPACITY];
+    private long[] hashes = new long[INITIAL_CAPACITY];
+    private int[] histograms = new int[INITIAL_CAPACITY * HISTOGRAM_BINS];
+    private int size = 0;
+
+    /**
+     * Adds the signature of the next frame.
+     *
+     * @param timeUs    The presentation time of the frame.
+     * @param hash      The difference hash of the frame.
+     * @param histogram The normalized luma histogram (HISTOGRAM_BINS values). Copied.
+     */
+    public void add(long timeUs, long hash, int[] histogram) {
+        if (size == hashes.length) {
+            int capacity = size * 2;
+            timesUs = Arrays.copyOf(timesUs, capacity);
+            hashes = Arrays.copyOf(hashes, capacity);
+            histograms = Arrays.copyOf(histograms, capacity * HISTOGRAM_BINS);
+        }
+
+        timesUs[size] = timeUs;
+        hashes[size] = hash;
+        System.arraycopy(histogram, 0, histograms, size * HISTOGRAM_BINS, HISTOGRAM_BINS);
+        size++;
+    }
+
+    /**
+     * @return The number of frames.
+     */
+    public int size() {
+        return size;
+    }
+
+    public long getTimeUs(int frame) {
+        checkFrame(frame);
+        return timesUs[frame];
+    }
+
+    public long getHash(int frame) {
+        checkFrame(frame);
+        return hashes[frame];
+    }
+
+    /**
+     * The distance of a frame of this stream to a frame of another stream: The mean of the hash distance (changed bits / 64)
+     * and the histogram distance (half the L1 distance of the normalized histograms).
+     *
+     * @return 0.0 for equal signatures up to 1.0.
+     */
+    public double distance(int frame, SignatureStream other, int otherFrame) {
+        checkFrame(frame);
+        other.checkFrame(otherFrame);
+
+        double hashDistance = Long.bitCount(hashes[frame] ^ other.hashes[otherFrame]) / 64.0;
+
+        long histogramDistance = 0;
+        int offset = frame * HISTOGRAM_BINS;
+        int otherOffset = otherFrame * HISTOGRAM_BINS;
+        for (int bin = 0; bin < HISTOGRAM_BINS; bin++) {
+            histogramDistance += Math.abs(histograms[offset + bin] - other.histograms[otherOffset + bin]);
+        }
+
+        return (hashDistance + histogramDistance / (2.0 * HISTOGRAM_SCALE)) / 2;
+    }
+
+    private void checkFrame(int frame) {
+        if (frame < 0 || frame >= size) {
+            throw new IndexOutOfBoundsException("Frame " + frame + " of " + size);
+        }
+    }
+}
@@ -0,0 +1,208 @@
+/*
+ * Copyright (C) 2015 Erwin Betschart
+ *
+ * This file is part of Video Comparator.
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.lipsch.videocomparator;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A least recently used cache which is limited by the total size of its values (e.g. the bytes of bitmaps) instead of the number of entries.
+ * <p/>
+ * If a put exceeds the limit the least recently used entries are evicted and handed to the eviction listener (e.g. to reuse their memory).
+ * A value larger than the whole cache is not stored at all.
+ * <p/>
+ * This class is thread-safe. The listener is called while holding the lock of the cache, so it must not call back into the cache.
+ *
+ * @param <K> The type of the keys.
+ * @param <V> The type of the values.
+ */
+class SizedLruCache<K, V> {
+
+    /**
+     * Measures the size of a value. The size of a value must not change while it is in the cache.
+     */
+    interface Sizer<V> {
+        long sizeOf(V value);
+    }
+
+    /**
+     * Gets informed about values removed from the cache because of the size limit or a replacement. Not called for remove and clear.
+     */
+    interface EvictionListener<K, V> {
+        void onEvicted(K key, V value);
+    }
+
+    private final long maxSize;
+    private final Sizer<V> sizer;
+    private EvictionListener<K, V> evictionListener = null;
+
+    /**
+     * The entries in least recently used order (access order).
+     */
+    private final LinkedHashMap<K, V> entries = new LinkedHashMap<K, V>(16, 0.75f, true);
+
+    private long size = 0;
+    private long hitCount = 0;
+    private long missCount = 0;
+    private long evictionCount = 0;
+
+    /**
+     * @param maxSize The maximum total size of all values.
+     * @param sizer   Measures the values.
+     */
+    public SizedLruCache(long maxSize, Sizer<V> sizer) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("Max size must be positive");
+        }
+        this.maxSize = maxSize;
+        this.sizer = sizer;
+    }
+
+    public synchronized void setEvictionListener(EvictionListener<K, V> evictionListener) {
+        this.evictionListener = evictionListener;
+    }
+
+    /**
+     * Delivers a value and marks it as most recently used. Counts as hit or miss.
+     *
+     * @param key The key.
+     * @return The value or null if it is not in the cache.
+     */
+    public synchronized V get(K key) {
+        V value = entries.get(key);
+        if (value == null) {
+            missCount++;
+        } else {
+            hitCount++;
+        }
+        return value;
+    }
+
+    /**
+     * @return true if the key is in the cache. Does neither change the usage order nor the statistics.
+     */
+    public synchronized boolean containsKey(K key) {
+        return entries.containsKey(key);
+    }
+
+    /**
+     * Stores a value as most recently used. A replaced value is handed to the eviction listener.
+     *
+     * @param key   The key.
+     * @param value The value. Must not be null.
+     * @return true if the value was stored, false if it is larger than the whole cache.
+     */
+    public synchronized boolean put(K key, V value) {
+        if (value == null) {
+            throw new IllegalArgumentException("Value must not be null");
+        }
+
+        long valueSize = sizer.sizeOf(value);
+        if (valueSize > maxSize) {
+            return false;
+        }
+
+        V previous = entries.put(key, value);
+        size += valueSize;
+        if (previous != null) {
+            size -= sizer.sizeOf(previous);
+            if (previous != value) {
+                notifyEvicted(key, previous);
+            }
+        }
+
+        trimTo(maxSize);
+        return true;
+    }
+
+    /**
+     * Removes a value without informing the eviction listener.
+     *
+     * @param key The key.
+     * @return The removed value or null if it was not in the cache.
+     */
+    public synchronized V remove(K key) {
+        V value = entries.remove(key);
+        if (value != null) {
+            size -= sizer.sizeOf(value);
+        }
+        return value;
+    }
+
+    /**
+     * Evicts the least recently used entries until the total size is at most the given size. E.g. if the system runs low on memory.
+     *
+     * @param targetSize The size to trim to.
+     */
+    public synchronized void trimTo(long targetSize) {
+        Iterator<Map.Entry<K, V>> iterator = entries.entrySet().iterator();
+        while (size > targetSize && iterator.hasNext()) {
+            Map.Entry<K, V> eldest = iterator.next();
+            iterator.remove();
+            size -= sizer.sizeOf(eldest.getValue());
+            evictionCount++;
+            notifyEvicted(eldest.getKey(), eldest.getValue());
+        }
+    }
+
+    /**
+     * Removes all values without informing the eviction listener.
+     */
+    public synchronized void clear() {
+        entries.clear();
+        size = 0;
+    }
+
+    private void notifyEvicted(K key, V value) {
+        if (evictionListener != null) {
+            evictionListener.onEvicted(key, value);
+        }
+    }
+
+    /**
+     * @return The total size of all values.
+     */
+    public synchronized long getSize() {
+        return size;
+    }
+
+    public long getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * @return The number of entries.
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    public synchronized long getEvictionCount() {
+        return evictionCount;
+    }
+}
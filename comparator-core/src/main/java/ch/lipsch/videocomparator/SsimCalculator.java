@@ -0,0 +1,197 @@
+/*
+ * Copyright (C) 2015 Erwin Betschart
+ *
+ * This file is part of Video Comparator.
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.lipsch.videocomparator;
+
+/**
+ * Computes the structural similarity (SSIM) of two 8 bit planes (e.g. the luma planes of two frames).
+ * <p/>
+ * The SSIM is computed on 8x8 windows which overlap by 4 pixels and averaged over all windows (the same approach as x264 and ffmpeg use instead of
+ * the 11x11 gaussian window of the paper). The sums of 4x4 blocks are computed once and combined to the windows, so every pixel is read once per row of blocks.
+ * The rows of windows are split into stripes which are computed in parallel by a BandExecutor. Computing the SSIM does not allocate any objects
+ * as long as the width of the planes does not change.
+ * <p/>
+ * This class is not thread-safe: compute must not be called concurrently.
+ */
+class SsimCalculator implements BandExecutor.BandTask {
+
+    /**
+     * The size of the blocks of which the windows are built.
+     */
+    public static final int BLOCK_SIZE = 4;
+
+    /**
+     * The size of the windows (2x2 blocks).
+     */
+    public static final int WINDOW_SIZE = 2 * BLOCK_SIZE;
+
+    private static final int WINDOW_PIXELS = WINDOW_SIZE * WINDOW_SIZE;
+
+    /**
+     * The stabilizing constants of the paper ((0.01 * 255)^2 and (0.03 * 255)^2) scaled to sums instead of means.
+     */
+    private static final double C1 = 0.01 * 255 * 0.01 * 255 * WINDOW_PIXELS * WINDOW_PIXELS;
+    private static final double C2 = 0.03 * 255 * 0.03 * 255 * WINDOW_PIXELS * WINDOW_PIXELS;
+
+    /**
+     * Every block has four sums: values of plane 1, values of plane 2, squares of both planes, products of the planes.
+     */
+    private static final int SUMS_PER_BLOCK = 4;
+
+    private final BandExecutor executor;
+
+    /**
+     * The sum of the SSIM values of the windows of every band.
+     */
+    private final double[] bandSums;
+
+    /**
+     * Two rows of block sums per band. Reused as long as the width does not change.
+     */
+    private final int[][][] blockRows;
+
+    //The arguments of the current compute call. Read by the bands.
+    private byte[] plane1 = null;
+    private byte[] plane2 = null;
+    private int width = 0;
+    private int blocksPerRow = 0;
+
+    /**
+     * @param executor The executor which computes the stripes in parallel.
+     */
+    public SsimCalculator(BandExecutor executor) {
+        this.executor = executor;
+        this.bandSums = new double[executor.getBandCount()];
+        this.blockRows = new int[executor.getBandCount()][][];
+    }
+
+    /**
+     * Computes the SSIM of two planes.
+     *
+     * @param plane1 The first plane (row by row without padding).
+     * @param plane2 The second plane.
+     * @param width  The width of the planes. At least WINDOW_SIZE.
+     * @param height The height of the planes. At least WINDOW_SIZE.
+     * @return The SSIM: 1.0 if the planes are equal, around 0.0 if they are not related at all.
+     */
+    public double compute(byte[] plane1, byte[] plane2, int width, int height) {
+        if (width < WINDOW_SIZE || height < WINDOW_SIZE) {
+            throw new IllegalArgumentException("The planes must be at least " + WINDOW_SIZE + "x" + WINDOW_SIZE);
+        }
+        int pixelCount = width * height;
+        if (plane1.length < pixelCount || plane2.length < pixelCount) {
+            throw new IllegalArgumentException("The planes must have at least " + pixelCount + " values");
+        }
+
+        int newBlocksPerRow = width / BLOCK_SIZE;
+        if (newBlocksPerRow != blocksPerRow) {
+            for (int band = 0; band < blockRows.length; band++) {
+                blockRows[band] = new int[2][newBlocksPerRow * SUMS_PER_BLOCK];
+            }
+        }
+
+        this.plane1 = plane1;
+        this.plane2 = plane2;
+        this.width = width;
+        this.blocksPerRow = newBlocksPerRow;
+
+        int windowRows = height / BLOCK_SIZE - 1;
+        try {
+            executor.execute(this, windowRows);
+        } finally {
+            this.plane1 = null;
+            this.plane2 = null;
+        }
+
+        double sum = 0;
+        for (int band = 0; band < bandSums.length; band++) {
+            sum += bandSums[band];
+            bandSums[band] = 0;
+        }
+
+        return sum / ((long) windowRows * (blocksPerRow - 1));
+    }
+
+    @Override
+    public void runBand(int band, int start, int end) {
+        int[] upper = blockRows[band][0];
+        int[] lower = blockRows[band][1];
+        int windowsPerRow = blocksPerRow - 1;
+
+        double sum = 0;
+        sumBlockRow(start, upper);
+        for (int windowRow = start; windowRow < end; windowRow++) {
+            sumBlockRow(windowRow + 1, lower);
+
+            for (int window = 0; window < windowsPerRow; window++) {
+                int left = window * SUMS_PER_BLOCK;
+                int right = left + SUMS_PER_BLOCK;
+                sum += ssim(upper[left] + upper[right] + lower[left] + lower[right],
+                        upper[left + 1] + upper[right + 1] + lower[left + 1] + lower[right + 1],
+                        upper[left + 2] + upper[right + 2] + lower[left + 2] + lower[right + 2],
+                        upper[left + 3] + upper[right + 3] + lower[left + 3] + lower[right + 3]);
+            }
+
+            //The lower row is the upper row of the next window row.
+            int[] swap = upper;
+            upper = lower;
+            lower = swap;
+        }
+
+        bandSums[band] = sum;
+    }
+
+    /**
+     * Sums up the values of a row of blocks.
+     */
+    private void sumBlockRow(int blockRow, int[] sums) {
+        byte[] values1 = plane1;
+        byte[] values2 = plane2;
+        int rowWidth = blocksPerRow * BLOCK_SIZE;
+
+        for (int i = 0; i < sums.length; i++) {
+            sums[i] = 0;
+        }
+
+        for (int y = 0; y < BLOCK_SIZE; y++) {
+            int offset = (blockRow * BLOCK_SIZE + y) * width;
+            for (int x = 0; x < rowWidth; x++) {
+                int value1 = values1[offset + x] & 0xFF;
+                int value2 = values2[offset + x] & 0xFF;
+                int block = (x / BLOCK_SIZE) * SUMS_PER_BLOCK;
+
+                sums[block] += value1;
+                sums[block + 1] += value2;
+                sums[block + 2] += value1 * value1 + value2 * value2;
+                sums[block + 3] += value1 * value2;
+            }
+        }
+    }
+
+    /**
+     * The SSIM formula on the sums of a window: (2 mu1 mu2 + c1) (2 cov + c2) / ((mu1^2 + mu2^2 + c1) (var1 + var2 + c2)), multiplied by WINDOW_PIXELS^2.
+     */
+    private static double ssim(long sum1, long sum2, long sumSquares, long sumProducts) {
+        double sum1Sum2 = (double) sum1 * sum2;
+        double squaredSums = (double) sum1 * sum1 + (double) sum2 * sum2;
+        double variances = (double) sumSquares * WINDOW_PIXELS - squaredSums;
+        double covariance = (double) sumProducts * WINDOW_PIXELS - sum1Sum2;
+
+        return (2 * sum1Sum2 + C1) * (2 * covariance + C2) / ((squaredSums + C1) * (variances + C2));
+    }
+}
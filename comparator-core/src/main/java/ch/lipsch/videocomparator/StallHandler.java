@@ -0,0 +1,194 @@
+/*
+ * Copyright (C) 2015 Erwin Betschart
+ *
+ * This file is part of Video Comparator.
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.lipsch.videocomparator;
+
+/**
+ * Keeps the videos together while one of them stalls to buffer.
+ * <p/>
+ * When a playing video starts buffering, all other playing videos are paused (WAITING). A video which is done buffering waits as well until
+ * no video is buffering anymore, then all waiting videos are resumed together. The states are changed with the PlayStateMachine, pausing
+ * and resuming the players is left to the Listener.
+ * <p/>
+ * The time during which at least one video stalled is summed up per play session.
+ * This class is not thread-safe: All calls must be done in the same thread (usually the main thread).
+ */
+class StallHandler {
+
+    /**
+     * Pauses and resumes the players.
+     */
+    interface Listener {
+
+        /**
+         * The player must be paused until the stall ends.
+         *
+         * @param video The index of the video.
+         */
+        void onPauseForStall(int video);
+
+        /**
+         * The stall ended: The players must be resumed together.
+         *
+         * @param videos The indexes of the videos to resume.
+         */
+        void onResumeAfterStall(int[] videos);
+    }
+
+    private final VideoPlayState playState;
+    private final PlaybackClock clock;
+    private final Listener listener;
+
+    /**
+     * The time when the current stall started or -1 if no video stalls.
+     */
+    private long stallStartMs = -1;
+    private long sessionStallMs = 0;
+    private int sessionStallCount = 0;
+
+    /**
+     * @param playState The states of the videos.
+     * @param clock     The clock to measure the stall time.
+     * @param listener  Pauses and resumes the players.
+     */
+    public StallHandler(VideoPlayState playState, PlaybackClock clock, Listener listener) {
+        if (playState == null || clock == null || listener == null) {
+            throw new IllegalArgumentException("A play state, a clock and a listener are needed");
+        }
+        this.playState = playState;
+        this.clock = clock;
+        this.listener = listener;
+    }
+
+    /**
+     * A new play session starts (e.g. play was pressed). Resets the stall time.
+     */
+    public void startSession() {
+        stallStartMs = -1;
+        sessionStallMs = 0;
+        sessionStallCount = 0;
+    }
+
+    /**
+     * The player of the video reported MEDIA_INFO_BUFFERING_START. Pauses the other playing videos.
+     *
+     * @param video The index of the video.
+     */
+    public void onBufferingStart(int video) {
+        if (playState.apply(video, PlayStateMachine.Event.BUFFERING_START) != VideoPlayState.State.BUFFERING) {
+            //Not playing, e.g. buffering while paused: Nothing to keep together.
+            return;
+        }
+
+        if (stallStartMs < 0) {
+            stallStartMs = clock.getTimeMs();
+            sessionStallCount++;
+        }
+
+        for (int i = 0; i < playState.getVideoCount(); i++) {
+            if (i != video && playState.getSnapshot().getState(i) == VideoPlayState.State.PLAYING
+                    && playState.apply(i, PlayStateMachine.Event.PARTNER_STALLED) == VideoPlayState.State.WAITING) {
+                listener.onPauseForStall(i);
+            }
+        }
+    }
+
+    /**
+     * The player of the video reported MEDIA_INFO_BUFFERING_END. Resumes all waiting videos if no video is buffering anymore,
+     * otherwise the video waits for the others.
+     *
+     * @param video The index of the video.
+     */
+    public void onBufferingEnd(int video) {
+        if (playState.getSnapshot().getState(video) != VideoPlayState.State.BUFFERING) {
+            return;
+        }
+        playState.apply(video, PlayStateMachine.Event.BUFFERING_END);
+
+        if (playState.getSnapshot().isAnyBuffering()) {
+            //The player continues by itself after buffering.
+            listener.onPauseForStall(video);
+        } else {
+            resumeWaiting();
+        }
+    }
+
+    /**
+     * Must be called when a video left the BUFFERING state otherwise (e.g. it completed, failed or was unloaded).
+     * Resumes the waiting videos if no video is buffering anymore.
+     */
+    public void onStallerGone() {
+        if (stallStartMs >= 0 && !playState.getSnapshot().isAnyBuffering()) {
+            resumeWaiting();
+        }
+    }
+
+    /**
+     * The user paused or stopped the videos (or the activity is stopped). Ends a running stall.
+     */
+    public void onPlaybackStopped() {
+        endStall();
+    }
+
+    private void resumeWaiting() {
+        VideoPlayState.Snapshot snapshot = playState.getSnapshot();
+        int waitingCount = 0;
+        for (int i = 0; i < snapshot.getVideoCount(); i++) {
+            if (snapshot.getState(i) == VideoPlayState.State.WAITING) {
+                waitingCount++;
+            }
+        }
+
+        int[] videos = new int[waitingCount];
+        int next = 0;
+        for (int i = 0; i < snapshot.getVideoCount(); i++) {
+            if (snapshot.getState(i) == VideoPlayState.State.WAITING) {
+                playState.apply(i, PlayStateMachine.Event.PARTNER_RESUMED);
+                videos[next++] = i;
+            }
+        }
+
+        endStall();
+        listener.onResumeAfterStall(videos);
+    }
+
+    private void endStall() {
+        if (stallStartMs >= 0) {
+            sessionStallMs += clock.getTimeMs() - stallStartMs;
+            stallStartMs = -1;
+        }
+    }
+
+    public boolean isStalled() {
+        return stallStartMs >= 0;
+    }
+
+    /**
+     * @return The time during which at least one video stalled in the current session in milliseconds, including a running stall.
+     */
+    public long getSessionStallMs() {
+        return sessionStallMs + (stallStartMs >= 0 ? clock.getTimeMs() - stallStartMs : 0);
+    }
+
+    /**
+     * @return The number of stalls in the current session. Overlapping stalls of several videos count once.
+     */
+    public int getSessionStallCount() {
+        return sessionStallCount;
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright (C) 2015 Erwin Betschart
+ *
+ * This file is part of Video Comparator.
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.lipsch.videocomparator;
+
+/**
+ * The minimal view of a video player which is needed to keep several players in sync.
+ * Implementations must not depend on android classes being available in the interface so the sync logic can be tested on the JVM.
+ */
+interface SyncablePlayer {
+
+    /**
+     * @return The current play position in milliseconds.
+     */
+    int getCurrentPosition();
+
+    /**
+     * @return true if the player is currently playing.
+     */
+    boolean isPlaying();
+
+    /**
+     * Seeks to the given position.
+     *
+     * @param positionMs The position in milliseconds.
+     * @return true if the seek was issued, false if it was dropped (e.g. another seek of the player has precedence).
+     */
+    boolean seekTo(int positionMs);
+
+    /**
+     * @return true if the player is able to change its playback rate (see setPlaybackRate).
+     */
+    boolean supportsPlaybackRate();
+
+    /**
+     * Changes the playback rate. Only called if supportsPlaybackRate returns true.
+     *
+     * @param rate The playback rate. 1.0 is normal speed.
+     */
+    void setPlaybackRate(float rate);
+}
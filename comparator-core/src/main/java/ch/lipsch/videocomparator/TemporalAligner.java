@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) 2015 Erwin Betschart
+ *
+ * This file is part of Video Comparator.
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.lipsch.videocomparator;
+
+import java.io.IOException;
+
+/**
+ * Finds the offset between two recordings of the same content (e.g. two camera takes which were started at different moments).
+ * <p/>
+ * Both videos are read once in streaming fashion at a low sample rate (decimated, e.g. 4 frames per second): Only an ActivitySignal is kept per video.
+ * The signals are cross-correlated with a CrossCorrelator by FFT, so even hour-long videos are correlated within milliseconds. Reading the frames
+ * is the expensive part.
+ * <p/>
+ * This class is not thread-safe: align must not be called concurrently.
+ */
+class TemporalAligner {
+
+    private final double sampleRate;
+    private final int maxLag;
+    private final int minOverlap;
+    private final CrossCorrelator correlator = new CrossCorrelator();
+
+    /**
+     * @param sampleRate   The number of frames per second the sources deliver.
+     * @param maxOffsetMs  The largest offset (in both directions) which is searched.
+     * @param minOverlapMs The minimum time both videos must overlap at an offset.
+     */
+    public TemporalAligner(double sampleRate, int maxOffsetMs, int minOverlapMs) {
+        if (sampleRate <= 0 || maxOffsetMs < 0 || minOverlapMs <= 0) {
+            throw new IllegalArgumentException("Invalid sample rate, offset or overlap");
+        }
+        this.sampleRate = sampleRate;
+        this.maxLag = (int) Math.ceil(maxOffsetMs * sampleRate / 1000);
+        this.minOverlap = Math.max(2, (int) Math.ceil(minOverlapMs * sampleRate / 1000));
+    }
+
+    /**
+     * Reads both videos completely and aligns them.
+     *
+     * @param source1 The first video. Must deliver the frames at the sample rate.
+     * @param source2 The second video. Must deliver the frames at the sample rate.
+     * @return The alignment or null if the videos are too short or show no activity at all (e.g. still images).
+     * @throws IOException          In case a frame can not be read.
+     * @throws InterruptedException In case the thread was interrupted.
+     */
+    public TemporalAlignment align(LumaFrameSource source1, LumaFrameSource source2) throws IOException, InterruptedException {
+        return align(read(source1), read(source2));
+    }
+
+    /**
+     * Aligns the activity signals of two videos.
+     *
+     * @return The alignment or null if the signals are too short or constant.
+     */
+    public TemporalAlignment align(ActivitySignal signal1, ActivitySignal signal2) {
+        if (!correlator.correlate(signal1.getValues(), signal1.size(), signal2.getValues(), signal2.size(), maxLag, minOverlap)) {
+            return null;
+        }
+
+        int offsetMs = (int) Math.round(correlator.getBestLag() * 1000 / sampleRate);
+        return new TemporalAlignment(offsetMs, correlator.getBestCorrelation(), correlator.getSecondBestCorrelation());
+    }
+
+    private static ActivitySignal read(LumaFrameSource source) throws IOException, InterruptedException {
+        ActivitySignal signal = new ActivitySignal();
+        byte[] luma = new byte[source.getWidth() * source.getHeight()];
+
+        while (source.readNextFrame(luma) >= 0) {
+            if (Thread.interrupted()) {
+                throw new InterruptedException("Alignment cancelled");
+            }
+            signal.add(luma, source.getWidth(), source.getHeight());
+        }
+
+        return signal;
+    }
+}
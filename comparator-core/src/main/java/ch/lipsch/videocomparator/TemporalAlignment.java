@@ -0,0 +1,79 @@
+/*
+ * Copyright (C) 2015 Erwin Betschart
+ *
+ * This file is part of Video Comparator.
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.lipsch.videocomparator;
+
+/**
+ * The result of a TemporalAligner: The offset between two videos and how well they match at it.
+ * This class is immutable.
+ */
+final class TemporalAlignment {
+
+    /**
+     * The minimum correlation of a reliable alignment.
+     */
+    public static final double MIN_CORRELATION = 0.3;
+
+    /**
+     * The minimum distance of the best peak to the second best one (in correlation) of a reliable alignment.
+     */
+    public static final double MIN_PEAK_MARGIN = 0.1;
+
+    private final int offsetMs;
+    private final double correlation;
+    private final double secondBestCorrelation;
+
+    /**
+     * @param offsetMs              The position of the second video minus the position of the first video showing the same content.
+     * @param correlation           The correlation at the offset (-1..1).
+     * @param secondBestCorrelation The best correlation at another offset or NaN if there is none.
+     */
+    public TemporalAlignment(int offsetMs, double correlation, double secondBestCorrelation) {
+        this.offsetMs = offsetMs;
+        this.correlation = correlation;
+        this.secondBestCorrelation = secondBestCorrelation;
+    }
+
+    /**
+     * @return The offset in milliseconds. Positive if the content appears later in the second video.
+     */
+    public int getOffsetMs() {
+        return offsetMs;
+    }
+
+    public double getCorrelation() {
+        return correlation;
+    }
+
+    public double getSecondBestCorrelation() {
+        return secondBestCorrelation;
+    }
+
+    /**
+     * @return true if the correlation is high and no other offset matches nearly as well.
+     */
+    public boolean isReliable() {
+        double margin = Double.isNaN(secondBestCorrelation) ? correlation : correlation - secondBestCorrelation;
+        return correlation >= MIN_CORRELATION && margin >= MIN_PEAK_MARGIN;
+    }
+
+    @Override
+    public String toString() {
+        return "TemporalAlignment{offsetMs=" + offsetMs + ", correlation=" + correlation + ", secondBestCorrelation=" + secondBestCorrelation + "}";
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) 2015 Erwin Betschart
+ *
+ * This file is part of Video Comparator.
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.lipsch.videocomparator;
+
+/**
+ * Formats play times as h:mm:ss (e.g. 0:21:55) into a char buffer without allocating any objects.
+ * The formatting is done on every frame while playing so String.format is too expensive.
+ */
+final class TimeFormatter {
+
+    /**
+     * The maximum number of chars written by format. Enough for Long.MAX_VALUE milliseconds.
+     */
+    public static final int MAX_LENGTH = 22;
+
+    private static final long MS_PER_SECOND = 1000;
+    private static final long SECONDS_PER_MINUTE = 60;
+    private static final long SECONDS_PER_HOUR = 3600;
+
+    private TimeFormatter() {
+        //Utility class
+    }
+
+    /**
+     * Formats the given time as h:mm:ss into the buffer. Negative times are formatted as 0:00:00.
+     *
+     * @param timeMs The time in milliseconds.
+     * @param buffer The buffer to write to. Must have at least MAX_LENGTH chars.
+     * @return The number of chars written (starting at index 0).
+     */
+    public static int format(long timeMs, char[] buffer) {
+        long totalSeconds = Math.max(0, timeMs) / MS_PER_SECOND;
+        long hours = totalSeconds / SECONDS_PER_HOUR;
+        int minutes = (int) (totalSeconds % SECONDS_PER_HOUR / SECONDS_PER_MINUTE);
+        int seconds = (int) (totalSeconds % SECONDS_PER_MINUTE);
+
+        int pos = writeNumber(hours, buffer);
+        buffer[pos++] = ':';
+        pos = writeTwoDigits(minutes, buffer, pos);
+        buffer[pos++] = ':';
+        pos = writeTwoDigits(seconds, buffer, pos);
+
+        return pos;
+    }
+
+    private static int writeNumber(long value, char[] buffer) {
+        //Count the digits first so we can write from left to right.
+        int digits = 1;
+        for (long rest = value / 10; rest > 0; rest /= 10) {
+            digits++;
+        }
+
+        long rest = value;
+        for (int i = digits - 1; i >= 0; i--) {
+            buffer[i] = (char) ('0' + rest % 10);
+            rest /= 10;
+        }
+
+        return digits;
+    }
+
+    private static int writeTwoDigits(int value, char[] buffer, int pos) {
+        buffer[pos] = (char) ('0' + value / 10);
+        buffer[pos + 1] = (char) ('0' + value % 10);
+        return pos + 2;
+    }
+}
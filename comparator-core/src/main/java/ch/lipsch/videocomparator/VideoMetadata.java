@@ -0,0 +1,84 @@
+/*
+ * Copyright (C) 2015 Erwin Betschart
+ *
+ * This file is part of Video Comparator.
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.lipsch.videocomparator;
+
+/**
+ * Information about a video which is expensive to find out: duration, seekability, frame rate, resolution and the key frame index.
+ * Instances are immutable and thus thread-safe.
+ */
+final class VideoMetadata {
+
+    private final long durationMs;
+    private final boolean seekable;
+    private final double frameRate;
+    private final int width;
+    private final int height;
+    private final KeyframeIndex keyframeIndex;
+
+    /**
+     * @param durationMs    The duration in milliseconds.
+     * @param seekable      true if the video is seekable.
+     * @param frameRate     The frame rate in frames per second.
+     * @param width         The width in pixels.
+     * @param height        The height in pixels.
+     * @param keyframeIndex The key frame index or null if the video could not be indexed.
+     */
+    public VideoMetadata(long durationMs, boolean seekable, double frameRate, int width, int height, KeyframeIndex keyframeIndex) {
+        this.durationMs = durationMs;
+        this.seekable = seekable;
+        this.frameRate = frameRate;
+        this.width = width;
+        this.height = height;
+        this.keyframeIndex = keyframeIndex;
+    }
+
+    public long getDurationMs() {
+        return durationMs;
+    }
+
+    public boolean isSeekable() {
+        return seekable;
+    }
+
+    public double getFrameRate() {
+        return frameRate;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * @return The key frame index or null if the video could not be indexed.
+     */
+    public KeyframeIndex getKeyframeIndex() {
+        return keyframeIndex;
+    }
+
+    /**
+     * @return A copy with the given seekability.
+     */
+    public VideoMetadata withSeekable(boolean seekable) {
+        return new VideoMetadata(durationMs, seekable, frameRate, width, height, keyframeIndex);
+    }
+}
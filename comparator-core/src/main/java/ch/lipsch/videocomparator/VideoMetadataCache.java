@@ -0,0 +1,309 @@
+/*
+ * Copyright (C) 2015 Erwin Betschart
+ *
+ * This file is part of Video Comparator.
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.lipsch.videocomparator;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A persistent cache of VideoMetadata keyed by the ContentHash of the video.
+ * <p/>
+ * Every entry is stored in its own file in a compact binary format. The cache is limited by the total size of the files:
+ * If the limit is exceeded the least recently used entries are deleted. The usage order survives restarts via the modification time of the files.
+ * <p/>
+ * This class is thread-safe.
+ */
+class VideoMetadataCache {
+
+    private static final String FILE_SUFFIX = ".meta";
+    private static final int MAGIC = 0x56434D44; //VCMD
+    private static final int VERSION = 1;
+
+    /**
+     * magic, version, duration, seekable, frame rate, width, height, has index.
+     */
+    private static final int FIXED_SIZE = 4 + 4 + 8 + 1 + 8 + 4 + 4 + 1;
+
+    /**
+     * index duration, key frame count.
+     */
+    private static final int INDEX_HEADER_SIZE = 8 + 4;
+
+    private final File directory;
+    private final long maxBytes;
+
+    /**
+     * The sizes of the entries in least recently used order (access order).
+     */
+    private final LinkedHashMap<Long, Long> entrySizes = new LinkedHashMap<Long, Long>(16, 0.75f, true);
+
+    private long totalBytes = 0;
+
+    /**
+     * Opens the cache in the given directory. Existing entries are kept (as long as they fit into the size limit).
+     *
+     * @param directory The directory of the cache. Created if it does not exist.
+     * @param maxBytes  The maximum size of all entries in bytes.
+     */
+    public VideoMetadataCache(File directory, long maxBytes) {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+
+        //noinspection ResultOfMethodCallIgnored
+        directory.mkdirs();
+
+        File[] files = directory.listFiles();
+        if (files != null) {
+            Arrays.sort(files, new Comparator<File>() {
+                @Override
+                public int compare(File lhs, File rhs) {
+                    long lhsModified = lhs.lastModified();
+                    long rhsModified = rhs.lastModified();
+                    return lhsModified < rhsModified ? -1 : (lhsModified == rhsModified ? 0 : 1);
+                }
+            });
+
+            for (File file : files) {
+                Long key = parseKey(file.getName());
+                if (key != null) {
+                    entrySizes.put(key, file.length());
+                    totalBytes += file.length();
+                }
+            }
+        }
+
+        synchronized (this) {
+            evict();
+        }
+    }
+
+    /**
+     * Delivers the cached metadata of a video.
+     *
+     * @param contentHash The content hash of the video.
+     * @return The metadata or null if it is not cached (or the cache entry is corrupt).
+     */
+    public synchronized VideoMetadata get(long contentHash) {
+        //get (not containsKey) to update the access order.
+        if (entrySizes.get(contentHash) == null) {
+            return null;
+        }
+
+        File file = fileFor(contentHash);
+        try {
+            VideoMetadata metadata = read(file);
+            //noinspection ResultOfMethodCallIgnored
+            file.setLastModified(System.currentTimeMillis());
+            return metadata;
+        } catch (IOException e) {
+            remove(contentHash);
+            return null;
+        }
+    }
+
+    /**
+     * Stores the metadata of a video. Replaces an existing entry.
+     *
+     * @param contentHash The content hash of the video.
+     * @param metadata    The metadata to store.
+     * @throws IOException If the entry could not be written.
+     */
+    public synchronized void put(long contentHash, VideoMetadata metadata) throws IOException {
+        ByteBuffer buffer = encode(metadata);
+        if (buffer.remaining() > maxBytes) {
+            //Would evict everything else and itself.
+            return;
+        }
+
+        remove(contentHash);
+
+        //Write to a temporary file first so a crash does not leave a half written entry.
+        File file = fileFor(contentHash);
+        File tempFile = new File(directory, file.getName() + ".tmp");
+        FileOutputStream out = new FileOutputStream(tempFile);
+        try {
+            FileChannel channel = out.getChannel();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        } finally {
+            out.close();
+        }
+
+        if (!tempFile.renameTo(file)) {
+            //noinspection ResultOfMethodCallIgnored
+            tempFile.delete();
+            throw new IOException("Could not write " + file);
+        }
+
+        entrySizes.put(contentHash, file.length());
+        totalBytes += file.length();
+        evict();
+    }
+
+    /**
+     * @return The total size of all entries in bytes.
+     */
+    public synchronized long getSizeBytes() {
+        return totalBytes;
+    }
+
+    /**
+     * @return The number of entries.
+     */
+    public synchronized int size() {
+        return entrySizes.size();
+    }
+
+    private void remove(long contentHash) {
+        Long size = entrySizes.remove(contentHash);
+        if (size != null) {
+            totalBytes -= size;
+            //noinspection ResultOfMethodCallIgnored
+            fileFor(contentHash).delete();
+        }
+    }
+
+    private void evict() {
+        Iterator<Map.Entry<Long, Long>> iterator = entrySizes.entrySet().iterator();
+        while (totalBytes > maxBytes && iterator.hasNext()) {
+            Map.Entry<Long, Long> eldest = iterator.next();
+            totalBytes -= eldest.getValue();
+            //noinspection ResultOfMethodCallIgnored
+            fileFor(eldest.getKey()).delete();
+            iterator.remove();
+        }
+    }
+
+    private File fileFor(long contentHash) {
+        return new File(directory, ContentHash.toHex(contentHash) + FILE_SUFFIX);
+    }
+
+    private static Long parseKey(String fileName) {
+        if (!fileName.endsWith(FILE_SUFFIX) || fileName.length() != 16 + FILE_SUFFIX.length()) {
+            return null;
+        }
+
+        try {
+            //parseLong does not accept unsigned 64 bit hex values.
+            String hex = fileName.substring(0, 16);
+            return (Long.parseLong(hex.substring(0, 8), 16) << 32) | Long.parseLong(hex.substring(8), 16);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    static ByteBuffer encode(VideoMetadata metadata) {
+        KeyframeIndex index = metadata.getKeyframeIndex();
+        int keyframeCount = index == null ? 0 : index.size();
+        int size = FIXED_SIZE + (index == null ? 0 : INDEX_HEADER_SIZE + keyframeCount * 16);
+
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        buffer.putInt(MAGIC);
+        buffer.putInt(VERSION);
+        buffer.putLong(metadata.getDurationMs());
+        buffer.put((byte) (metadata.isSeekable() ? 1 : 0));
+        buffer.putDouble(metadata.getFrameRate());
+        buffer.putInt(metadata.getWidth());
+        buffer.putInt(metadata.getHeight());
+        buffer.put((byte) (index == null ? 0 : 1));
+
+        if (index != null) {
+            buffer.putLong(index.getDurationUs());
+            buffer.putInt(keyframeCount);
+            for (int i = 0; i < keyframeCount; i++) {
+                buffer.putLong(index.getTimeUs(i));
+            }
+            for (int i = 0; i < keyframeCount; i++) {
+                buffer.putLong(index.getByteOffset(i));
+            }
+        }
+
+        buffer.flip();
+        return buffer;
+    }
+
+    static VideoMetadata read(File file) throws IOException {
+        FileInputStream in = new FileInputStream(file);
+        try {
+            FileChannel channel = in.getChannel();
+            long size = channel.size();
+            if (size < FIXED_SIZE || size > Integer.MAX_VALUE) {
+                throw new IOException("Invalid size of " + file);
+            }
+
+            ByteBuffer buffer = ByteBuffer.allocate((int) size);
+            while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+                //Read until the buffer is full
+            }
+            buffer.flip();
+            return decode(buffer);
+        } finally {
+            in.close();
+        }
+    }
+
+    static VideoMetadata decode(ByteBuffer buffer) throws IOException {
+        if (buffer.remaining() < FIXED_SIZE || buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+            throw new IOException("Not a metadata entry");
+        }
+
+        long durationMs = buffer.getLong();
+        boolean seekable = buffer.get() != 0;
+        double frameRate = buffer.getDouble();
+        int width = buffer.getInt();
+        int height = buffer.getInt();
+        boolean hasIndex = buffer.get() != 0;
+
+        KeyframeIndex index = null;
+        if (hasIndex) {
+            if (buffer.remaining() < INDEX_HEADER_SIZE) {
+                throw new IOException("Truncated key frame index");
+            }
+            long indexDurationUs = buffer.getLong();
+            int keyframeCount = buffer.getInt();
+            if (keyframeCount < 0 || buffer.remaining() != keyframeCount * 16L) {
+                throw new IOException("Truncated key frame index");
+            }
+
+            long[] timesUs = new long[keyframeCount];
+            long[] byteOffsets = new long[keyframeCount];
+            buffer.asLongBuffer().get(timesUs);
+            buffer.position(buffer.position() + keyframeCount * 8);
+            buffer.asLongBuffer().get(byteOffsets);
+
+            try {
+                index = new KeyframeIndex(timesUs, byteOffsets, indexDurationUs);
+            } catch (IllegalArgumentException e) {
+                throw new IOException("Corrupt key frame index", e);
+            }
+        }
+
+        return new VideoMetadata(durationMs, seekable, frameRate, width, height, index);
+    }
+}
@@ -0,0 +1,715 @@
+/*
+ * Copyright (C) 2015 Erwin Betschart
+ *
+ * This file is part of Video Comparator.
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.lipsch.videocomparator;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * The video play state stores all information about the current state of the playing videos. E.g. are the videos playing, current time, what videos are loaded...
+ * <p/>
+ * The state of all videos is held in an immutable Snapshot (packed primitive arrays, one entry per video). Every change builds a new snapshot
+ * and swaps it in atomically (compare and set), so any thread (e.g. a background decoder) can read a consistent state with getSnapshot without locks.
+ * The methods named video1/video2 are shortcuts for the videos at index 0 and 1.
+ * <p/>
+ * The videos are identified by their uri strings, so the state does not depend on android and can be tested on the JVM.
+ * <p/>
+ * This class is thread-safe. The state is saved as one compact blob (e.g. into the bundle of an activity).
+ */
+class VideoPlayState {
+
+    /**
+     * This enum denote the states in which a video view can be. The transitions are defined by the PlayStateMachine.
+     * BUFFERING: The player stalls to buffer. WAITING: Paused automatically until the stalled partners continue.
+     * New states must be added at the end: The ordinal is saved.
+     */
+    public enum State {
+        EMPTY, LOADED, PLAYING, PAUSING, ERROR, BUFFERING, WAITING
+    }
+
+    /**
+     * The number of videos of the default constructor.
+     */
+    public static final int DEFAULT_VIDEO_COUNT = 2;
+
+    /**
+     * At most this many videos are compared at once.
+     */
+    public static final int MAX_VIDEO_COUNT = 16;
+
+    /**
+     * The key to save the blob of saveState under in a bundle.
+     */
+    public static final String STATE_KEY = "VideoPlayState.state";
+
+    /**
+     * Increment if the format of the blob changes. Blobs of other versions are ignored.
+     */
+    private static final int BLOB_VERSION = 1;
+
+    private static final byte FLAG_SEEKABLE = 1;
+
+    private static final State[] STATES = State.values();
+
+    private final AtomicReference<Snapshot> snapshot;
+
+    public VideoPlayState() {
+        this(DEFAULT_VIDEO_COUNT);
+    }
+
+    /**
+     * @param videoCount The number of videos (1..MAX_VIDEO_COUNT).
+     */
+    public VideoPlayState(int videoCount) {
+        if (videoCount < 1 || videoCount > MAX_VIDEO_COUNT) {
+            throw new IllegalArgumentException("Invalid video count: " + videoCount);
+        }
+        snapshot = new AtomicReference<Snapshot>(new Snapshot(videoCount));
+    }
+
+    /**
+     * @return The current state of all videos. Never changes, a later change of the state is in a new snapshot.
+     */
+    public Snapshot getSnapshot() {
+        return snapshot.get();
+    }
+
+    public int getVideoCount() {
+        return snapshot.get().getVideoCount();
+    }
+
+    /**
+     * Swaps in the next snapshot if the state was not changed in the meantime.
+     *
+     * @return true if swapped. Otherwise the change must be built again on the current snapshot.
+     */
+    private boolean swap(Snapshot current, Snapshot next) {
+        return snapshot.compareAndSet(current, next);
+    }
+
+    /**
+     * Sets the uri of a video. As a side effect the state of the video is set to loaded (empty if unloaded) and not paused.
+     * The videos are unlinked as the offsets belong to the old video.
+     *
+     * @param video The index of the video.
+     * @param uri   The uri of the video or null to unload it.
+     */
+    public void setVideo(int video, String uri) {
+        State state = uri == null ? State.EMPTY : State.LOADED;
+        Snapshot current;
+        do {
+            current = snapshot.get();
+        } while (!swap(current, current.edit().setVideo(video, uri).setState(video, state).setPauseTime(video, Double.NaN).unlink().build()));
+    }
+
+    public void setState(int video, State state) {
+        Snapshot current;
+        do {
+            current = snapshot.get();
+        } while (!swap(current, current.edit().setState(video, state).build()));
+    }
+
+    /**
+     * Changes the state of a video according to the PlayStateMachine. Ignored events keep the state.
+     *
+     * @param video The index of the video.
+     * @param event The event.
+     * @return The state of the video after the event.
+     */
+    public State apply(int video, PlayStateMachine.Event event) {
+        Snapshot current;
+        State next;
+        do {
+            current = snapshot.get();
+            State state = current.getState(video);
+            next = PlayStateMachine.next(state, event);
+            if (next == state) {
+                return state;
+            }
+        } while (!swap(current, current.edit().setState(video, next).build()));
+
+        return next;
+    }
+
+    /**
+     * The video is paused at the given time in seconds.
+     *
+     * @param video              The index of the video.
+     * @param pauseTimeInSeconds The pause time in seconds (duration from the start).
+     */
+    public void pause(int video, double pauseTimeInSeconds) {
+        Snapshot current;
+        do {
+            current = snapshot.get();
+        } while (!swap(current, current.edit().setPauseTime(video, pauseTimeInSeconds).setState(video, State.PAUSING).build()));
+    }
+
+    /**
+     * The video is stopped, i.e. rewound to the start but still loaded. The state changes according to the PlayStateMachine (e.g. an empty
+     * slot stays empty), the pause time is cleared in any case.
+     *
+     * @param video The index of the video.
+     * @return The state of the video after stopping.
+     */
+    public State stop(int video) {
+        Snapshot current;
+        State next;
+        do {
+            current = snapshot.get();
+            next = PlayStateMachine.next(current.getState(video), PlayStateMachine.Event.STOP);
+        } while (!swap(current, current.edit().setPauseTime(video, Double.NaN).setState(video, next).build()));
+
+        return next;
+    }
+
+    public void setSeekable(int video, boolean seekable) {
+        Snapshot current;
+        do {
+            current = snapshot.get();
+        } while (!swap(current, current.edit().setSeekable(video, seekable).build()));
+    }
+
+    /**
+     * Links the seek bars: A seek moves all videos, every video is kept at the position of video 1 plus its offset.
+     *
+     * @param offsetsMs The offset of every video relative to video 1 in milliseconds. Positive if the video is ahead. The first offset must be 0.
+     */
+    public void link(int[] offsetsMs) {
+        Snapshot current;
+        do {
+            current = snapshot.get();
+        } while (!swap(current, current.edit().link(offsetsMs).build()));
+    }
+
+    /**
+     * Links the seek bars of the first two videos, video 2 is kept at the position of video 1 plus the offset.
+     *
+     * @param offsetMs The offset of video 2 relative to video 1 in milliseconds. Positive if video 2 is ahead.
+     */
+    public void link(int offsetMs) {
+        int[] offsetsMs = new int[getVideoCount()];
+        if (offsetsMs.length > 1) {
+            offsetsMs[1] = offsetMs;
+        }
+        link(offsetsMs);
+    }
+
+    public void unlink() {
+        Snapshot current;
+        do {
+            current = snapshot.get();
+        } while (!swap(current, current.edit().unlink().build()));
+    }
+
+    public boolean isLinked() {
+        return snapshot.get().isLinked();
+    }
+
+    /**
+     * @return The offset of video 2 relative to video 1 in milliseconds. 0 if not linked.
+     */
+    public int getLinkOffsetMs() {
+        return snapshot.get().getLinkOffsetMs(1);
+    }
+
+    /**
+     * The video 1 is paused at the given time in seconds.
+     *
+     * @param pauseTimeInSeconds The pause time in seconds (duration from the start).
+     */
+    public void pauseVideo1(double pauseTimeInSeconds) {
+        pause(0, pauseTimeInSeconds);
+    }
+
+    /**
+     * The video 2 is paused at the given time in seconds.
+     *
+     * @param pauseTimeInSeconds The pause time in seconds (duration from the start).
+     */
+    public void pauseVideo2(double pauseTimeInSeconds) {
+        pause(1, pauseTimeInSeconds);
+    }
+
+    /**
+     * The video 1 is stopped, i.e. rewound to the start but still loaded.
+     */
+    public void stopVideo1() {
+        stop(0);
+    }
+
+    /**
+     * The video 2 is stopped, i.e. rewound to the start but still loaded.
+     */
+    public void stopVideo2() {
+        stop(1);
+    }
+
+    /**
+     * Delivers the pause time of video 1.
+     *
+     * @return The time in seconds where the video is paused (duration since start). Returns null if the video is not paused.
+     */
+    public Double getVideo1PauseTime() {
+        return snapshot.get().getPauseTime(0);
+    }
+
+    /**
+     * Delivers the pause time of video 2.
+     *
+     * @return The time in seconds where the video is paused (duration since start). Returns null if the video is not paused.
+     */
+    public Double getVideo2PauseTime() {
+        return snapshot.get().getPauseTime(1);
+    }
+
+    public boolean isVideo1Playing() {
+        return snapshot.get().isPlaying(0);
+    }
+
+    public void setVideo1State(State state) {
+        setState(0, state);
+    }
+
+    public void setVideo2State(State state) {
+        setState(1, state);
+    }
+
+    public boolean isVideo2Playing() {
+        return snapshot.get().isPlaying(1);
+    }
+
+    public String getVideo1() {
+        return snapshot.get().getVideo(0);
+    }
+
+    /**
+     * Sets the uri of the first video. As a side effect all states of the video1 are set to loaded and not playing.
+     * The videos are unlinked as the offset belongs to the old video.
+     *
+     * @param video1 The uri of the video.
+     */
+    public void setVideo1(String video1) {
+        setVideo(0, video1);
+    }
+
+    public String getVideo2() {
+        return snapshot.get().getVideo(1);
+    }
+
+    /**
+     * Sets the uri of the second video. As a side effect all states of the video 2 are set to loaded and not playing.
+     * The videos are unlinked as the offset belongs to the old video.
+     *
+     * @param video2 The uri of the video.
+     */
+    public void setVideo2(String video2) {
+        setVideo(1, video2);
+    }
+
+    /**
+     * @return The state as compact blob which can be restored with loadState.
+     */
+    public byte[] saveState() {
+        return snapshot.get().toBytes();
+    }
+
+    /**
+     * Restores the state saved with saveState. Videos beyond the video count of this state are dropped.
+     * Has no effect if nothing (or a blob of an older version) was saved.
+     */
+    public void loadState(byte[] blob) {
+        if (blob == null) {
+            return;
+        }
+
+        Snapshot loaded = Snapshot.fromBytes(blob, getVideoCount());
+        if (loaded != null) {
+            snapshot.set(loaded);
+        }
+    }
+
+    /**
+     * Determines if the play button should be shown. That is a video is loaded and not playing atm.
+     *
+     * @return true If the application should show the button.
+     */
+    public boolean shouldShowPlayButton() {
+        Snapshot current = snapshot.get();
+        return current.isAnyLoaded() && !current.isAnyPlaying();
+    }
+
+    public boolean shouldShowPauseButton() {
+        return snapshot.get().isAnyPlaying();
+    }
+
+    public boolean shouldShowStopButton() {
+        Snapshot current = snapshot.get();
+        return current.isAnyPlaying() || current.isAnyPaused();
+    }
+
+    /**
+     * Determines if the frame step buttons should be shown. That is a video is loaded and no video is playing.
+     *
+     * @return true If the application should show the buttons.
+     */
+    public boolean shouldShowFrameStepButtons() {
+        Snapshot current = snapshot.get();
+        return current.isAnyLoaded() && !current.isAnyPlaying();
+    }
+
+    /**
+     * Determines if the difference button should be shown. That is the first two videos are loaded and no video is playing.
+     *
+     * @return true If the application should show the button.
+     */
+    public boolean shouldShowDifferenceButton() {
+        Snapshot current = snapshot.get();
+        return isFirstTwoLoaded(current) && !current.isAnyPlaying();
+    }
+
+    /**
+     * Determines if the quality analysis button should be shown. That is the first two videos are loaded. The analysis runs in the background so the videos may play.
+     *
+     * @return true If the application should show the button.
+     */
+    public boolean shouldShowAnalyzeButton() {
+        return isFirstTwoLoaded(snapshot.get());
+    }
+
+    /**
+     * Determines if the link button should be shown. That is the first two videos are loaded.
+     *
+     * @return true If the application should show the button.
+     */
+    public boolean shouldShowLinkButton() {
+        return isFirstTwoLoaded(snapshot.get());
+    }
+
+    private static boolean isFirstTwoLoaded(Snapshot snapshot) {
+        return snapshot.getVideoCount() >= 2 && snapshot.getVideo(0) != null && snapshot.getVideo(1) != null;
+    }
+
+    public void setVideo1Seekable(boolean seekable) {
+        setSeekable(0, seekable);
+    }
+
+    public boolean isVideo1Seekable() {
+        return snapshot.get().isSeekable(0);
+    }
+
+    public void setVideo2Seekable(boolean seekable) {
+        setSeekable(1, seekable);
+    }
+
+    public boolean isVideo2Seekable() {
+        return snapshot.get().isSeekable(1);
+    }
+
+    /**
+     * The immutable state of all videos at one moment. The values are packed into one primitive array per property, indexed by the video.
+     */
+    static final class Snapshot {
+
+        private final String[] videos;
+        private final byte[] states;
+
+        /**
+         * The pause time of every video in seconds. NaN if not paused.
+         */
+        private final double[] pauseTimesSec;
+
+        private final byte[] flags;
+
+        /**
+         * The offset of every video relative to video 1 in milliseconds while linked.
+         */
+        private final int[] linkOffsetsMs;
+
+        private final boolean linked;
+
+        private Snapshot(int videoCount) {
+            videos = new String[videoCount];
+            states = new byte[videoCount];
+            pauseTimesSec = new double[videoCount];
+            flags = new byte[videoCount];
+            linkOffsetsMs = new int[videoCount];
+            linked = false;
+
+            Arrays.fill(states, (byte) State.EMPTY.ordinal());
+            Arrays.fill(pauseTimesSec, Double.NaN);
+            Arrays.fill(flags, FLAG_SEEKABLE);
+        }
+
+        private Snapshot(Builder builder) {
+            //The arrays of the builder are not used anymore, no need to copy them.
+            videos = builder.videos;
+            states = builder.states;
+            pauseTimesSec = builder.pauseTimesSec;
+            flags = builder.flags;
+            linkOffsetsMs = builder.linkOffsetsMs;
+            linked = builder.linked;
+        }
+
+        public int getVideoCount() {
+            return videos.length;
+        }
+
+        /**
+         * @return The uri of the video or null if not loaded.
+         */
+        public String getVideo(int video) {
+            return videos[video];
+        }
+
+        public State getState(int video) {
+            return STATES[states[video]];
+        }
+
+        /**
+         * @return true if the video plays or is stalled in the middle of playing (buffering or waiting for a buffering partner).
+         */
+        public boolean isPlaying(int video) {
+            return states[video] == State.PLAYING.ordinal() || isStalled(video);
+        }
+
+        /**
+         * @return true if the video buffers or waits for a buffering partner.
+         */
+        public boolean isStalled(int video) {
+            return states[video] == State.BUFFERING.ordinal() || states[video] == State.WAITING.ordinal();
+        }
+
+        public boolean isAnyBuffering() {
+            for (byte state : states) {
+                if (state == State.BUFFERING.ordinal()) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * @return The time in seconds where the video is paused (duration since start). Returns null if the video is not paused.
+         */
+        public Double getPauseTime(int video) {
+            return Double.isNaN(pauseTimesSec[video]) ? null : pauseTimesSec[video];
+        }
+
+        public boolean isSeekable(int video) {
+            return (flags[video] & FLAG_SEEKABLE) != 0;
+        }
+
+        public boolean isLinked() {
+            return linked;
+        }
+
+        /**
+         * @return The offset of the video relative to video 1 in milliseconds. 0 if not linked.
+         */
+        public int getLinkOffsetMs(int video) {
+            return video < linkOffsetsMs.length ? linkOffsetsMs[video] : 0;
+        }
+
+        public boolean isAnyLoaded() {
+            for (String video : videos) {
+                if (video != null) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        public boolean isAnyPlaying() {
+            for (int i = 0; i < states.length; i++) {
+                if (isPlaying(i)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        public boolean isAnyPaused() {
+            for (double pauseTime : pauseTimesSec) {
+                if (!Double.isNaN(pauseTime)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * @return A builder initialized with a copy of this snapshot.
+         */
+        Builder edit() {
+            return new Builder(this);
+        }
+
+        /**
+         * @return The snapshot as compact blob: A version and the count followed by the packed values of every video.
+         */
+        byte[] toBytes() {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(32 + 64 * videos.length);
+            DataOutputStream out = new DataOutputStream(bytes);
+            try {
+                out.writeByte(BLOB_VERSION);
+                out.writeByte(videos.length);
+                out.writeBoolean(linked);
+                for (int i = 0; i < videos.length; i++) {
+                    out.writeBoolean(videos[i] != null);
+                    if (videos[i] != null) {
+                        out.writeUTF(videos[i]);
+                    }
+                    out.writeByte(states[i]);
+                    out.writeByte(flags[i]);
+                    out.writeDouble(pauseTimesSec[i]);
+                    out.writeInt(linkOffsetsMs[i]);
+                }
+                out.flush();
+            } catch (IOException e) {
+                //Does not happen with a byte array.
+                throw new IllegalStateException(e);
+            }
+            return bytes.toByteArray();
+        }
+
+        /**
+         * Reads a blob written by toBytes.
+         *
+         * @param blob       The blob.
+         * @param videoCount The number of videos of the snapshot. Further videos of the blob are dropped, missing ones are empty.
+         * @return The snapshot or null if the blob has another version or is broken.
+         */
+        static Snapshot fromBytes(byte[] blob, int videoCount) {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(blob));
+            try {
+                if (in.readByte() != BLOB_VERSION) {
+                    return null;
+                }
+
+                int blobVideoCount = in.readByte();
+                Builder builder = new Snapshot(videoCount).edit();
+                builder.linked = in.readBoolean();
+                for (int i = 0; i < blobVideoCount; i++) {
+                    String video = in.readBoolean() ? in.readUTF() : null;
+                    byte state = in.readByte();
+                    byte flags = in.readByte();
+                    double pauseTimeSec = in.readDouble();
+                    int linkOffsetMs = in.readInt();
+
+                    if (state < 0 || state >= STATES.length) {
+                        return null;
+                    }
+                    if (i < videoCount) {
+                        builder.videos[i] = video;
+                        builder.states[i] = state;
+                        builder.flags[i] = flags;
+                        builder.pauseTimesSec[i] = pauseTimeSec;
+                        builder.linkOffsetsMs[i] = linkOffsetMs;
+                    }
+                }
+                return builder.build();
+            } catch (IOException e) {
+                return null;
+            }
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder builder = new StringBuilder("Snapshot{linked=").append(linked);
+            for (int i = 0; i < videos.length; i++) {
+                builder.append(", ").append(i).append('=').append(videos[i]).append(' ').append(getState(i));
+                if (!Double.isNaN(pauseTimesSec[i])) {
+                    builder.append(" paused at ").append(pauseTimesSec[i]);
+                }
+            }
+            return builder.append('}').toString();
+        }
+    }
+
+    /**
+     * Builds the next snapshot from copies of the arrays of the current one.
+     */
+    static final class Builder {
+        private final String[] videos;
+        private final byte[] states;
+        private final double[] pauseTimesSec;
+        private final byte[] flags;
+        private final int[] linkOffsetsMs;
+        private boolean linked;
+
+        private Builder(Snapshot snapshot) {
+            videos = snapshot.videos.clone();
+            states = snapshot.states.clone();
+            pauseTimesSec = snapshot.pauseTimesSec.clone();
+            flags = snapshot.flags.clone();
+            linkOffsetsMs = snapshot.linkOffsetsMs.clone();
+            linked = snapshot.linked;
+        }
+
+        Builder setVideo(int video, String uri) {
+            videos[video] = uri;
+            return this;
+        }
+
+        Builder setState(int video, State state) {
+            states[video] = (byte) state.ordinal();
+            return this;
+        }
+
+        /**
+         * @param pauseTimeSec The pause time in seconds or NaN if not paused.
+         */
+        Builder setPauseTime(int video, double pauseTimeSec) {
+            pauseTimesSec[video] = pauseTimeSec;
+            return this;
+        }
+
+        Builder setSeekable(int video, boolean seekable) {
+            flags[video] = (byte) (seekable ? flags[video] | FLAG_SEEKABLE : flags[video] & ~FLAG_SEEKABLE);
+            return this;
+        }
+
+        Builder link(int[] offsetsMs) {
+            if (offsetsMs.length != linkOffsetsMs.length || offsetsMs[0] != 0) {
+                throw new IllegalArgumentException("One offset per video is needed, the first one must be 0");
+            }
+            System.arraycopy(offsetsMs, 0, linkOffsetsMs, 0, offsetsMs.length);
+            linked = true;
+            return this;
+        }
+
+        Builder unlink() {
+            Arrays.fill(linkOffsetsMs, 0);
+            linked = false;
+            return this;
+        }
+
+        /**
+         * @return The snapshot. The builder must not be used anymore.
+         */
+        Snapshot build() {
+            return new Snapshot(this);
+        }
+    }
+}
@@ -0,0 +1,391 @@
+/*
+ * Copyright (C) 2015 Erwin Betschart
+ *
+ * This file is part of Video Comparator.
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.lipsch.videocomparator;
+
+import java.util.Arrays;
+
+/**
+ * Keeps several players in sync with a shared master clock.
+ * <p/>
+ * When started the engine remembers the offset of every player relative to the first one (the user may have seeked the videos to different positions on purpose).
+ * On every tick the positions of all playing players are sampled and compared with the master clock. A player which drifted away is either nudged by changing its playback rate
+ * (if supported) or, in case the drift is larger than the seek threshold, corrected with a seek.
+ * <p/>
+ * The master clock follows the players if all of them drift into the same direction (e.g. the device is too slow to decode).
+ * This way only the relative drift between the players is corrected and we never seek all players at once.
+ * <p/>
+ * Seeks are asynchronous and land on a key frame, which may be far from the target with long GOPs. So a player is ignored after a corrective seek until the seek
+ * completed (see onSeekComplete) or the seek timeout expired, and a player is seeked at most once per cooldown. A seek which did not bring the player within the
+ * seek threshold doubles the cooldown of the next one, so a player snapping back to the same key frame is not seeked over and over.
+ * <p/>
+ * This class is not thread-safe: All calls must be done in the same thread (usually the main thread).
+ */
+class VideoSyncEngine {
+
+    /**
+     * Default drift in milliseconds from which on a player is corrected with a seek.
+     */
+    public static final int DEFAULT_SEEK_THRESHOLD_MS = 120;
+
+    /**
+     * Default drift in milliseconds from which on the playback rate of a player is adjusted.
+     */
+    public static final int DEFAULT_RATE_THRESHOLD_MS = 15;
+
+    /**
+     * The playback rate is changed at most by this amount (0.05 -> 0.95 .. 1.05).
+     */
+    public static final float MAX_RATE_ADJUSTMENT = 0.05f;
+
+    /**
+     * A player is ignored after a corrective seek until the seek completed, but at most this long (in case the completion is not reported).
+     */
+    public static final int SEEK_TIMEOUT_MS = 500;
+
+    /**
+     * The minimum time between two corrective seeks of the same player.
+     */
+    public static final int SEEK_COOLDOWN_MS = 1000;
+
+    /**
+     * The cooldown after ineffective seeks is doubled up to this time.
+     */
+    public static final int MAX_SEEK_COOLDOWN_MS = 16000;
+
+    private final PlaybackClock clock;
+    private final SyncablePlayer[] players;
+
+    /**
+     * Offset of every player relative to the master position in milliseconds.
+     */
+    private final int[] offsets;
+
+    /**
+     * The playback rate currently set on every player.
+     */
+    private final float[] rates;
+
+    /**
+     * The positions sampled in the current tick. Reused to avoid allocations.
+     */
+    private final int[] positions;
+
+    /**
+     * Per player: true while a corrective seek has not completed yet.
+     */
+    private final boolean[] seekPending;
+
+    /**
+     * Per player: The clock time of the last corrective seek.
+     */
+    private final long[] seekTimesMs;
+
+    /**
+     * Per player: true if the drift after the last corrective seek has not been checked yet.
+     */
+    private final boolean[] seekResultUnchecked;
+
+    /**
+     * Per player: The number of consecutive corrective seeks after which the player was still out of sync.
+     */
+    private final int[] ineffectiveSeekCounts;
+
+    private int seekThresholdMs = DEFAULT_SEEK_THRESHOLD_MS;
+    private int rateThresholdMs = DEFAULT_RATE_THRESHOLD_MS;
+
+    private boolean running = false;
+
+    /**
+     * The clock time when the master position was anchored.
+     */
+    private long anchorTimeMs = 0;
+
+    /**
+     * The master position at anchorTimeMs.
+     */
+    private long anchorPositionMs = 0;
+
+    private int lastDriftMs = 0;
+    private int maxDriftMs = 0;
+    private int correctiveSeekCount = 0;
+
+    /**
+     * @param clock   The clock which drives the master position.
+     * @param players The players to keep in sync.
+     */
+    public VideoSyncEngine(PlaybackClock clock, SyncablePlayer... players) {
+        if (clock == null || players == null || players.length == 0) {
+            throw new IllegalArgumentException("A clock and at least one player are needed");
+        }
+
+        this.clock = clock;
+        this.players = players.clone();
+        this.offsets = new int[players.length];
+        this.rates = new float[players.length];
+        this.positions = new int[players.length];
+        this.seekPending = new boolean[players.length];
+        this.seekTimesMs = new long[players.length];
+        this.seekResultUnchecked = new boolean[players.length];
+        this.ineffectiveSeekCounts = new int[players.length];
+        Arrays.fill(rates, 1.0f);
+        for (int i = 0; i < players.length; i++) {
+            resetSeekState(i);
+        }
+    }
+
+    /**
+     * Sets the drift from which on a player is corrected with a seek.
+     *
+     * @param seekThresholdMs The threshold in milliseconds. Must be larger than the rate threshold.
+     */
+    public void setSeekThresholdMs(int seekThresholdMs) {
+        if (seekThresholdMs <= rateThresholdMs) {
+            throw new IllegalArgumentException("Seek threshold must be larger than rate threshold");
+        }
+        this.seekThresholdMs = seekThresholdMs;
+    }
+
+    public int getSeekThresholdMs() {
+        return seekThresholdMs;
+    }
+
+    /**
+     * Sets the drift from which on the playback rate of a player is adjusted.
+     *
+     * @param rateThresholdMs The threshold in milliseconds. Must be smaller than the seek threshold.
+     */
+    public void setRateThresholdMs(int rateThresholdMs) {
+        if (rateThresholdMs < 0 || rateThresholdMs >= seekThresholdMs) {
+            throw new IllegalArgumentException("Rate threshold must be between 0 and the seek threshold");
+        }
+        this.rateThresholdMs = rateThresholdMs;
+    }
+
+    public int getRateThresholdMs() {
+        return rateThresholdMs;
+    }
+
+    /**
+     * Starts syncing. The current positions of the players are taken as reference, i.e. their offsets are kept.
+     * Must be called after the players have been started.
+     */
+    public void start() {
+        running = true;
+        resync();
+    }
+
+    /**
+     * Re-reads the offsets of the players. Must be called after a player was seeked by the user.
+     */
+    public void resync() {
+        int reference = players[0].getCurrentPosition();
+        for (int i = 0; i < players.length; i++) {
+            offsets[i] = players[i].getCurrentPosition() - reference;
+            resetRate(i);
+            resetSeekState(i);
+        }
+
+        anchorTimeMs = clock.getTimeMs();
+        anchorPositionMs = reference;
+    }
+
+    /**
+     * Stops syncing. The playback rates of the players are reset.
+     */
+    public void stop() {
+        running = false;
+        for (int i = 0; i < players.length; i++) {
+            resetRate(i);
+            resetSeekState(i);
+        }
+    }
+
+    /**
+     * Informs the engine that a seek of the player completed. The player is sampled again from the next tick on.
+     *
+     * @param playerIndex The index of the player as given to the constructor.
+     */
+    public void onSeekComplete(int playerIndex) {
+        seekPending[playerIndex] = false;
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * @return The position of the shared master clock in milliseconds.
+     */
+    public long getMasterPosition() {
+        return anchorPositionMs + (clock.getTimeMs() - anchorTimeMs);
+    }
+
+    /**
+     * Samples all players and corrects them if necessary. Should be called regularly while playing (e.g. every 100ms).
+     */
+    public void tick() {
+        if (!running) {
+            return;
+        }
+
+        long nowMs = clock.getTimeMs();
+        long masterPosition = getMasterPosition();
+
+        //Find the drift which is closest to the master. If all playing players drift into the same direction the master follows them.
+        long minDrift = Long.MAX_VALUE;
+        boolean allPositive = true;
+        boolean allNegative = true;
+        int playingCount = 0;
+        int minNormalizedPos = Integer.MAX_VALUE;
+        int maxNormalizedPos = Integer.MIN_VALUE;
+
+        for (int i = 0; i < players.length; i++) {
+            if (seekPending[i] && nowMs - seekTimesMs[i] >= SEEK_TIMEOUT_MS) {
+                seekPending[i] = false;
+            }
+            if (isSampled(i)) {
+                positions[i] = players[i].getCurrentPosition();
+                int normalizedPos = positions[i] - offsets[i];
+                long drift = normalizedPos - masterPosition;
+
+                allPositive &= drift > 0;
+                allNegative &= drift < 0;
+                if (Math.abs(drift) < Math.abs(minDrift)) {
+                    minDrift = drift;
+                }
+
+                minNormalizedPos = Math.min(minNormalizedPos, normalizedPos);
+                maxNormalizedPos = Math.max(maxNormalizedPos, normalizedPos);
+                playingCount++;
+            }
+        }
+
+        if (playingCount == 0) {
+            return;
+        }
+
+        if (allPositive || allNegative) {
+            anchorPositionMs += minDrift;
+            masterPosition += minDrift;
+        }
+
+        lastDriftMs = maxNormalizedPos - minNormalizedPos;
+        maxDriftMs = Math.max(maxDriftMs, lastDriftMs);
+
+        for (int i = 0; i < players.length; i++) {
+            if (isSampled(i)) {
+                correct(i, masterPosition, nowMs);
+            }
+        }
+    }
+
+    /**
+     * @return true if the player is playing and not waiting for a corrective seek.
+     */
+    private boolean isSampled(int playerIndex) {
+        return players[playerIndex].isPlaying() && !seekPending[playerIndex];
+    }
+
+    private void correct(int playerIndex, long masterPosition, long nowMs) {
+        SyncablePlayer player = players[playerIndex];
+        long target = masterPosition + offsets[playerIndex];
+        long drift = positions[playerIndex] - target;
+        long absDrift = Math.abs(drift);
+
+        if (seekResultUnchecked[playerIndex]) {
+            //The first sample after a corrective seek tells whether it landed close enough (not on a key frame far away).
+            seekResultUnchecked[playerIndex] = false;
+            ineffectiveSeekCounts[playerIndex] = absDrift > seekThresholdMs ? ineffectiveSeekCounts[playerIndex] + 1 : 0;
+        }
+
+        if (absDrift > seekThresholdMs) {
+            //The player may refuse the seek (e.g. a user seek is in flight): Nothing to wait for then.
+            if (nowMs - seekTimesMs[playerIndex] >= getSeekCooldownMs(playerIndex) && player.seekTo((int) Math.max(0, target))) {
+                correctiveSeekCount++;
+                seekPending[playerIndex] = true;
+                seekTimesMs[playerIndex] = nowMs;
+                seekResultUnchecked[playerIndex] = true;
+                resetRate(playerIndex);
+            } else if (player.supportsPlaybackRate()) {
+                //Waiting for the next seek: Nudge as much as possible.
+                setRate(playerIndex, 1.0f - (drift > 0 ? MAX_RATE_ADJUSTMENT : -MAX_RATE_ADJUSTMENT));
+            }
+        } else if (absDrift > rateThresholdMs && player.supportsPlaybackRate()) {
+            //Proportional: The larger the drift the larger the rate change. A player which is ahead (positive drift) gets slower.
+            float adjustment = MAX_RATE_ADJUSTMENT * drift / seekThresholdMs;
+            setRate(playerIndex, 1.0f - adjustment);
+        } else {
+            resetRate(playerIndex);
+        }
+    }
+
+    /**
+     * @return The minimum time between the last and the next corrective seek of the player: Doubled for every ineffective seek.
+     */
+    private long getSeekCooldownMs(int playerIndex) {
+        int doublings = Math.min(ineffectiveSeekCounts[playerIndex], 30);
+        return Math.min((long) SEEK_COOLDOWN_MS << doublings, MAX_SEEK_COOLDOWN_MS);
+    }
+
+    private void resetSeekState(int playerIndex) {
+        seekPending[playerIndex] = false;
+        //The first corrective seek is not delayed by a cooldown.
+        seekTimesMs[playerIndex] = Long.MIN_VALUE / 2;
+        seekResultUnchecked[playerIndex] = false;
+        ineffectiveSeekCounts[playerIndex] = 0;
+    }
+
+    private void resetRate(int playerIndex) {
+        setRate(playerIndex, 1.0f);
+    }
+
+    private void setRate(int playerIndex, float rate) {
+        if (rates[playerIndex] != rate && players[playerIndex].supportsPlaybackRate()) {
+            players[playerIndex].setPlaybackRate(rate);
+            rates[playerIndex] = rate;
+        }
+    }
+
+    /**
+     * @return The drift between the players measured at the last tick in milliseconds (offsets are not counted as drift).
+     */
+    public int getLastDriftMs() {
+        return lastDriftMs;
+    }
+
+    /**
+     * @return The maximum drift between the players since the last call of resetStatistics in milliseconds.
+     */
+    public int getMaxDriftMs() {
+        return maxDriftMs;
+    }
+
+    /**
+     * @return The number of seeks done to correct a drift since the last call of resetStatistics.
+     */
+    public int getCorrectiveSeekCount() {
+        return correctiveSeekCount;
+    }
+
+    public void resetStatistics() {
+        lastDriftMs = 0;
+        maxDriftMs = 0;
+        correctiveSeekCount = 0;
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright (C) 2015 Erwin Betschart
+ *
+ * This file is part of Video Comparator.
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.lipsch.videocomparator;
+
+/**
+ * The region of interest of zoomed videos: A zoom factor and the center of the visible region in normalized video coordinates
+ * (0..1 in both directions, origin at the top left). The same transform is applied to all compared videos, so they always show the same region,
+ * even if they have different resolutions.
+ * <p/>
+ * The visible region always lies inside the video: It can not be zoomed out further than the whole video or panned beyond its edges.
+ * <p/>
+ * This class is thread-safe: The gestures change it on the main thread and the renderer reads the region on its thread.
+ * No method allocates objects, so it can be updated on every touch event.
+ */
+final class ViewportTransform {
+
+    public static final float MIN_ZOOM = 1f;
+    public static final float MAX_ZOOM = 16f;
+
+    private float zoom = MIN_ZOOM;
+    private float centerX = 0.5f;
+    private float centerY = 0.5f;
+
+    /**
+     * Changes the zoom keeping the point under the focus in place (e.g. the center of a pinch gesture).
+     *
+     * @param factor The factor the zoom is multiplied with (> 1 zooms in).
+     * @param focusX The horizontal position of the focus in the displayed video (0: left edge, 1: right edge).
+     * @param focusY The vertical position of the focus in the displayed video (0: top edge, 1: bottom edge).
+     */
+    public synchronized void zoomBy(float factor, float focusX, float focusY) {
+        if (factor <= 0 || Float.isNaN(factor) || Float.isInfinite(factor)) {
+            return;
+        }
+
+        float size = 1f / zoom;
+        float focusVideoX = centerX - size / 2 + focusX * size;
+        float focusVideoY = centerY - size / 2 + focusY * size;
+
+        zoom = Math.max(MIN_ZOOM, Math.min(MAX_ZOOM, zoom * factor));
+        float newSize = 1f / zoom;
+        centerX = focusVideoX - focusX * newSize + newSize / 2;
+        centerY = focusVideoY - focusY * newSize + newSize / 2;
+        clampCenter();
+    }
+
+    /**
+     * Moves the visible region with a finger: The video follows the distance moved.
+     *
+     * @param distanceX The horizontal distance as fraction of the width of the displayed video (positive to the right).
+     * @param distanceY The vertical distance as fraction of the height of the displayed video (positive downwards).
+     */
+    public synchronized void panBy(float distanceX, float distanceY) {
+        centerX -= distanceX / zoom;
+        centerY -= distanceY / zoom;
+        clampCenter();
+    }
+
+    /**
+     * Shows the whole video again.
+     */
+    public synchronized void reset() {
+        zoom = MIN_ZOOM;
+        centerX = 0.5f;
+        centerY = 0.5f;
+    }
+
+    public synchronized float getZoom() {
+        return zoom;
+    }
+
+    public synchronized boolean isZoomed() {
+        return zoom > MIN_ZOOM;
+    }
+
+    /**
+     * Copies the visible region. The values are read together, so a renderer applies a consistent region to all videos.
+     *
+     * @param region Receives left, top, right and bottom in normalized video coordinates. At least four values.
+     */
+    public synchronized void getVisibleRegion(float[] region) {
+        float halfSize = 0.5f / zoom;
+        region[0] = centerX - halfSize;
+        region[1] = centerY - halfSize;
+        region[2] = centerX + halfSize;
+        region[3] = centerY + halfSize;
+    }
+
+    private void clampCenter() {
+        float halfSize = 0.5f / zoom;
+        centerX = Math.max(halfSize, Math.min(1f - halfSize, centerX));
+        centerY = Math.max(halfSize, Math.min(1f - halfSize, centerY));
+    }
+}
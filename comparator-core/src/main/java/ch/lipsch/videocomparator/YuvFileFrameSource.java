@@ -0,0 +1,427 @@
+/*
+ * Copyright (C) 2015 Erwin Betschart
+ *
+ * This file is part of Video Comparator.
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.lipsch.videocomparator;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * Delivers the frames of an uncompressed video file: YUV4MPEG2 (.y4m) or raw planar YUV (.yuv) as dumped by encoders.
+ * No decoder is needed, so the analysis runs at disk speed on any JVM (e.g. on a build server).
+ * <p/>
+ * The file is memory mapped and the frames are views of the mapping (see YuvFrame), nothing is copied unless the luma planes are read
+ * into arrays with readNextFrame. Any frame can be accessed by its index. Large files are mapped in regions of whole frames because a
+ * mapping is limited to 2GB. The regions are mapped on first access and unmapped by the garbage collector.
+ * <p/>
+ * Supported are 8 bit samples with 4:2:0, 4:2:2, 4:4:4 or monochrome (Y4M only) chroma. The Y4M frame rate is used for the presentation times,
+ * 25 fps if it is missing. Interlacing and aspect ratio are ignored.
+ * This class is not thread safe, but the frames it returned may be used from any thread.
+ */
+class YuvFileFrameSource implements LumaFrameSource, FrameSource<YuvFrame>, Closeable {
+
+    /**
+     * The size of the chroma planes relative to the luma plane.
+     */
+    enum Chroma {
+        YUV420(2, 2), YUV422(2, 1), YUV444(1, 1), MONO(0, 0);
+
+        private final int horizontalDivisor;
+        private final int verticalDivisor;
+
+        Chroma(int horizontalDivisor, int verticalDivisor) {
+            this.horizontalDivisor = horizontalDivisor;
+            this.verticalDivisor = verticalDivisor;
+        }
+
+        int planeWidth(int width) {
+            return horizontalDivisor == 0 ? 0 : (width + horizontalDivisor - 1) / horizontalDivisor;
+        }
+
+        int planeHeight(int height) {
+            return verticalDivisor == 0 ? 0 : (height + verticalDivisor - 1) / verticalDivisor;
+        }
+    }
+
+    private static final Charset ASCII = Charset.forName("US-ASCII");
+    private static final String Y4M_MAGIC = "YUV4MPEG2";
+    private static final String Y4M_FRAME = "FRAME";
+    /**
+     * The maximal length of a header line, longer lines are invalid.
+     */
+    private static final int MAX_HEADER_LENGTH = 4096;
+    private static final int DEFAULT_FRAME_RATE = 25;
+
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private final int width;
+    private final int height;
+    private final int chromaWidth;
+    private final int chromaHeight;
+    private final int frameRateNumerator;
+    private final int frameRateDenominator;
+    private final int frameSize;
+
+    /**
+     * The file offset of the samples (after the frame header) of each frame.
+     */
+    private final long[] frameOffsets;
+
+    /**
+     * The first frame of each mapped region.
+     */
+    private final int[] regionFirstFrames;
+    private final ByteBuffer[] regions;
+
+    private int nextFrame = 0;
+
+    private YuvFileFrameSource(RandomAccessFile file, int width, int height, Chroma chroma, int frameRateNumerator, int frameRateDenominator,
+                               long[] frameOffsets) {
+        this.file = file;
+        this.channel = file.getChannel();
+        this.width = width;
+        this.height = height;
+        this.chromaWidth = chroma.planeWidth(width);
+        this.chromaHeight = chroma.planeHeight(height);
+        this.frameRateNumerator = frameRateNumerator;
+        this.frameRateDenominator = frameRateDenominator;
+        this.frameSize = frameSize(width, height, chroma);
+        this.frameOffsets = frameOffsets;
+        this.regionFirstFrames = splitRegions(frameOffsets, frameSize);
+        this.regions = new ByteBuffer[regionFirstFrames.length];
+    }
+
+    /**
+     * Opens a YUV4MPEG2 file. The frame headers are scanned once to know where each frame starts.
+     *
+     * @throws IOException In case the file can not be read, is no Y4M file or uses an unsupported format.
+     */
+    public static YuvFileFrameSource openY4m(File path) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(path, "r");
+        try {
+            FileChannel channel = file.getChannel();
+            long size = channel.size();
+            ByteBuffer buffer = ByteBuffer.allocate(MAX_HEADER_LENGTH);
+
+            String header = readLine(channel, 0, buffer);
+            String[] fields = header.split(" ");
+            if (!Y4M_MAGIC.equals(fields[0])) {
+                throw new IOException("Not a Y4M file: " + path);
+            }
+
+            int width = -1;
+            int height = -1;
+            int frameRateNumerator = DEFAULT_FRAME_RATE;
+            int frameRateDenominator = 1;
+            Chroma chroma = Chroma.YUV420;
+            for (int i = 1; i < fields.length; i++) {
+                String field = fields[i];
+                if (field.isEmpty()) {
+                    continue;
+                }
+                String value = field.substring(1);
+                switch (field.charAt(0)) {
+                    case 'W':
+                        width = parseInt(value, "width");
+                        break;
+                    case 'H':
+                        height = parseInt(value, "height");
+                        break;
+                    case 'F':
+                        String[] rate = value.split(":");
+                        frameRateNumerator = parseInt(rate[0], "frame rate");
+                        frameRateDenominator = rate.length > 1 ? parseInt(rate[1], "frame rate") : 1;
+                        break;
+                    case 'C':
+                        chroma = parseChroma(value);
+                        break;
+                    default:
+                        //Interlacing, aspect ratio and extensions are not needed.
+                }
+            }
+            if (width <= 0 || height <= 0 || frameRateNumerator <= 0 || frameRateDenominator <= 0) {
+                throw new IOException("Invalid Y4M header: " + header);
+            }
+
+            long frameSize = frameSize(width, height, chroma);
+            long[] frameOffsets = new long[16];
+            int frameCount = 0;
+            long position = header.length() + 1;
+            while (position < size) {
+                String frameHeader = readLine(channel, position, buffer);
+                if (!frameHeader.startsWith(Y4M_FRAME)) {
+                    throw new IOException("Invalid frame header at " + position);
+                }
+                long offset = position + frameHeader.length() + 1;
+                if (offset + frameSize > size) {
+                    //A truncated last frame, e.g. of a capture which is still being written.
+                    break;
+                }
+                if (frameCount == frameOffsets.length) {
+                    frameOffsets = Arrays.copyOf(frameOffsets, frameCount * 2);
+                }
+                frameOffsets[frameCount++] = offset;
+                position = offset + frameSize;
+            }
+
+            return new YuvFileFrameSource(file, width, height, chroma, frameRateNumerator, frameRateDenominator,
+                    Arrays.copyOf(frameOffsets, frameCount));
+        } catch (IOException e) {
+            file.close();
+            throw e;
+        } catch (RuntimeException e) {
+            file.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Opens a raw file of planar 4:2:0 frames (I420: Y, then U, then V) without any header. A partial last frame is ignored.
+     *
+     * @param frameRateNumerator   Together with the denominator the number of frames per second, e.g. 30000 / 1001.
+     * @param frameRateDenominator See frameRateNumerator.
+     * @throws IOException In case the file can not be read.
+     */
+    public static YuvFileFrameSource openRaw(File path, int width, int height, int frameRateNumerator, int frameRateDenominator)
+            throws IOException {
+        if (width <= 0 || height <= 0 || frameRateNumerator <= 0 || frameRateDenominator <= 0) {
+            throw new IllegalArgumentException("Invalid format " + width + "x" + height + " at " + frameRateNumerator + "/" + frameRateDenominator);
+        }
+
+        RandomAccessFile file = new RandomAccessFile(path, "r");
+        try {
+            long frameSize = frameSize(width, height, Chroma.YUV420);
+            long frameCount = file.length() / frameSize;
+            if (frameCount > Integer.MAX_VALUE) {
+                throw new IOException("Too many frames: " + frameCount);
+            }
+            long[] frameOffsets = new long[(int) frameCount];
+            for (int i = 0; i < frameOffsets.length; i++) {
+                frameOffsets[i] = i * frameSize;
+            }
+            return new YuvFileFrameSource(file, width, height, Chroma.YUV420, frameRateNumerator, frameRateDenominator, frameOffsets);
+        } catch (IOException e) {
+            file.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public int getWidth() {
+        return width;
+    }
+
+    @Override
+    public int getHeight() {
+        return height;
+    }
+
+    public int getFrameCount() {
+        return frameOffsets.length;
+    }
+
+    @Override
+    public double getFrameRate() {
+        return (double) frameRateNumerator / frameRateDenominator;
+    }
+
+    @Override
+    public long getDurationUs() {
+        return getTimeUs(frameOffsets.length);
+    }
+
+    /**
+     * Rounded up like FrameStepper does: decodeFrame rounds down, so decodeFrame(getTimeUs(i)) returns frame i even at rates like 30000 / 1001.
+     *
+     * @return The presentation time of the frame with the given index in microseconds.
+     */
+    public long getTimeUs(int frameIndex) {
+        return (frameIndex * 1000000L * frameRateDenominator + frameRateNumerator - 1) / frameRateNumerator;
+    }
+
+    /**
+     * Returns the frame with the given index.
+     *
+     * @param frameIndex The index of the frame, starting at 0.
+     * @return A view of the frame.
+     * @throws IOException In case the file could not be mapped.
+     */
+    public YuvFrame getFrame(int frameIndex) throws IOException {
+        if (frameIndex < 0 || frameIndex >= frameOffsets.length) {
+            throw new IndexOutOfBoundsException("Frame " + frameIndex + " of " + frameOffsets.length);
+        }
+
+        int region = Arrays.binarySearch(regionFirstFrames, frameIndex);
+        if (region < 0) {
+            region = -region - 2;
+        }
+        if (regions[region] == null) {
+            regions[region] = mapRegion(region);
+        }
+
+        int offset = (int) (frameOffsets[frameIndex] - frameOffsets[regionFirstFrames[region]]);
+        int lumaSize = width * height;
+        int chromaSize = chromaWidth * chromaHeight;
+        return new YuvFrame(frameIndex, getTimeUs(frameIndex), width, height, chromaWidth, chromaHeight,
+                slice(regions[region], offset, lumaSize),
+                slice(regions[region], offset + lumaSize, chromaSize),
+                slice(regions[region], offset + lumaSize + chromaSize, chromaSize));
+    }
+
+    /**
+     * Returns the frame displayed at the given time: The last frame which starts at or before it.
+     *
+     * @return The frame or null if the time is outside the video or the file could not be read.
+     */
+    @Override
+    public YuvFrame decodeFrame(long timeUs) {
+        if (timeUs < 0) {
+            return null;
+        }
+        long frameIndex = timeUs * frameRateNumerator / (1000000L * frameRateDenominator);
+        if (frameIndex >= frameOffsets.length) {
+            return null;
+        }
+        try {
+            return getFrame((int) frameIndex);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Reads the luma planes one after the other, starting at the first frame.
+     */
+    @Override
+    public long readNextFrame(byte[] luma) throws IOException {
+        if (nextFrame >= frameOffsets.length) {
+            return -1;
+        }
+
+        YuvFrame frame = getFrame(nextFrame);
+        frame.copyLuma(luma);
+        nextFrame++;
+        return frame.getTimeUs();
+    }
+
+    /**
+     * Continues readNextFrame at the given frame.
+     */
+    public void setNextFrame(int frameIndex) {
+        nextFrame = frameIndex;
+    }
+
+    /**
+     * Closes the file. The mapped regions stay valid until they are garbage collected.
+     */
+    @Override
+    public void close() throws IOException {
+        Arrays.fill(regions, null);
+        file.close();
+    }
+
+    private ByteBuffer mapRegion(int region) throws IOException {
+        int firstFrame = regionFirstFrames[region];
+        int lastFrame = region + 1 < regionFirstFrames.length ? regionFirstFrames[region + 1] - 1 : frameOffsets.length - 1;
+        long start = frameOffsets[firstFrame];
+        long end = frameOffsets[lastFrame] + frameSize;
+        return channel.map(FileChannel.MapMode.READ_ONLY, start, end - start).asReadOnlyBuffer();
+    }
+
+    private static ByteBuffer slice(ByteBuffer region, int offset, int length) {
+        ByteBuffer view = region.duplicate();
+        view.limit(offset + length);
+        view.position(offset);
+        return view.slice();
+    }
+
+    /**
+     * Splits the frames into regions which can be mapped at once (at most 2GB each).
+     *
+     * @return The first frame of each region.
+     */
+    static int[] splitRegions(long[] frameOffsets, long frameSize) {
+        int[] firstFrames = new int[1];
+        int regionCount = 1;
+        long regionStart = frameOffsets.length > 0 ? frameOffsets[0] : 0;
+        for (int i = 1; i < frameOffsets.length; i++) {
+            if (frameOffsets[i] + frameSize - regionStart > Integer.MAX_VALUE) {
+                if (regionCount == firstFrames.length) {
+                    firstFrames = Arrays.copyOf(firstFrames, regionCount * 2);
+                }
+                firstFrames[regionCount++] = i;
+                regionStart = frameOffsets[i];
+            }
+        }
+        return Arrays.copyOf(firstFrames, regionCount);
+    }
+
+    private static int frameSize(int width, int height, Chroma chroma) {
+        long size = (long) width * height + 2L * chroma.planeWidth(width) * chroma.planeHeight(height);
+        if (size > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Frame too large: " + width + "x" + height);
+        }
+        return (int) size;
+    }
+
+    private static Chroma parseChroma(String value) throws IOException {
+        //The 4:2:0 variants only differ in the chroma siting, which does not matter for the comparison.
+        if (value.equals("420") || value.equals("420jpeg") || value.equals("420paldv") || value.equals("420mpeg2")) {
+            return Chroma.YUV420;
+        } else if (value.equals("422")) {
+            return Chroma.YUV422;
+        } else if (value.equals("444")) {
+            return Chroma.YUV444;
+        } else if (value.equals("mono")) {
+            return Chroma.MONO;
+        }
+        throw new IOException("Unsupported chroma format (only 8 bit is supported): " + value);
+    }
+
+    private static int parseInt(String value, String name) throws IOException {
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IOException("Invalid " + name + ": " + value);
+        }
+    }
+
+    /**
+     * Reads an ASCII line terminated by '\n' at the given position.
+     *
+     * @return The line without the terminator.
+     */
+    private static String readLine(FileChannel channel, long position, ByteBuffer buffer) throws IOException {
+        buffer.clear();
+        channel.read(buffer, position);
+        buffer.flip();
+        for (int i = 0; i < buffer.limit(); i++) {
+            if (buffer.get(i) == '\n') {
+                buffer.limit(i);
+                return ASCII.decode(buffer).toString();
+            }
+        }
+        throw new IOException("Header line too long or missing at " + position);
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright (C) 2015 Erwin Betschart
+ *
+ * This file is part of Video Comparator.
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.lipsch.videocomparator;
+
+import java.nio.ByteBuffer;
+
+/**
+ * One frame of a YuvFileFrameSource: Views of its planes (8 bits per sample, row by row without padding).
+ * The planes are read-only slices of the memory mapped file, nothing is copied.
+ */
+final class YuvFrame {
+
+    private final int index;
+    private final long timeUs;
+    private final int width;
+    private final int height;
+    private final int chromaWidth;
+    private final int chromaHeight;
+    private final ByteBuffer y;
+    private final ByteBuffer u;
+    private final ByteBuffer v;
+
+    YuvFrame(int index, long timeUs, int width, int height, int chromaWidth, int chromaHeight, ByteBuffer y, ByteBuffer u, ByteBuffer v) {
+        this.index = index;
+        this.timeUs = timeUs;
+        this.width = width;
+        this.height = height;
+        this.chromaWidth = chromaWidth;
+        this.chromaHeight = chromaHeight;
+        this.y = y;
+        this.u = u;
+        this.v = v;
+    }
+
+    /**
+     * @return The number of the frame in the file, starting at 0.
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    /**
+     * @return The presentation time of the frame in microseconds.
+     */
+    public long getTimeUs() {
+        return timeUs;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * @return The width of the chroma planes. 0 for monochrome frames.
+     */
+    public int getChromaWidth() {
+        return chromaWidth;
+    }
+
+    /**
+     * @return The height of the chroma planes. 0 for monochrome frames.
+     */
+    public int getChromaHeight() {
+        return chromaHeight;
+    }
+
+    /**
+     * @return The luma plane (width * height samples). Each call returns a new view, so the position may be changed freely.
+     */
+    public ByteBuffer getY() {
+        return y.duplicate();
+    }
+
+    /**
+     * @return The Cb plane (chromaWidth * chromaHeight samples), empty for monochrome frames.
+     */
+    public ByteBuffer getU() {
+        return u.duplicate();
+    }
+
+    /**
+     * @return The Cr plane (chromaWidth * chromaHeight samples), empty for monochrome frames.
+     */
+    public ByteBuffer getV() {
+        return v.duplicate();
+    }
+
+    /**
+     * Copies the luma plane into an array, e.g. for the analysis which works on arrays.
+     *
+     * @param luma Receives width * height samples.
+     */
+    public void copyLuma(byte[] luma) {
+        y.duplicate().get(luma, 0, width * height);
+    }
+}
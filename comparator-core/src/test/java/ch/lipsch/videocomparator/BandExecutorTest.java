@@ -0,0 +1,129 @@
+/*
+ * Copyright (C) 2015 Erwin Betschart
+ *
+ * This file is part of Video Comparator.
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.lipsch.videocomparator;
+
+import junit.framework.TestCase;
+
+/**
+ * Test for the class BandExecutor.
+ */
+public class BandExecutorTest extends TestCase {
+
+    private BandExecutor target = null;
+
+    @Override
+    protected void tearDown() throws Exception {
+        if (target != null) {
+            target.shutdown();
+        }
+        super.tearDown();
+    }
+
+    public void testEveryIndexIsProcessedOnce() {
+        target = new BandExecutor(4);
+        final int[] counts = new int[1003];
+
+        for (int run = 0; run < 50; run++) {
+            target.execute(new BandExecutor.BandTask() {
+                @Override
+                public void runBand(int band, int start, int end) {
+                    for (int i = start; i < end; i++) {
+                        counts[i]++;
+                    }
+                }
+            }, counts.length);
+        }
+
+        for (int count : counts) {
+            assertEquals(50, count);
+        }
+    }
+
+    public void testBandsRunInParallel() {
+        target = new BandExecutor(2);
+        final Thread caller = Thread.currentThread();
+        final Thread[] bandThreads = new Thread[2];
+
+        target.execute(new BandExecutor.BandTask() {
+            @Override
+            public void runBand(int band, int start, int end) {
+                bandThreads[band] = Thread.currentThread();
+            }
+        }, 100);
+
+        assertSame(caller, bandThreads[0]);
+        assertNotNull(bandThreads[1]);
+        assertNotSame(caller, bandThreads[1]);
+    }
+
+    public void testSmallRangeRunsInCaller() {
+        target = new BandExecutor(4);
+        final int[] calls = new int[1];
+
+        target.execute(new BandExecutor.BandTask() {
+            @Override
+            public void runBand(int band, int start, int end) {
+                assertEquals(0, start);
+                assertEquals(3, end);
+                calls[0]++;
+            }
+        }, 3);
+
+        assertEquals(1, calls[0]);
+    }
+
+    public void testFailureOfWorkerIsRethrown() {
+        target = new BandExecutor(3);
+
+        try {
+            target.execute(new BandExecutor.BandTask() {
+                @Override
+                public void runBand(int band, int start, int end) {
+                    if (band == 2) {
+                        throw new IllegalStateException("band " + band);
+                    }
+                }
+            }, 30);
+            fail("Exception of the worker must be rethrown");
+        } catch (IllegalStateException e) {
+            assertEquals("band 2", e.getMessage());
+        }
+
+        //The executor is still usable.
+        final int[] calls = new int[1];
+        target.execute(new BandExecutor.BandTask() {
+            @Override
+            public void runBand(int band, int start, int end) {
+                synchronized (calls) {
+                    calls[0]++;
+                }
+            }
+        }, 30);
+        assertEquals(3, calls[0]);
+    }
+
+    public void testInvalidBandCount() {
+        try {
+            new BandExecutor(0);
+            fail("At least one band is needed");
+        } catch (IllegalArgumentException e) {
+            //expected
+        }
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright (C) 2015 Erwin Betschart
+ *
+ * This file is part of Video Comparator.
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.lipsch.videocomparator;
+
+import junit.framework.TestCase;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Test for the class ByteBufferPool.
+ */
+public class ByteBufferPoolTest extends TestCase {
+
+    public void testBuffersAreReused() {
+        ByteBufferPool target = new ByteBufferPool(1024, 2);
+
+        ByteBuffer buffer = target.acquire();
+        assertTrue(buffer.isDirect());
+        assertEquals(1024, buffer.capacity());
+        buffer.position(100);
+        target.release(buffer);
+
+        ByteBuffer reused = target.acquire();
+        assertSame(buffer, reused);
+        assertEquals(0, reused.position());
+        assertEquals(1024, reused.remaining());
+    }
+
+    public void testCapacityIsLimited() {
+        ByteBufferPool target = new ByteBufferPool(16, 2);
+        assertEquals(2, target.getAvailableCount());
+
+        ByteBuffer buffer1 = target.acquire();
+        ByteBuffer buffer2 = target.acquire();
+        assertNotSame(buffer1, buffer2);
+        assertEquals(0, target.getAvailableCount());
+        assertNull(target.acquire());
+
+        target.release(buffer2);
+        assertEquals(1, target.getAvailableCount());
+        assertSame(buffer2, target.acquire());
+    }
+
+    public void testForeignBufferIsRejected() {
+        ByteBufferPool target = new ByteBufferPool(16, 1);
+
+        try {
+            target.release(ByteBuffer.allocate(16));
+            fail("Heap buffer is not from the pool");
+        } catch (IllegalArgumentException e) {
+            //expected
+        }
+    }
+}
@@ -0,0 +1,330 @@
+/*
+ * Copyright (C) 2015 Erwin Betschart
+ *
+ * This file is part of Video Comparator.
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.lipsch.videocomparator;
+
+import junit.framework.TestCase;
+
+/**
+ * Test for the class ComparatorSession. Uses fake players and a fake clock so no device is needed.
+ */
+public class ComparatorSessionTest extends TestCase {
+
+    private FakeClock clock = null;
+    private VideoPlayState playState = null;
+    private PlaybackMetrics metrics = null;
+    private FakePlayers players = null;
+    private int stateChangeCount = 0;
+    private ComparatorSession target = null;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        clock = new FakeClock();
+        playState = new VideoPlayState(2);
+        metrics = new PlaybackMetrics(clock, 2);
+        players = new FakePlayers(2);
+        target = new ComparatorSession(clock, playState, metrics, players, new ComparatorSession.Listener() {
+            @Override
+            public void onPlayStateChanged() {
+                stateChangeCount++;
+            }
+        });
+
+        playState.setVideo1("file:///video1");
+        playState.setVideo2("file:///video2");
+    }
+
+    public void testPlayStartsPlayersAndSync() {
+        target.play();
+
+        assertEquals(1, players.startWhenPreparedCount);
+        assertTrue(playState.isVideo1Playing());
+        assertTrue(playState.isVideo2Playing());
+        assertTrue(target.getSyncEngine().isRunning());
+    }
+
+    public void testPauseRemembersPositions() {
+        target.play();
+        players.players[0].positionMs = 1500;
+        players.players[1].positionMs = 2500;
+
+        target.pause();
+
+        assertFalse(target.getSyncEngine().isRunning());
+        assertEquals(1, players.pauseCount);
+        assertEquals(1.5, playState.getVideo1PauseTime(), 0.0);
+        assertEquals(2.5, playState.getVideo2PauseTime(), 0.0);
+        assertTrue(playState.shouldShowPlayButton());
+    }
+
+    public void testStopRewinds() {
+        target.play();
+
+        target.stop();
+
+        assertEquals(1, players.stopCount);
+        assertFalse(playState.isVideo1Playing());
+        assertNull(playState.getVideo1PauseTime());
+        assertEquals(VideoPlayState.State.LOADED, playState.getSnapshot().getState(0));
+    }
+
+    public void testStopKeepsEmptySlotEmpty() {
+        playState.setVideo2(null);
+        target.play();
+        target.stop();
+        target.play();
+
+        target.onCompletion(0);
+
+        assertEquals(VideoPlayState.State.EMPTY, playState.getSnapshot().getState(1));
+        assertFalse(playState.shouldShowPauseButton());
+        assertTrue(playState.shouldShowPlayButton());
+    }
+
+    public void testStallPausesAndResumesPartner() {
+        target.play();
+        players.players[0].isPlaying = true;
+        players.players[1].isPlaying = true;
+
+        target.onBufferingStart(0);
+
+        assertFalse(players.players[1].isPlaying);
+        assertEquals(VideoPlayState.State.WAITING, playState.getSnapshot().getState(1));
+        assertEquals(1, stateChangeCount);
+
+        clock.timeMs += 400;
+        target.onBufferingEnd(0);
+
+        assertTrue(players.players[1].isPlaying);
+        assertEquals(2, stateChangeCount);
+        assertEquals(1, metrics.getPlayer(0).getBufferingStalls());
+
+        target.pause();
+        assertEquals(1, metrics.getSessionStalls().getCount());
+        assertEquals(400, metrics.getSessionStalls().getMaxMs());
+    }
+
+    public void testCompletionResumesWaitingPartner() {
+        target.play();
+        target.onBufferingStart(0);
+
+        target.onCompletion(0);
+
+        assertEquals(VideoPlayState.State.LOADED, playState.getSnapshot().getState(0));
+        assertTrue(players.players[1].isPlaying);
+    }
+
+    public void testSyncTicksRecordDrift() {
+        target.play();
+        players.players[0].isPlaying = true;
+        players.players[1].isPlaying = true;
+        target.onPlayersStarted();
+
+        for (int i = 0; i < 10; i++) {
+            clock.timeMs += 100;
+            players.players[0].positionMs += 100;
+            players.players[1].positionMs += 50;
+            target.tickSync();
+        }
+
+        assertEquals(10, metrics.getDrift().getCount());
+        assertTrue(metrics.getCorrectiveSeeks().getCount() > 0);
+        assertTrue(target.stopSync());
+        assertFalse(target.stopSync());
+    }
+
+    public void testCorrectiveSeeksGoThroughScheduler() {
+        LinkedSeekCoordinator coordinator = new LinkedSeekCoordinator(new SeekScheduler(clock, players.players[0]),
+                new SeekScheduler(clock, players.players[1]));
+        target.setSeekCoordinator(coordinator);
+        target.play();
+        players.players[0].isPlaying = true;
+        players.players[1].isPlaying = true;
+        target.onPlayersStarted();
+
+        //Player 1 hangs for a second.
+        clock.timeMs += 1000;
+        players.players[0].positionMs += 1000;
+        target.tickSync();
+
+        SeekScheduler scheduler = coordinator.getScheduler(1);
+        assertEquals(1, scheduler.getIssuedCount());
+        assertTrue(scheduler.isBusy());
+
+        //A user seek waits for the corrective seek instead of taking its completion.
+        coordinator.seekPrecise(1, 5000);
+        assertFalse(coordinator.onSeekComplete(1));
+        target.onSeekComplete(1);
+        assertEquals(5000, scheduler.getInFlightPositionMs());
+        assertTrue(coordinator.onSeekComplete(1));
+    }
+
+    public void testCorrectiveSeekIsNotCountedWhileUserSeeks() {
+        LinkedSeekCoordinator coordinator = new LinkedSeekCoordinator(new SeekScheduler(clock, players.players[0]),
+                new SeekScheduler(clock, players.players[1]));
+        target.setSeekCoordinator(coordinator);
+        target.play();
+        players.players[0].isPlaying = true;
+        players.players[1].isPlaying = true;
+        target.onPlayersStarted();
+
+        //The user seek of player 1 is in flight, so the scheduler drops the corrective seek.
+        coordinator.seekPrecise(1, 0);
+        clock.timeMs += 400;
+        players.players[0].positionMs += 400;
+        target.tickSync();
+
+        assertEquals(0, target.getSyncEngine().getCorrectiveSeekCount());
+        assertEquals(0, metrics.getCorrectiveSeeks().getCount());
+
+        //Once the user seek completed the drift is corrected right away, no cooldown was started by the dropped seek.
+        coordinator.onSeekComplete(1);
+        target.onSeekComplete(1);
+        clock.timeMs += 100;
+        players.players[0].positionMs += 100;
+        target.tickSync();
+        assertEquals(1, target.getSyncEngine().getCorrectiveSeekCount());
+        assertEquals(1, metrics.getCorrectiveSeeks().getCount());
+    }
+
+    public void testNoTicksWhileNotSyncing() {
+        target.tickSync();
+
+        assertEquals(0, metrics.getDrift().getCount());
+    }
+
+    public void testProgressMapping() {
+        assertEquals(0, ComparatorSession.toProgress(500, -1, 100));
+        assertEquals(50, ComparatorSession.toProgress(5000, 10000, 100));
+        //Rounded up so the end is reached.
+        assertEquals(100, ComparatorSession.toProgress(9999, 10000, 100));
+        assertEquals(5000, ComparatorSession.toPositionMs(50, 100, 10000));
+        assertEquals(10000, ComparatorSession.toPositionMs(100, 100, 10000));
+    }
+
+    public void testPlayerCountMustMatch() {
+        try {
+            new ComparatorSession(clock, new VideoPlayState(3), metrics, players, null);
+            fail("One video per player is needed");
+        } catch (IllegalArgumentException e) {
+            //expected
+        }
+    }
+
+    private static class FakeClock implements PlaybackClock {
+        long timeMs = 0;
+
+        @Override
+        public long getTimeMs() {
+            return timeMs;
+        }
+    }
+
+    private static class FakePlayer implements ComparablePlayer {
+        int positionMs = 0;
+        boolean isPlaying = false;
+
+        @Override
+        public int getDuration() {
+            return 60000;
+        }
+
+        @Override
+        public void start() {
+            isPlaying = true;
+        }
+
+        @Override
+        public void pause() {
+            isPlaying = false;
+        }
+
+        @Override
+        public int getCurrentPosition() {
+            return positionMs;
+        }
+
+        @Override
+        public boolean isPlaying() {
+            return isPlaying;
+        }
+
+        @Override
+        public boolean seekTo(int positionMs) {
+            this.positionMs = positionMs;
+            return true;
+        }
+
+        @Override
+        public boolean supportsPlaybackRate() {
+            return false;
+        }
+
+        @Override
+        public void setPlaybackRate(float rate) {
+            //Not supported
+        }
+    }
+
+    private static class FakePlayers implements ComparatorSession.Players {
+        final FakePlayer[] players;
+        int startWhenPreparedCount = 0;
+        int pauseCount = 0;
+        int stopCount = 0;
+
+        FakePlayers(int count) {
+            players = new FakePlayer[count];
+            for (int i = 0; i < count; i++) {
+                players[i] = new FakePlayer();
+            }
+        }
+
+        @Override
+        public int getPlayerCount() {
+            return players.length;
+        }
+
+        @Override
+        public ComparablePlayer getPlayer(int index) {
+            return players[index];
+        }
+
+        @Override
+        public void startWhenPrepared() {
+            startWhenPreparedCount++;
+        }
+
+        @Override
+        public void pause() {
+            pauseCount++;
+            for (FakePlayer player : players) {
+                player.pause();
+            }
+        }
+
+        @Override
+        public void stop() {
+            stopCount++;
+            for (FakePlayer player : players) {
+                player.pause();
+                player.positionMs = 0;
+            }
+        }
+    }
+}
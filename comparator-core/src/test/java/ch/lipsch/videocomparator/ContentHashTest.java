@@ -0,0 +1,99 @@
+/*
+ * Copyright (C) 2015 Erwin Betschart
+ *
+ * This file is part of Video Comparator.
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.lipsch.videocomparator;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+/**
+ * Test for the class ContentHash.
+ */
+public class ContentHashTest extends TestCase {
+
+    public void testSameContentSameHash() throws IOException {
+        File file1 = writeFile(new byte[100000], 0);
+        File file2 = writeFile(new byte[100000], 0);
+
+        assertEquals(hash(file1), hash(file2));
+    }
+
+    public void testDifferentStart() throws IOException {
+        byte[] content = new byte[100000];
+        File file1 = writeFile(content, 0);
+        content[10] = 1;
+        File file2 = writeFile(content, 0);
+
+        assertFalse(hash(file1) == hash(file2));
+    }
+
+    public void testDifferentEnd() throws IOException {
+        byte[] content = new byte[100000];
+        File file1 = writeFile(content, 0);
+        content[99990] = 1;
+        File file2 = writeFile(content, 0);
+
+        assertFalse(hash(file1) == hash(file2));
+    }
+
+    public void testMiddleIsNotHashed() throws IOException {
+        byte[] content = new byte[100000];
+        File file1 = writeFile(content, 0);
+        content[50000] = 1;
+        File file2 = writeFile(content, 0);
+
+        assertEquals(hash(file1), hash(file2));
+    }
+
+    public void testDifferentSize() throws IOException {
+        assertFalse(hash(writeFile(new byte[1000], 0)) == hash(writeFile(new byte[1001], 0)));
+    }
+
+    public void testSmallAndEmptyFiles() throws IOException {
+        assertFalse(hash(writeFile(new byte[0], 0)) == hash(writeFile(new byte[1], 0)));
+    }
+
+    public void testToHex() {
+        assertEquals("0000000000000001", ContentHash.toHex(1));
+        assertEquals("ffffffffffffffff", ContentHash.toHex(-1));
+    }
+
+    private static long hash(File file) throws IOException {
+        RandomAccessFile in = new RandomAccessFile(file, "r");
+        try {
+            return ContentHash.compute(in.getChannel(), 1024);
+        } finally {
+            in.close();
+        }
+    }
+
+    private static File writeFile(byte[] content, int offset) throws IOException {
+        File file = File.createTempFile("hash", ".bin");
+        file.deleteOnExit();
+        RandomAccessFile out = new RandomAccessFile(file, "rw");
+        try {
+            out.write(content, offset, content.length - offset);
+        } finally {
+            out.close();
+        }
+        return file;
+    }
+}
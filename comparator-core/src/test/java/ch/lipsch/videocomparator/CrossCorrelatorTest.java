@@ -0,0 +1,159 @@
+/*
+ * Copyright (C) 2015 Erwin Betschart
+ *
+ * This file is part of Video Comparator.
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.lipsch.videocomparator;
+
+import junit.framework.TestCase;
+
+import java.util.Random;
+
+/**
+ * Test for the class CrossCorrelator.
+ */
+public class CrossCorrelatorTest extends TestCase {
+
+    private final CrossCorrelator target = new CrossCorrelator();
+
+    public void testPositiveLag() {
+        double[] a = createSignal(500, 1);
+        double[] b = shift(a, 37);
+
+        assertTrue(target.correlate(a, a.length, b, b.length, 100, 50));
+
+        //The content of a appears 37 samples later in b.
+        assertEquals(37, target.getBestLag());
+        assertEquals(1.0, target.getBestCorrelation(), 1e-9);
+        assertTrue(target.getSecondBestCorrelation() < 0.5);
+    }
+
+    public void testNegativeLag() {
+        double[] b = createSignal(500, 2);
+        double[] a = shift(b, 20);
+
+        assertTrue(target.correlate(a, a.length, b, b.length, 100, 50));
+
+        assertEquals(-20, target.getBestLag());
+        assertEquals(1.0, target.getBestCorrelation(), 1e-9);
+    }
+
+    public void testMatchesDirectComputation() {
+        Random random = new Random(3);
+        double[] a = createSignal(60, 4);
+        double[] b = new double[45];
+        for (int i = 0; i < b.length; i++) {
+            b[i] = random.nextDouble();
+        }
+
+        assertTrue(target.correlate(a, a.length, b, b.length, 10, 5));
+
+        for (int lag = -10; lag <= 10; lag++) {
+            assertEquals("lag " + lag, pearson(a, b, lag), target.getCorrelation(lag), 1e-9);
+        }
+    }
+
+    public void testDifferentLengthsAndNoise() {
+        Random random = new Random(5);
+        double[] a = createSignal(2000, 6);
+        double[] b = new double[1200];
+        for (int i = 0; i < b.length; i++) {
+            //b shows a from sample 500 on, brighter and with noise.
+            b[i] = 2 * a[i + 500] + 3 + random.nextGaussian() * 0.2;
+        }
+
+        assertTrue(target.correlate(a, a.length, b, b.length, 600, 100));
+
+        assertEquals(-500, target.getBestLag());
+        assertTrue(target.getBestCorrelation() > 0.9);
+    }
+
+    public void testConstantSignalHasNoMatch() {
+        double[] a = createSignal(100, 7);
+        double[] b = new double[100];
+
+        assertFalse(target.correlate(a, a.length, b, b.length, 10, 10));
+        assertTrue(Double.isNaN(target.getBestCorrelation()));
+    }
+
+    public void testTooShort() {
+        double[] a = createSignal(10, 8);
+
+        assertFalse(target.correlate(a, a.length, a, a.length, 5, 20));
+    }
+
+    public void testArraysAreReused() {
+        double[] a = createSignal(1000, 9);
+        double[] b = shift(a, 5);
+        assertTrue(target.correlate(a, a.length, b, b.length, 50, 50));
+
+        //A shorter call after a longer one must not see old values.
+        double[] c = createSignal(100, 10);
+        double[] d = shift(c, -3);
+        assertTrue(target.correlate(c, c.length, d, d.length, 10, 20));
+        assertEquals(-3, target.getBestLag());
+    }
+
+    /**
+     * @return Spikes at random positions on a noisy background, like the activity of a video with cuts.
+     */
+    static double[] createSignal(int length, long seed) {
+        Random random = new Random(seed);
+        double[] signal = new double[length];
+        for (int i = 0; i < length; i++) {
+            signal[i] = random.nextDouble() * 0.5;
+            if (random.nextInt(20) == 0) {
+                signal[i] += 10 + random.nextDouble() * 10;
+            }
+        }
+        return signal;
+    }
+
+    /**
+     * @return The signal delayed by the given number of samples. The gap is filled with the end of the signal.
+     */
+    private static double[] shift(double[] signal, int samples) {
+        double[] shifted = new double[signal.length];
+        for (int i = 0; i < signal.length; i++) {
+            shifted[(i + samples + signal.length) % signal.length] = signal[i];
+        }
+        return shifted;
+    }
+
+    private static double pearson(double[] a, double[] b, int lag) {
+        double meanA = mean(a);
+        double meanB = mean(b);
+        double sum = 0;
+        double energyA = 0;
+        double energyB = 0;
+        for (int i = Math.max(0, -lag); i < Math.min(a.length, b.length - lag); i++) {
+            double valueA = a[i] - meanA;
+            double valueB = b[i + lag] - meanB;
+            sum += valueA * valueB;
+            energyA += valueA * valueA;
+            energyB += valueB * valueB;
+        }
+        return sum / Math.sqrt(energyA * energyB);
+    }
+
+    private static double mean(double[] values) {
+        double sum = 0;
+        for (double value : values) {
+            sum += value;
+        }
+        return sum / values.length;
+    }
+}
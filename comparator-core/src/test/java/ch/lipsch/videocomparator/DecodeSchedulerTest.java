@@ -0,0 +1,311 @@
+/*
+ * Copyright (C) 2015 Erwin Betschart
+ *
+ * This file is part of Video Comparator.
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.lipsch.videocomparator;
+
+import junit.framework.TestCase;
+
+import java.util.Arrays;
+
+/**
+ * Test for the class DecodeScheduler. Uses simulated decoders whose cost grows with the number of decoded pixels, so no device is needed.
+ */
+public class DecodeSchedulerTest extends TestCase {
+
+    private static final int[] WIDTHS_1080P = {1920, 1920, 1920, 1920};
+    private static final int[] HEIGHTS_1080P = {1080, 1080, 1080, 1080};
+    private static final double[] FRAME_RATES = {30, 30, 30, 30};
+
+    private FakeClock clock = null;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        clock = new FakeClock();
+    }
+
+    public void testCheapTilesAreDecodedAtFullRate() {
+        //1080p in 5ms per decoder.
+        DecodeScheduler target = new DecodeScheduler(clock, 2, 1920 * 1080 / 5.0);
+        target.setTiles(new int[]{1920, 1920}, new int[]{1080, 1080}, new double[]{30, 30});
+        Simulation simulation = new Simulation(target, 1920 * 1080 / 5.0);
+
+        target.start();
+        simulation.run(10000);
+
+        assertEquals(2, target.getSlotCount());
+        assertEquals(1, target.getDivisor(0));
+        assertEquals(DecodeScheduler.OFF_FOCUS_DIVISOR, target.getDivisor(1));
+        assertEquals(30.0, simulation.getFrameRate(0), 1.0);
+        assertEquals(30.0, simulation.getFrameRate(1), 1.0);
+    }
+
+    public void testFocusKeepsDecoderOfItsOwn() {
+        DecodeScheduler target = new DecodeScheduler(clock, 2, 1920 * 1080 / 20.0);
+        target.setTiles(WIDTHS_1080P, HEIGHTS_1080P, FRAME_RATES);
+        target.setFocus(2);
+
+        assertEquals(0, target.getSlot(2));
+        for (int tile = 0; tile < 4; tile++) {
+            if (tile != 2) {
+                assertEquals(1, target.getSlot(tile));
+            }
+        }
+    }
+
+    public void testOverloadedDecodersLowerResolutionAndRate() {
+        //A 1080p frame takes 20ms: The focus tile uses 60% of its decoder, three off-focus tiles at full rate would need 180%.
+        double pixelsPerMs = 1920 * 1080 / 20.0;
+        DecodeScheduler target = new DecodeScheduler(clock, 2, pixelsPerMs);
+        target.setTiles(WIDTHS_1080P, HEIGHTS_1080P, FRAME_RATES);
+        Simulation simulation = new Simulation(target, pixelsPerMs);
+
+        target.start();
+        simulation.run(20000);
+
+        assertEquals(1, target.getDivisor(0));
+        assertEquals(30.0, simulation.getFrameRate(0), 1.0);
+        for (int tile = 1; tile < 4; tile++) {
+            assertTrue("divisor " + target.getDivisor(tile), target.getDivisor(tile) >= DecodeScheduler.OFF_FOCUS_DIVISOR);
+            assertTrue("rate " + simulation.getFrameRate(tile), simulation.getFrameRate(tile) >= DecodeScheduler.MIN_REFRESH_RATE);
+        }
+        for (int slot = 0; slot < target.getSlotCount(); slot++) {
+            assertTrue("utilization " + simulation.getUtilization(slot), simulation.getUtilization(slot) <= 0.95);
+        }
+    }
+
+    public void testSlowDecodersAreTimeSliced() {
+        //A 1080p frame takes 1600ms, at quarter resolution still 100ms: The off-focus tiles can not be refreshed at full rate.
+        double pixelsPerMs = 1920 * 1080 / 1600.0;
+        DecodeScheduler target = new DecodeScheduler(clock, 2, pixelsPerMs);
+        target.setTiles(WIDTHS_1080P, HEIGHTS_1080P, FRAME_RATES);
+        Simulation simulation = new Simulation(target, pixelsPerMs);
+
+        target.start();
+        simulation.run(30000);
+
+        for (int tile = 1; tile < 4; tile++) {
+            assertEquals(DecodeScheduler.MAX_DIVISOR, target.getDivisor(tile));
+            assertTrue("rate " + target.getRefreshRate(tile), target.getRefreshRate(tile) < FRAME_RATES[tile]);
+            assertTrue("rate " + simulation.getFrameRate(tile), simulation.getFrameRate(tile) >= DecodeScheduler.MIN_REFRESH_RATE * 0.9);
+        }
+    }
+
+    public void testTilesStayInSync() {
+        double pixelsPerMs = 1920 * 1080 / 20.0;
+        DecodeScheduler target = new DecodeScheduler(clock, 2, pixelsPerMs);
+        target.setTiles(WIDTHS_1080P, HEIGHTS_1080P, FRAME_RATES);
+        Simulation simulation = new Simulation(target, pixelsPerMs);
+
+        target.start();
+        simulation.run(20000);
+
+        //Every tile shows a frame of the shared clock which is at most one refresh interval (plus the decode time) old.
+        for (int tile = 0; tile < 4; tile++) {
+            long maxLagMs = (long) (1000 / target.getRefreshRate(tile)) + 2 * simulation.getMaxCostMs(tile) + 1;
+            assertTrue("tile " + tile + " lag " + simulation.getMaxLagMs(tile), simulation.getMaxLagMs(tile) <= maxLagMs);
+        }
+    }
+
+    public void testPlanAdaptsToMeasuredCosts() {
+        //Assumed 1ms per 1080p frame but the decoders need 60ms.
+        DecodeScheduler target = new DecodeScheduler(clock, 2, 1920 * 1080);
+        target.setTiles(WIDTHS_1080P, HEIGHTS_1080P, FRAME_RATES);
+        assertEquals(30.0, target.getRefreshRate(0), 0.0);
+        assertEquals(DecodeScheduler.OFF_FOCUS_DIVISOR, target.getDivisor(1));
+
+        Simulation simulation = new Simulation(target, 1920 * 1080 / 60.0);
+        target.start();
+        simulation.run(20000);
+
+        assertTrue(target.getPlanCount() > 1);
+        assertEquals(15.0, target.getRefreshRate(0), 1.0);
+        int maxDivisor = 0;
+        for (int tile = 1; tile < 4; tile++) {
+            maxDivisor = Math.max(maxDivisor, target.getDivisor(tile));
+        }
+        assertEquals(DecodeScheduler.MAX_DIVISOR, maxDivisor);
+    }
+
+    public void testFocusChangeMovesFullResolution() {
+        double pixelsPerMs = 1920 * 1080 / 20.0;
+        DecodeScheduler target = new DecodeScheduler(clock, 2, pixelsPerMs);
+        target.setTiles(WIDTHS_1080P, HEIGHTS_1080P, FRAME_RATES);
+        Simulation simulation = new Simulation(target, pixelsPerMs);
+        target.start();
+        simulation.run(5000);
+
+        target.setFocus(3);
+        simulation.reset();
+        simulation.run(10000);
+
+        assertEquals(1, target.getDivisor(3));
+        assertTrue(target.getDivisor(0) >= DecodeScheduler.OFF_FOCUS_DIVISOR);
+        assertEquals(30.0, simulation.getFrameRate(3), 1.0);
+    }
+
+    public void testPausedTilesAreDecodedOnce() {
+        double pixelsPerMs = 1920 * 1080 / 20.0;
+        DecodeScheduler target = new DecodeScheduler(clock, 1, pixelsPerMs);
+        target.setTiles(WIDTHS_1080P, HEIGHTS_1080P, FRAME_RATES);
+        Simulation simulation = new Simulation(target, pixelsPerMs);
+
+        simulation.run(5000);
+        for (int tile = 0; tile < 4; tile++) {
+            assertEquals(1, simulation.getFrameCount(tile));
+            assertEquals(-1, target.getWaitMs(0));
+        }
+
+        target.seekTo(12000);
+        simulation.run(5000);
+        for (int tile = 0; tile < 4; tile++) {
+            assertEquals(2, simulation.getFrameCount(tile));
+            assertEquals(12000, target.getRequestedPositionMs(tile));
+        }
+    }
+
+    public void testSharedClock() {
+        DecodeScheduler target = new DecodeScheduler(clock, 1, 1000);
+        target.seekTo(5000);
+
+        target.start();
+        clock.timeMs += 1500;
+        assertEquals(6500, target.getPositionMs());
+
+        target.pause();
+        clock.timeMs += 1500;
+        assertEquals(6500, target.getPositionMs());
+    }
+
+    public void testInvalidTiles() {
+        DecodeScheduler target = new DecodeScheduler(clock, 2, 1000);
+        try {
+            target.setTiles(new int[5], new int[5], new double[5]);
+            fail("At most four tiles");
+        } catch (IllegalArgumentException e) {
+            //expected
+        }
+
+        target.setTiles(new int[]{100}, new int[]{100}, new double[]{25});
+        try {
+            target.setFocus(1);
+            fail("No such tile");
+        } catch (IndexOutOfBoundsException e) {
+            //expected
+        }
+    }
+
+    private static class FakeClock implements PlaybackClock {
+        long timeMs = 0;
+
+        @Override
+        public long getTimeMs() {
+            return timeMs;
+        }
+    }
+
+    /**
+     * Runs one simulated decoder per slot in steps of one millisecond. A frame costs its number of pixels divided by the speed.
+     */
+    private class Simulation {
+        private final DecodeScheduler target;
+        private final double pixelsPerMs;
+        private final int[] busyTile = new int[DecodeScheduler.MAX_TILES];
+        private final long[] busyUntilMs = new long[DecodeScheduler.MAX_TILES];
+        private final long[] busySinceMs = new long[DecodeScheduler.MAX_TILES];
+        private final long[] busyMs = new long[DecodeScheduler.MAX_TILES];
+        private final int[] frameCounts = new int[DecodeScheduler.MAX_TILES];
+        private final long[] shownPositionsMs = new long[DecodeScheduler.MAX_TILES];
+        private final long[] maxLagsMs = new long[DecodeScheduler.MAX_TILES];
+        private final long[] maxCostsMs = new long[DecodeScheduler.MAX_TILES];
+        private long elapsedMs = 0;
+
+        Simulation(DecodeScheduler target, double pixelsPerMs) {
+            this.target = target;
+            this.pixelsPerMs = pixelsPerMs;
+            Arrays.fill(busyTile, -1);
+        }
+
+        void reset() {
+            Arrays.fill(busyMs, 0);
+            Arrays.fill(frameCounts, 0);
+            Arrays.fill(maxLagsMs, 0);
+            elapsedMs = 0;
+        }
+
+        void run(long durationMs) {
+            for (long i = 0; i < durationMs; i++) {
+                for (int slot = 0; slot < target.getSlotCount(); slot++) {
+                    if (busyTile[slot] >= 0 && clock.timeMs >= busyUntilMs[slot]) {
+                        int tile = busyTile[slot];
+                        busyTile[slot] = -1;
+                        target.onFrameDecoded(tile, clock.timeMs - busySinceMs[slot]);
+                        frameCounts[tile]++;
+                        shownPositionsMs[tile] = target.getRequestedPositionMs(tile);
+                    }
+
+                    if (busyTile[slot] < 0) {
+                        int tile = target.nextTile(slot);
+                        if (tile >= 0) {
+                            int divisor = target.getDivisor(tile);
+                            long costMs = Math.max(1, Math.round(WIDTHS_1080P[tile] * HEIGHTS_1080P[tile] / (divisor * divisor) / pixelsPerMs));
+                            maxCostsMs[tile] = Math.max(maxCostsMs[tile], costMs);
+                            busyTile[slot] = tile;
+                            busySinceMs[slot] = clock.timeMs;
+                            busyUntilMs[slot] = clock.timeMs + costMs;
+                        }
+                    }
+
+                    if (busyTile[slot] >= 0) {
+                        busyMs[slot]++;
+                    }
+                }
+
+                //The first second is the warm up.
+                if (target.isPlaying() && elapsedMs > 1000) {
+                    for (int tile = 0; tile < target.getTileCount(); tile++) {
+                        maxLagsMs[tile] = Math.max(maxLagsMs[tile], target.getPositionMs() - shownPositionsMs[tile]);
+                    }
+                }
+
+                clock.timeMs++;
+                elapsedMs++;
+            }
+        }
+
+        double getFrameRate(int tile) {
+            return frameCounts[tile] * 1000.0 / elapsedMs;
+        }
+
+        int getFrameCount(int tile) {
+            return frameCounts[tile];
+        }
+
+        double getUtilization(int slot) {
+            return (double) busyMs[slot] / elapsedMs;
+        }
+
+        long getMaxLagMs(int tile) {
+            return maxLagsMs[tile];
+        }
+
+        long getMaxCostMs(int tile) {
+            return maxCostsMs[tile];
+        }
+    }
+}
@@ -0,0 +1,214 @@
+/*
+ * Copyright (C) 2015 Erwin Betschart
+ *
+ * This file is part of Video Comparator.
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.lipsch.videocomparator;
+
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Test for the classes DivergenceDetector and DivergenceScanner. The videos are synthetic scenes of 20 frames each.
+ */
+public class DivergenceDetectorTest extends TestCase {
+
+    private static final int WIDTH = 32;
+    private static final int HEIGHT = 18;
+    private static final int SCENE_FRAMES = 20;
+
+    public void testEqualVideosHaveNoHotspots() {
+        SignatureStream stream1 = createStream(200, 0, -1, -1);
+        SignatureStream stream2 = createStream(200, 0, -1, -1);
+        DivergenceDetector target = new DivergenceDetector(stream1, stream2, 10, 10, 5);
+
+        target.update();
+        target.finish();
+
+        assertTrue(target.isAligned());
+        assertEquals(0, target.getOffsetFrames());
+        assertTrue(target.getHotspots().isEmpty());
+        assertEquals(200, target.getScoredFrames());
+    }
+
+    public void testDivergentSceneIsFound() {
+        SignatureStream stream1 = createStream(200, 0, -1, -1);
+        SignatureStream stream2 = createStream(200, 0, 120, 135);
+        DivergenceDetector target = new DivergenceDetector(stream1, stream2, 10, 30, 5);
+
+        target.update();
+        target.finish();
+
+        List<DivergenceHotspot> hotspots = target.getHotspots();
+        assertEquals(1, hotspots.size());
+        assertTrue(hotspots.get(0).getFrame1() >= 120);
+        assertTrue(hotspots.get(0).getFrame1() < 135);
+        assertEquals(hotspots.get(0).getFrame1(), hotspots.get(0).getFrame2());
+    }
+
+    public void testOffsetIsFound() {
+        //The second video starts 7 frames later, e.g. a missing intro.
+        SignatureStream stream1 = createStream(200, 0, -1, -1);
+        SignatureStream stream2 = createStream(193, 7, 100, 110);
+        DivergenceDetector target = new DivergenceDetector(stream1, stream2, 10, 30, 5);
+
+        target.update();
+        target.finish();
+
+        assertEquals(-7, target.getOffsetFrames());
+        List<DivergenceHotspot> hotspots = target.getHotspots();
+        assertEquals(1, hotspots.size());
+        DivergenceHotspot hotspot = hotspots.get(0);
+        assertEquals(hotspot.getFrame1() - 7, hotspot.getFrame2());
+        //The divergence is at frames 100..109 of the second video.
+        assertTrue(hotspot.getFrame2() >= 100 && hotspot.getFrame2() < 110);
+    }
+
+    public void testHotspotsAreRankedAndLimited() {
+        SignatureStream stream1 = createStream(400, 0, -1, -1);
+        //Three divergent scenes far apart.
+        SignatureStream divergent = new SignatureStream();
+        SignatureExtractor extractor = new SignatureExtractor();
+        for (int frame = 0; frame < 400; frame++) {
+            int scene = frame / SCENE_FRAMES;
+            if (frame >= 50 && frame < 60 || frame >= 200 && frame < 230 || frame >= 330 && frame < 335) {
+                scene += 100 + frame / 100;
+            }
+            extractor.extract(SignatureExtractorTest.createScene(WIDTH, HEIGHT, scene, frame), WIDTH, HEIGHT, frame * 40000L, divergent);
+        }
+
+        DivergenceDetector target = new DivergenceDetector(stream1, divergent, 5, 40, 2);
+        target.update();
+        target.finish();
+
+        List<DivergenceHotspot> hotspots = target.getHotspots();
+        assertEquals(2, hotspots.size());
+        assertTrue(hotspots.get(0).getScore() >= hotspots.get(1).getScore());
+    }
+
+    public void testShortVideosAreAlignedOnFinish() {
+        SignatureStream stream1 = createStream(5, 0, -1, -1);
+        SignatureStream stream2 = createStream(5, 0, 2, 3);
+        DivergenceDetector target = new DivergenceDetector(stream1, stream2, 10, 1, 5);
+
+        assertFalse(target.update());
+        assertFalse(target.isAligned());
+
+        assertTrue(target.finish());
+        assertEquals(0, target.getOffsetFrames());
+        assertEquals(1, target.getHotspots().size());
+        assertEquals(2, target.getHotspots().get(0).getFrame1());
+    }
+
+    public void testCandidateBetweenHigherAndLowerHotspot() {
+        DivergenceDetector target = new DivergenceDetector(new SignatureStream(), new SignatureStream(), 0, 20, 5);
+        assertTrue(target.addCandidate(new DivergenceHotspot(100, 100, 4000000, 4000000, 0.5)));
+        assertTrue(target.addCandidate(new DivergenceHotspot(125, 125, 5000000, 5000000, 0.2)));
+
+        //Close to both: Suppressed by the higher one, so the lower one must be kept.
+        assertFalse(target.addCandidate(new DivergenceHotspot(112, 112, 4480000, 4480000, 0.3)));
+        List<DivergenceHotspot> hotspots = target.getHotspots();
+        assertEquals(2, hotspots.size());
+        assertEquals(100, hotspots.get(0).getFrame1());
+        assertEquals(125, hotspots.get(1).getFrame1());
+
+        //Higher than both: Replaces both.
+        assertTrue(target.addCandidate(new DivergenceHotspot(112, 112, 4480000, 4480000, 0.6)));
+        hotspots = target.getHotspots();
+        assertEquals(1, hotspots.size());
+        assertEquals(112, hotspots.get(0).getFrame1());
+    }
+
+    public void testScannerReportsHotspotsBeforeDone() throws Exception {
+        DivergenceScanner target = new DivergenceScanner(5, 30, 5);
+        final List<Integer> reportedFrames = new ArrayList<Integer>();
+        final boolean[] isDone = new boolean[1];
+
+        DivergenceDetector detector = target.scan(new SceneSource(400, -1, -1), new SceneSource(400, 40, 60), new DivergenceScanner.Listener() {
+            @Override
+            public void onHotspotsChanged(List<DivergenceHotspot> hotspots, int scannedFrames, boolean done) {
+                reportedFrames.add(scannedFrames);
+                isDone[0] = done;
+            }
+        });
+
+        assertTrue(isDone[0]);
+        //The hotspot was reported shortly after the divergent scene, not only at the end.
+        assertTrue(reportedFrames.get(0) < 100);
+        assertEquals(1, detector.getHotspots().size());
+        assertEquals(400, detector.getScoredFrames());
+    }
+
+    /**
+     * @param frames          The number of frames.
+     * @param skippedFrames   The number of frames of the original video skipped at the start.
+     * @param divergenceStart The first frame which shows other content or -1.
+     * @param divergenceEnd   The frame after the last divergent frame.
+     */
+    private static SignatureStream createStream(int frames, int skippedFrames, int divergenceStart, int divergenceEnd) {
+        SignatureStream stream = new SignatureStream();
+        SignatureExtractor extractor = new SignatureExtractor();
+        for (int frame = 0; frame < frames; frame++) {
+            int originalFrame = frame + skippedFrames;
+            int scene = originalFrame / SCENE_FRAMES;
+            if (frame >= divergenceStart && frame < divergenceEnd) {
+                scene += 100;
+            }
+            extractor.extract(SignatureExtractorTest.createScene(WIDTH, HEIGHT, scene, originalFrame), WIDTH, HEIGHT, frame * 40000L, stream);
+        }
+        return stream;
+    }
+
+    private static class SceneSource implements LumaFrameSource {
+        private final int frames;
+        private final int divergenceStart;
+        private final int divergenceEnd;
+        private int next = 0;
+
+        SceneSource(int frames, int divergenceStart, int divergenceEnd) {
+            this.frames = frames;
+            this.divergenceStart = divergenceStart;
+            this.divergenceEnd = divergenceEnd;
+        }
+
+        @Override
+        public int getWidth() {
+            return WIDTH;
+        }
+
+        @Override
+        public int getHeight() {
+            return HEIGHT;
+        }
+
+        @Override
+        public long readNextFrame(byte[] luma) throws IOException {
+            if (next >= frames) {
+                return -1;
+            }
+
+            int scene = next / SCENE_FRAMES;
+            if (next >= divergenceStart && next < divergenceEnd) {
+                scene += 100;
+            }
+            System.arraycopy(SignatureExtractorTest.createScene(WIDTH, HEIGHT, scene, next), 0, luma, 0, luma.length);
+            return next++ * 40000L;
+        }
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2015 Erwin Betschart
+ *
+ * This file is part of Video Comparator.
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.lipsch.videocomparator;
+
+import junit.framework.TestCase;
+
+/**
+ * Test for the class FairPrefetchScheduler.
+ */
+public class FairPrefetchSchedulerTest extends TestCase {
+
+    private static final int CHUNK = 100;
+
+    public void testNeedingStreamsShareBandwidth() {
+        ReadAheadWindow[] windows = createWindows(2, 100000);
+        FairPrefetchScheduler target = new FairPrefetchScheduler(2);
+
+        int[] served = serve(target, windows, 100);
+
+        assertEquals(50, served[0]);
+        assertEquals(50, served[1]);
+    }
+
+    public void testNoStreamNeedsData() {
+        ReadAheadWindow[] windows = createWindows(2, 0);
+        FairPrefetchScheduler target = new FairPrefetchScheduler(2);
+
+        assertEquals(-1, target.nextStream(windows));
+    }
+
+    public void testIdleStreamDoesNotCatchUp() {
+        ReadAheadWindow[] windows = createWindows(2, 100000);
+        windows[1].reset(0);
+        FairPrefetchScheduler target = new FairPrefetchScheduler(2);
+        serve(target, windows, 50);
+        assertEquals(50 * CHUNK, target.getServedBytes(0));
+
+        //Stream 1 gets a video: It must not get all bandwidth until it has as many bytes as stream 0.
+        windows[1].reset(100000);
+        int[] served = serve(target, windows, 20);
+
+        assertEquals(10, served[0]);
+        assertEquals(10, served[1]);
+    }
+
+    private static ReadAheadWindow[] createWindows(int count, long size) {
+        ReadAheadWindow[] windows = new ReadAheadWindow[count];
+        for (int i = 0; i < count; i++) {
+            windows[i] = new ReadAheadWindow(100000);
+            windows[i].reset(size);
+        }
+        return windows;
+    }
+
+    /**
+     * Serves the given number of chunks.
+     *
+     * @return The number of chunks served per stream.
+     */
+    private static int[] serve(FairPrefetchScheduler target, ReadAheadWindow[] windows, int chunks) {
+        int[] served = new int[windows.length];
+        for (int i = 0; i < chunks; i++) {
+            int stream = target.nextStream(windows);
+            windows[stream].onRead(windows[stream].getNextOffset(), windows[stream].getNextLength(CHUNK));
+            target.onServed(stream, CHUNK);
+            served[stream]++;
+        }
+        return served;
+    }
+}
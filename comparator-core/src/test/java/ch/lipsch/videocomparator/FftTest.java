@@ -0,0 +1,99 @@
+/*
+ * Copyright (C) 2015 Erwin Betschart
+ *
+ * This file is part of Video Comparator.
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.lipsch.videocomparator;
+
+import junit.framework.TestCase;
+
+import java.util.Random;
+
+/**
+ * Test for the class Fft.
+ */
+public class FftTest extends TestCase {
+
+    public void testSizeFor() {
+        assertEquals(1, Fft.sizeFor(0));
+        assertEquals(1, Fft.sizeFor(1));
+        assertEquals(2, Fft.sizeFor(2));
+        assertEquals(4, Fft.sizeFor(3));
+        assertEquals(1024, Fft.sizeFor(1000));
+        assertEquals(1024, Fft.sizeFor(1024));
+        assertEquals(2048, Fft.sizeFor(1025));
+    }
+
+    public void testImpulseHasFlatSpectrum() {
+        double[] real = new double[8];
+        double[] imaginary = new double[8];
+        real[0] = 1;
+
+        Fft.transform(real, imaginary, 8, false);
+
+        for (int i = 0; i < 8; i++) {
+            assertEquals(1.0, real[i], 1e-12);
+            assertEquals(0.0, imaginary[i], 1e-12);
+        }
+    }
+
+    public void testCosineHasTwoPeaks() {
+        int n = 16;
+        double[] real = new double[n];
+        double[] imaginary = new double[n];
+        for (int i = 0; i < n; i++) {
+            real[i] = Math.cos(2 * Math.PI * 3 * i / n);
+        }
+
+        Fft.transform(real, imaginary, n, false);
+
+        for (int i = 0; i < n; i++) {
+            double expected = i == 3 || i == n - 3 ? n / 2.0 : 0.0;
+            assertEquals("bin " + i, expected, real[i], 1e-9);
+            assertEquals("bin " + i, 0.0, imaginary[i], 1e-9);
+        }
+    }
+
+    public void testRoundTrip() {
+        Random random = new Random(42);
+        int n = 256;
+        double[] real = new double[n];
+        double[] imaginary = new double[n];
+        for (int i = 0; i < n; i++) {
+            real[i] = random.nextGaussian();
+            imaginary[i] = random.nextGaussian();
+        }
+        double[] expectedReal = real.clone();
+        double[] expectedImaginary = imaginary.clone();
+
+        Fft.transform(real, imaginary, n, false);
+        Fft.transform(real, imaginary, n, true);
+
+        for (int i = 0; i < n; i++) {
+            assertEquals(expectedReal[i], real[i], 1e-9);
+            assertEquals(expectedImaginary[i], imaginary[i], 1e-9);
+        }
+    }
+
+    public void testInvalidSize() {
+        try {
+            Fft.transform(new double[12], new double[12], 12, false);
+            fail("Only powers of two are supported");
+        } catch (IllegalArgumentException e) {
+            //expected
+        }
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2015 Erwin Betschart
+ *
+ * This file is part of Video Comparator.
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.lipsch.videocomparator;
+
+import junit.framework.TestCase;
+
+import java.util.Arrays;
+
+/**
+ * Test for the class FilmstripPlan.
+ */
+public class FilmstripPlanTest extends TestCase {
+
+    public void testShortVideoGetsThumbnailEverySecond() {
+        FilmstripPlan target = new FilmstripPlan(10000, 64);
+
+        assertEquals(1000, target.getIntervalMs());
+        assertEquals(10, target.size());
+        assertEquals(0, target.getTimeMs(0));
+        assertEquals(9000, target.getTimeMs(9));
+    }
+
+    public void testIntervalAdaptsToDuration() {
+        //Two hours: 120s would be 60 thumbnails.
+        FilmstripPlan target = new FilmstripPlan(2 * 3600 * 1000, 64);
+
+        assertEquals(120000, target.getIntervalMs());
+        assertEquals(60, target.size());
+
+        //Five minutes: 5s would be 60 thumbnails.
+        target = new FilmstripPlan(5 * 60 * 1000, 64);
+        assertEquals(5000, target.getIntervalMs());
+        assertEquals(60, target.size());
+    }
+
+    public void testPositionsDependOnDurationOnly() {
+        FilmstripPlan first = new FilmstripPlan(123456, 64);
+        FilmstripPlan second = new FilmstripPlan(123456, 64);
+
+        assertEquals(first.size(), second.size());
+        for (int i = 0; i < first.size(); i++) {
+            assertEquals(first.getTimeMs(i), second.getTimeMs(i));
+        }
+    }
+
+    public void testEmptyVideoHasOneThumbnail() {
+        FilmstripPlan target = new FilmstripPlan(0, 64);
+
+        assertEquals(1, target.size());
+        assertEquals(0, target.indexFor(5000));
+    }
+
+    public void testIndexFor() {
+        FilmstripPlan target = new FilmstripPlan(10000, 64);
+
+        assertEquals(0, target.indexFor(0));
+        assertEquals(0, target.indexFor(499));
+        assertEquals(1, target.indexFor(500));
+        assertEquals(5, target.indexFor(5200));
+        assertEquals(9, target.indexFor(9999));
+        assertEquals(9, target.indexFor(20000));
+        assertEquals(0, target.indexFor(-1000));
+    }
+
+    public void testLoadOrderIsCoarseToFine() {
+        FilmstripPlan target = new FilmstripPlan(9000, 64);
+        int[] order = target.getLoadOrder();
+
+        assertEquals(9, order.length);
+        assertEquals(0, order[0]);
+        assertEquals(8, order[1]);
+        assertEquals(4, order[2]);
+
+        //Every thumbnail exactly once.
+        int[] sorted = order.clone();
+        Arrays.sort(sorted);
+        for (int i = 0; i < sorted.length; i++) {
+            assertEquals(i, sorted[i]);
+        }
+    }
+
+    public void testInvalidArguments() {
+        try {
+            new FilmstripPlan(-1, 64);
+            fail("Negative durations are not allowed");
+        } catch (IllegalArgumentException e) {
+            //expected
+        }
+
+        try {
+            new FilmstripPlan(1000, 64).getTimeMs(1);
+            fail("Out of range");
+        } catch (IndexOutOfBoundsException e) {
+            //expected
+        }
+    }
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright (C) 2015 Erwin Betschart
+ *
+ * This file is part of Video Comparator.
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.lipsch.videocomparator;
+
+import junit.framework.TestCase;
+
+import java.util.Arrays;
+
+/**
+ * Test for the class FrameDifference.
+ */
+public class FrameDifferenceTest extends TestCase {
+
+    private static final int BLACK = 0xFF000000;
+    private static final int WHITE = 0xFFFFFFFF;
+
+    private BandExecutor executor = null;
+    private FrameDifference target = null;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        executor = new BandExecutor(3);
+        target = new FrameDifference(executor);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        executor.shutdown();
+        super.tearDown();
+    }
+
+    public void testEqualFrames() {
+        int[] frame = createGradient(64, 48);
+        int[] difference = new int[frame.length];
+
+        double score = target.compute(frame, frame.clone(), difference, frame.length, FrameDifference.Mode.ABSOLUTE);
+
+        assertEquals(0.0, score, 0.0);
+        for (int pixel : difference) {
+            assertEquals(BLACK, pixel);
+        }
+    }
+
+    public void testBlackAndWhiteIsMaximum() {
+        int[] black = new int[100];
+        int[] white = new int[100];
+        Arrays.fill(black, BLACK);
+        Arrays.fill(white, WHITE);
+
+        assertEquals(1.0, target.compute(black, white, null, 100, FrameDifference.Mode.ABSOLUTE), 0.0);
+    }
+
+    public void testAbsoluteDifferencePerChannel() {
+        int[] frame1 = {0xFF102030, 0x00FF0000};
+        int[] frame2 = {0xFF201008, 0xFF00FF00};
+        int[] difference = new int[2];
+
+        double score = target.compute(frame1, frame2, difference, 2, FrameDifference.Mode.ABSOLUTE);
+
+        assertEquals(0xFF101028, difference[0]);
+        //Alpha is ignored, the difference is opaque.
+        assertEquals(0xFFFFFF00, difference[1]);
+        assertEquals((16 + 16 + 40 + 255 + 255) / (2.0 * 3 * 255), score, 1e-9);
+    }
+
+    public void testHeatmap() {
+        int[] frame1 = {BLACK, BLACK, BLACK};
+        int[] frame2 = {BLACK, 0xFF000001, WHITE};
+        int[] difference = new int[3];
+
+        target.compute(frame1, frame2, difference, 3, FrameDifference.Mode.HEATMAP);
+
+        assertEquals(BLACK, difference[0]);
+        assertEquals(FrameDifference.getHeatmapColor(1), difference[1]);
+        //Small differences are visible.
+        assertTrue(difference[1] != BLACK);
+        assertEquals(FrameDifference.getHeatmapColor(255), difference[2]);
+    }
+
+    public void testParallelEqualsSingleThreaded() {
+        int[] frame1 = createGradient(320, 240);
+        int[] frame2 = createNoisy(frame1);
+        int[] parallelDifference = new int[frame1.length];
+        int[] singleDifference = new int[frame1.length];
+
+        BandExecutor singleExecutor = new BandExecutor(1);
+        double single = new FrameDifference(singleExecutor).compute(frame1, frame2, singleDifference, frame1.length, FrameDifference.Mode.HEATMAP);
+        double parallel = target.compute(frame1, frame2, parallelDifference, frame1.length, FrameDifference.Mode.HEATMAP);
+
+        assertEquals(single, parallel, 0.0);
+        assertTrue(Arrays.equals(singleDifference, parallelDifference));
+        assertTrue(parallel > 0.0);
+    }
+
+    public void testScoreIsNotAccumulated() {
+        int[] frame1 = createGradient(32, 32);
+        int[] frame2 = createNoisy(frame1);
+
+        double first = target.compute(frame1, frame2, null, frame1.length, FrameDifference.Mode.ABSOLUTE);
+        double second = target.compute(frame1, frame2, null, frame1.length, FrameDifference.Mode.ABSOLUTE);
+
+        assertEquals(first, second, 0.0);
+    }
+
+    public void testDifferenceInPlace() {
+        int[] frame1 = {0xFF808080};
+        int[] frame2 = {0xFF708090};
+
+        target.compute(frame1, frame2, frame1, 1, FrameDifference.Mode.ABSOLUTE);
+
+        assertEquals(0xFF100010, frame1[0]);
+    }
+
+    public void testTooSmallFrames() {
+        try {
+            target.compute(new int[10], new int[5], null, 10, FrameDifference.Mode.ABSOLUTE);
+            fail("Frames must have enough pixels");
+        } catch (IllegalArgumentException e) {
+            //expected
+        }
+    }
+
+    static int[] createGradient(int width, int height) {
+        int[] frame = new int[width * height];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int red = x * 255 / width;
+                int green = y * 255 / height;
+                int blue = (x + y) & 0xFF;
+                frame[y * width + x] = BLACK | (red << 16) | (green << 8) | blue;
+            }
+        }
+        return frame;
+    }
+
+    /**
+     * @return A copy of the frame with small deterministic errors (like an encoder would add).
+     */
+    static int[] createNoisy(int[] frame) {
+        int[] noisy = new int[frame.length];
+        for (int i = 0; i < frame.length; i++) {
+            int error = (i * 7919) % 5;
+            int blue = Math.min(255, (frame[i] & 0xFF) + error);
+            noisy[i] = (frame[i] & 0xFFFFFF00) | blue;
+        }
+        return noisy;
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2015 Erwin Betschart
+ *
+ * This file is part of Video Comparator.
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.lipsch.videocomparator;
+
+import junit.framework.TestCase;
+
+/**
+ * Test for the class FramePacingStats.
+ */
+public class FramePacingStatsTest extends TestCase {
+
+    private static final long INTERVAL_NS = 16000000;
+
+    private final FramePacingStats target = new FramePacingStats(2, INTERVAL_NS);
+
+    public void testSteadyFrames() {
+        for (int i = 0; i < 10; i++) {
+            target.onFrameDrawn(i * INTERVAL_NS);
+        }
+
+        assertEquals(10, target.getDrawnFrames());
+        assertEquals(16.0, target.getAverageIntervalMs(), 1e-9);
+        assertEquals(16.0, target.getMaxIntervalMs(), 1e-9);
+        assertEquals(0, target.getJankCount());
+    }
+
+    public void testJank() {
+        target.onFrameDrawn(0);
+        target.onFrameDrawn(INTERVAL_NS);
+        target.onFrameDrawn(4 * INTERVAL_NS);
+
+        assertEquals(1, target.getJankCount());
+        assertEquals(48.0, target.getMaxIntervalMs(), 1e-9);
+        assertEquals(32.0, target.getAverageIntervalMs(), 1e-9);
+    }
+
+    public void testReplacedSourceFramesAreDropped() {
+        target.onSourceFrameAvailable(0);
+        target.onSourceFrameAvailable(1);
+        target.onSourceFrameAvailable(1);
+        target.onSourceFrameAvailable(1);
+        target.onFrameDrawn(0);
+
+        //No new frames: Nothing dropped.
+        target.onFrameDrawn(INTERVAL_NS);
+
+        target.onSourceFrameAvailable(0);
+        target.onFrameDrawn(2 * INTERVAL_NS);
+
+        assertEquals(2, target.getSourceFrames(0));
+        assertEquals(0, target.getDroppedSourceFrames(0));
+        assertEquals(3, target.getSourceFrames(1));
+        assertEquals(2, target.getDroppedSourceFrames(1));
+    }
+
+    public void testReset() {
+        target.onSourceFrameAvailable(0);
+        target.onFrameDrawn(0);
+        target.onFrameDrawn(10 * INTERVAL_NS);
+
+        target.reset();
+
+        assertEquals(0, target.getDrawnFrames());
+        assertEquals(0, target.getJankCount());
+        assertEquals(0, target.getSourceFrames(0));
+        assertEquals(0.0, target.getAverageIntervalMs(), 0.0);
+
+        //The first frame after a reset has no interval.
+        target.onFrameDrawn(100 * INTERVAL_NS);
+        assertEquals(0.0, target.getMaxIntervalMs(), 0.0);
+    }
+}
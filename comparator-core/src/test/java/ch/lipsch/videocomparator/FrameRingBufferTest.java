@@ -0,0 +1,159 @@
+/*
+ * Copyright (C) 2015 Erwin Betschart
+ *
+ * This file is part of Video Comparator.
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.lipsch.videocomparator;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Test for the class FrameRingBuffer.
+ */
+public class FrameRingBufferTest extends TestCase {
+
+    private final List<Long> evicted = new ArrayList<Long>();
+
+    public void testEmptyBufferMisses() {
+        FrameRingBuffer<String> target = createBuffer(4);
+
+        assertNull(target.get(0));
+        assertEquals(1, target.getMissCount());
+        assertEquals(0, target.getHitCount());
+        assertEquals(0.0, target.getHitRate(), 0.0);
+    }
+
+    public void testPutAndGet() {
+        FrameRingBuffer<String> target = createBuffer(4);
+
+        target.put(10, "f10");
+        target.put(11, "f11");
+
+        assertEquals("f10", target.get(10));
+        assertEquals("f11", target.get(11));
+        assertNull(target.get(12));
+        assertEquals(2, target.getHitCount());
+        assertEquals(1, target.getMissCount());
+        assertEquals(2.0 / 3.0, target.getHitRate(), 0.0001);
+    }
+
+    public void testAppendEvictsFirst() {
+        FrameRingBuffer<String> target = createBuffer(3);
+
+        for (long i = 0; i < 5; i++) {
+            target.put(i, "f" + i);
+        }
+
+        assertEquals(3, target.size());
+        assertEquals(2, target.getFirstIndex());
+        assertEquals(4, target.getLastIndex());
+        assertEquals(2, target.getEvictionCount());
+        assertEquals(Long.valueOf(0), evicted.get(0));
+        assertEquals(Long.valueOf(1), evicted.get(1));
+        assertEquals("f4", target.get(4));
+        assertNull(target.get(1));
+    }
+
+    public void testPrependEvictsLast() {
+        FrameRingBuffer<String> target = createBuffer(3);
+
+        for (long i = 10; i >= 6; i--) {
+            target.put(i, "f" + i);
+        }
+
+        assertEquals(6, target.getFirstIndex());
+        assertEquals(8, target.getLastIndex());
+        assertEquals(Long.valueOf(10), evicted.get(0));
+        assertEquals(Long.valueOf(9), evicted.get(1));
+        assertEquals("f6", target.get(6));
+        assertEquals("f8", target.get(8));
+    }
+
+    public void testForwardAndBackward() {
+        FrameRingBuffer<String> target = createBuffer(4);
+
+        for (long i = 0; i < 6; i++) {
+            target.put(i, "f" + i);
+        }
+        //Window is 2..5 now. Going back moves the window back.
+        target.put(1, "f1");
+
+        assertEquals(1, target.getFirstIndex());
+        assertEquals(4, target.getLastIndex());
+        for (long i = 1; i <= 4; i++) {
+            assertEquals("f" + i, target.get(i));
+        }
+    }
+
+    public void testJumpClearsWindow() {
+        FrameRingBuffer<String> target = createBuffer(4);
+
+        target.put(0, "f0");
+        target.put(1, "f1");
+        target.put(100, "f100");
+
+        assertEquals(1, target.size());
+        assertEquals(100, target.getFirstIndex());
+        assertEquals(2, evicted.size());
+        assertNull(target.get(0));
+    }
+
+    public void testReplaceEvictsOldFrame() {
+        FrameRingBuffer<String> target = createBuffer(4);
+
+        target.put(0, "old");
+        target.put(0, "new");
+
+        assertEquals(1, target.size());
+        assertEquals("new", target.get(0));
+        assertEquals(1, evicted.size());
+    }
+
+    public void testClear() {
+        FrameRingBuffer<String> target = createBuffer(4);
+
+        target.put(0, "f0");
+        target.put(1, "f1");
+        target.clear();
+
+        assertEquals(0, target.size());
+        assertFalse(target.contains(0));
+        assertEquals(2, evicted.size());
+    }
+
+    public void testInvalidCapacity() {
+        try {
+            new FrameRingBuffer<String>(0);
+            fail("Capacity must be positive");
+        } catch (IllegalArgumentException e) {
+            //expected
+        }
+    }
+
+    private FrameRingBuffer<String> createBuffer(int capacity) {
+        FrameRingBuffer<String> buffer = new FrameRingBuffer<String>(capacity);
+        buffer.setEvictionListener(new FrameRingBuffer.EvictionListener<String>() {
+            @Override
+            public void onEvicted(long frameIndex, String frame) {
+                evicted.add(frameIndex);
+            }
+        });
+        return buffer;
+    }
+}
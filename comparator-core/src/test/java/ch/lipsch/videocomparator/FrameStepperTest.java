@@ -0,0 +1,194 @@
+/*
+ * Copyright (C) 2015 Erwin Betschart
+ *
+ * This file is part of Video Comparator.
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.lipsch.videocomparator;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Test for the class FrameStepper. Uses a fake frame source so no device is needed.
+ */
+public class FrameStepperTest extends TestCase {
+
+    public void testStepForward() {
+        FakeFrameSource source = new FakeFrameSource(25.0, 10000000);
+        FrameStepper<Long> target = new FrameStepper<Long>(source, 8, 3);
+
+        target.setPosition(1000);
+
+        assertEquals(Long.valueOf(26), target.step(1));
+        assertEquals(1040, target.getPositionMs());
+        assertEquals(Long.valueOf(27), target.step(1));
+    }
+
+    public void testStepBack() {
+        FakeFrameSource source = new FakeFrameSource(25.0, 10000000);
+        FrameStepper<Long> target = new FrameStepper<Long>(source, 8, 3);
+
+        target.setPosition(1000);
+
+        assertEquals(Long.valueOf(24), target.step(-1));
+        assertEquals(Long.valueOf(23), target.step(-1));
+        assertEquals(920, target.getPositionMs());
+    }
+
+    public void testRepeatedStepsAreServedFromBuffer() {
+        FakeFrameSource source = new FakeFrameSource(30.0, 60000000);
+        FrameStepper<Long> target = new FrameStepper<Long>(source, 16, 4);
+
+        target.setPosition(5000);
+        for (int i = 0; i < 5; i++) {
+            target.step(1);
+        }
+        //Back to where we were: all of them are still buffered.
+        for (int i = 0; i < 4; i++) {
+            target.step(-1);
+        }
+
+        //The first step decodes the frame + 4 read ahead, the others are hits.
+        assertEquals(5, source.decodeCount);
+        assertEquals(8, target.getBuffer().getHitCount());
+        assertEquals(1, target.getBuffer().getMissCount());
+    }
+
+    public void testHitRateWhenSteppingForward() {
+        FakeFrameSource source = new FakeFrameSource(30.0, 60000000);
+        FrameStepper<Long> target = new FrameStepper<Long>(source, 16, 4);
+
+        for (int i = 0; i < 100; i++) {
+            target.step(1);
+        }
+
+        //Every fifth step misses, the read ahead serves the others.
+        assertEquals(0.8, target.getBuffer().getHitRate(), 0.001);
+        assertEquals(100, source.decodeCount);
+    }
+
+    public void testJumpRestartsBuffer() {
+        FakeFrameSource source = new FakeFrameSource(30.0, 60000000);
+        FrameStepper<Long> target = new FrameStepper<Long>(source, 16, 2);
+
+        target.setPosition(1000);
+        target.step(1);
+        target.setPosition(30000);
+        assertEquals(Long.valueOf(901), target.step(1));
+
+        assertEquals(901, target.getBuffer().getFirstIndex());
+    }
+
+    public void testClampedAtStartAndEnd() {
+        FakeFrameSource source = new FakeFrameSource(10.0, 1000000);
+        FrameStepper<Long> target = new FrameStepper<Long>(source, 4, 1);
+
+        assertEquals(Long.valueOf(0), target.step(-1));
+        assertEquals(10, target.getFrameCount());
+
+        target.setPosition(5000);
+        assertEquals(9, target.getCurrentFrame());
+        assertEquals(Long.valueOf(9), target.step(1));
+    }
+
+    public void testDecodeFailure() {
+        FakeFrameSource source = new FakeFrameSource(10.0, 1000000);
+        source.fail = true;
+        FrameStepper<Long> target = new FrameStepper<Long>(source, 4, 1);
+
+        assertNull(target.step(1));
+        assertEquals(0, target.getBuffer().size());
+    }
+
+    public void testInvalidReadAhead() {
+        try {
+            new FrameStepper<Long>(new FakeFrameSource(10.0, 1000000), 4, 4);
+            fail("Read ahead must be smaller than the buffer");
+        } catch (IllegalArgumentException e) {
+            //expected
+        }
+    }
+
+    public void testEvictedFramesAreReported() {
+        FakeFrameSource source = new FakeFrameSource(10.0, 10000000);
+        FrameStepper<Long> target = new FrameStepper<Long>(source, 3, 1);
+        final List<Long> evicted = new ArrayList<Long>();
+        target.setEvictionListener(new FrameRingBuffer.EvictionListener<Long>() {
+            @Override
+            public void onEvicted(long frameIndex, Long frame) {
+                evicted.add(frame);
+            }
+        });
+
+        //Frames 1 and 2 (read ahead), 3 evicts nothing, 4 (read ahead) evicts 1.
+        target.step(1);
+        target.step(1);
+        target.step(1);
+        assertEquals(Arrays.asList(1L), evicted);
+
+        target.clear();
+        assertEquals(Arrays.asList(1L, 2L, 3L, 4L), evicted);
+    }
+
+    public void testCapacityForBudget() {
+        long frameBytes = 1920 * 1080 * 4;
+
+        assertEquals(4, FrameStepper.capacityForBudget(4 * frameBytes + 1, frameBytes));
+        assertEquals(1, FrameStepper.capacityForBudget(frameBytes / 2, frameBytes));
+        assertEquals(FrameStepper.DEFAULT_BUFFER_CAPACITY, FrameStepper.capacityForBudget(Long.MAX_VALUE, frameBytes));
+        assertEquals(FrameStepper.DEFAULT_BUFFER_CAPACITY, FrameStepper.capacityForBudget(1000, 0));
+    }
+
+    public void testReadAheadForCapacity() {
+        assertEquals(0, FrameStepper.readAheadForCapacity(1));
+        assertEquals(2, FrameStepper.readAheadForCapacity(3));
+        assertEquals(FrameStepper.DEFAULT_READ_AHEAD, FrameStepper.readAheadForCapacity(FrameStepper.DEFAULT_BUFFER_CAPACITY));
+    }
+
+    /**
+     * Delivers the frame index of the requested time as frame.
+     */
+    private static class FakeFrameSource implements FrameSource<Long> {
+        private final double frameRate;
+        private final long durationUs;
+        private int decodeCount = 0;
+        private boolean fail = false;
+
+        FakeFrameSource(double frameRate, long durationUs) {
+            this.frameRate = frameRate;
+            this.durationUs = durationUs;
+        }
+
+        @Override
+        public Long decodeFrame(long timeUs) {
+            decodeCount++;
+            return fail ? null : (long) Math.floor(timeUs * frameRate / 1000000.0);
+        }
+
+        @Override
+        public long getDurationUs() {
+            return durationUs;
+        }
+
+        @Override
+        public double getFrameRate() {
+            return frameRate;
+        }
+    }
+}
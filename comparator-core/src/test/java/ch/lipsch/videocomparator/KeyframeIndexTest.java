@@ -0,0 +1,75 @@
+/*
+ * Copyright (C) 2015 Erwin Betschart
+ *
+ * This file is part of Video Comparator.
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.lipsch.videocomparator;
+
+import junit.framework.TestCase;
+
+/**
+ * Test for the class KeyframeIndex.
+ */
+public class KeyframeIndexTest extends TestCase {
+
+    private final KeyframeIndex target = new KeyframeIndex(
+            new long[]{0, 1000000, 2000000, 4000000},
+            new long[]{100, 2000, 3000, 5000},
+            5000000);
+
+    public void testFloorIndex() {
+        assertEquals(0, target.floorIndex(0));
+        assertEquals(0, target.floorIndex(999999));
+        assertEquals(1, target.floorIndex(1000000));
+        assertEquals(2, target.floorIndex(3999999));
+        assertEquals(3, target.floorIndex(10000000));
+    }
+
+    public void testFloorIndexBeforeFirstKeyframe() {
+        KeyframeIndex index = new KeyframeIndex(new long[]{500}, new long[]{0}, 1000);
+
+        assertEquals(0, index.floorIndex(100));
+    }
+
+    public void testFloorIndexEmpty() {
+        KeyframeIndex index = new KeyframeIndex(new long[0], new long[0], 0);
+
+        assertEquals(-1, index.floorIndex(100));
+        assertEquals(-1, index.nearestIndex(100));
+        assertEquals(1234, index.getKeyframeTimeBeforeMs(1234));
+    }
+
+    public void testNearestIndex() {
+        assertEquals(0, target.nearestIndex(400000));
+        assertEquals(1, target.nearestIndex(600000));
+        assertEquals(2, target.nearestIndex(2900000));
+        assertEquals(3, target.nearestIndex(3100000));
+        assertEquals(3, target.nearestIndex(9000000));
+    }
+
+    public void testKeyframeTimeBeforeMs() {
+        assertEquals(2000, target.getKeyframeTimeBeforeMs(3500));
+    }
+
+    public void testUnsortedTimesRejected() {
+        try {
+            new KeyframeIndex(new long[]{2, 1}, new long[]{0, 0}, 10);
+            fail("Times must be sorted");
+        } catch (IllegalArgumentException e) {
+            //expected
+        }
+    }
+}
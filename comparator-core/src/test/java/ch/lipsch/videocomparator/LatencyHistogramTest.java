@@ -0,0 +1,136 @@
+/*
+ * Copyright (C) 2015 Erwin Betschart
+ *
+ * This file is part of Video Comparator.
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.lipsch.videocomparator;
+
+import junit.framework.TestCase;
+
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Test for the class LatencyHistogram.
+ */
+public class LatencyHistogramTest extends TestCase {
+
+    public void testEmpty() {
+        LatencyHistogram target = new LatencyHistogram();
+
+        assertEquals(0, target.getCount());
+        assertEquals(0.0, target.getMeanMs(), 0.0);
+        assertEquals(0, target.getMaxMs());
+        assertEquals(0, target.getPercentileMs(0.95));
+        assertEquals(LatencyHistogram.DEFAULT_UPPER_BOUNDS_MS.length + 1, target.getBucketCount());
+    }
+
+    public void testBuckets() {
+        LatencyHistogram target = new LatencyHistogram(new long[]{10, 100});
+        target.record(0);
+        target.record(10);
+        target.record(11);
+        target.record(100);
+        target.record(101);
+        target.record(-5);
+
+        assertEquals(3, target.getCountInBucket(0));
+        assertEquals(2, target.getCountInBucket(1));
+        assertEquals(1, target.getCountInBucket(2));
+        assertEquals(Long.MAX_VALUE, target.getUpperBoundMs(2));
+        assertEquals(6, target.getCount());
+        assertEquals(101, target.getMaxMs());
+        assertEquals(222 / 6.0, target.getMeanMs(), 0.0001);
+    }
+
+    public void testPercentiles() {
+        LatencyHistogram target = new LatencyHistogram();
+        for (int i = 0; i < 90; i++) {
+            target.record(4);
+        }
+        for (int i = 0; i < 10; i++) {
+            target.record(300);
+        }
+
+        assertEquals(5, target.getPercentileMs(0.5));
+        assertEquals(5, target.getPercentileMs(0.9));
+        assertEquals(300, target.getPercentileMs(0.95)); //Bucket bound is 500 but the max is 300
+        assertEquals(5, target.getPercentileMs(0.0));
+    }
+
+    public void testReset() {
+        LatencyHistogram target = new LatencyHistogram();
+        target.record(42);
+        target.reset();
+
+        assertEquals(0, target.getCount());
+        assertEquals(0, target.getMaxMs());
+        assertEquals(0, target.getPercentileMs(1.0));
+    }
+
+    public void testConcurrentRecording() throws InterruptedException {
+        final LatencyHistogram target = new LatencyHistogram();
+        final int threadCount = 4;
+        final int recordsPerThread = 10000;
+        final CountDownLatch start = new CountDownLatch(1);
+        Thread[] threads = new Thread[threadCount];
+
+        for (int t = 0; t < threadCount; t++) {
+            final int offset = t;
+            threads[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    for (int i = 0; i < recordsPerThread; i++) {
+                        target.record(i % 1000 + offset);
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        long bucketTotal = 0;
+        for (int i = 0; i < target.getBucketCount(); i++) {
+            bucketTotal += target.getCountInBucket(i);
+        }
+        assertEquals(threadCount * recordsPerThread, target.getCount());
+        assertEquals(target.getCount(), bucketTotal);
+        assertEquals(999 + threadCount - 1, target.getMaxMs());
+    }
+
+    public void testInvalidBounds() {
+        try {
+            new LatencyHistogram(new long[]{10, 5});
+            fail("Bounds must be ascending");
+        } catch (IllegalArgumentException e) {
+            //expected
+        }
+
+        try {
+            new LatencyHistogram(new long[0]);
+            fail("At least one bucket is needed");
+        } catch (IllegalArgumentException e) {
+            //expected
+        }
+    }
+}
@@ -0,0 +1,205 @@
+/*
+ * Copyright (C) 2015 Erwin Betschart
+ *
+ * This file is part of Video Comparator.
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.lipsch.videocomparator;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Test for the class LinkedSeekCoordinator. Uses a fake clock and players which record the seeks.
+ */
+public class LinkedSeekCoordinatorTest extends TestCase {
+
+    private FakeClock clock = null;
+    private RecordingPlayer player1 = null;
+    private RecordingPlayer player2 = null;
+    private LinkedSeekCoordinator target = null;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        clock = new FakeClock();
+        player1 = new RecordingPlayer();
+        player2 = new RecordingPlayer();
+        target = new LinkedSeekCoordinator(new SeekScheduler(clock, player1), new SeekScheduler(clock, player2));
+    }
+
+    public void testUnlinkedSeekMovesOnePlayer() {
+        target.seekPrecise(1, 5000);
+
+        assertTrue(player1.seeks.isEmpty());
+        assertEquals(5000, (int) player2.seeks.get(0));
+
+        assertTrue(target.onSeekComplete(1));
+        assertTrue(target.isSettled());
+    }
+
+    public void testLinkedSeekMovesBothWithOffset() {
+        target.setLinked(true);
+        target.setOffsetMs(1, 1500);
+
+        target.seekPrecise(0, 10000);
+        assertEquals(10000, (int) player1.seeks.get(0));
+        assertEquals(11500, (int) player2.seeks.get(0));
+
+        //Seeking the second bar moves the first one back by the offset.
+        target.onSeekComplete(0);
+        target.onSeekComplete(1);
+        target.seekPrecise(1, 20000);
+        assertEquals(18500, (int) player1.seeks.get(1));
+        assertEquals(20000, (int) player2.seeks.get(1));
+    }
+
+    public void testSeekEachToOwnTarget() {
+        target.setLinked(true);
+        target.setOffsetMs(1, 1500);
+        target.setDurationMs(1, 8000);
+
+        //The targets are taken as they are, the offset is ignored.
+        target.seekPreciseEach(new int[]{4000, 9000});
+        assertEquals(4000, (int) player1.seeks.get(0));
+        assertEquals(8000, (int) player2.seeks.get(0));
+        assertFalse(target.onSeekComplete(0));
+        assertTrue(target.onSeekComplete(1));
+
+        //A negative target leaves the player alone.
+        target.seekPreciseEach(new int[]{-1, 2000});
+        assertEquals(1, player1.seeks.size());
+        assertEquals(2000, (int) player2.seeks.get(1));
+        assertTrue(target.onSeekComplete(1));
+
+        try {
+            target.seekPreciseEach(new int[]{1000});
+            fail("One target per player is needed");
+        } catch (IllegalArgumentException e) {
+            //expected
+        }
+    }
+
+    public void testSettledWhenAllPlayersCompleted() {
+        target.setLinked(true);
+        target.seekPrecise(0, 1000);
+
+        assertFalse(target.isSettled());
+        assertFalse(target.onSeekComplete(0));
+        assertFalse(target.isSettled());
+        assertTrue(target.onSeekComplete(1));
+        assertTrue(target.isSettled());
+
+        //Further completions (e.g. of corrective seeks) do not settle again.
+        assertFalse(target.onSeekComplete(1));
+    }
+
+    public void testPendingSeeksAreIssuedTogether() {
+        target.setLinked(true);
+        target.seekFast(0, 1000);
+        target.seekFast(0, 2000);
+        target.seekPrecise(0, 3000);
+
+        target.onSeekComplete(0);
+        target.onSeekComplete(1);
+
+        //Both players got the latest target, nothing in between.
+        assertEquals(2, player1.seeks.size());
+        assertEquals(2, player2.seeks.size());
+        assertEquals(3000, (int) player1.seeks.get(1));
+        assertEquals(3000, (int) player2.seeks.get(1));
+        assertFalse(target.isSettled());
+    }
+
+    public void testTargetsAreClamped() {
+        target.setLinked(true);
+        target.setOffsetMs(1, -2000);
+        target.setDurationMs(1, 8000);
+
+        target.seekPrecise(0, 1000);
+        assertEquals(0, (int) player2.seeks.get(0));
+
+        assertEquals(8000, target.getLinkedPositionMs(0, 15000, 1));
+        assertEquals(12000, target.getLinkedPositionMs(1, 10000, 0));
+    }
+
+    public void testTimeoutSettles() {
+        target.setLinked(true);
+        target.seekPrecise(0, 1000);
+        target.onSeekComplete(0);
+
+        clock.timeMs += SeekScheduler.DEFAULT_TIMEOUT_MS;
+        assertTrue(target.tick());
+    }
+
+    public void testResetSettlesLostPlayer() {
+        target.setLinked(true);
+        target.seekPrecise(0, 1000);
+        target.onSeekComplete(0);
+
+        target.reset(1);
+        assertTrue(target.isSettled());
+    }
+
+    public void testReferenceHasNoOffset() {
+        try {
+            target.setOffsetMs(0, 100);
+            fail("Player 0 is the reference");
+        } catch (IllegalArgumentException e) {
+            //expected
+        }
+    }
+
+    private static class FakeClock implements PlaybackClock {
+        long timeMs = 0;
+
+        @Override
+        public long getTimeMs() {
+            return timeMs;
+        }
+    }
+
+    private static class RecordingPlayer implements SyncablePlayer {
+        final List<Integer> seeks = new ArrayList<Integer>();
+
+        @Override
+        public int getCurrentPosition() {
+            return seeks.isEmpty() ? 0 : seeks.get(seeks.size() - 1);
+        }
+
+        @Override
+        public boolean isPlaying() {
+            return false;
+        }
+
+        @Override
+        public boolean seekTo(int positionMs) {
+            seeks.add(positionMs);
+            return true;
+        }
+
+        @Override
+        public boolean supportsPlaybackRate() {
+            return false;
+        }
+
+        @Override
+        public void setPlaybackRate(float rate) {
+            //Not supported
+        }
+    }
+}
@@ -0,0 +1,197 @@
+/*
+ * Copyright (C) 2015 Erwin Betschart
+ *
+ * This file is part of Video Comparator.
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.lipsch.videocomparator;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Test for the class LoaderPipeline. The callbacks are delivered to a queue which is drained by the test thread (like the main thread would).
+ */
+public class LoaderPipelineTest extends TestCase {
+
+    private static final long TIMEOUT_MS = 5000;
+
+    private final LinkedBlockingQueue<Runnable> mainQueue = new LinkedBlockingQueue<Runnable>();
+    private final Executor mainExecutor = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            mainQueue.add(command);
+        }
+    };
+
+    private BlockingLoader loader = null;
+    private RecordingCallback callback = null;
+    private LoaderPipeline<String, String> target = null;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        loader = new BlockingLoader();
+        callback = new RecordingCallback();
+        target = new LoaderPipeline<String, String>(2, loader, Executors.newFixedThreadPool(2), mainExecutor);
+        target.setCallback(callback);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        target.shutdown();
+        super.tearDown();
+    }
+
+    public void testSlotsAreLoadedInParallel() throws Exception {
+        loader.started = new CountDownLatch(2);
+
+        target.load(0, "a");
+        target.load(1, "b");
+
+        //Both loads run at the same time although neither is finished.
+        assertTrue(loader.started.await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+        assertTrue(target.isLoading());
+
+        loader.finish.countDown();
+        runCallbacks(2);
+
+        assertTrue(callback.loaded.contains("0:a"));
+        assertTrue(callback.loaded.contains("1:b"));
+        assertEquals(1, callback.allLoadedCount);
+        assertFalse(target.isLoading());
+    }
+
+    public void testAllLoadedWaitsForEverySlot() throws Exception {
+        loader.finish.countDown();
+
+        target.load(0, "a");
+        target.load(1, "b");
+        runCallbacks(1);
+
+        assertEquals(0, callback.allLoadedCount);
+
+        runCallbacks(1);
+        assertEquals(1, callback.allLoadedCount);
+    }
+
+    public void testNewSourceCancelsLoadInFlight() throws Exception {
+        loader.started = new CountDownLatch(1);
+
+        target.load(0, "a");
+        assertTrue(loader.started.await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+        target.load(0, "b");
+
+        loader.finish.countDown();
+        runCallbacks(2);
+
+        //Only the last picked source is delivered, the stale one is released.
+        assertEquals(1, callback.loaded.size());
+        assertEquals("0:b", callback.loaded.get(0));
+        assertTrue(loader.released.contains("loaded a"));
+        assertEquals(1, callback.allLoadedCount);
+    }
+
+    public void testCancelledSlotIsNotWaitedFor() throws Exception {
+        loader.started = new CountDownLatch(2);
+
+        target.load(0, "a");
+        target.load(1, "b");
+        assertTrue(loader.started.await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+        target.cancel(1);
+        assertFalse(target.isLoading(1));
+
+        loader.finish.countDown();
+        runCallbacks(2);
+
+        assertEquals(1, callback.loaded.size());
+        assertEquals(1, callback.allLoadedCount);
+        assertTrue(loader.released.contains("loaded b"));
+    }
+
+    public void testFailureIsDelivered() throws Exception {
+        loader.finish.countDown();
+
+        target.load(0, "fail");
+        runCallbacks(1);
+
+        assertEquals(1, callback.failed.size());
+        assertEquals("0:fail", callback.failed.get(0));
+        assertEquals(1, callback.allLoadedCount);
+    }
+
+    /**
+     * Runs the given number of callbacks in the test thread.
+     */
+    private void runCallbacks(int count) throws InterruptedException {
+        for (int i = 0; i < count; i++) {
+            Runnable callbackRunnable = mainQueue.poll(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+            assertNotNull("Callback not delivered", callbackRunnable);
+            callbackRunnable.run();
+        }
+    }
+
+    /**
+     * Loads a source as soon as the finish latch is released.
+     */
+    private static class BlockingLoader implements LoaderPipeline.Loader<String, String> {
+        final CountDownLatch finish = new CountDownLatch(1);
+        final List<String> released = new ArrayList<String>();
+        volatile CountDownLatch started = new CountDownLatch(0);
+
+        @Override
+        public String load(String source) throws Exception {
+            started.countDown();
+            assertTrue(finish.await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+            if (source.equals("fail")) {
+                throw new Exception("Can not load " + source);
+            }
+            return "loaded " + source;
+        }
+
+        @Override
+        public void release(String loaded) {
+            released.add(loaded);
+        }
+    }
+
+    private static class RecordingCallback implements LoaderPipeline.Callback<String, String> {
+        final List<String> loaded = new ArrayList<String>();
+        final List<String> failed = new ArrayList<String>();
+        int allLoadedCount = 0;
+
+        @Override
+        public void onLoaded(int slot, String source, String loadedSource) {
+            loaded.add(slot + ":" + source);
+        }
+
+        @Override
+        public void onLoadFailed(int slot, String source, Exception e) {
+            failed.add(slot + ":" + source);
+        }
+
+        @Override
+        public void onAllLoaded() {
+            allLoadedCount++;
+        }
+    }
+}
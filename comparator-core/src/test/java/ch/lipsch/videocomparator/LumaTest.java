@@ -0,0 +1,54 @@
+/*
+ * Copyright (C) 2015 Erwin Betschart
+ *
+ * This file is part of Video Comparator.
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.lipsch.videocomparator;
+
+import junit.framework.TestCase;
+
+/**
+ * Test for the class Luma.
+ */
+public class LumaTest extends TestCase {
+
+    public void testFromArgb() {
+        int[] argb = {0xFF000000, 0xFFFFFFFF, 0x00FFFFFF, 0xFF00FF00, 0xFFFF0000, 0xFF0000FF, 0xFF808080};
+        byte[] luma = new byte[argb.length];
+
+        Luma.fromArgb(argb, luma, argb.length);
+
+        assertEquals(0, luma[0] & 0xFF);
+        assertEquals(255, luma[1] & 0xFF);
+        //Alpha is ignored
+        assertEquals(255, luma[2] & 0xFF);
+        //Green is the brightest primary color, blue the darkest.
+        assertEquals(149, luma[3] & 0xFF);
+        assertEquals(77, luma[4] & 0xFF);
+        assertEquals(29, luma[5] & 0xFF);
+        assertEquals(128, luma[6] & 0xFF);
+    }
+
+    public void testPartialConversion() {
+        int[] argb = {0xFFFFFFFF, 0xFFFFFFFF};
+        byte[] luma = new byte[2];
+
+        Luma.fromArgb(argb, luma, 1);
+
+        assertEquals(255, luma[0] & 0xFF);
+        assertEquals(0, luma[1]);
+    }
+}
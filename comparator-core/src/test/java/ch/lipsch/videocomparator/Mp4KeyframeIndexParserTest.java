@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) 2015 Erwin Betschart
+ *
+ * This file is part of Video Comparator.
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.lipsch.videocomparator;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+
+/**
+ * Test for the class Mp4KeyframeIndexParser. Uses sample files written by Mp4TestFileBuilder.
+ */
+public class Mp4KeyframeIndexParserTest extends TestCase {
+
+    public void testKeyframeTimesAndOffsets() throws IOException {
+        Mp4TestFileBuilder builder = new Mp4TestFileBuilder();
+
+        KeyframeIndex index = parse(builder.write());
+
+        assertEquals(10, index.size());
+        assertEquals(10000000, index.getDurationUs());
+        for (int i = 0; i < index.size(); i++) {
+            assertEquals(builder.getSampleTimeUs(i * 30), index.getTimeUs(i));
+            assertEquals(builder.getSampleOffset(i * 30), index.getByteOffset(i));
+        }
+    }
+
+    public void testKeyframeNotAtChunkStart() throws IOException {
+        //Key frames every 7 samples, chunks of 10 samples: Offsets within chunks must be summed up.
+        Mp4TestFileBuilder builder = new Mp4TestFileBuilder().setKeyframeInterval(7).setSamplesPerChunk(10).setSampleSize(333);
+
+        KeyframeIndex index = parse(builder.write());
+
+        assertEquals(43, index.size());
+        for (int i = 0; i < index.size(); i++) {
+            assertEquals(builder.getSampleOffset(i * 7), index.getByteOffset(i));
+        }
+    }
+
+    public void testMoovAtEnd() throws IOException {
+        Mp4TestFileBuilder builder = new Mp4TestFileBuilder().setMoovAtEnd(true);
+
+        KeyframeIndex index = parse(builder.write());
+
+        assertEquals(10, index.size());
+        assertEquals(builder.getSampleOffset(30), index.getByteOffset(1));
+    }
+
+    public void testVideoTrackAfterAudioTrack() throws IOException {
+        Mp4TestFileBuilder builder = new Mp4TestFileBuilder().setWithAudioTrackFirst(true);
+
+        KeyframeIndex index = parse(builder.write());
+
+        assertEquals(10, index.size());
+    }
+
+    public void testOtherTimeScale() throws IOException {
+        //25 fps with time scale 1000
+        Mp4TestFileBuilder builder = new Mp4TestFileBuilder().setTimeScale(1000).setFrameDuration(40).setFrameCount(250).setKeyframeInterval(25);
+
+        KeyframeIndex index = parse(builder.write());
+
+        assertEquals(10, index.size());
+        assertEquals(3000000, index.getTimeUs(3));
+    }
+
+    public void testNoMoov() throws IOException {
+        File file = File.createTempFile("nomoov", ".mp4");
+        file.deleteOnExit();
+        RandomAccessFile out = new RandomAccessFile(file, "rw");
+        out.write(Mp4TestFileBuilder.box("mdat", new byte[100]));
+        out.close();
+
+        try {
+            parse(file);
+            fail("File has no moov box");
+        } catch (IOException e) {
+            //expected
+        }
+    }
+
+    public void testNoVideoTrack() throws IOException {
+        ByteBuffer moov = ByteBuffer.wrap(Mp4TestFileBuilder.box("udta", new byte[4]));
+
+        try {
+            Mp4KeyframeIndexParser.parseMoov(moov);
+            fail("moov has no video track");
+        } catch (IOException e) {
+            //expected
+        }
+    }
+
+    public void testCorruptBoxSize() throws IOException {
+        ByteBuffer moov = ByteBuffer.wrap(new byte[]{0, 0, 0, 100, 't', 'r', 'a', 'k'});
+
+        try {
+            Mp4KeyframeIndexParser.parseMoov(moov);
+            fail("Box size exceeds the moov box");
+        } catch (IOException e) {
+            //expected
+        }
+    }
+
+    private static KeyframeIndex parse(File file) throws IOException {
+        RandomAccessFile in = new RandomAccessFile(file, "r");
+        try {
+            return Mp4KeyframeIndexParser.parse(in.getChannel());
+        } finally {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,220 @@
+/*
+ * Copyright (C) 2015 Erwin Betschart
+ *
+ * This file is part of Video Comparator.
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.lipsch.videocomparator;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * Writes minimal MP4 sample files for tests. Only the boxes needed by the index parser are written, the media data is filled with zeros.
+ */
+class Mp4TestFileBuilder {
+
+    private int timeScale = 90000;
+    private int frameDuration = 3000; //30 fps
+    private int frameCount = 300;
+    private int keyframeInterval = 30;
+    private int samplesPerChunk = 10;
+    private int sampleSize = 100;
+    private boolean withAudioTrackFirst = false;
+    private boolean moovAtEnd = false;
+
+    public Mp4TestFileBuilder setTimeScale(int timeScale) {
+        this.timeScale = timeScale;
+        return this;
+    }
+
+    public Mp4TestFileBuilder setFrameDuration(int frameDuration) {
+        this.frameDuration = frameDuration;
+        return this;
+    }
+
+    public Mp4TestFileBuilder setFrameCount(int frameCount) {
+        this.frameCount = frameCount;
+        return this;
+    }
+
+    public Mp4TestFileBuilder setKeyframeInterval(int keyframeInterval) {
+        this.keyframeInterval = keyframeInterval;
+        return this;
+    }
+
+    public Mp4TestFileBuilder setSamplesPerChunk(int samplesPerChunk) {
+        this.samplesPerChunk = samplesPerChunk;
+        return this;
+    }
+
+    public Mp4TestFileBuilder setSampleSize(int sampleSize) {
+        this.sampleSize = sampleSize;
+        return this;
+    }
+
+    public Mp4TestFileBuilder setWithAudioTrackFirst(boolean withAudioTrackFirst) {
+        this.withAudioTrackFirst = withAudioTrackFirst;
+        return this;
+    }
+
+    public Mp4TestFileBuilder setMoovAtEnd(boolean moovAtEnd) {
+        this.moovAtEnd = moovAtEnd;
+        return this;
+    }
+
+    /**
+     * @return The byte offset of the given sample in the written file.
+     */
+    public long getSampleOffset(int sample) {
+        return getMdatDataOffset() + (long) sample * sampleSize;
+    }
+
+    public long getSampleTimeUs(int sample) {
+        return (long) sample * frameDuration * 1000000L / timeScale;
+    }
+
+    public File write() throws IOException {
+        File file = File.createTempFile("keyframes", ".mp4");
+        file.deleteOnExit();
+
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(box("ftyp", concat("isom".getBytes("US-ASCII"), new byte[8])));
+            if (moovAtEnd) {
+                out.write(mdat());
+                out.write(moov());
+            } else {
+                out.write(moov());
+                out.write(mdat());
+            }
+        } finally {
+            out.close();
+        }
+        return file;
+    }
+
+    private long getMdatDataOffset() {
+        long offset = 8 + 16; //ftyp
+        if (!moovAtEnd) {
+            offset += getMoovSize();
+        }
+        return offset + 8; //mdat header
+    }
+
+    /**
+     * The size of the moov box does not depend on the chunk offsets written into it.
+     */
+    private long getMoovSize() {
+        int chunkCount = (frameCount + samplesPerChunk - 1) / samplesPerChunk;
+        int keyframeCount = (frameCount + keyframeInterval - 1) / keyframeInterval;
+
+        int stbl = 8 + (16 + 8 + 4 * 2) + (16 + 4 * keyframeCount) + (16 + 4 * 3) + (20 + 4 * frameCount) + (16 + 4 * chunkCount);
+        int videoTrack = 8 + 8 + (12 + 20) + (12 + 20) + 8 + stbl;
+        int audioTrack = 8 + 8 + (12 + 20) + (12 + 20) + 8 + 8;
+        return 8 + videoTrack + (withAudioTrackFirst ? audioTrack : 0);
+    }
+
+    private byte[] mdat() throws IOException {
+        return box("mdat", new byte[frameCount * sampleSize]);
+    }
+
+    private byte[] moov() throws IOException {
+        byte[] videoTrack = track("vide", true);
+        if (withAudioTrackFirst) {
+            return box("moov", concat(track("soun", false), videoTrack));
+        }
+        return box("moov", videoTrack);
+    }
+
+    private byte[] track(String handler, boolean withTables) throws IOException {
+        byte[] hdlr = fullBox("hdlr", ints(0, fourCc(handler), 0, 0, 0));
+        byte[] mdhd = fullBox("mdhd", ints(0, 0, timeScale, frameCount * frameDuration, 0));
+        byte[] stbl = withTables ? box("stbl", sampleTables()) : box("stbl", new byte[0]);
+        return box("trak", box("mdia", concat(mdhd, hdlr, box("minf", stbl))));
+    }
+
+    private byte[] sampleTables() throws IOException {
+        byte[] stts = fullBox("stts", ints(1, frameCount, frameDuration));
+
+        int keyframeCount = (frameCount + keyframeInterval - 1) / keyframeInterval;
+        int[] stssValues = new int[keyframeCount + 1];
+        stssValues[0] = keyframeCount;
+        for (int i = 0; i < keyframeCount; i++) {
+            stssValues[i + 1] = i * keyframeInterval + 1;
+        }
+        byte[] stss = fullBox("stss", ints(stssValues));
+
+        byte[] stsc = fullBox("stsc", ints(1, 1, samplesPerChunk, 1));
+
+        int[] stszValues = new int[frameCount + 2];
+        stszValues[0] = 0;
+        stszValues[1] = frameCount;
+        for (int i = 0; i < frameCount; i++) {
+            stszValues[i + 2] = sampleSize;
+        }
+        byte[] stsz = fullBox("stsz", ints(stszValues));
+
+        int chunkCount = (frameCount + samplesPerChunk - 1) / samplesPerChunk;
+        int[] stcoValues = new int[chunkCount + 1];
+        stcoValues[0] = chunkCount;
+        for (int i = 0; i < chunkCount; i++) {
+            stcoValues[i + 1] = (int) getSampleOffset(i * samplesPerChunk);
+        }
+        byte[] stco = fullBox("stco", ints(stcoValues));
+
+        return concat(stts, stss, stsc, stsz, stco);
+    }
+
+    private static byte[] fullBox(String type, byte[] content) throws IOException {
+        //version 0, flags 0
+        return box(type, concat(new byte[4], content));
+    }
+
+    static byte[] box(String type, byte[] content) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(8 + content.length);
+        out.writeInt(fourCc(type));
+        out.write(content);
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    private static byte[] ints(int... values) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        for (int value : values) {
+            out.writeInt(value);
+        }
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    private static byte[] concat(byte[]... parts) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        for (byte[] part : parts) {
+            bytes.write(part, 0, part.length);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static int fourCc(String type) {
+        return Mp4KeyframeIndexParser.fourCc(type);
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2015 Erwin Betschart
+ *
+ * This file is part of Video Comparator.
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.lipsch.videocomparator;
+
+import junit.framework.TestCase;
+
+import ch.lipsch.videocomparator.PlayStateMachine.Event;
+import ch.lipsch.videocomparator.VideoPlayState.State;
+
+/**
+ * Test for the class PlayStateMachine.
+ */
+public class PlayStateMachineTest extends TestCase {
+
+    public void testPlayPauseStop() {
+        assertEquals(State.PLAYING, PlayStateMachine.next(State.LOADED, Event.PLAY));
+        assertEquals(State.PAUSING, PlayStateMachine.next(State.PLAYING, Event.PAUSE));
+        assertEquals(State.PLAYING, PlayStateMachine.next(State.PAUSING, Event.PLAY));
+        assertEquals(State.LOADED, PlayStateMachine.next(State.PAUSING, Event.STOP));
+        assertEquals(State.LOADED, PlayStateMachine.next(State.PLAYING, Event.COMPLETE));
+    }
+
+    public void testBuffering() {
+        assertEquals(State.BUFFERING, PlayStateMachine.next(State.PLAYING, Event.BUFFERING_START));
+        assertEquals(State.WAITING, PlayStateMachine.next(State.BUFFERING, Event.BUFFERING_END));
+        assertEquals(State.WAITING, PlayStateMachine.next(State.PLAYING, Event.PARTNER_STALLED));
+        assertEquals(State.PLAYING, PlayStateMachine.next(State.WAITING, Event.PARTNER_RESUMED));
+        assertEquals(State.BUFFERING, PlayStateMachine.next(State.WAITING, Event.BUFFERING_START));
+        assertEquals(State.PAUSING, PlayStateMachine.next(State.BUFFERING, Event.PAUSE));
+        assertEquals(State.PAUSING, PlayStateMachine.next(State.WAITING, Event.PAUSE));
+    }
+
+    public void testIgnoredEventsKeepState() {
+        //Buffering of a paused or stopped video is not a stall.
+        assertEquals(State.PAUSING, PlayStateMachine.next(State.PAUSING, Event.BUFFERING_START));
+        assertEquals(State.LOADED, PlayStateMachine.next(State.LOADED, Event.BUFFERING_END));
+        assertEquals(State.EMPTY, PlayStateMachine.next(State.EMPTY, Event.PLAY));
+        assertEquals(State.ERROR, PlayStateMachine.next(State.ERROR, Event.PLAY));
+        assertEquals(State.PAUSING, PlayStateMachine.next(State.PAUSING, Event.PARTNER_RESUMED));
+        assertFalse(PlayStateMachine.isAllowed(State.PAUSING, Event.BUFFERING_START));
+        assertTrue(PlayStateMachine.isAllowed(State.LOADED, Event.STOP));
+    }
+
+    public void testLoadAndUnloadFromAnyState() {
+        for (State state : State.values()) {
+            assertEquals(State.LOADED, PlayStateMachine.next(state, Event.LOAD));
+            assertEquals(State.EMPTY, PlayStateMachine.next(state, Event.UNLOAD));
+        }
+    }
+
+    public void testEveryStateCanBeLeft() {
+        for (State state : State.values()) {
+            boolean canBeLeft = false;
+            for (Event event : Event.values()) {
+                canBeLeft |= PlayStateMachine.next(state, event) != state;
+            }
+            assertTrue(state.name(), canBeLeft);
+        }
+    }
+}
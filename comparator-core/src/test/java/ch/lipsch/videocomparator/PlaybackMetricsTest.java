@@ -0,0 +1,155 @@
+/*
+ * Copyright (C) 2015 Erwin Betschart
+ *
+ * This file is part of Video Comparator.
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.lipsch.videocomparator;
+
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.io.StringWriter;
+
+/**
+ * Test for the classes PlaybackMetrics and PlayerMetrics. Uses a fake clock.
+ */
+public class PlaybackMetricsTest extends TestCase {
+
+    private FakeClock clock = null;
+    private PlaybackMetrics target = null;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        clock = new FakeClock();
+        target = new PlaybackMetrics(clock, 2);
+    }
+
+    public void testPrepareAndFirstFrame() {
+        PlayerMetrics player = target.getPlayer(0);
+        player.onPrepareStarted();
+        clock.timeMs += 300;
+        player.onPrepared();
+        clock.timeMs += 50;
+        player.onFirstFrame();
+
+        //A frame shown again on a new surface (e.g. after a rotation) is not measured.
+        clock.timeMs += 1000;
+        player.onPrepared();
+        player.onFirstFrame();
+
+        assertEquals(1, player.getPrepareLatency().getCount());
+        assertEquals(300, player.getPrepareLatency().getMaxMs());
+        assertEquals(1, player.getTimeToFirstFrame().getCount());
+        assertEquals(350, player.getTimeToFirstFrame().getMaxMs());
+        assertEquals(0, target.getPlayer(1).getPrepareLatency().getCount());
+    }
+
+    public void testBufferingStalls() {
+        PlayerMetrics player = target.getPlayer(1);
+        player.onBufferingStart();
+        clock.timeMs += 100;
+        player.onBufferingStart(); //Still the same stall
+        assertTrue(player.isBuffering());
+        clock.timeMs += 100;
+        player.onBufferingEnd();
+        player.onBufferingEnd();
+
+        assertFalse(player.isBuffering());
+        assertEquals(1, player.getBufferingStalls());
+        assertEquals(1, player.getStallDuration().getCount());
+        assertEquals(200, player.getStallDuration().getMaxMs());
+    }
+
+    public void testReset() {
+        PlayerMetrics player = target.getPlayer(0);
+        player.addDroppedFrames(3);
+        player.onVideoTrackLagging();
+        target.recordDrift(40);
+        target.recordSessionStall(1200);
+        target.reset();
+
+        assertEquals(0, player.getDroppedFrames());
+        assertEquals(0, player.getLaggingReports());
+        assertEquals(0, target.getDrift().getCount());
+        assertEquals(0, target.getSessionStalls().getCount());
+    }
+
+    public void testCsv() throws IOException {
+        target.getPlayer(0).getSeekLatency().record(80);
+        target.getPlayer(1).addDroppedFrames(7);
+        target.recordDrift(30);
+
+        StringWriter writer = new StringWriter();
+        target.writeCsv(writer);
+        String[] lines = writer.toString().split("\n");
+
+        assertEquals(PlaybackMetrics.CSV_HEADER, lines[0]);
+        //7 metrics per player and 3 of the sync engine.
+        assertEquals(1 + 2 * 7 + 3, lines.length);
+        assertTrue(writer.toString().contains("player1,seek_latency,1,80.00,80,80,80\n"));
+        assertTrue(writer.toString().contains("player2,dropped_frames,7,,,,\n"));
+        assertTrue(writer.toString().contains("sync,drift,1,30.00,30,30,30\n"));
+        for (String line : lines) {
+            assertEquals(line, 7, line.split(",", -1).length);
+        }
+    }
+
+    public void testJson() throws IOException {
+        target.getPlayer(0).getSeekLatency().record(80);
+        target.getPlayer(1).onVideoTrackLagging();
+
+        StringWriter writer = new StringWriter();
+        target.writeJson(writer);
+        String json = writer.toString();
+
+        assertTrue(json.startsWith("{"));
+        assertTrue(json.trim().endsWith("}"));
+        assertTrue(json.contains("\"seekLatency\": {\"count\": 1, \"meanMs\": 80.00, \"p50Ms\": 80, \"p95Ms\": 80, \"maxMs\": 80"));
+        assertTrue(json.contains("\"laggingReports\": 1"));
+        assertTrue(json.contains("{\"upToMs\": 100, \"count\": 1}"));
+        assertTrue(json.contains("{\"upToMs\": null, \"count\": 0}"));
+        assertEquals(count(json, '{'), count(json, '}'));
+        assertEquals(count(json, '['), count(json, ']'));
+    }
+
+    public void testSummary() {
+        String summary = target.formatSummary();
+
+        assertTrue(summary.contains("video 1"));
+        assertTrue(summary.contains("video 2"));
+        assertTrue(summary.contains("drift"));
+    }
+
+    private static int count(String text, char c) {
+        int count = 0;
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) == c) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static class FakeClock implements PlaybackClock {
+        long timeMs = 0;
+
+        @Override
+        public long getTimeMs() {
+            return timeMs;
+        }
+    }
+}
@@ -0,0 +1,181 @@
+/*
+ * Copyright (C) 2015 Erwin Betschart
+ *
+ * This file is part of Video Comparator.
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.lipsch.videocomparator;
+
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Test for the class PrefetchEngine. Uses fake sources which only record the read ranges.
+ */
+public class PrefetchEngineTest extends TestCase {
+
+    private static final long WINDOW_BYTES = 4 * PrefetchEngine.CHUNK_SIZE;
+    private static final long SIZE = 100 * PrefetchEngine.CHUNK_SIZE;
+    private static final long TIMEOUT_MS = 5000;
+
+    private PrefetchEngine target = null;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        target = new PrefetchEngine(2, WINDOW_BYTES);
+        target.start();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        target.release();
+        super.tearDown();
+    }
+
+    public void testWindowIsReadAhead() throws Exception {
+        FakeSource source = new FakeSource(SIZE);
+        target.setSource(0, opener(source));
+
+        waitForAheadBytes(0, WINDOW_BYTES);
+
+        assertEquals(WINDOW_BYTES, target.getPrefetchedBytes(0));
+        assertEquals(Long.valueOf(0), source.getOffsets().get(0));
+        assertEquals(4, source.getOffsets().size());
+    }
+
+    public void testSeekMovesWindow() throws Exception {
+        FakeSource source = new FakeSource(SIZE);
+        target.setSource(0, opener(source));
+        target.setTimeline(0, null, 10000);
+        waitForAheadBytes(0, WINDOW_BYTES);
+
+        target.setPositionMs(0, 5000);
+
+        waitForAheadBytes(0, WINDOW_BYTES);
+        assertTrue(source.getOffsets().contains(SIZE / 2));
+        assertEquals(2 * WINDOW_BYTES, target.getPrefetchedBytes(0));
+    }
+
+    public void testBothStreamsAreRead() throws Exception {
+        FakeSource source1 = new FakeSource(SIZE);
+        FakeSource source2 = new FakeSource(SIZE);
+        target.setSource(0, opener(source1));
+        target.setSource(1, opener(source2));
+
+        waitForAheadBytes(0, WINDOW_BYTES);
+        waitForAheadBytes(1, WINDOW_BYTES);
+    }
+
+    public void testReplacedSourceIsClosed() throws Exception {
+        FakeSource source1 = new FakeSource(SIZE);
+        FakeSource source2 = new FakeSource(SIZE);
+        target.setSource(0, opener(source1));
+        waitForAheadBytes(0, WINDOW_BYTES);
+
+        target.setSource(0, opener(source2));
+        waitForAheadBytes(0, WINDOW_BYTES);
+
+        assertTrue(source1.isClosed());
+        assertFalse(source2.isClosed());
+    }
+
+    public void testFailingSourceIsCounted() throws Exception {
+        target.setSource(0, new PrefetchEngine.Opener() {
+            @Override
+            public PrefetchSource open() throws IOException {
+                throw new IOException("Not found");
+            }
+        });
+
+        long endMs = System.currentTimeMillis() + TIMEOUT_MS;
+        while (target.getFailureCount(0) == 0 && System.currentTimeMillis() < endMs) {
+            Thread.sleep(10);
+        }
+        assertEquals(1, target.getFailureCount(0));
+        assertEquals(0, target.getAheadBytes(0));
+    }
+
+    public void testByteOffsetFromKeyframes() {
+        KeyframeIndex index = new KeyframeIndex(new long[]{0, 2000000, 4000000}, new long[]{100, 5000, 9000}, 6000000);
+
+        assertEquals(100, PrefetchEngine.toByteOffset(1999, index, 6000, 12000));
+        assertEquals(5000, PrefetchEngine.toByteOffset(2000, index, 6000, 12000));
+        assertEquals(9000, PrefetchEngine.toByteOffset(5000, index, 6000, 12000));
+    }
+
+    public void testByteOffsetWithoutKeyframes() {
+        assertEquals(5000, PrefetchEngine.toByteOffset(500, null, 1000, 10000));
+        assertEquals(10000, PrefetchEngine.toByteOffset(2000, null, 1000, 10000));
+        assertEquals(0, PrefetchEngine.toByteOffset(500, null, 0, 10000));
+    }
+
+    private void waitForAheadBytes(int stream, long bytes) throws InterruptedException {
+        long endMs = System.currentTimeMillis() + TIMEOUT_MS;
+        while (target.getAheadBytes(stream) < bytes && System.currentTimeMillis() < endMs) {
+            Thread.sleep(10);
+        }
+        assertEquals(bytes, target.getAheadBytes(stream));
+    }
+
+    private static PrefetchEngine.Opener opener(final FakeSource source) {
+        return new PrefetchEngine.Opener() {
+            @Override
+            public PrefetchSource open() {
+                return source;
+            }
+        };
+    }
+
+    private static class FakeSource implements PrefetchSource {
+        private final long size;
+        private final List<Long> offsets = new ArrayList<Long>();
+        private boolean closed = false;
+
+        FakeSource(long size) {
+            this.size = size;
+        }
+
+        @Override
+        public long size() {
+            return size;
+        }
+
+        @Override
+        public synchronized int prefetch(long position, ByteBuffer buffer) {
+            offsets.add(position);
+            int length = (int) Math.min(buffer.remaining(), size - position);
+            buffer.position(buffer.position() + length);
+            return length;
+        }
+
+        @Override
+        public synchronized void close() {
+            closed = true;
+        }
+
+        synchronized List<Long> getOffsets() {
+            return new ArrayList<Long>(offsets);
+        }
+
+        synchronized boolean isClosed() {
+            return closed;
+        }
+    }
+}
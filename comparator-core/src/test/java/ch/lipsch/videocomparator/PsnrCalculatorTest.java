@@ -0,0 +1,119 @@
+/*
+ * Copyright (C) 2015 Erwin Betschart
+ *
+ * This file is part of Video Comparator.
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.lipsch.videocomparator;
+
+import junit.framework.TestCase;
+
+import java.util.Arrays;
+
+/**
+ * Test for the class PsnrCalculator.
+ */
+public class PsnrCalculatorTest extends TestCase {
+
+    private BandExecutor executor = null;
+    private PsnrCalculator target = null;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        executor = new BandExecutor(3);
+        target = new PsnrCalculator(executor);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        executor.shutdown();
+        super.tearDown();
+    }
+
+    public void testEqualPlanes() {
+        byte[] plane = createPlane(64, 64, 1);
+
+        assertEquals(Double.POSITIVE_INFINITY, target.compute(plane, plane.clone(), plane.length), 0.0);
+        assertEquals(0.0, target.getLastMse(), 0.0);
+    }
+
+    public void testUniformError() {
+        byte[] plane1 = new byte[1000];
+        byte[] plane2 = new byte[1000];
+        Arrays.fill(plane1, (byte) 100);
+        Arrays.fill(plane2, (byte) 101);
+
+        //20 * log10(255 / 1)
+        assertEquals(48.130803608679, target.compute(plane1, plane2, 1000), 1e-9);
+
+        Arrays.fill(plane2, (byte) 110);
+        //20 * log10(255 / 10)
+        assertEquals(28.130803608679, target.compute(plane1, plane2, 1000), 1e-9);
+    }
+
+    public void testMaximumError() {
+        byte[] black = new byte[100];
+        byte[] white = new byte[100];
+        Arrays.fill(white, (byte) 255);
+
+        assertEquals(0.0, target.compute(black, white, 100), 1e-9);
+        assertEquals(255.0 * 255.0, target.getLastMse(), 0.0);
+    }
+
+    public void testMatchesReference() {
+        byte[] plane1 = createPlane(97, 31, 1);
+        byte[] plane2 = createPlane(97, 31, 2);
+
+        assertEquals(referencePsnr(plane1, plane2), target.compute(plane1, plane2, plane1.length), 1e-9);
+    }
+
+    public void testInvalidPlanes() {
+        try {
+            target.compute(new byte[10], new byte[9], 10);
+            fail("Planes must have enough values");
+        } catch (IllegalArgumentException e) {
+            //expected
+        }
+    }
+
+    /**
+     * The PSNR straight from the definition.
+     */
+    static double referencePsnr(byte[] plane1, byte[] plane2) {
+        double squaredErrors = 0;
+        for (int i = 0; i < plane1.length; i++) {
+            double error = (plane1[i] & 0xFF) - (plane2[i] & 0xFF);
+            squaredErrors += error * error;
+        }
+        double mse = squaredErrors / plane1.length;
+        return 10 * Math.log10(255 * 255 / mse);
+    }
+
+    /**
+     * @return A deterministic plane with some structure. Different seeds deliver similar planes with noise.
+     */
+    static byte[] createPlane(int width, int height, int seed) {
+        byte[] plane = new byte[width * height];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int value = (x * 3 + y * 5) % 256;
+                int noise = ((x * 31 + y * 17) * seed * 7919) % 9 - 4;
+                plane[y * width + x] = (byte) Math.max(0, Math.min(255, value + noise));
+            }
+        }
+        return plane;
+    }
+}
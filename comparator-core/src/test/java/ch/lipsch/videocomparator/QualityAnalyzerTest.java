@@ -0,0 +1,142 @@
+/*
+ * Copyright (C) 2015 Erwin Betschart
+ *
+ * This file is part of Video Comparator.
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.lipsch.videocomparator;
+
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Arrays;
+
+/**
+ * Test for the class QualityAnalyzer.
+ */
+public class QualityAnalyzerTest extends TestCase {
+
+    private BandExecutor executor = null;
+    private QualityAnalyzer target = null;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        executor = new BandExecutor(2);
+        target = new QualityAnalyzer(executor);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        executor.shutdown();
+        super.tearDown();
+    }
+
+    public void testTimeSeriesAndSummary() throws Exception {
+        //Frame 0 equal, frame 1 off by one, frame 2 off by ten.
+        FakeSource source1 = new FakeSource(16, 16, 100, 100, 100);
+        FakeSource source2 = new FakeSource(16, 16, 100, 101, 110);
+        StringWriter timeSeries = new StringWriter();
+
+        QualitySummary summary = target.analyze(source1, source2, timeSeries);
+
+        String[] lines = timeSeries.toString().split("\n");
+        assertEquals(4, lines.length);
+        assertEquals(QualityAnalyzer.CSV_HEADER, lines[0]);
+        assertEquals("0,0,inf,1.000000", lines[1]);
+        assertTrue(lines[2], lines[2].startsWith("1,40,48.1308,"));
+        assertTrue(lines[3], lines[3].startsWith("2,80,28.1308,"));
+
+        assertEquals(3, summary.getFrameCount());
+        assertEquals(28.1308, summary.getMinPsnr(), 1e-4);
+        assertEquals(2, summary.getMinPsnrFrame());
+        assertEquals((PsnrCalculator.MAX_PSNR_DB + 48.1308 + 28.1308) / 3, summary.getMeanPsnr(), 1e-4);
+        assertEquals(2, summary.getMinSsimFrame());
+    }
+
+    public void testStopsAtShorterVideo() throws Exception {
+        FakeSource source1 = new FakeSource(8, 8, 1, 2, 3, 4);
+        FakeSource source2 = new FakeSource(8, 8, 1, 2);
+
+        QualitySummary summary = target.analyze(source1, source2, null);
+
+        assertEquals(2, summary.getFrameCount());
+        assertEquals(1.0, summary.getMeanSsim(), 1e-12);
+    }
+
+    public void testDifferentSizes() throws Exception {
+        try {
+            target.analyze(new FakeSource(8, 8, 1), new FakeSource(16, 8, 1), null);
+            fail("Videos must have the same size");
+        } catch (IllegalArgumentException e) {
+            //expected
+        }
+    }
+
+    public void testInterruptCancels() throws Exception {
+        Thread.currentThread().interrupt();
+        try {
+            target.analyze(new FakeSource(8, 8, 1), new FakeSource(8, 8, 1), null);
+            fail("Interrupted analysis must be cancelled");
+        } catch (InterruptedException e) {
+            //expected
+        }
+    }
+
+    public void testSummaryFormat() throws Exception {
+        QualitySummary summary = target.analyze(new FakeSource(8, 8, 5), new FakeSource(8, 8, 6), null);
+        StringWriter writer = new StringWriter();
+
+        summary.write(writer);
+
+        assertTrue(writer.toString(), writer.toString().startsWith("frames=1\npsnr_mean_db=48.1308\n"));
+    }
+
+    /**
+     * Delivers uniform frames with the given luma values at 25 fps.
+     */
+    private static class FakeSource implements LumaFrameSource {
+        private final int width;
+        private final int height;
+        private final int[] values;
+        private int next = 0;
+
+        FakeSource(int width, int height, int... values) {
+            this.width = width;
+            this.height = height;
+            this.values = values;
+        }
+
+        @Override
+        public int getWidth() {
+            return width;
+        }
+
+        @Override
+        public int getHeight() {
+            return height;
+        }
+
+        @Override
+        public long readNextFrame(byte[] luma) throws IOException {
+            if (next >= values.length) {
+                return -1;
+            }
+            Arrays.fill(luma, 0, width * height, (byte) values[next]);
+            return next++ * 40000L;
+        }
+    }
+}
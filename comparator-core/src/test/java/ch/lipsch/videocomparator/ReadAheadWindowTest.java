@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) 2015 Erwin Betschart
+ *
+ * This file is part of Video Comparator.
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.lipsch.videocomparator;
+
+import junit.framework.TestCase;
+
+/**
+ * Test for the class ReadAheadWindow.
+ */
+public class ReadAheadWindowTest extends TestCase {
+
+    public void testWindowIsReadInChunks() {
+        ReadAheadWindow target = new ReadAheadWindow(1000);
+        target.reset(10000);
+
+        assertTrue(target.needsData());
+        assertEquals(0, target.getNextOffset());
+        assertEquals(400, target.getNextLength(400));
+
+        target.onRead(0, 400);
+        target.onRead(400, 400);
+        assertEquals(800, target.getNextOffset());
+        assertEquals(200, target.getNextLength(400));
+
+        target.onRead(800, 200);
+        assertFalse(target.needsData());
+        assertEquals(1000, target.getAheadBytes());
+    }
+
+    public void testPlaybackKeepsReadProgress() {
+        ReadAheadWindow target = new ReadAheadWindow(1000);
+        target.reset(10000);
+        target.onRead(0, 1000);
+
+        target.setPosition(500);
+
+        assertEquals(500, target.getAheadBytes());
+        assertEquals(1000, target.getNextOffset());
+        assertEquals(500, target.getNextLength(1000));
+    }
+
+    public void testSeekRestartsAtTarget() {
+        ReadAheadWindow target = new ReadAheadWindow(1000);
+        target.reset(10000);
+        target.onRead(0, 1000);
+
+        target.setPosition(5000);
+
+        assertEquals(0, target.getAheadBytes());
+        assertEquals(5000, target.getNextOffset());
+    }
+
+    public void testStaleReadIsIgnored() {
+        ReadAheadWindow target = new ReadAheadWindow(1000);
+        target.reset(10000);
+
+        //Seeked while the first chunk was read.
+        target.setPosition(5000);
+        target.onRead(0, 400);
+
+        assertEquals(0, target.getAheadBytes());
+        assertEquals(5000, target.getNextOffset());
+    }
+
+    public void testWindowEndsAtSize() {
+        ReadAheadWindow target = new ReadAheadWindow(1000);
+        target.reset(1500);
+        target.setPosition(1200);
+
+        assertEquals(300, target.getNextLength(1000));
+        target.onRead(1200, 300);
+        assertFalse(target.needsData());
+    }
+
+    public void testShortSourceEndsReading() {
+        ReadAheadWindow target = new ReadAheadWindow(1000);
+        target.reset(10000);
+        target.onRead(0, 300);
+
+        //End of source reached before the announced size.
+        target.onRead(300, 0);
+
+        assertFalse(target.needsData());
+    }
+
+    public void testNoSourceNeedsNoData() {
+        ReadAheadWindow target = new ReadAheadWindow(1000);
+        target.reset(0);
+        target.setPosition(500);
+
+        assertFalse(target.needsData());
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright (C) 2015 Erwin Betschart
+ *
+ * This file is part of Video Comparator.
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.lipsch.videocomparator;
+
+import junit.framework.TestCase;
+
+/**
+ * Test for the class RenderTimeStats.
+ */
+public class RenderTimeStatsTest extends TestCase {
+
+    private static final long BUDGET_NS = 16000000;
+
+    private final RenderTimeStats target = new RenderTimeStats(BUDGET_NS);
+
+    public void testRecord() {
+        target.onFrameRendered(2000000);
+        target.onFrameRendered(4000000);
+        target.onFrameRendered(BUDGET_NS);
+
+        assertEquals(3, target.getFrameCount());
+        assertEquals(22.0 / 3, target.getAverageMs(), 1e-9);
+        assertEquals(16.0, target.getMaxMs(), 1e-9);
+        assertEquals(0, target.getOverBudgetCount());
+    }
+
+    public void testOverBudget() {
+        target.onFrameRendered(BUDGET_NS + 1);
+        target.onFrameRendered(1000000);
+        target.onFrameRendered(3 * BUDGET_NS);
+
+        assertEquals(2, target.getOverBudgetCount());
+        assertEquals(48.0, target.getMaxMs(), 1e-9);
+    }
+
+    public void testReset() {
+        target.onFrameRendered(BUDGET_NS * 2);
+        target.reset();
+
+        assertEquals(0, target.getFrameCount());
+        assertEquals(0.0, target.getAverageMs(), 0.0);
+        assertEquals(0.0, target.getMaxMs(), 0.0);
+        assertEquals(0, target.getOverBudgetCount());
+    }
+}
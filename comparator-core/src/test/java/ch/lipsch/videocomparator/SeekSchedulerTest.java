@@ -0,0 +1,314 @@
+/*
+ * Copyright (C) 2015 Erwin Betschart
+ *
+ * This file is part of Video Comparator.
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.lipsch.videocomparator;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Test for the class SeekScheduler. Uses a fake clock and a player which records the seeks.
+ */
+public class SeekSchedulerTest extends TestCase {
+
+    private FakeClock clock = null;
+    private RecordingPlayer player = null;
+    private SeekScheduler target = null;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        clock = new FakeClock();
+        player = new RecordingPlayer();
+        target = new SeekScheduler(clock, player);
+    }
+
+    public void testIdleSeekIsIssuedImmediately() {
+        target.seekPrecise(1234);
+
+        assertEquals(1, player.seeks.size());
+        assertEquals(1234, (int) player.seeks.get(0));
+        assertTrue(target.isBusy());
+        assertEquals(1234, target.getInFlightPositionMs());
+    }
+
+    public void testOnlyOneSeekInFlight() {
+        target.seekPrecise(1000);
+        target.seekPrecise(2000);
+        target.seekPrecise(3000);
+
+        assertEquals(1, player.seeks.size());
+        assertEquals(3000, target.getPendingPositionMs());
+
+        //The latest target is issued as soon as the first seek completes.
+        target.onSeekComplete();
+        assertEquals(2, player.seeks.size());
+        assertEquals(3000, (int) player.seeks.get(1));
+        assertEquals(-1, target.getPendingPositionMs());
+
+        target.onSeekComplete();
+        assertFalse(target.isBusy());
+        assertEquals(3, target.getRequestedCount());
+        assertEquals(2, target.getIssuedCount());
+        assertEquals(1, target.getCoalescedCount());
+    }
+
+    public void testFastDragIsCoalesced() {
+        //A drag delivers a progress event every 16ms, a seek takes 100ms.
+        for (int i = 0; i < 60; i++) {
+            clock.timeMs += 16;
+            target.seekFast(i * 100);
+            if (clock.timeMs - player.lastSeekTimeMs >= 100) {
+                target.onSeekComplete();
+            }
+        }
+        target.seekPrecise(6000);
+        while (target.isBusy()) {
+            clock.timeMs += 16;
+            if (clock.timeMs - player.lastSeekTimeMs >= 100) {
+                target.onSeekComplete();
+            }
+        }
+
+        assertEquals(61, target.getRequestedCount());
+        assertTrue("issued " + target.getIssuedCount(), target.getIssuedCount() <= 61 / 6 + 2);
+        //The final position is always reached.
+        assertEquals(6000, (int) player.seeks.get(player.seeks.size() - 1));
+    }
+
+    public void testFastSeekSnapsToKeyFrame() {
+        target.setKeyframeIndex(new KeyframeIndex(new long[]{0, 2000000, 4000000}, new long[]{0, 100, 200}, 6000000));
+
+        target.seekFast(3500);
+        assertEquals(2000, (int) player.seeks.get(0));
+        target.onSeekComplete();
+
+        //Precise seeks are not snapped.
+        target.seekPrecise(3500);
+        assertEquals(3500, (int) player.seeks.get(1));
+    }
+
+    public void testFastSeekToSameKeyFrameIsDropped() {
+        target.setKeyframeIndex(new KeyframeIndex(new long[]{0, 2000000, 4000000}, new long[]{0, 100, 200}, 6000000));
+
+        target.seekFast(2100);
+        target.onSeekComplete();
+        target.seekFast(2500);
+        target.seekFast(3900);
+
+        assertEquals(1, player.seeks.size());
+        assertFalse(target.isBusy());
+        assertEquals(2, target.getCoalescedCount());
+
+        target.seekFast(4100);
+        assertEquals(4000, (int) player.seeks.get(1));
+    }
+
+    public void testLostCompletionTimesOut() {
+        target.seekPrecise(1000);
+        target.seekPrecise(2000);
+
+        clock.timeMs += target.getTimeoutMs() - 1;
+        target.tick();
+        assertEquals(1, player.seeks.size());
+
+        clock.timeMs += 1;
+        target.tick();
+        assertEquals(2, player.seeks.size());
+        assertEquals(1, target.getTimeoutCount());
+    }
+
+    public void testLatency() {
+        target.seekPrecise(1000);
+        clock.timeMs += 80;
+        target.onSeekComplete();
+        target.seekPrecise(2000);
+        clock.timeMs += 120;
+        target.onSeekComplete();
+
+        assertEquals(100.0, target.getAverageLatencyMs(), 0.001);
+        assertEquals(120, target.getMaxLatencyMs());
+    }
+
+    public void testLatencyIsRecordedInHistogram() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        target.setLatencyHistogram(histogram);
+
+        target.seekPrecise(1000);
+        clock.timeMs += 80;
+        target.onSeekComplete();
+        target.seekPrecise(2000);
+        clock.timeMs += target.getTimeoutMs() + 1;
+        target.seekPrecise(3000);
+
+        //Timed out seeks have no latency.
+        assertEquals(1, histogram.getCount());
+        assertEquals(80, histogram.getMaxMs());
+    }
+
+    public void testForeignCompletionIsIgnored() {
+        target.onSeekComplete();
+
+        assertFalse(target.isBusy());
+        assertEquals(0.0, target.getAverageLatencyMs(), 0.001);
+    }
+
+    public void testCorrectiveSeekIsDroppedWhileUserSeeks() {
+        target.seekPrecise(1000);
+
+        assertFalse(target.seekCorrective(1500));
+        assertEquals(1, player.seeks.size());
+        assertEquals(-1, target.getPendingPositionMs());
+
+        target.onSeekComplete();
+        assertTrue(target.seekCorrective(1500));
+        assertEquals(1500, (int) player.seeks.get(1));
+        assertTrue(target.isBusy());
+    }
+
+    public void testCompletionOfCorrectiveSeekIsNotCreditedToUserSeek() {
+        target.seekCorrective(1500);
+        target.seekPrecise(3000);
+
+        //The completion of the corrective seek issues the user seek, which is in flight until its own completion.
+        target.onSeekComplete();
+        assertEquals(3000, (int) player.seeks.get(1));
+        assertTrue(target.isBusy());
+
+        target.onSeekComplete();
+        assertFalse(target.isBusy());
+    }
+
+    public void testLateCompletionAfterTimeoutIsDropped() {
+        target.seekPrecise(1000);
+        target.seekPrecise(2000);
+        clock.timeMs += target.getTimeoutMs();
+        target.tick();
+        assertEquals(2000, target.getInFlightPositionMs());
+
+        //The completion of the timed out seek arrives late.
+        clock.timeMs += 50;
+        target.onSeekComplete();
+        assertTrue(target.isBusy());
+
+        target.onSeekComplete();
+        assertFalse(target.isBusy());
+    }
+
+    public void testLostCompletionDropsAtMostOneCompletion() {
+        target.seekPrecise(1000);
+        clock.timeMs += target.getTimeoutMs();
+        target.seekPrecise(2000);
+
+        //The completion of the first seek got lost: The one of the second seek is dropped and the second seek times out.
+        target.onSeekComplete();
+        assertTrue(target.isBusy());
+        clock.timeMs += target.getTimeoutMs();
+        target.tick();
+        assertFalse(target.isBusy());
+
+        //Completions are credited again.
+        target.seekPrecise(3000);
+        target.onSeekComplete();
+        assertFalse(target.isBusy());
+        assertEquals(2, target.getTimeoutCount());
+    }
+
+    public void testLateCompletionIsOnlyExpectedShortlyAfterTimeout() {
+        target.seekPrecise(1000);
+        clock.timeMs += target.getTimeoutMs();
+        target.tick();
+
+        clock.timeMs += target.getTimeoutMs();
+        target.seekPrecise(2000);
+        target.onSeekComplete();
+        assertFalse(target.isBusy());
+    }
+
+    public void testReset() {
+        target.seekPrecise(1000);
+        target.seekPrecise(2000);
+
+        target.reset();
+        assertFalse(target.isBusy());
+        assertEquals(-1, target.getPendingPositionMs());
+
+        //A late completion of the forgotten seek does not issue anything.
+        target.onSeekComplete();
+        assertEquals(1, player.seeks.size());
+    }
+
+    public void testInvalidArguments() {
+        try {
+            new SeekScheduler(clock, null);
+            fail("A player is needed");
+        } catch (IllegalArgumentException e) {
+            //expected
+        }
+
+        try {
+            target.setTimeoutMs(0);
+            fail("Timeout must be positive");
+        } catch (IllegalArgumentException e) {
+            //expected
+        }
+    }
+
+    private static class FakeClock implements PlaybackClock {
+        long timeMs = 0;
+
+        @Override
+        public long getTimeMs() {
+            return timeMs;
+        }
+    }
+
+    private class RecordingPlayer implements SyncablePlayer {
+        final List<Integer> seeks = new ArrayList<Integer>();
+        long lastSeekTimeMs = 0;
+
+        @Override
+        public int getCurrentPosition() {
+            return seeks.isEmpty() ? 0 : seeks.get(seeks.size() - 1);
+        }
+
+        @Override
+        public boolean isPlaying() {
+            return false;
+        }
+
+        @Override
+        public boolean seekTo(int positionMs) {
+            seeks.add(positionMs);
+            lastSeekTimeMs = clock.timeMs;
+            return true;
+        }
+
+        @Override
+        public boolean supportsPlaybackRate() {
+            return false;
+        }
+
+        @Override
+        public void setPlaybackRate(float rate) {
+            //Not supported
+        }
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright (C) 2015 Erwin Betschart
+ *
+ * This file is part of Video Comparator.
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.lipsch.videocomparator;
+
+import junit.framework.TestCase;
+
+import java.util.Arrays;
+
+/**
+ * Test for the classes SignatureExtractor and SignatureStream.
+ */
+public class SignatureExtractorTest extends TestCase {
+
+    private final SignatureExtractor target = new SignatureExtractor();
+
+    public void testEqualFramesHaveEqualSignatures() {
+        SignatureStream stream = new SignatureStream();
+        byte[] frame = createScene(64, 36, 1, 0);
+
+        target.extract(frame, 64, 36, 0, stream);
+        target.extract(frame.clone(), 64, 36, 40000, stream);
+
+        assertEquals(2, stream.size());
+        assertEquals(stream.getHash(0), stream.getHash(1));
+        assertEquals(0.0, stream.distance(0, stream, 1), 0.0);
+        assertEquals(40000, stream.getTimeUs(1));
+    }
+
+    public void testScaledFrameIsSimilar() {
+        SignatureStream stream1 = new SignatureStream();
+        SignatureStream stream2 = new SignatureStream();
+
+        target.extract(createScene(64, 36, 1, 0), 64, 36, 0, stream1);
+        target.extract(createScene(128, 72, 1, 0), 128, 72, 0, stream2);
+        target.extract(createScene(64, 36, 2, 0), 64, 36, 0, stream2);
+
+        double scaledDistance = stream1.distance(0, stream2, 0);
+        double otherSceneDistance = stream1.distance(0, stream2, 1);
+        assertTrue("scaled " + scaledDistance, scaledDistance < 0.1);
+        assertTrue("other scene " + otherSceneDistance, otherSceneDistance > 0.2);
+    }
+
+    public void testBrightnessChangesHistogram() {
+        SignatureStream stream = new SignatureStream();
+        byte[] dark = new byte[16 * 16];
+        byte[] bright = new byte[16 * 16];
+        Arrays.fill(dark, (byte) 10);
+        Arrays.fill(bright, (byte) 250);
+
+        target.extract(dark, 16, 16, 0, stream);
+        target.extract(bright, 16, 16, 0, stream);
+
+        //Flat frames have equal hashes, the histograms differ completely.
+        assertEquals(stream.getHash(0), stream.getHash(1));
+        assertEquals(0.5, stream.distance(0, stream, 1), 1e-9);
+    }
+
+    public void testStreamGrows() {
+        SignatureStream stream = new SignatureStream();
+        byte[] frame = createScene(16, 16, 1, 0);
+
+        for (int i = 0; i < 1000; i++) {
+            target.extract(frame, 16, 16, i, stream);
+        }
+
+        assertEquals(1000, stream.size());
+        assertEquals(999, stream.getTimeUs(999));
+        assertEquals(0.0, stream.distance(0, stream, 999), 0.0);
+    }
+
+    public void testInvalidFrame() {
+        SignatureStream stream = new SignatureStream();
+
+        try {
+            stream.getHash(0);
+            fail("Empty stream has no frames");
+        } catch (IndexOutOfBoundsException e) {
+            //expected
+        }
+
+        try {
+            target.extract(new byte[16], 4, 4, 0, stream);
+            fail("Frame too small for a hash");
+        } catch (IllegalArgumentException e) {
+            //expected
+        }
+    }
+
+    /**
+     * @return A frame of a scene. Every scene has its own structure, the frames of a scene move slowly.
+     */
+    static byte[] createScene(int width, int height, int scene, int frame) {
+        byte[] plane = new byte[width * height];
+        double angle = scene * 1.3;
+        double frequency = 2 + scene % 3;
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                double u = (double) x / width;
+                double v = (double) y / height;
+                double value = Math.sin((u * Math.cos(angle) + v * Math.sin(angle)) * frequency * Math.PI + frame * 0.02);
+                plane[y * width + x] = (byte) (128 + 100 * value + scene * 7 % 20);
+            }
+        }
+        return plane;
+    }
+}
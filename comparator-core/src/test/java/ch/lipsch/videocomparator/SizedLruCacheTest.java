@@ -0,0 +1,192 @@
+/*
+ * Copyright (C) 2015 Erwin Betschart
+ *
+ * This file is part of Video Comparator.
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.lipsch.videocomparator;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Test for the class SizedLruCache. The values are byte arrays measured by their length.
+ */
+public class SizedLruCacheTest extends TestCase {
+
+    private static final SizedLruCache.Sizer<byte[]> SIZER = new SizedLruCache.Sizer<byte[]>() {
+        @Override
+        public long sizeOf(byte[] value) {
+            return value.length;
+        }
+    };
+
+    private final List<String> evicted = new ArrayList<String>();
+
+    private SizedLruCache<String, byte[]> createCache(long maxSize) {
+        SizedLruCache<String, byte[]> cache = new SizedLruCache<String, byte[]>(maxSize, SIZER);
+        cache.setEvictionListener(new SizedLruCache.EvictionListener<String, byte[]>() {
+            @Override
+            public void onEvicted(String key, byte[] value) {
+                evicted.add(key);
+            }
+        });
+        return cache;
+    }
+
+    public void testLimitedBySize() {
+        SizedLruCache<String, byte[]> target = createCache(100);
+
+        target.put("a", new byte[40]);
+        target.put("b", new byte[40]);
+        assertEquals(80, target.getSize());
+        assertTrue(evicted.isEmpty());
+
+        //Does not fit anymore: a is the eldest.
+        target.put("c", new byte[30]);
+        assertEquals(70, target.getSize());
+        assertEquals(2, target.size());
+        assertNull(target.get("a"));
+        assertEquals(1, evicted.size());
+        assertEquals("a", evicted.get(0));
+        assertEquals(1, target.getEvictionCount());
+    }
+
+    public void testLargeValueEvictsSeveral() {
+        SizedLruCache<String, byte[]> target = createCache(100);
+
+        target.put("a", new byte[30]);
+        target.put("b", new byte[30]);
+        target.put("c", new byte[30]);
+        target.put("d", new byte[80]);
+
+        assertEquals(80, target.getSize());
+        assertEquals(1, target.size());
+        assertEquals(3, evicted.size());
+    }
+
+    public void testGetUpdatesUsageOrder() {
+        SizedLruCache<String, byte[]> target = createCache(100);
+
+        target.put("a", new byte[40]);
+        target.put("b", new byte[40]);
+        assertNotNull(target.get("a"));
+        target.put("c", new byte[40]);
+
+        assertNotNull(target.get("a"));
+        assertNull(target.get("b"));
+        assertEquals("b", evicted.get(0));
+    }
+
+    public void testContainsKeyDoesNotUpdateUsageOrder() {
+        SizedLruCache<String, byte[]> target = createCache(100);
+
+        target.put("a", new byte[40]);
+        target.put("b", new byte[40]);
+        assertTrue(target.containsKey("a"));
+        target.put("c", new byte[40]);
+
+        assertFalse(target.containsKey("a"));
+        assertEquals(0, target.getHitCount());
+        assertEquals(0, target.getMissCount());
+    }
+
+    public void testValueLargerThanCacheIsNotStored() {
+        SizedLruCache<String, byte[]> target = createCache(100);
+        target.put("a", new byte[10]);
+
+        assertFalse(target.put("b", new byte[101]));
+
+        assertEquals(10, target.getSize());
+        assertNotNull(target.get("a"));
+        assertTrue(evicted.isEmpty());
+    }
+
+    public void testReplace() {
+        SizedLruCache<String, byte[]> target = createCache(100);
+        byte[] first = new byte[40];
+        target.put("a", first);
+
+        target.put("a", new byte[20]);
+
+        assertEquals(20, target.getSize());
+        assertEquals(1, target.size());
+        //The replaced value is handed out for reuse.
+        assertEquals(1, evicted.size());
+
+        //Putting the same value again does not evict it.
+        target.put("a", target.get("a"));
+        assertEquals(1, evicted.size());
+        assertEquals(20, target.getSize());
+    }
+
+    public void testRemoveAndClear() {
+        SizedLruCache<String, byte[]> target = createCache(100);
+        target.put("a", new byte[40]);
+        target.put("b", new byte[30]);
+
+        assertNotNull(target.remove("a"));
+        assertNull(target.remove("a"));
+        assertEquals(30, target.getSize());
+
+        target.clear();
+        assertEquals(0, target.getSize());
+        assertEquals(0, target.size());
+        assertTrue(evicted.isEmpty());
+    }
+
+    public void testTrimTo() {
+        SizedLruCache<String, byte[]> target = createCache(100);
+        target.put("a", new byte[30]);
+        target.put("b", new byte[30]);
+        target.put("c", new byte[30]);
+
+        target.trimTo(50);
+
+        assertEquals(30, target.getSize());
+        assertEquals(2, evicted.size());
+        assertNotNull(target.get("c"));
+    }
+
+    public void testHitAndMissCount() {
+        SizedLruCache<String, byte[]> target = createCache(100);
+        target.put("a", new byte[10]);
+
+        target.get("a");
+        target.get("a");
+        target.get("b");
+
+        assertEquals(2, target.getHitCount());
+        assertEquals(1, target.getMissCount());
+    }
+
+    public void testInvalidArguments() {
+        try {
+            new SizedLruCache<String, byte[]>(0, SIZER);
+            fail("Max size must be positive");
+        } catch (IllegalArgumentException e) {
+            //expected
+        }
+
+        try {
+            createCache(100).put("a", null);
+            fail("Null values are not allowed");
+        } catch (IllegalArgumentException e) {
+            //expected
+        }
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright (C) 2015 Erwin Betschart
+ *
+ * This file is part of Video Comparator.
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.lipsch.videocomparator;
+
+import junit.framework.TestCase;
+
+import java.util.Arrays;
+
+/**
+ * Test for the class SsimCalculator.
+ */
+public class SsimCalculatorTest extends TestCase {
+
+    private BandExecutor executor = null;
+    private SsimCalculator target = null;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        executor = new BandExecutor(3);
+        target = new SsimCalculator(executor);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        executor.shutdown();
+        super.tearDown();
+    }
+
+    public void testEqualPlanes() {
+        byte[] plane = PsnrCalculatorTest.createPlane(64, 48, 1);
+
+        assertEquals(1.0, target.compute(plane, plane.clone(), 64, 48), 1e-12);
+    }
+
+    public void testBlackAndWhite() {
+        byte[] black = new byte[16 * 16];
+        byte[] white = new byte[16 * 16];
+        Arrays.fill(white, (byte) 255);
+
+        //Only the luminance term remains: c1 / (255^2 + c1) with c1 = (0.01 * 255)^2
+        double c1 = 0.01 * 255 * 0.01 * 255;
+        assertEquals(c1 / (255 * 255 + c1), target.compute(black, white, 16, 16), 1e-12);
+    }
+
+    public void testMatchesReference() {
+        int width = 101;
+        int height = 37;
+        byte[] plane1 = PsnrCalculatorTest.createPlane(width, height, 1);
+        byte[] plane2 = PsnrCalculatorTest.createPlane(width, height, 3);
+
+        double ssim = target.compute(plane1, plane2, width, height);
+
+        assertEquals(referenceSsim(plane1, plane2, width, height), ssim, 1e-9);
+        assertTrue(ssim < 1.0);
+        assertTrue(ssim > 0.5);
+    }
+
+    public void testParallelEqualsSingleThreaded() {
+        int width = 320;
+        int height = 180;
+        byte[] plane1 = PsnrCalculatorTest.createPlane(width, height, 1);
+        byte[] plane2 = PsnrCalculatorTest.createPlane(width, height, 2);
+
+        BandExecutor singleExecutor = new BandExecutor(1);
+        double single = new SsimCalculator(singleExecutor).compute(plane1, plane2, width, height);
+
+        assertEquals(single, target.compute(plane1, plane2, width, height), 1e-12);
+    }
+
+    public void testSizeChange() {
+        byte[] small = PsnrCalculatorTest.createPlane(16, 16, 1);
+        byte[] large1 = PsnrCalculatorTest.createPlane(64, 32, 1);
+        byte[] large2 = PsnrCalculatorTest.createPlane(64, 32, 2);
+
+        assertEquals(1.0, target.compute(small, small, 16, 16), 1e-12);
+        assertEquals(referenceSsim(large1, large2, 64, 32), target.compute(large1, large2, 64, 32), 1e-9);
+    }
+
+    public void testTooSmallPlanes() {
+        try {
+            target.compute(new byte[16], new byte[16], 4, 4);
+            fail("Planes must be at least a window");
+        } catch (IllegalArgumentException e) {
+            //expected
+        }
+    }
+
+    /**
+     * The SSIM straight from the definition (means, population variances and covariance) on 8x8 windows with a step of 4 pixels.
+     */
+    private static double referenceSsim(byte[] plane1, byte[] plane2, int width, int height) {
+        double c1 = 0.01 * 255 * 0.01 * 255;
+        double c2 = 0.03 * 255 * 0.03 * 255;
+        double sum = 0;
+        int windows = 0;
+
+        for (int top = 0; top + 8 <= height / 4 * 4; top += 4) {
+            for (int left = 0; left + 8 <= width / 4 * 4; left += 4) {
+                double mean1 = 0;
+                double mean2 = 0;
+                for (int y = top; y < top + 8; y++) {
+                    for (int x = left; x < left + 8; x++) {
+                        mean1 += plane1[y * width + x] & 0xFF;
+                        mean2 += plane2[y * width + x] & 0xFF;
+                    }
+                }
+                mean1 /= 64;
+                mean2 /= 64;
+
+                double variance1 = 0;
+                double variance2 = 0;
+                double covariance = 0;
+                for (int y = top; y < top + 8; y++) {
+                    for (int x = left; x < left + 8; x++) {
+                        double diff1 = (plane1[y * width + x] & 0xFF) - mean1;
+                        double diff2 = (plane2[y * width + x] & 0xFF) - mean2;
+                        variance1 += diff1 * diff1;
+                        variance2 += diff2 * diff2;
+                        covariance += diff1 * diff2;
+                    }
+                }
+                variance1 /= 64;
+                variance2 /= 64;
+                covariance /= 64;
+
+                sum += (2 * mean1 * mean2 + c1) * (2 * covariance + c2) / ((mean1 * mean1 + mean2 * mean2 + c1) * (variance1 + variance2 + c2));
+                windows++;
+            }
+        }
+
+        return sum / windows;
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright (C) 2015 Erwin Betschart
+ *
+ * This file is part of Video Comparator.
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.lipsch.videocomparator;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Test for the class StallHandler. Uses a fake clock and records the pauses and resumes.
+ */
+public class StallHandlerTest extends TestCase {
+
+    private FakeClock clock = null;
+    private VideoPlayState playState = null;
+    private RecordingListener listener = null;
+    private StallHandler target = null;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        clock = new FakeClock();
+        playState = new VideoPlayState(3);
+        listener = new RecordingListener();
+        target = new StallHandler(playState, clock, listener);
+
+        for (int i = 0; i < 3; i++) {
+            playState.setVideo(i, "file:///video" + i);
+            playState.apply(i, PlayStateMachine.Event.PLAY);
+        }
+        target.startSession();
+    }
+
+    public void testPartnersArePausedAndResumedTogether() {
+        target.onBufferingStart(1);
+
+        assertEquals(VideoPlayState.State.BUFFERING, playState.getSnapshot().getState(1));
+        assertEquals(VideoPlayState.State.WAITING, playState.getSnapshot().getState(0));
+        assertEquals(VideoPlayState.State.WAITING, playState.getSnapshot().getState(2));
+        assertEquals(Arrays.asList(0, 2), listener.paused);
+        assertTrue(target.isStalled());
+        assertTrue(playState.shouldShowPauseButton());
+
+        clock.timeMs += 700;
+        target.onBufferingEnd(1);
+
+        for (int i = 0; i < 3; i++) {
+            assertEquals(VideoPlayState.State.PLAYING, playState.getSnapshot().getState(i));
+        }
+        assertEquals(1, listener.resumed.size());
+        assertTrue(Arrays.equals(new int[]{0, 1, 2}, listener.resumed.get(0)));
+        assertFalse(target.isStalled());
+        assertEquals(700, target.getSessionStallMs());
+        assertEquals(1, target.getSessionStallCount());
+    }
+
+    public void testOverlappingStallsResumeAfterTheLast() {
+        target.onBufferingStart(0);
+        clock.timeMs += 100;
+        target.onBufferingStart(2); //Was waiting, buffers now as well
+        clock.timeMs += 100;
+        target.onBufferingEnd(0);
+
+        //Video 0 continues by itself after buffering: It is paused until video 2 is done.
+        assertEquals(VideoPlayState.State.WAITING, playState.getSnapshot().getState(0));
+        assertEquals(Arrays.asList(1, 2, 0), listener.paused);
+        assertTrue(listener.resumed.isEmpty());
+
+        clock.timeMs += 300;
+        target.onBufferingEnd(2);
+
+        assertEquals(1, listener.resumed.size());
+        assertEquals(3, listener.resumed.get(0).length);
+        assertEquals(500, target.getSessionStallMs());
+        assertEquals(1, target.getSessionStallCount());
+    }
+
+    public void testBufferingWhilePausedIsIgnored() {
+        playState.apply(0, PlayStateMachine.Event.PAUSE);
+        target.onBufferingStart(0);
+        target.onBufferingEnd(0);
+
+        assertEquals(VideoPlayState.State.PAUSING, playState.getSnapshot().getState(0));
+        assertTrue(listener.paused.isEmpty());
+        assertTrue(listener.resumed.isEmpty());
+        assertFalse(target.isStalled());
+    }
+
+    public void testPausedPartnerIsNotResumed() {
+        playState.apply(2, PlayStateMachine.Event.PAUSE);
+        target.onBufferingStart(0);
+        target.onBufferingEnd(0);
+
+        assertEquals(VideoPlayState.State.PAUSING, playState.getSnapshot().getState(2));
+        assertTrue(Arrays.equals(new int[]{0, 1}, listener.resumed.get(0)));
+    }
+
+    public void testCompletedStallerResumesPartners() {
+        target.onBufferingStart(1);
+        playState.apply(1, PlayStateMachine.Event.COMPLETE);
+        target.onStallerGone();
+
+        assertEquals(VideoPlayState.State.LOADED, playState.getSnapshot().getState(1));
+        assertTrue(Arrays.equals(new int[]{0, 2}, listener.resumed.get(0)));
+    }
+
+    public void testPauseEndsStall() {
+        target.onBufferingStart(1);
+        clock.timeMs += 250;
+        for (int i = 0; i < 3; i++) {
+            playState.apply(i, PlayStateMachine.Event.PAUSE);
+        }
+        target.onPlaybackStopped();
+        clock.timeMs += 1000;
+        target.onBufferingEnd(1);
+
+        assertFalse(target.isStalled());
+        assertEquals(250, target.getSessionStallMs());
+        assertTrue(listener.resumed.isEmpty());
+
+        target.startSession();
+        assertEquals(0, target.getSessionStallMs());
+        assertEquals(0, target.getSessionStallCount());
+    }
+
+    private static class FakeClock implements PlaybackClock {
+        long timeMs = 0;
+
+        @Override
+        public long getTimeMs() {
+            return timeMs;
+        }
+    }
+
+    private static class RecordingListener implements StallHandler.Listener {
+        final List<Integer> paused = new ArrayList<Integer>();
+        final List<int[]> resumed = new ArrayList<int[]>();
+
+        @Override
+        public void onPauseForStall(int video) {
+            paused.add(video);
+        }
+
+        @Override
+        public void onResumeAfterStall(int[] videos) {
+            resumed.add(videos);
+        }
+    }
+}
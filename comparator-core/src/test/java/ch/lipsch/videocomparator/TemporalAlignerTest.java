@@ -0,0 +1,250 @@
+/*
+ * Copyright (C) 2015 Erwin Betschart
+ *
+ * This file is part of Video Comparator.
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.lipsch.videocomparator;
+
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * Test for the classes TemporalAligner and ActivitySignal. Uses synthetic videos so no device is needed.
+ */
+public class TemporalAlignerTest extends TestCase {
+
+    private static final double SAMPLE_RATE = 4.0;
+    private static final int WIDTH = 64;
+    private static final int HEIGHT = 36;
+
+    private final TemporalAligner target = new TemporalAligner(SAMPLE_RATE, 60000, 10000);
+
+    public void testStaticFramesHaveNoActivity() {
+        ActivitySignal signal = new ActivitySignal(1);
+        byte[] frame = createFrame(WIDTH, HEIGHT, 5);
+
+        for (int i = 0; i < 10; i++) {
+            signal.add(frame, WIDTH, HEIGHT);
+        }
+
+        assertEquals(10, signal.size());
+        for (int i = 0; i < signal.size(); i++) {
+            assertEquals(0.0, signal.getValues()[i], 0.0);
+        }
+    }
+
+    public void testCutHasActivity() {
+        ActivitySignal signal = new ActivitySignal();
+
+        signal.add(createFrame(WIDTH, HEIGHT, 1), WIDTH, HEIGHT);
+        signal.add(createFrame(WIDTH, HEIGHT, 1), WIDTH, HEIGHT);
+        signal.add(createFrame(WIDTH, HEIGHT, 2), WIDTH, HEIGHT);
+
+        assertEquals(0.0, signal.getValues()[1], 0.0);
+        assertTrue(signal.getValues()[2] > 10);
+    }
+
+    public void testSecondVideoStartsLater() throws Exception {
+        //The second recording was started 12.5 seconds later, the same content appears 12.5 seconds earlier.
+        TemporalAlignment alignment = target.align(new SceneSource(0, 600, 0, 0), new SceneSource(50, 600, 0, 0));
+
+        assertNotNull(alignment);
+        assertEquals(-12500, alignment.getOffsetMs());
+        assertTrue(alignment.toString(), alignment.isReliable());
+    }
+
+    public void testSecondVideoStartsEarlierAndIsBrighter() throws Exception {
+        //A different encode: Brighter and noisy.
+        TemporalAlignment alignment = target.align(new SceneSource(20, 500, 0, 0), new SceneSource(0, 700, 30, 6));
+
+        assertNotNull(alignment);
+        assertEquals(5000, alignment.getOffsetMs());
+        assertTrue(alignment.toString(), alignment.isReliable());
+    }
+
+    public void testOneHourSignals() {
+        //One hour of activity sampled at 4 Hz, the content of the first appears 1000 samples later in the second.
+        int samples = (int) (3600 * SAMPLE_RATE);
+        double[] values = CrossCorrelatorTest.createSignal(samples + 1000, 1);
+        ActivitySignal signal1 = new ActivitySignal(samples);
+        ActivitySignal signal2 = new ActivitySignal(samples);
+        for (int i = 0; i < samples; i++) {
+            signal1.append(values[i + 1000]);
+            signal2.append(values[i]);
+        }
+
+        TemporalAlignment alignment = new TemporalAligner(SAMPLE_RATE, 5 * 60 * 1000, 10 * 1000).align(signal1, signal2);
+
+        assertNotNull(alignment);
+        assertEquals(250000, alignment.getOffsetMs());
+    }
+
+    public void testStillVideosCanNotBeAligned() throws Exception {
+        assertNull(target.align(new StillSource(200), new StillSource(200)));
+    }
+
+    public void testTooShortVideosCanNotBeAligned() throws Exception {
+        //Less than ten seconds
+        assertNull(target.align(new SceneSource(0, 30, 0, 0), new SceneSource(0, 30, 0, 0)));
+    }
+
+    public void testUnrelatedVideosAreNotReliable() throws Exception {
+        TemporalAlignment alignment = target.align(new SceneSource(0, 600, 0, 0, 1), new SceneSource(0, 600, 0, 0, 2));
+
+        assertTrue(alignment == null || !alignment.isReliable());
+    }
+
+    public void testInterrupt() throws IOException {
+        Thread.currentThread().interrupt();
+        try {
+            target.align(new SceneSource(0, 100, 0, 0), new SceneSource(0, 100, 0, 0));
+            fail("Interrupted");
+        } catch (InterruptedException e) {
+            //expected
+        }
+    }
+
+    public void testInvalidArguments() {
+        try {
+            new TemporalAligner(0, 1000, 1000);
+            fail("The sample rate must be positive");
+        } catch (IllegalArgumentException e) {
+            //expected
+        }
+    }
+
+    /**
+     * @return A frame of random 8x8 blocks. Equal seeds give equal frames.
+     */
+    static byte[] createFrame(int width, int height, long seed) {
+        Random random = new Random(seed);
+        int blockColumns = (width + 7) / 8;
+        int[] blocks = new int[blockColumns * ((height + 7) / 8)];
+        for (int i = 0; i < blocks.length; i++) {
+            blocks[i] = random.nextInt(200);
+        }
+
+        byte[] frame = new byte[width * height];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                frame[y * width + x] = (byte) blocks[y / 8 * blockColumns + x / 8];
+            }
+        }
+        return frame;
+    }
+
+    /**
+     * A video of scenes of random length with a moving square, sampled at SAMPLE_RATE. Shows the content from the given start frame on.
+     */
+    private static class SceneSource implements LumaFrameSource {
+        private final int frameCount;
+        private final int brightness;
+        private final int noise;
+        private final long contentSeed;
+        private final int[] sceneOfFrame;
+        private final Random noiseRandom = new Random(99);
+        private int frame;
+
+        SceneSource(int startFrame, int frameCount, int brightness, int noise) {
+            this(startFrame, frameCount, brightness, noise, 0);
+        }
+
+        SceneSource(int startFrame, int frameCount, int brightness, int noise, long contentSeed) {
+            this.frame = startFrame;
+            this.frameCount = startFrame + frameCount;
+            this.brightness = brightness;
+            this.noise = noise;
+            this.contentSeed = contentSeed;
+
+            //The scene cuts depend on the content only, so all sources of the same content cut at the same frames.
+            Random random = new Random(contentSeed);
+            sceneOfFrame = new int[this.frameCount];
+            int scene = 0;
+            int sceneEnd = 0;
+            for (int i = 0; i < sceneOfFrame.length; i++) {
+                if (i == sceneEnd) {
+                    scene++;
+                    sceneEnd = i + 4 + random.nextInt(40);
+                }
+                sceneOfFrame[i] = scene;
+            }
+        }
+
+        @Override
+        public int getWidth() {
+            return WIDTH;
+        }
+
+        @Override
+        public int getHeight() {
+            return HEIGHT;
+        }
+
+        @Override
+        public long readNextFrame(byte[] luma) {
+            if (frame >= frameCount) {
+                return -1;
+            }
+
+            byte[] scene = createFrame(WIDTH, HEIGHT, sceneOfFrame[frame] * 1000L + contentSeed);
+            int squareX = frame * 3 % (WIDTH - 8);
+            for (int y = 0; y < HEIGHT; y++) {
+                for (int x = 0; x < WIDTH; x++) {
+                    int value = scene[y * WIDTH + x] & 0xFF;
+                    if (x >= squareX && x < squareX + 8 && y >= 10 && y < 18) {
+                        value = 255;
+                    }
+                    value += brightness + (noise == 0 ? 0 : noiseRandom.nextInt(2 * noise + 1) - noise);
+                    luma[y * WIDTH + x] = (byte) Math.max(0, Math.min(255, value));
+                }
+            }
+
+            long timeUs = (long) (frame * 1000000 / SAMPLE_RATE);
+            frame++;
+            return timeUs;
+        }
+    }
+
+    private static class StillSource implements LumaFrameSource {
+        private final byte[] still = createFrame(WIDTH, HEIGHT, 3);
+        private int framesLeft;
+
+        StillSource(int frameCount) {
+            this.framesLeft = frameCount;
+        }
+
+        @Override
+        public int getWidth() {
+            return WIDTH;
+        }
+
+        @Override
+        public int getHeight() {
+            return HEIGHT;
+        }
+
+        @Override
+        public long readNextFrame(byte[] luma) {
+            if (framesLeft-- <= 0) {
+                return -1;
+            }
+            System.arraycopy(still, 0, luma, 0, luma.length);
+            return 0;
+        }
+    }
+}
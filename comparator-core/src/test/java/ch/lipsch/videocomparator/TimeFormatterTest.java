@@ -0,0 +1,95 @@
+/*
+ * Copyright (C) 2015 Erwin Betschart
+ *
+ * This file is part of Video Comparator.
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.lipsch.videocomparator;
+
+import junit.framework.TestCase;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Test for the class TimeFormatter.
+ */
+public class TimeFormatterTest extends TestCase {
+
+    private final char[] buffer = new char[TimeFormatter.MAX_LENGTH];
+
+    public void testZero() {
+        assertEquals("0:00:00", format(0));
+    }
+
+    public void testSecondsOnly() {
+        assertEquals("0:00:59", format(59999));
+    }
+
+    public void testMinutesAreRemainderOfHour() {
+        //1h 21min 55s. The old formatting printed the total minutes (81) and seconds (4915).
+        assertEquals("1:21:55", format(TimeUnitsMs.HOUR + 21 * TimeUnitsMs.MINUTE + 55 * TimeUnitsMs.SECOND));
+    }
+
+    public void testSecondsAreRemainderOfMinute() {
+        assertEquals("0:02:05", format(125000));
+    }
+
+    public void testManyHours() {
+        assertEquals("123:00:01", format(123 * TimeUnitsMs.HOUR + 1000));
+    }
+
+    public void testNegativeIsZero() {
+        assertEquals("0:00:00", format(-5000));
+    }
+
+    public void testMaxValueFitsBuffer() {
+        int length = TimeFormatter.format(Long.MAX_VALUE, buffer);
+
+        assertTrue(length <= TimeFormatter.MAX_LENGTH);
+    }
+
+    public void testBufferIsReused() {
+        format(10 * TimeUnitsMs.HOUR);
+
+        assertEquals("0:00:01", format(1000));
+    }
+
+    public void testSameAsStringFormat() {
+        for (long time = 0; time < 4 * TimeUnitsMs.HOUR; time += 997) {
+            assertEquals(formatWithString(time), format(time));
+        }
+    }
+
+    private String format(long timeMs) {
+        int length = TimeFormatter.format(timeMs, buffer);
+        return new String(buffer, 0, length);
+    }
+
+    /**
+     * The formatting as it was done before TimeFormatter existed (with the remainder fix applied).
+     */
+    private static String formatWithString(long timeMs) {
+        return String.format("%d:%02d:%02d",
+                TimeUnit.MILLISECONDS.toHours(timeMs),
+                TimeUnit.MILLISECONDS.toMinutes(timeMs) % 60,
+                TimeUnit.MILLISECONDS.toSeconds(timeMs) % 60);
+    }
+
+    private static final class TimeUnitsMs {
+        static final long SECOND = 1000;
+        static final long MINUTE = 60 * SECOND;
+        static final long HOUR = 60 * MINUTE;
+    }
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright (C) 2015 Erwin Betschart
+ *
+ * This file is part of Video Comparator.
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.lipsch.videocomparator;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * Test for the class VideoMetadataCache.
+ */
+public class VideoMetadataCacheTest extends TestCase {
+
+    private File directory = null;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        directory = File.createTempFile("metadata", "cache");
+        assertTrue(directory.delete());
+        assertTrue(directory.mkdirs());
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                assertTrue(file.delete());
+            }
+        }
+        assertTrue(directory.delete());
+        super.tearDown();
+    }
+
+    public void testMissingEntry() {
+        VideoMetadataCache target = new VideoMetadataCache(directory, 10000);
+
+        assertNull(target.get(42));
+    }
+
+    public void testRoundTrip() throws IOException {
+        VideoMetadataCache target = new VideoMetadataCache(directory, 10000);
+        KeyframeIndex index = new KeyframeIndex(new long[]{0, 1000000, 2000000}, new long[]{48, 5000, 9000}, 3000000);
+
+        target.put(-7, new VideoMetadata(3000, false, 29.97, 1920, 1080, index));
+        VideoMetadata result = target.get(-7);
+
+        assertNotNull(result);
+        assertEquals(3000, result.getDurationMs());
+        assertFalse(result.isSeekable());
+        assertEquals(29.97, result.getFrameRate(), 0.0);
+        assertEquals(1920, result.getWidth());
+        assertEquals(1080, result.getHeight());
+        assertEquals(3, result.getKeyframeIndex().size());
+        assertEquals(1000000, result.getKeyframeIndex().getTimeUs(1));
+        assertEquals(9000, result.getKeyframeIndex().getByteOffset(2));
+        assertEquals(3000000, result.getKeyframeIndex().getDurationUs());
+    }
+
+    public void testWithoutIndex() throws IOException {
+        VideoMetadataCache target = new VideoMetadataCache(directory, 10000);
+
+        target.put(1, new VideoMetadata(1000, true, 25, 640, 480, null));
+
+        assertNull(target.get(1).getKeyframeIndex());
+    }
+
+    public void testPersistedAcrossInstances() throws IOException {
+        new VideoMetadataCache(directory, 10000).put(5, new VideoMetadata(1000, true, 25, 640, 480, null));
+
+        VideoMetadataCache target = new VideoMetadataCache(directory, 10000);
+
+        assertEquals(1, target.size());
+        assertEquals(640, target.get(5).getWidth());
+    }
+
+    public void testLeastRecentlyUsedIsEvicted() throws IOException {
+        long entrySize = VideoMetadataCache.encode(metadata()).remaining();
+        VideoMetadataCache target = new VideoMetadataCache(directory, entrySize * 3);
+
+        target.put(1, metadata());
+        target.put(2, metadata());
+        target.put(3, metadata());
+        //1 is used now, so 2 is the least recently used one.
+        assertNotNull(target.get(1));
+        target.put(4, metadata());
+
+        assertEquals(3, target.size());
+        assertEquals(entrySize * 3, target.getSizeBytes());
+        assertNotNull(target.get(1));
+        assertNull(target.get(2));
+        assertNotNull(target.get(3));
+        assertNotNull(target.get(4));
+    }
+
+    public void testBudgetIsInBytes() throws IOException {
+        KeyframeIndex bigIndex = new KeyframeIndex(new long[1000], new long[1000], 0);
+        long smallSize = VideoMetadataCache.encode(metadata()).remaining();
+        VideoMetadataCache target = new VideoMetadataCache(directory, 1000 * 16 + smallSize * 2);
+
+        target.put(1, metadata());
+        target.put(2, metadata());
+        target.put(3, new VideoMetadata(1000, true, 25, 640, 480, bigIndex));
+
+        //The big entry needs the space of the two small ones.
+        assertNull(target.get(1));
+        assertNull(target.get(2));
+        assertNotNull(target.get(3));
+    }
+
+    public void testReplaceEntry() throws IOException {
+        VideoMetadataCache target = new VideoMetadataCache(directory, 10000);
+
+        target.put(1, metadata());
+        target.put(1, metadata().withSeekable(false));
+
+        assertEquals(1, target.size());
+        assertFalse(target.get(1).isSeekable());
+    }
+
+    public void testCorruptEntryIsDropped() throws IOException {
+        new VideoMetadataCache(directory, 10000).put(1, metadata());
+        File[] files = directory.listFiles();
+        assertEquals(1, files.length);
+        FileOutputStream out = new FileOutputStream(files[0]);
+        out.write(new byte[]{1, 2, 3});
+        out.close();
+
+        VideoMetadataCache target = new VideoMetadataCache(directory, 10000);
+
+        assertNull(target.get(1));
+        assertEquals(0, target.size());
+    }
+
+    public void testTooLargeEntryIsNotCached() throws IOException {
+        VideoMetadataCache target = new VideoMetadataCache(directory, 10);
+
+        target.put(1, metadata());
+
+        assertEquals(0, target.size());
+    }
+
+    private static VideoMetadata metadata() {
+        return new VideoMetadata(1000, true, 25, 640, 480, null);
+    }
+}
@@ -0,0 +1,412 @@
+package ch.lipsch.videocomparator;
+
+import junit.framework.TestCase;
+
+/**
+ * Test for the class VideoPlayState.
+ */
+
+public class VideoPlayStateTest extends TestCase {
+
+    public void testShowPlayButtonNoVideoLoaded() {
+        VideoPlayState target = new VideoPlayState();
+
+        target.setVideo1(null);
+        target.setVideo2(null);
+
+        assertFalse(target.shouldShowPlayButton());
+    }
+
+    public void testShowPlayButtonOneVideoLoaded() {
+        VideoPlayState target = new VideoPlayState();
+
+        String fakeVideoUri = "file:///somefile.avi";
+        target.setVideo1(fakeVideoUri);
+        target.setVideo2(null);
+
+        assertTrue(target.shouldShowPlayButton());
+    }
+
+    public void testShowPlayButtonTwoVideosLoaded() {
+        VideoPlayState target = new VideoPlayState();
+
+        String fakeVideoUri1 = "file:///somefile.avi";
+        String fakeVideoUri2 = "file:///somefile2.avi";
+        target.setVideo1(fakeVideoUri1);
+        target.setVideo2(fakeVideoUri2);
+
+        assertTrue(target.shouldShowPlayButton());
+    }
+
+    public void testShowPlayButtonOnePlaying() {
+        VideoPlayState target = new VideoPlayState();
+
+        String fakeVideoUri1 = "file:///somefile.avi";
+        String fakeVideoUri2 = "file:///somefile2.avi";
+        target.setVideo1(fakeVideoUri1);
+        target.setVideo2(fakeVideoUri2);
+
+        target.setVideo1State(VideoPlayState.State.PLAYING);
+
+        assertFalse(target.shouldShowPlayButton());
+    }
+
+    public void testShowPlayButtonAllPlaying() {
+        VideoPlayState target = new VideoPlayState();
+
+        String fakeVideoUri1 = "file:///somefile.avi";
+        String fakeVideoUri2 = "file:///somefile2.avi";
+        target.setVideo1(fakeVideoUri1);
+        target.setVideo2(fakeVideoUri2);
+
+        target.setVideo1State(VideoPlayState.State.PLAYING);
+        target.setVideo2State(VideoPlayState.State.PLAYING);
+
+        assertFalse(target.shouldShowPlayButton());
+    }
+
+    public void testShowPauseButtonNoVideos() {
+        VideoPlayState target = new VideoPlayState();
+
+        target.setVideo1(null);
+        target.setVideo2(null);
+
+        assertFalse(target.shouldShowPauseButton());
+    }
+
+    public void testShowPauseButtonVideoLoadedNotPlaying() {
+        VideoPlayState target = new VideoPlayState();
+
+        String fakeVideoUri = "file:///somefile.avi";
+        target.setVideo1(fakeVideoUri);
+        target.setVideo2(null);
+
+        assertFalse(target.shouldShowPauseButton());
+    }
+
+    public void testShowPauseButtonVideoPlaying() {
+        VideoPlayState target = new VideoPlayState();
+
+        String fakeVideoUri = "file:///somefile.avi";
+        target.setVideo1(fakeVideoUri);
+        target.setVideo2(null);
+
+        target.setVideo1State(VideoPlayState.State.PLAYING);
+
+        assertTrue(target.shouldShowPauseButton());
+    }
+
+    public void testShowStopButtonNoVideos() {
+        VideoPlayState target = new VideoPlayState();
+
+        target.setVideo1(null);
+        target.setVideo2(null);
+
+        assertFalse(target.shouldShowStopButton());
+    }
+
+    public void testShowStopButtonVideoLoaded() {
+        VideoPlayState target = new VideoPlayState();
+
+        String fakeVideoUri = "file:///somefile.avi";
+        target.setVideo1(fakeVideoUri);
+        target.setVideo2(null);
+
+        assertFalse(target.shouldShowStopButton());
+    }
+
+    public void testShowStopButtonVideoPlaying() {
+        VideoPlayState target = new VideoPlayState();
+
+        String fakeVideoUri = "file:///somefile.avi";
+        target.setVideo1(fakeVideoUri);
+        target.setVideo2(null);
+
+        target.setVideo1State(VideoPlayState.State.PLAYING);
+
+        assertTrue(target.shouldShowStopButton());
+    }
+
+    public void testShowStopButtonVideoPaused() {
+        VideoPlayState target = new VideoPlayState();
+
+        String fakeVideoUri = "file:///somefile.avi";
+        target.setVideo1(fakeVideoUri);
+        target.setVideo2(null);
+
+        target.setVideo1State(VideoPlayState.State.PAUSING);
+        target.pauseVideo1(1.23);
+
+        assertTrue(target.shouldShowStopButton());
+    }
+
+    public void testShowPlayButtonVideoPaused() {
+        VideoPlayState target = new VideoPlayState();
+
+        String fakeVideoUri = "file:///somefile.avi";
+        target.setVideo1(fakeVideoUri);
+        target.setVideo2(null);
+
+        target.setVideo1State(VideoPlayState.State.PLAYING);
+        target.pauseVideo1(1.23);
+
+        assertTrue(target.shouldShowPlayButton());
+    }
+
+    public void testShowFrameStepButtonsNoVideos() {
+        VideoPlayState target = new VideoPlayState();
+
+        target.setVideo1(null);
+        target.setVideo2(null);
+
+        assertFalse(target.shouldShowFrameStepButtons());
+    }
+
+    public void testShowFrameStepButtonsVideoLoaded() {
+        VideoPlayState target = new VideoPlayState();
+
+        String fakeVideoUri = "file:///somefile.avi";
+        target.setVideo1(fakeVideoUri);
+        target.setVideo2(null);
+
+        assertTrue(target.shouldShowFrameStepButtons());
+    }
+
+    public void testShowFrameStepButtonsVideoPlaying() {
+        VideoPlayState target = new VideoPlayState();
+
+        String fakeVideoUri = "file:///somefile.avi";
+        target.setVideo1(fakeVideoUri);
+        target.setVideo2(null);
+
+        target.setVideo1State(VideoPlayState.State.PLAYING);
+
+        assertFalse(target.shouldShowFrameStepButtons());
+    }
+
+    public void testStopKeepsVideosLoaded() {
+        VideoPlayState target = new VideoPlayState();
+
+        String fakeVideoUri = "file:///somefile.avi";
+        target.setVideo1(fakeVideoUri);
+        target.setVideo2(fakeVideoUri);
+        target.pauseVideo1(12.5);
+        target.setVideo2State(VideoPlayState.State.PLAYING);
+
+        target.stopVideo1();
+        target.stopVideo2();
+
+        assertEquals(fakeVideoUri, target.getVideo1());
+        assertEquals(fakeVideoUri, target.getVideo2());
+        assertNull(target.getVideo1PauseTime());
+        assertFalse(target.shouldShowStopButton());
+        assertTrue(target.shouldShowPlayButton());
+    }
+
+    public void testStopKeepsEmptySlotEmpty() {
+        VideoPlayState target = new VideoPlayState();
+        target.setVideo1("file:///somefile.avi");
+        target.setVideo1State(VideoPlayState.State.PLAYING);
+
+        assertEquals(VideoPlayState.State.LOADED, target.stop(0));
+        assertEquals(VideoPlayState.State.EMPTY, target.stop(1));
+
+        assertEquals(VideoPlayState.State.EMPTY, target.getSnapshot().getState(1));
+        assertNull(target.getVideo2PauseTime());
+        //A play after the stop must not turn the empty slot into a playing one.
+        assertEquals(VideoPlayState.State.EMPTY, target.apply(1, PlayStateMachine.Event.PLAY));
+    }
+
+    public void testShowDifferenceButtonOneVideoLoaded() {
+        VideoPlayState target = new VideoPlayState();
+
+        String fakeVideoUri = "file:///somefile.avi";
+        target.setVideo1(fakeVideoUri);
+        target.setVideo2(null);
+
+        assertFalse(target.shouldShowDifferenceButton());
+    }
+
+    public void testShowDifferenceButtonTwoVideosLoaded() {
+        VideoPlayState target = new VideoPlayState();
+
+        String fakeVideoUri = "file:///somefile.avi";
+        target.setVideo1(fakeVideoUri);
+        target.setVideo2(fakeVideoUri);
+
+        assertTrue(target.shouldShowDifferenceButton());
+
+        target.setVideo2State(VideoPlayState.State.PLAYING);
+
+        assertFalse(target.shouldShowDifferenceButton());
+    }
+
+    public void testShowAnalyzeButton() {
+        VideoPlayState target = new VideoPlayState();
+
+        String fakeVideoUri = "file:///somefile.avi";
+        target.setVideo1(fakeVideoUri);
+        target.setVideo2(null);
+
+        assertFalse(target.shouldShowAnalyzeButton());
+
+        target.setVideo2(fakeVideoUri);
+        target.setVideo1State(VideoPlayState.State.PLAYING);
+
+        assertTrue(target.shouldShowAnalyzeButton());
+    }
+
+    public void testLoadingVideoUnlinks() {
+        VideoPlayState target = new VideoPlayState();
+
+        String fakeVideoUri = "file:///somefile.avi";
+        target.setVideo1(fakeVideoUri);
+        target.setVideo2(fakeVideoUri);
+        assertTrue(target.shouldShowLinkButton());
+
+        target.link(1500);
+        assertTrue(target.isLinked());
+        assertEquals(1500, target.getLinkOffsetMs());
+
+        target.setVideo2("file:///somefile2.avi");
+        assertFalse(target.isLinked());
+        assertEquals(0, target.getLinkOffsetMs());
+    }
+
+    public void testSaveAndLoadState() {
+        VideoPlayState target = new VideoPlayState();
+        String fakeVideoUri1 = "file:///somefile.avi";
+        String fakeVideoUri2 = "file:///somefile2.avi";
+        target.setVideo1(fakeVideoUri1);
+        target.setVideo2(fakeVideoUri2);
+        target.setVideo1State(VideoPlayState.State.PLAYING);
+        target.pauseVideo2(7.5);
+        target.setVideo2Seekable(false);
+        target.link(-1200);
+
+        byte[] blob = target.saveState();
+        VideoPlayState loaded = new VideoPlayState();
+        loaded.loadState(blob);
+
+        assertEquals(fakeVideoUri1, loaded.getVideo1());
+        assertEquals(fakeVideoUri2, loaded.getVideo2());
+        assertTrue(loaded.isVideo1Playing());
+        assertNull(loaded.getVideo1PauseTime());
+        assertEquals(VideoPlayState.State.PAUSING, loaded.getSnapshot().getState(1));
+        assertEquals(7.5, loaded.getVideo2PauseTime(), 0.0);
+        assertTrue(loaded.isVideo1Seekable());
+        assertFalse(loaded.isVideo2Seekable());
+        assertTrue(loaded.isLinked());
+        assertEquals(-1200, loaded.getLinkOffsetMs());
+    }
+
+    public void testLoadStateWithoutSavedState() {
+        VideoPlayState target = new VideoPlayState();
+        String fakeVideoUri = "file:///somefile.avi";
+        target.setVideo1(fakeVideoUri);
+
+        target.loadState(null);
+
+        assertEquals(fakeVideoUri, target.getVideo1());
+    }
+
+    public void testBrokenBlobIsIgnored() {
+        assertNull(VideoPlayState.Snapshot.fromBytes(new byte[]{1, 2}, 2));
+        assertNull(VideoPlayState.Snapshot.fromBytes(new byte[]{99, 2, 0}, 2));
+    }
+
+    public void testVideoCountOfBlobIsAdapted() {
+        VideoPlayState target = new VideoPlayState(4);
+        target.setVideo(3, "file:///4.avi");
+        target.setVideo(1, "file:///2.avi");
+        byte[] blob = target.getSnapshot().toBytes();
+
+        VideoPlayState.Snapshot smaller = VideoPlayState.Snapshot.fromBytes(blob, 2);
+        assertEquals(2, smaller.getVideoCount());
+        assertEquals("file:///2.avi", smaller.getVideo(1));
+
+        VideoPlayState.Snapshot larger = VideoPlayState.Snapshot.fromBytes(blob, 6);
+        assertEquals(6, larger.getVideoCount());
+        assertEquals("file:///4.avi", larger.getVideo(3));
+        assertNull(larger.getVideo(5));
+        assertEquals(VideoPlayState.State.EMPTY, larger.getState(5));
+    }
+
+    public void testFourVideos() {
+        VideoPlayState target = new VideoPlayState(4);
+        assertFalse(target.shouldShowPlayButton());
+
+        target.setVideo(2, "file:///3.avi");
+        assertTrue(target.shouldShowPlayButton());
+        assertFalse(target.shouldShowLinkButton());
+
+        target.setState(2, VideoPlayState.State.PLAYING);
+        assertTrue(target.shouldShowPauseButton());
+
+        target.pause(2, 3.0);
+        assertFalse(target.shouldShowPauseButton());
+        assertTrue(target.shouldShowStopButton());
+        assertEquals(3.0, target.getSnapshot().getPauseTime(2), 0.0);
+
+        target.setVideo(0, "file:///1.avi");
+        target.setVideo(1, "file:///2.avi");
+        target.link(new int[]{0, 100, -200, 300});
+        assertEquals(-200, target.getSnapshot().getLinkOffsetMs(2));
+
+        try {
+            target.link(new int[]{0, 100});
+            fail("One offset per video is needed");
+        } catch (IllegalArgumentException e) {
+            //expected
+        }
+    }
+
+    public void testUnloadedVideoIsEmpty() {
+        VideoPlayState target = new VideoPlayState();
+        target.setVideo1("file:///somefile.avi");
+
+        target.setVideo1(null);
+
+        assertEquals(VideoPlayState.State.EMPTY, target.getSnapshot().getState(0));
+    }
+
+    public void testSnapshotDoesNotChange() {
+        VideoPlayState target = new VideoPlayState();
+        String fakeVideoUri = "file:///somefile.avi";
+        target.setVideo1(fakeVideoUri);
+        VideoPlayState.Snapshot snapshot = target.getSnapshot();
+
+        target.setVideo1State(VideoPlayState.State.PLAYING);
+        target.setVideo2(fakeVideoUri);
+
+        assertEquals(VideoPlayState.State.LOADED, snapshot.getState(0));
+        assertNull(snapshot.getVideo(1));
+        assertNotSame(snapshot, target.getSnapshot());
+        assertTrue(target.getSnapshot().isPlaying(0));
+    }
+
+    public void testConcurrentUpdatesAreNotLost() throws InterruptedException {
+        final VideoPlayState target = new VideoPlayState(4);
+        Thread[] threads = new Thread[4];
+        for (int i = 0; i < threads.length; i++) {
+            final int video = i;
+            threads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int j = 1; j <= 1000; j++) {
+                        target.pause(video, j);
+                    }
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        //Every thread changed its own video. A lost update would leave an older pause time.
+        for (int i = 0; i < threads.length; i++) {
+            assertEquals(1000.0, target.getSnapshot().getPauseTime(i), 0.0);
+        }
+    }
+}
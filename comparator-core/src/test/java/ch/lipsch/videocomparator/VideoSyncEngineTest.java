@@ -0,0 +1,345 @@
+/*
+ * Copyright (C) 2015 Erwin Betschart
+ *
+ * This file is part of Video Comparator.
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.lipsch.videocomparator;
+
+import junit.framework.TestCase;
+
+import java.util.Random;
+
+/**
+ * Test for the class VideoSyncEngine. Uses simulated players so no device is needed.
+ */
+public class VideoSyncEngineTest extends TestCase {
+
+    private static final int TICK_MS = 100;
+
+    private FakeClock clock = null;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        clock = new FakeClock();
+    }
+
+    public void testNoCorrectionWithoutDrift() {
+        SimulatedPlayer player1 = new SimulatedPlayer(1.0, 0, false);
+        SimulatedPlayer player2 = new SimulatedPlayer(1.0, 0, false);
+        VideoSyncEngine target = new VideoSyncEngine(clock, player1, player2);
+
+        target.start();
+        run(target, 100, player1, player2);
+
+        assertEquals(0, target.getMaxDriftMs());
+        assertEquals(0, target.getCorrectiveSeekCount());
+        assertEquals(0, player1.seekCount);
+        assertEquals(0, player2.seekCount);
+    }
+
+    public void testSlowPlayerIsCorrectedWithSeek() {
+        SimulatedPlayer player1 = new SimulatedPlayer(1.0, 0, false);
+        SimulatedPlayer player2 = new SimulatedPlayer(0.9, 0, false);
+        VideoSyncEngine target = new VideoSyncEngine(clock, player1, player2);
+
+        target.start();
+        run(target, 600, player1, player2); //One minute
+
+        //Without correction the drift would be 6 seconds.
+        assertTrue("drift " + target.getMaxDriftMs(), target.getMaxDriftMs() <= target.getSeekThresholdMs() + TICK_MS);
+        assertTrue(player2.seekCount > 0);
+        assertEquals(0, player1.seekCount);
+        assertTrue(Math.abs(player1.getCurrentPosition() - player2.getCurrentPosition()) <= target.getSeekThresholdMs() + TICK_MS);
+    }
+
+    public void testRateIsNudgedForSmallDrift() {
+        SimulatedPlayer player1 = new SimulatedPlayer(1.0, 0, true);
+        SimulatedPlayer player2 = new SimulatedPlayer(0.99, 0, true);
+        VideoSyncEngine target = new VideoSyncEngine(clock, player1, player2);
+
+        target.start();
+        run(target, 600, player1, player2);
+
+        //1% drift can be compensated by the rate only, no seeks needed.
+        assertEquals(0, target.getCorrectiveSeekCount());
+        assertTrue(player2.rate > 1.0f);
+        assertTrue("drift " + target.getMaxDriftMs(), target.getMaxDriftMs() < target.getSeekThresholdMs());
+    }
+
+    public void testOffsetIsKept() {
+        SimulatedPlayer player1 = new SimulatedPlayer(1.0, 0, false);
+        SimulatedPlayer player2 = new SimulatedPlayer(1.0, 0, false);
+        player2.seekTo(5000);
+        VideoSyncEngine target = new VideoSyncEngine(clock, player1, player2);
+
+        target.start();
+        run(target, 100, player1, player2);
+
+        assertEquals(0, target.getCorrectiveSeekCount());
+        assertEquals(5000, player2.getCurrentPosition() - player1.getCurrentPosition());
+    }
+
+    public void testMasterFollowsIfAllPlayersAreSlow() {
+        SimulatedPlayer player1 = new SimulatedPlayer(0.8, 0, false);
+        SimulatedPlayer player2 = new SimulatedPlayer(0.8, 0, false);
+        VideoSyncEngine target = new VideoSyncEngine(clock, player1, player2);
+
+        target.start();
+        run(target, 100, player1, player2);
+
+        //Seeking both players forward would not help at all.
+        assertEquals(0, target.getCorrectiveSeekCount());
+    }
+
+    public void testJitterIsNotCorrected() {
+        Random random = new Random(42);
+        SimulatedPlayer player1 = new SimulatedPlayer(1.0, 10, false, random);
+        SimulatedPlayer player2 = new SimulatedPlayer(1.0, 10, false, random);
+        VideoSyncEngine target = new VideoSyncEngine(clock, player1, player2);
+
+        target.start();
+        run(target, 600, player1, player2);
+
+        //Jitter is way below the seek threshold.
+        assertEquals(0, target.getCorrectiveSeekCount());
+        assertTrue(target.getMaxDriftMs() > 0);
+        assertTrue(target.getMaxDriftMs() <= 40);
+    }
+
+    public void testJitterAndDrift() {
+        Random random = new Random(4711);
+        SimulatedPlayer player1 = new SimulatedPlayer(1.0, 20, false, random);
+        SimulatedPlayer player2 = new SimulatedPlayer(1.05, 20, false, random);
+        VideoSyncEngine target = new VideoSyncEngine(clock, player1, player2);
+        target.setSeekThresholdMs(80);
+
+        target.start();
+        run(target, 3000, player1, player2); //Five minutes
+
+        assertTrue(target.getCorrectiveSeekCount() > 0);
+        assertTrue("drift " + target.getMaxDriftMs(), target.getMaxDriftMs() <= 80 + TICK_MS + 40);
+    }
+
+    public void testPendingSeekIsNotRepeated() {
+        SimulatedPlayer player1 = new SimulatedPlayer(1.0, 0, false);
+        SimulatedPlayer player2 = new SimulatedPlayer(0.5, 0, false);
+        player2.setSeekBehaviour(0, 400);
+        VideoSyncEngine target = new VideoSyncEngine(clock, player1, player2);
+
+        target.start();
+        run(target, 600, player1, player2);
+
+        //The drift grows by 50ms per tick but the player is left alone until its seek completed.
+        assertTrue(player2.seekCount > 0);
+        assertEquals(0, player2.seeksWhilePending);
+    }
+
+    public void testSeekSnappingToKeyFrameDoesNotLoop() {
+        SimulatedPlayer player1 = new SimulatedPlayer(1.0, 0, false);
+        SimulatedPlayer player2 = new SimulatedPlayer(0.9, 0, false);
+        //Seeks take 300ms and land on the previous key frame of a 2s GOP, i.e. up to 2s too early.
+        player2.setSeekBehaviour(2000, 300);
+        VideoSyncEngine target = new VideoSyncEngine(clock, player1, player2);
+
+        target.start();
+        run(target, 600, player1, player2); //One minute
+
+        //Seeking on every tick after a landed seek would issue about 150 seeks. The cooldown doubles for every ineffective seek.
+        assertTrue(player2.seekCount > 0);
+        assertEquals(0, player2.seeksWhilePending);
+        assertTrue("seeks " + player2.seekCount, player2.seekCount <= 10);
+        assertEquals(target.getCorrectiveSeekCount(), player2.seekCount);
+    }
+
+    public void testRefusedSeekIsNotCounted() {
+        SimulatedPlayer player1 = new SimulatedPlayer(1.0, 0, false);
+        SimulatedPlayer player2 = new SimulatedPlayer(0.5, 0, false);
+        VideoSyncEngine target = new VideoSyncEngine(clock, player1, player2);
+
+        //E.g. a user seek of the player is in flight.
+        player2.isRefusingSeeks = true;
+        target.start();
+        run(target, 20, player1, player2);
+
+        assertTrue(player2.refusedSeekCount > 0);
+        assertEquals(0, target.getCorrectiveSeekCount());
+
+        //The refused seeks neither started a cooldown nor count as ineffective: The next tick seeks.
+        player2.isRefusingSeeks = false;
+        run(target, 1, player1, player2);
+        assertEquals(1, player2.seekCount);
+        assertEquals(1, target.getCorrectiveSeekCount());
+    }
+
+    public void testStoppedEngineDoesNotCorrect() {
+        SimulatedPlayer player1 = new SimulatedPlayer(1.0, 0, false);
+        SimulatedPlayer player2 = new SimulatedPlayer(0.5, 0, false);
+        VideoSyncEngine target = new VideoSyncEngine(clock, player1, player2);
+
+        target.start();
+        target.stop();
+        run(target, 100, player1, player2);
+
+        assertEquals(0, player2.seekCount);
+    }
+
+    public void testInvalidThresholds() {
+        VideoSyncEngine target = new VideoSyncEngine(clock, new SimulatedPlayer(1.0, 0, false));
+
+        try {
+            target.setSeekThresholdMs(target.getRateThresholdMs());
+            fail("Seek threshold must be larger than rate threshold");
+        } catch (IllegalArgumentException e) {
+            //expected
+        }
+
+        try {
+            target.setRateThresholdMs(target.getSeekThresholdMs());
+            fail("Rate threshold must be smaller than seek threshold");
+        } catch (IllegalArgumentException e) {
+            //expected
+        }
+    }
+
+    /**
+     * Advances the clock and the players and ticks the engine. The players must be given in the same order as to the engine.
+     */
+    private void run(VideoSyncEngine target, int ticks, SimulatedPlayer... players) {
+        for (int i = 0; i < ticks; i++) {
+            clock.timeMs += TICK_MS;
+            for (int p = 0; p < players.length; p++) {
+                if (players[p].advance(TICK_MS)) {
+                    target.onSeekComplete(p);
+                }
+            }
+            target.tick();
+        }
+    }
+
+    private static class FakeClock implements PlaybackClock {
+        long timeMs = 0;
+
+        @Override
+        public long getTimeMs() {
+            return timeMs;
+        }
+    }
+
+    /**
+     * A player which plays at a given speed (e.g. a slow decoder) and reports its position with random jitter.
+     * Seeks are exact and immediate unless a seek behaviour is set.
+     */
+    private static class SimulatedPlayer implements SyncablePlayer {
+        private final double speed;
+        private final int jitterMs;
+        private final boolean supportsRate;
+        private final Random random;
+
+        private double positionMs = 0;
+        private float rate = 1.0f;
+        private int seekCount = 0;
+        private int seeksWhilePending = 0;
+        private boolean isRefusingSeeks = false;
+        private int refusedSeekCount = 0;
+
+        private int keyFrameIntervalMs = 0;
+        private int seekLatencyMs = 0;
+        private int pendingSeekMs = -1;
+        private int seekRemainingMs = 0;
+
+        SimulatedPlayer(double speed, int jitterMs, boolean supportsRate) {
+            this(speed, jitterMs, supportsRate, new Random(0));
+        }
+
+        SimulatedPlayer(double speed, int jitterMs, boolean supportsRate, Random random) {
+            this.speed = speed;
+            this.jitterMs = jitterMs;
+            this.supportsRate = supportsRate;
+            this.random = random;
+        }
+
+        /**
+         * Makes seeks asynchronous like the ones of MediaPlayer.
+         *
+         * @param keyFrameIntervalMs Seeks land on the previous multiple of this interval. 0 for exact seeks.
+         * @param seekLatencyMs      The time until a seek completed. The position does not change while seeking.
+         */
+        void setSeekBehaviour(int keyFrameIntervalMs, int seekLatencyMs) {
+            this.keyFrameIntervalMs = keyFrameIntervalMs;
+            this.seekLatencyMs = seekLatencyMs;
+        }
+
+        /**
+         * @return true if a pending seek completed.
+         */
+        boolean advance(int ms) {
+            if (pendingSeekMs < 0) {
+                positionMs += ms * speed * rate;
+                return false;
+            }
+
+            seekRemainingMs -= ms;
+            if (seekRemainingMs > 0) {
+                return false;
+            }
+            positionMs = keyFrameIntervalMs == 0 ? pendingSeekMs : pendingSeekMs / keyFrameIntervalMs * keyFrameIntervalMs;
+            pendingSeekMs = -1;
+            return true;
+        }
+
+        @Override
+        public int getCurrentPosition() {
+            int jitter = jitterMs == 0 ? 0 : random.nextInt(2 * jitterMs + 1) - jitterMs;
+            return (int) Math.max(0, positionMs + jitter);
+        }
+
+        @Override
+        public boolean isPlaying() {
+            return true;
+        }
+
+        @Override
+        public boolean seekTo(int positionMs) {
+            if (isRefusingSeeks) {
+                refusedSeekCount++;
+                return false;
+            }
+
+            seekCount++;
+            if (seekLatencyMs == 0 && keyFrameIntervalMs == 0) {
+                this.positionMs = positionMs;
+                return true;
+            }
+            if (pendingSeekMs >= 0) {
+                seeksWhilePending++;
+            }
+            pendingSeekMs = positionMs;
+            seekRemainingMs = seekLatencyMs;
+            return true;
+        }
+
+        @Override
+        public boolean supportsPlaybackRate() {
+            return supportsRate;
+        }
+
+        @Override
+        public void setPlaybackRate(float rate) {
+            this.rate = rate;
+        }
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright (C) 2015 Erwin Betschart
+ *
+ * This file is part of Video Comparator.
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.lipsch.videocomparator;
+
+import junit.framework.TestCase;
+
+/**
+ * Test for the class ViewportTransform.
+ */
+public class ViewportTransformTest extends TestCase {
+
+    private static final float DELTA = 1e-6f;
+
+    private final ViewportTransform target = new ViewportTransform();
+    private final float[] region = new float[4];
+
+    public void testInitialRegion() {
+        assertFalse(target.isZoomed());
+        assertRegion(0f, 0f, 1f, 1f);
+    }
+
+    public void testZoomAroundCenter() {
+        target.zoomBy(2f, 0.5f, 0.5f);
+
+        assertTrue(target.isZoomed());
+        assertEquals(2f, target.getZoom(), DELTA);
+        assertRegion(0.25f, 0.25f, 0.75f, 0.75f);
+    }
+
+    public void testZoomKeepsFocus() {
+        //The top left quarter: The point at the focus stays under it.
+        target.zoomBy(4f, 0.25f, 0.25f);
+        assertRegion(0.1875f, 0.1875f, 0.4375f, 0.4375f);
+
+        target.zoomBy(2f, 0.5f, 0f);
+        assertRegion(0.25f, 0.1875f, 0.375f, 0.3125f);
+    }
+
+    public void testZoomIsLimited() {
+        target.zoomBy(100f, 0.5f, 0.5f);
+        assertEquals(ViewportTransform.MAX_ZOOM, target.getZoom(), DELTA);
+
+        target.zoomBy(0.001f, 0.5f, 0.5f);
+        assertEquals(ViewportTransform.MIN_ZOOM, target.getZoom(), DELTA);
+        assertRegion(0f, 0f, 1f, 1f);
+
+        target.zoomBy(0f, 0.5f, 0.5f);
+        target.zoomBy(Float.NaN, 0.5f, 0.5f);
+        assertEquals(ViewportTransform.MIN_ZOOM, target.getZoom(), DELTA);
+    }
+
+    public void testZoomAtEdgeStaysInside() {
+        target.zoomBy(2f, 1f, 1f);
+        assertRegion(0.5f, 0.5f, 1f, 1f);
+
+        target.zoomBy(0.8f, 1f, 1f);
+        target.getVisibleRegion(region);
+        assertEquals(1f, region[2], DELTA);
+        assertEquals(1f, region[3], DELTA);
+    }
+
+    public void testPan() {
+        target.zoomBy(2f, 0.5f, 0.5f);
+
+        //Moving the finger to the right by a quarter of the displayed width shows the content further left.
+        target.panBy(0.25f, -0.1f);
+        assertRegion(0.125f, 0.3f, 0.625f, 0.8f);
+    }
+
+    public void testPanIsLimited() {
+        target.panBy(0.5f, 0.5f);
+        assertRegion(0f, 0f, 1f, 1f);
+
+        target.zoomBy(4f, 0.5f, 0.5f);
+        target.panBy(10f, -10f);
+        assertRegion(0f, 0.75f, 0.25f, 1f);
+    }
+
+    public void testReset() {
+        target.zoomBy(3f, 0.1f, 0.9f);
+        target.reset();
+
+        assertFalse(target.isZoomed());
+        assertRegion(0f, 0f, 1f, 1f);
+    }
+
+    private void assertRegion(float left, float top, float right, float bottom) {
+        target.getVisibleRegion(region);
+        assertEquals(left, region[0], DELTA);
+        assertEquals(top, region[1], DELTA);
+        assertEquals(right, region[2], DELTA);
+        assertEquals(bottom, region[3], DELTA);
+    }
+}
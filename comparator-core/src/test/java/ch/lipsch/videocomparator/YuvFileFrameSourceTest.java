@@ -0,0 +1,253 @@
+/*
+ * Copyright (C) 2015 Erwin Betschart
+ *
+ * This file is part of Video Comparator.
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.lipsch.videocomparator;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Test for the class YuvFileFrameSource.
+ */
+public class YuvFileFrameSourceTest extends TestCase {
+
+    private static final int WIDTH = 4;
+    private static final int HEIGHT = 2;
+    private static final int LUMA_SIZE = WIDTH * HEIGHT;
+    private static final int CHROMA_SIZE = 2;
+
+    public void testOpenY4m() throws IOException {
+        YuvFileFrameSource source = YuvFileFrameSource.openY4m(writeY4m("W4 H2 F30000:1001 Ip A1:1 C420jpeg XYSCSS=420JPEG",
+                new String[]{"FRAME", "FRAME Ixyz", "FRAME"}, 12));
+        try {
+            assertEquals(WIDTH, source.getWidth());
+            assertEquals(HEIGHT, source.getHeight());
+            assertEquals(3, source.getFrameCount());
+            assertEquals(29.97, source.getFrameRate(), 0.001);
+            assertEquals(100100, source.getDurationUs());
+
+            //The frame with parameters in its header.
+            YuvFrame frame = source.getFrame(1);
+            assertEquals(1, frame.getIndex());
+            assertEquals(33367, frame.getTimeUs());
+            assertEquals(2, frame.getChromaWidth());
+            assertEquals(1, frame.getChromaHeight());
+            assertPlane(frame.getY(), 1, LUMA_SIZE);
+            assertPlane(frame.getU(), 1, CHROMA_SIZE);
+            assertPlane(frame.getV(), 1, CHROMA_SIZE);
+            assertTrue(frame.getY().isReadOnly());
+
+            assertPlane(source.getFrame(2).getY(), 2, LUMA_SIZE);
+            assertPlane(source.getFrame(0).getV(), 0, CHROMA_SIZE);
+        } finally {
+            source.close();
+        }
+    }
+
+    public void testOpenY4mChromaFormats() throws IOException {
+        YuvFileFrameSource source = YuvFileFrameSource.openY4m(writeY4m("W4 H2 C444", new String[]{"FRAME"}, LUMA_SIZE * 3));
+        try {
+            YuvFrame frame = source.getFrame(0);
+            assertEquals(LUMA_SIZE, frame.getU().remaining());
+            assertPlane(frame.getV(), 0, LUMA_SIZE);
+            assertEquals(25.0, source.getFrameRate(), 0.0);
+        } finally {
+            source.close();
+        }
+
+        source = YuvFileFrameSource.openY4m(writeY4m("W4 H2 Cmono", new String[]{"FRAME", "FRAME"}, LUMA_SIZE));
+        try {
+            assertEquals(2, source.getFrameCount());
+            assertEquals(0, source.getFrame(1).getU().remaining());
+            assertPlane(source.getFrame(1).getY(), 1, LUMA_SIZE);
+        } finally {
+            source.close();
+        }
+    }
+
+    public void testOpenY4mIgnoresTruncatedFrame() throws IOException {
+        File file = writeY4m("W4 H2 F30:1", new String[]{"FRAME", "FRAME"}, 12);
+        RandomAccessFile out = new RandomAccessFile(file, "rw");
+        try {
+            out.setLength(out.length() - 1);
+        } finally {
+            out.close();
+        }
+
+        YuvFileFrameSource source = YuvFileFrameSource.openY4m(file);
+        try {
+            assertEquals(1, source.getFrameCount());
+        } finally {
+            source.close();
+        }
+    }
+
+    public void testOpenY4mInvalid() throws IOException {
+        assertInvalidY4m(writeY4m("W4 H2", new String[0], 0), "YUV4MPEG1 W4 H2\n");
+        assertInvalidY4m(writeY4m("W4 H2", new String[0], 0), "YUV4MPEG2 W4\n");
+        assertInvalidY4m(writeY4m("W4 H2", new String[0], 0), "YUV4MPEG2 W4 H2 C420p10\n");
+        assertInvalidY4m(writeY4m("W4 H2", new String[0], 0), "YUV4MPEG2 W4 H2\nFRAMX\n0123456789ab");
+    }
+
+    public void testOpenRaw() throws IOException {
+        byte[] content = new byte[12 * 2 + 5];
+        for (int i = 0; i < content.length; i++) {
+            content[i] = (byte) (i / 12);
+        }
+        YuvFileFrameSource source = YuvFileFrameSource.openRaw(writeFile(content), WIDTH, HEIGHT, 50, 1);
+        try {
+            assertEquals(2, source.getFrameCount());
+            assertEquals(40000, source.getDurationUs());
+            assertPlane(source.getFrame(1).getY(), 1, LUMA_SIZE);
+            assertPlane(source.getFrame(1).getV(), 1, CHROMA_SIZE);
+        } finally {
+            source.close();
+        }
+    }
+
+    public void testGetFrameOutOfRange() throws IOException {
+        YuvFileFrameSource source = YuvFileFrameSource.openY4m(writeY4m("W4 H2", new String[]{"FRAME"}, 12));
+        try {
+            source.getFrame(1);
+            fail("Expected IndexOutOfBoundsException");
+        } catch (IndexOutOfBoundsException e) {
+            //Expected
+        } finally {
+            source.close();
+        }
+    }
+
+    public void testDecodeFrame() throws IOException {
+        YuvFileFrameSource source = YuvFileFrameSource.openY4m(writeY4m("W4 H2 F10:1", new String[]{"FRAME", "FRAME", "FRAME"}, 12));
+        try {
+            assertEquals(0, source.decodeFrame(0).getIndex());
+            assertEquals(0, source.decodeFrame(99999).getIndex());
+            assertEquals(1, source.decodeFrame(100000).getIndex());
+            assertEquals(2, source.decodeFrame(299999).getIndex());
+            assertNull(source.decodeFrame(300000));
+            assertNull(source.decodeFrame(-1));
+        } finally {
+            source.close();
+        }
+    }
+
+    public void testDecodeFrameAtNtscRate() throws IOException {
+        String[] frames = new String[100];
+        Arrays.fill(frames, "FRAME");
+        YuvFileFrameSource source = YuvFileFrameSource.openY4m(writeY4m("W4 H2 F30000:1001", frames, 12));
+        try {
+            //The times are not whole microseconds: Rounding them down would return the previous frame.
+            for (int i = 0; i < frames.length; i++) {
+                assertEquals(i, source.decodeFrame(source.getFrame(i).getTimeUs()).getIndex());
+                assertEquals(i, source.decodeFrame(source.getTimeUs(i + 1) - 1).getIndex());
+            }
+        } finally {
+            source.close();
+        }
+    }
+
+    public void testReadNextFrame() throws IOException {
+        YuvFileFrameSource source = YuvFileFrameSource.openY4m(writeY4m("W4 H2 F10:1", new String[]{"FRAME", "FRAME"}, 12));
+        try {
+            byte[] luma = new byte[LUMA_SIZE];
+            assertEquals(0, source.readNextFrame(luma));
+            assertEquals(100000, source.readNextFrame(luma));
+            byte[] expected = new byte[LUMA_SIZE];
+            Arrays.fill(expected, (byte) 1);
+            assertTrue(Arrays.equals(expected, luma));
+            assertEquals(-1, source.readNextFrame(luma));
+
+            source.setNextFrame(1);
+            assertEquals(100000, source.readNextFrame(luma));
+        } finally {
+            source.close();
+        }
+    }
+
+    public void testSplitRegions() {
+        long frameSize = 1L << 29;
+        long[] offsets = new long[10];
+        for (int i = 0; i < offsets.length; i++) {
+            offsets[i] = 100 + i * (frameSize + 6);
+        }
+
+        //Three whole frames fit below 2GB, the fourth does not.
+        assertTrue(Arrays.equals(new int[]{0, 3, 6, 9}, YuvFileFrameSource.splitRegions(offsets, frameSize)));
+        assertTrue(Arrays.equals(new int[]{0}, YuvFileFrameSource.splitRegions(new long[0], frameSize)));
+    }
+
+    private static void assertInvalidY4m(File file, String content) throws IOException {
+        RandomAccessFile out = new RandomAccessFile(file, "rw");
+        try {
+            out.setLength(0);
+            out.write(content.getBytes("US-ASCII"));
+        } finally {
+            out.close();
+        }
+
+        try {
+            YuvFileFrameSource.openY4m(file).close();
+            fail("Expected IOException for " + content);
+        } catch (IOException e) {
+            //Expected
+        }
+    }
+
+    /**
+     * Asserts that a plane has the given size and contains the frame index in each sample (see writeY4m).
+     */
+    private static void assertPlane(ByteBuffer plane, int frameIndex, int size) {
+        assertEquals(size, plane.remaining());
+        for (int i = 0; i < size; i++) {
+            assertEquals(frameIndex, plane.get(plane.position() + i));
+        }
+    }
+
+    /**
+     * Writes a Y4M file whose samples are all set to the index of their frame.
+     */
+    private static File writeY4m(String parameters, String[] frameHeaders, int frameSize) throws IOException {
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        content.write(("YUV4MPEG2 " + parameters + "\n").getBytes("US-ASCII"));
+        for (int i = 0; i < frameHeaders.length; i++) {
+            content.write((frameHeaders[i] + "\n").getBytes("US-ASCII"));
+            byte[] samples = new byte[frameSize];
+            Arrays.fill(samples, (byte) i);
+            content.write(samples);
+        }
+        return writeFile(content.toByteArray());
+    }
+
+    private static File writeFile(byte[] content) throws IOException {
+        File file = File.createTempFile("frames", ".y4m");
+        file.deleteOnExit();
+        RandomAccessFile out = new RandomAccessFile(file, "rw");
+        try {
+            out.write(content);
+        } finally {
+            out.close();
+        }
+        return file;
+    }
+}